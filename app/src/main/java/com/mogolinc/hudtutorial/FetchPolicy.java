@@ -0,0 +1,199 @@
+package com.mogolinc.hudtutorial;
+
+import java.util.Random;
+
+/**
+ * Decides whether a fetch may be issued now, so that failing fetches do not hammer the radio.
+ * <br /><br />
+ * Three mechanisms are layered:
+ * <ul>
+ *     <li>A token bucket limits the request rate to Rate per second, with bursts of up to
+ *     Burst requests.</li>
+ *     <li>After a failure, no request is allowed for an exponentially growing backoff delay,
+ *     BaseDelay * 2^(failures - 1) capped at MaxDelay, with "equal jitter": half the delay is
+ *     fixed and the other half random, so many devices losing the server at once do not retry
+ *     in step.</li>
+ *     <li>A circuit breaker opens after FailureThreshold consecutive failures. While open, no
+ *     request is allowed for OpenDuration; then it is half open and allows a single trial
+ *     request, which closes it on success and opens it again on failure.</li>
+ * </ul>
+ * The caller keeps using the last good route while requests are denied. Times are in
+ * milliseconds on any monotonic clock, e.g. fix times.
+ * <br /><br />
+ * Not thread safe.
+ */
+
+public class FetchPolicy {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    public enum Decision { ALLOW, RATE_LIMITED, BACKING_OFF, CIRCUIT_OPEN }
+
+    protected final double Rate;
+    protected final double Burst;
+    protected final long BaseDelay;
+    protected final long MaxDelay;
+    protected final int FailureThreshold;
+    protected final long OpenDuration;
+    protected final Random Jitter;
+
+    protected double Tokens;
+    protected long RefillTime = -1;
+    protected int Failures = 0;
+    protected long RetryTime = Long.MIN_VALUE;
+    protected State Breaker = State.CLOSED;
+    protected long OpenedTime;
+    protected boolean TrialInFlight = false;
+    protected int Opened = 0;
+
+
+    /**
+     * Constructs a new FetchPolicy with default tuning: one request per 2 seconds with bursts of
+     * 3, backoff from 1 to 60 seconds, and a breaker opening after 5 failures for 2 minutes.
+     */
+    public FetchPolicy() {
+        this(0.5, 3, 1000, 60000, 5, 120000, new Random());
+    }
+
+    /**
+     * Constructs a new FetchPolicy.
+     *
+     * @param rate sustained request rate, in requests per second
+     * @param burst maximum number of requests issued back to back
+     * @param baseDelay backoff delay after the first failure, in milliseconds
+     * @param maxDelay maximum backoff delay, in milliseconds
+     * @param failureThreshold number of consecutive failures that open the breaker
+     * @param openDuration time the breaker stays open before a trial request, in milliseconds
+     * @param jitter source of backoff jitter
+     */
+    public FetchPolicy(double rate, double burst, long baseDelay, long maxDelay, int failureThreshold,
+                       long openDuration, Random jitter) {
+        Rate = rate;
+        Burst = burst;
+        BaseDelay = baseDelay;
+        MaxDelay = maxDelay;
+        FailureThreshold = failureThreshold;
+        OpenDuration = openDuration;
+        Jitter = jitter;
+        Tokens = burst;
+    }
+
+
+    /**
+     * Decides whether a request may be issued now, taking a token if it may. A request that is
+     * allowed must be followed by OnSuccess or OnFailure once it completes, or by OnAbandoned
+     * if it is cancelled.
+     *
+     * @param now current time in milliseconds
+     * @return ALLOW, or the reason the request is denied
+     */
+    public Decision Acquire(long now) {
+        Refill(now);
+
+        if(Breaker == State.OPEN) {
+            if(now - OpenedTime < OpenDuration)
+                return Decision.CIRCUIT_OPEN;
+            Breaker = State.HALF_OPEN;
+        }
+        if(Breaker == State.HALF_OPEN && TrialInFlight)
+            return Decision.CIRCUIT_OPEN;
+        if(now < RetryTime)
+            return Decision.BACKING_OFF;
+        if(Tokens < 1 - 1e-9) // Refills of fractional tokens do not add up exactly
+            return Decision.RATE_LIMITED;
+
+        Tokens = Math.max(0, Tokens - 1);
+        TrialInFlight = (Breaker == State.HALF_OPEN);
+        return Decision.ALLOW;
+    }
+
+    /**
+     * Records a successful request: clears the backoff and closes the breaker.
+     */
+    public void OnSuccess() {
+        Failures = 0;
+        RetryTime = Long.MIN_VALUE;
+        Breaker = State.CLOSED;
+        TrialInFlight = false;
+    }
+
+    /**
+     * Records a failed request: extends the backoff, and opens the breaker after
+     * FailureThreshold consecutive failures or when the trial request of a half open breaker
+     * fails.
+     *
+     * @param now current time in milliseconds
+     */
+    public void OnFailure(long now) {
+        Failures++;
+        TrialInFlight = false;
+
+        long delay = BackoffDelay(Failures);
+        RetryTime = now + delay / 2 + (long) (Jitter.nextDouble() * (delay - delay / 2));
+
+        if(Breaker == State.HALF_OPEN || (Breaker == State.CLOSED && Failures >= FailureThreshold)) {
+            Breaker = State.OPEN;
+            OpenedTime = now;
+            Opened++;
+        }
+    }
+
+    /**
+     * Records that an allowed request was cancelled before it completed. Its token is not
+     * returned, but a half open breaker may try again.
+     */
+    public void OnAbandoned() {
+        TrialInFlight = false;
+    }
+
+    /**
+     * Returns the backoff delay after a number of consecutive failures, before jitter.
+     *
+     * @param failures number of consecutive failures, at least 1
+     * @return delay in milliseconds
+     */
+    public long BackoffDelay(int failures) {
+        long delay = BaseDelay;
+        for(int i = 1; i < failures && delay < MaxDelay; i++)
+            delay *= 2;
+        return Math.min(delay, MaxDelay);
+    }
+
+    private void Refill(long now) {
+        if(RefillTime >= 0 && now > RefillTime)
+            Tokens = Math.min(Burst, Tokens + (now - RefillTime) * Rate / 1000.0);
+        if(now > RefillTime)
+            RefillTime = now;
+    }
+
+    /**
+     * Returns the breaker state as of the last call. An open breaker only becomes half open
+     * when the next request is attempted.
+     *
+     * @return breaker state
+     */
+    public State GetState() {
+        return Breaker;
+    }
+
+    public int GetConsecutiveFailures() {
+        return Failures;
+    }
+
+    /**
+     * Returns the time before which failed requests are not retried.
+     *
+     * @return time in milliseconds, Long.MIN_VALUE if not backing off
+     */
+    public long GetRetryTime() {
+        return RetryTime;
+    }
+
+    /**
+     * Returns the number of times the breaker has opened.
+     *
+     * @return open count
+     */
+    public int GetOpenCount() {
+        return Opened;
+    }
+}
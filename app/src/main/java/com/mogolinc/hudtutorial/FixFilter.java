@@ -0,0 +1,240 @@
+package com.mogolinc.hudtutorial;
+
+/**
+ * Constant-velocity Kalman filter smoothing location fixes before they reach the route logic.
+ * <br /><br />
+ * The state is position and velocity in a local east/north frame, in meters. With isotropic
+ * noise the two axes are independent, so the filter runs as two 2-state filters and never
+ * allocates. Fixes update the position with their accuracy as standard deviation (DefaultAccuracy
+ * when unknown); fixes with both speed and bearing also update the velocity.
+ * <br /><br />
+ * The filter restarts from the fix after a gap of more than MaxGap, or when a fix is more than
+ * Gate standard deviations away from the prediction, so real jumps (e.g. leaving a tunnel) are
+ * followed at once instead of being smoothed over.
+ * <br /><br />
+ * Not thread safe.
+ */
+
+public class FixFilter {
+    /** Position standard deviation assumed for fixes without an accuracy, in meters. */
+    public static final double DefaultAccuracy = 10;
+    /** Speed standard deviation of fixes with speed and bearing, in m/s. */
+    public static final double SpeedAccuracy = 1;
+    /** Velocity standard deviation of a restarted filter without measured velocity, in m/s. */
+    public static final double InitialSpeedError = 30;
+    /** Time between fixes after which the filter restarts, in milliseconds. */
+    public static final long MaxGap = 10000;
+    /** Distance from the prediction, in standard deviations, beyond which the filter restarts. */
+    public static final double Gate = 5;
+    /** Distance from the frame origin beyond which the frame is moved, in meters. */
+    protected static final double ReanchorDistance = 5000;
+
+    protected final double AccelerationVariance;
+
+    protected boolean Started = false;
+    protected long Time;
+    protected double OriginLatitude;
+    protected double OriginLongitude;
+    protected double Scale; // meters per radian of longitude at the origin
+
+    // Per axis: position, velocity and covariance [[P00, P01], [P01, P11]]
+    protected final double[] Position = new double[2];
+    protected final double[] Velocity = new double[2];
+    protected final double[] P00 = new double[2];
+    protected final double[] P01 = new double[2];
+    protected final double[] P11 = new double[2];
+
+
+    /**
+     * Constructs a new FixFilter tuned for road vehicles: acceleration noise of 2 m/s^2.
+     */
+    public FixFilter() {
+        this(2);
+    }
+
+    /**
+     * Constructs a new FixFilter.
+     *
+     * @param accelerationNoise standard deviation of unmodelled acceleration, in m/s^2
+     */
+    public FixFilter(double accelerationNoise) {
+        AccelerationVariance = accelerationNoise * accelerationNoise;
+    }
+
+
+    /**
+     * Adds a fix.
+     *
+     * @param lat fix latitude
+     * @param lon fix longitude
+     * @param accuracy fix accuracy in meters, 0 or less if unknown
+     * @param bearing fix bearing in degrees, ignored if hasBearing is false
+     * @param hasBearing whether bearing is valid
+     * @param speed fix speed in m/s, ignored if hasSpeed is false
+     * @param hasSpeed whether speed is valid
+     * @param time fix time in milliseconds
+     */
+    public void Update(double lat, double lon, double accuracy, double bearing, boolean hasBearing,
+                       double speed, boolean hasSpeed, long time) {
+        double sigma = (accuracy > 0 ? accuracy : DefaultAccuracy);
+        double r = sigma * sigma;
+        boolean hasVelocity = hasBearing && hasSpeed;
+        double bearingR = GeoMath.ToRadian(bearing);
+        double ve = (hasVelocity ? speed * Math.sin(bearingR) : 0);
+        double vn = (hasVelocity ? speed * Math.cos(bearingR) : 0);
+
+        if(!Started || time - Time > MaxGap) {
+            Restart(lat, lon, r, hasVelocity, ve, vn, time);
+            return;
+        }
+
+        if(GeoMath.PlanarDistance(OriginLatitude, OriginLongitude, GetLatitude(), GetLongitude()) > ReanchorDistance)
+            Reanchor();
+
+        double x = GeoMath.ToRadian(lon - OriginLongitude) * Scale;
+        double y = GeoMath.ToRadian(lat - OriginLatitude) * GeoMath.EarthRadius;
+        double dt = Math.max(0, time - Time) / 1000.0;
+        Time = Math.max(Time, time);
+
+        Predict(0, dt);
+        Predict(1, dt);
+
+        // Squared Mahalanobis distance of the fix from the predicted position
+        double ix = x - Position[0];
+        double iy = y - Position[1];
+        double d2 = ix * ix / (P00[0] + r) + iy * iy / (P00[1] + r);
+        if(d2 > Gate * Gate) {
+            Restart(lat, lon, r, hasVelocity, ve, vn, time);
+            return;
+        }
+
+        UpdatePosition(0, x, r);
+        UpdatePosition(1, y, r);
+        if(hasVelocity) {
+            double rv = SpeedAccuracy * SpeedAccuracy;
+            UpdateVelocity(0, ve, rv);
+            UpdateVelocity(1, vn, rv);
+        }
+    }
+
+    /**
+     * Forgets all fixes; the next fix restarts the filter.
+     */
+    public void Reset() {
+        Started = false;
+    }
+
+    private void Restart(double lat, double lon, double r, boolean hasVelocity, double ve, double vn, long time) {
+        Started = true;
+        Time = time;
+        OriginLatitude = lat;
+        OriginLongitude = lon;
+        Scale = GeoMath.EarthRadius * Math.cos(GeoMath.ToRadian(lat));
+
+        double v = (hasVelocity ? SpeedAccuracy * SpeedAccuracy : InitialSpeedError * InitialSpeedError);
+        for(int a = 0; a < 2; a++) {
+            Position[a] = 0;
+            P00[a] = r;
+            P01[a] = 0;
+            P11[a] = v;
+        }
+        Velocity[0] = ve;
+        Velocity[1] = vn;
+    }
+
+    /**
+     * Moves the frame origin to the current estimate, so the frame stays small.
+     */
+    private void Reanchor() {
+        double lat = GetLatitude();
+        double lon = GetLongitude();
+        OriginLatitude = lat;
+        OriginLongitude = lon;
+        Scale = GeoMath.EarthRadius * Math.cos(GeoMath.ToRadian(lat));
+        Position[0] = 0;
+        Position[1] = 0;
+    }
+
+    private void Predict(int a, double dt) {
+        // x = F x, P = F P F' + Q for white acceleration noise
+        Position[a] += Velocity[a] * dt;
+        double dt2 = dt * dt;
+        double p00 = P00[a] + 2 * dt * P01[a] + dt2 * P11[a] + AccelerationVariance * dt2 * dt / 3;
+        double p01 = P01[a] + dt * P11[a] + AccelerationVariance * dt2 / 2;
+        double p11 = P11[a] + AccelerationVariance * dt;
+        P00[a] = p00;
+        P01[a] = p01;
+        P11[a] = p11;
+    }
+
+    private void UpdatePosition(int a, double z, double r) {
+        double s = P00[a] + r;
+        double k0 = P00[a] / s;
+        double k1 = P01[a] / s;
+        double y = z - Position[a];
+        Position[a] += k0 * y;
+        Velocity[a] += k1 * y;
+
+        double p00 = (1 - k0) * P00[a];
+        double p01 = (1 - k0) * P01[a];
+        double p11 = P11[a] - k1 * P01[a];
+        P00[a] = p00;
+        P01[a] = p01;
+        P11[a] = p11;
+    }
+
+    private void UpdateVelocity(int a, double z, double r) {
+        double s = P11[a] + r;
+        double k0 = P01[a] / s;
+        double k1 = P11[a] / s;
+        double y = z - Velocity[a];
+        Position[a] += k0 * y;
+        Velocity[a] += k1 * y;
+
+        double p00 = P00[a] - k0 * P01[a];
+        double p01 = (1 - k1) * P01[a];
+        double p11 = (1 - k1) * P11[a];
+        P00[a] = p00;
+        P01[a] = p01;
+        P11[a] = p11;
+    }
+
+    public boolean IsStarted() {
+        return Started;
+    }
+
+    public double GetLatitude() {
+        return OriginLatitude + GeoMath.ToDegree(Position[1] / GeoMath.EarthRadius);
+    }
+
+    public double GetLongitude() {
+        return OriginLongitude + GeoMath.ToDegree(Position[0] / Scale);
+    }
+
+    /**
+     * Returns the estimated speed.
+     *
+     * @return speed in m/s
+     */
+    public double GetSpeed() {
+        return Math.sqrt(Velocity[0] * Velocity[0] + Velocity[1] * Velocity[1]);
+    }
+
+    /**
+     * Returns the estimated direction of travel.
+     *
+     * @return bearing in degrees, in the range (-180, 180]
+     */
+    public double GetBearing() {
+        return GeoMath.ToDegree(Math.atan2(Velocity[0], Velocity[1]));
+    }
+
+    /**
+     * Returns the standard deviation of the estimated position along either axis.
+     *
+     * @return position error in meters
+     */
+    public double GetPositionError() {
+        return Math.sqrt(Math.max(P00[0], P00[1]));
+    }
+}
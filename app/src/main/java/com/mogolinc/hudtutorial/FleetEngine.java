@@ -0,0 +1,307 @@
+package com.mogolinc.hudtutorial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Headless on-route and next-hazard evaluation for many vehicles at once, for back-office use.
+ * <br /><br />
+ * All vehicles are matched against one shared RouteState. Compiled routes, their indexes and
+ * message timelines are immutable once built, so any number of threads read them without
+ * locking; SetRoute publishes a new window atomically, and every vehicle is re-matched against
+ * it on its next fix. Per-vehicle state (a RouteCursor and the last evaluation) is held in a
+ * ConcurrentHashMap, and each Vehicle is locked only while it is updated or read, so fixes of
+ * different vehicles never wait for one another.
+ * <br /><br />
+ * Streams of fixes are evaluated in batches. A batch is partitioned by vehicle, so every
+ * vehicle's fixes stay in order on one thread and partitions share nothing but read-only
+ * route data; throughput grows with the number of threads up to the number of cores.
+ * <br /><br />
+ * The same matching as RouteTracker, without fetching: the route is given. On a packed shared
+ * window, each vehicle moves its own copy on to the stretch it is on (see RouteState.Advance and Locate).
+ */
+
+public class FleetEngine {
+    /**
+     * A location fix of one vehicle.
+     */
+    public static class Fix {
+        public final long VehicleId;
+        public final double Latitude;
+        public final double Longitude;
+        public final double Bearing;
+        public final boolean HasBearing;
+        public final long Time;
+
+        public Fix(long vehicleId, double latitude, double longitude, double bearing, boolean hasBearing, long time) {
+            VehicleId = vehicleId;
+            Latitude = latitude;
+            Longitude = longitude;
+            Bearing = bearing;
+            HasBearing = hasBearing;
+            Time = time;
+        }
+    }
+
+    /**
+     * Matching state and last evaluation of one vehicle. Getters return a consistent view of
+     * the last evaluated fix.
+     */
+    public static class Vehicle {
+        protected final long Id;
+        protected RouteState Source = null;
+        protected RouteState State = null;
+        protected RouteCursor Cursor = null;
+        protected boolean OnRoute = false;
+        protected int NextMessage = -1;
+        protected double DistanceToMessage = -1;
+        protected long Time;
+        protected long Fixes = 0;
+
+        protected Vehicle(long id) {
+            Id = id;
+        }
+
+        protected synchronized boolean Update(RouteState state, double lat, double lon, double bearing, boolean hasBearing, long time) {
+            if(state != Source) {
+                Source = state;
+                State = state;
+                Cursor = (state != null ? new RouteCursor(state.GetRoute()) : null);
+            }
+
+            OnRoute = Cursor != null && Cursor.Update(lat, lon, bearing, hasBearing);
+            if(State != null)
+                OnRoute = Move(OnRoute ? State.Advance(Cursor.GetSegment()) : State.Locate(lat, lon), lat, lon, bearing, hasBearing) || OnRoute;
+            NextMessage = (OnRoute ? State.GetMessages().NextAhead(Cursor.GetOffset()) : -1);
+            DistanceToMessage = (NextMessage >= 0 ? State.GetMessages().GetOffset(NextMessage) - Cursor.GetOffset() : -1);
+            Time = time;
+            Fixes++;
+
+            return OnRoute;
+        }
+
+        /**
+         * Moves this vehicle's copy of a packed shared window on to another stretch, as
+         * RouteTracker does. Returns true if "next" differs from it and the fix is on it.
+         */
+        private boolean Move(RouteState next, double lat, double lon, double bearing, boolean hasBearing) {
+            if(next == State)
+                return false;
+
+            RouteCursor cursor = new RouteCursor(next.GetRoute());
+            if(!cursor.Update(lat, lon, bearing, hasBearing))
+                return false;
+
+            State = next;
+            Cursor = cursor;
+            return true;
+        }
+
+        public long GetId() {
+            return Id;
+        }
+
+        public synchronized boolean IsOnRoute() {
+            return OnRoute;
+        }
+
+        /**
+         * Returns the distance along the route to the last fix.
+         *
+         * @return offset in meters, or -1 if off route
+         */
+        public synchronized double GetOffset() {
+            return (OnRoute ? Cursor.GetOffset() : -1);
+        }
+
+        /**
+         * Returns the closest message ahead of the last fix.
+         *
+         * @return message, or null if none or off route
+         */
+        public synchronized RouteMessage GetNextMessage() {
+            return (NextMessage >= 0 ? State.GetMessages().GetMessage(NextMessage) : null);
+        }
+
+        /**
+         * Returns the distance along the route from the last fix to the next message.
+         *
+         * @return distance in meters, or -1 if there is no next message
+         */
+        public synchronized double GetDistanceToMessage() {
+            return DistanceToMessage;
+        }
+
+        public synchronized long GetTime() {
+            return Time;
+        }
+
+        public synchronized long GetFixCount() {
+            return Fixes;
+        }
+    }
+
+    protected final ConcurrentHashMap<Long, Vehicle> Vehicles = new ConcurrentHashMap<>(1024);
+    protected volatile RouteState Shared;
+
+
+    /**
+     * Constructs a new FleetEngine.
+     *
+     * @param route route and messages shared by all vehicles, or null for none yet
+     */
+    public FleetEngine(RouteState route) {
+        Shared = route;
+    }
+
+
+    /**
+     * Replaces the shared route. Vehicles are re-matched against it on their next fix.
+     *
+     * @param route new route and messages, or null for none
+     */
+    public void SetRoute(RouteState route) {
+        Shared = route;
+    }
+
+    public RouteState GetRoute() {
+        return Shared;
+    }
+
+    /**
+     * Evaluates one fix on the calling thread. Safe to call from any thread; fixes of the same
+     * vehicle must be passed in order.
+     *
+     * @param vehicleId vehicle the fix belongs to
+     * @param lat fix latitude
+     * @param lon fix longitude
+     * @param bearing fix bearing in degrees, ignored if hasBearing is false
+     * @param hasBearing whether bearing is valid
+     * @param time fix time in milliseconds
+     * @return true if the vehicle is on the route
+     */
+    public boolean Evaluate(long vehicleId, double lat, double lon, double bearing, boolean hasBearing, long time) {
+        return GetOrAdd(vehicleId).Update(Shared, lat, lon, bearing, hasBearing, time);
+    }
+
+    /**
+     * Evaluates a batch of fixes on the calling thread, in order.
+     *
+     * @param fixes fixes to evaluate
+     * @return number of fixes on the route
+     */
+    public int Evaluate(List<Fix> fixes) {
+        return EvaluateRange(Shared, fixes, null, 0, fixes.size());
+    }
+
+    /**
+     * Evaluates a batch of fixes across an executor and waits for the result. The batch is split
+     * into "partitions" tasks by vehicle, so each vehicle's fixes are evaluated in their batch
+     * order on a single thread.
+     *
+     * @param fixes fixes to evaluate
+     * @param executor executor to run on
+     * @param partitions number of tasks, usually the executor's number of threads
+     * @return number of fixes on the route
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int Evaluate(List<Fix> fixes, ExecutorService executor, int partitions) throws InterruptedException {
+        if(partitions <= 1)
+            return Evaluate(fixes);
+
+        // Counting sort of the fix indexes by partition, stable so per-vehicle order is kept
+        int n = fixes.size();
+        int[] partitionOf = new int[n];
+        final int[] starts = new int[partitions + 1];
+        for(int i = 0; i < n; i++) {
+            partitionOf[i] = Partition(fixes.get(i).VehicleId, partitions);
+            starts[partitionOf[i] + 1]++;
+        }
+        for(int p = 0; p < partitions; p++)
+            starts[p + 1] += starts[p];
+        final int[] order = new int[n];
+        int[] next = starts.clone();
+        for(int i = 0; i < n; i++)
+            order[next[partitionOf[i]]++] = i;
+
+        final RouteState state = Shared; // The whole batch sees the same route
+        final List<Fix> batch = fixes;
+        List<Future<Integer>> results = new ArrayList<>(partitions);
+        for(int p = 0; p < partitions; p++) {
+            final int partition = p;
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return EvaluateRange(state, batch, order, starts[partition], starts[partition + 1]);
+                }
+            }));
+        }
+
+        int onRoute = 0;
+        try {
+            for(Future<Integer> result : results)
+                onRoute += result.get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for(Future<Integer> result : results)
+                result.cancel(true);
+        }
+
+        return onRoute;
+    }
+
+    /**
+     * Returns the state of a vehicle.
+     *
+     * @param vehicleId vehicle
+     * @return vehicle state, or null if no fix of the vehicle has been evaluated
+     */
+    public Vehicle GetVehicle(long vehicleId) {
+        return Vehicles.get(vehicleId);
+    }
+
+    /**
+     * Forgets a vehicle.
+     *
+     * @param vehicleId vehicle
+     */
+    public void Remove(long vehicleId) {
+        Vehicles.remove(vehicleId);
+    }
+
+    public int GetVehicleCount() {
+        return Vehicles.size();
+    }
+
+    private int EvaluateRange(RouteState state, List<Fix> fixes, int[] order, int from, int to) {
+        int onRoute = 0;
+        for(int k = from; k < to; k++) {
+            Fix fix = fixes.get(order != null ? order[k] : k);
+            if(GetOrAdd(fix.VehicleId).Update(state, fix.Latitude, fix.Longitude, fix.Bearing, fix.HasBearing, fix.Time))
+                onRoute++;
+        }
+        return onRoute;
+    }
+
+    private Vehicle GetOrAdd(long vehicleId) {
+        Vehicle vehicle = Vehicles.get(vehicleId);
+        if(vehicle != null)
+            return vehicle;
+
+        Vehicle added = new Vehicle(vehicleId);
+        vehicle = Vehicles.putIfAbsent(vehicleId, added);
+        return (vehicle != null ? vehicle : added);
+    }
+
+    private static int Partition(long vehicleId, int partitions) {
+        // Spread sequential ids, as Long.hashCode does not
+        long h = vehicleId * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 33) % partitions);
+    }
+}
@@ -9,11 +9,14 @@ import java.util.List;
  * Models a geographic region with successive polygon vertices.
  * <br /><br />
  * The polygon described by the GeoFence object need not be convex.
+ * <br /><br />
+ * Containment tests are delegated to a PreparedGeoFence built from the vertices at construction.
  */
 
 public class GeoFence {
     protected List<Location> Points;
     protected LocationBounds Bounds;
+    protected PreparedGeoFence Prepared;
 
 
     /**
@@ -25,6 +28,14 @@ public class GeoFence {
     public GeoFence(List<Location> points, LocationBounds bounds) {
         Points = points;
         Bounds = new LocationBounds(bounds);
+
+        double[] latitudes = new double[points.size()];
+        double[] longitudes = new double[points.size()];
+        for(int i = 0; i < points.size(); i++) {
+            latitudes[i] = points.get(i).getLatitude();
+            longitudes[i] = points.get(i).getLongitude();
+        }
+        Prepared = new PreparedGeoFence(latitudes, longitudes);
     }
 
 
@@ -41,9 +52,9 @@ public class GeoFence {
     public static GeoFence CreateFenceAroundEdge(Location start, Location end, double padding) {
         List<Location> poly = new ArrayList<>();
 
-        Double bearing = (double)start.bearingTo(end);
-        Double b0 = (bearing + 90) % 360;
-        Double b1 = (bearing - 90) % 360;
+        double bearing = (double)start.bearingTo(end);
+        double b0 = (bearing + 90) % 360;
+        double b1 = (bearing - 90) % 360;
 
         b1 = (b1 < 0 ? b1 + 360 : b1);
 
@@ -106,71 +117,16 @@ public class GeoFence {
      * @return
      */
     public boolean Contains(Location location) {
-        int count = 0;
-
-        for(int i = 0; i < Points.size(); i++) {
-            int idx1 = ((i+1) >= Points.size() ? 0 : (i+1));
-            if(Intersect(location, Points.get(i), Points.get(idx1)))
-                count++;
-        }
-
-        return (count & 1) == 1;
+        return Prepared.Contains(location.getLatitude(), location.getLongitude());
     }
 
-    private boolean Intersect(Location loc, Location l0, Location l1) {
-        Double eps = 1e-7;
-
-        Double l0y = l0.getLatitude();
-        Double l1y = l1.getLatitude();
-        Double py = loc.getLatitude();
-
-        Double l0x = l0.getLongitude();
-        Double l1x = l1.getLongitude();
-        Double px = loc.getLongitude();
-
-        // l0 must be below l1
-        if(l0y > l1y) {
-            l0y = l1.getLatitude();
-            l0x = l1.getLongitude();
-            l1y = l0.getLatitude();
-            l1x = l0.getLongitude();
-        }
-
-        // Check if latitudinal ray with origin = loc
-        // crosses l0 and l1.
-
-        // Make sure not on same level as a vertex
-        if(l0y == py && l1y == py)
-            py += eps;
-
-        // check that this segment actually intersects
-        if(py > l1y || py < l0y || px > Math.max(l0x, l1x))
-            return false;
-
-        // Check coord is to the left of both points. If so, it must intersect.
-        if(px < Math.min(l0x, l1x))
-            return true;
-
-        // Now, we know coord is somewhere in the middle
-        // of the segment. To find out if it intersects,
-        // check if the slope of l0 to coord is greater
-        // than the slope of l0 to l1. If it is, then
-        // it intersects.
-
-        // Avoid possible divide by apisdk's.
-        double m0;
-        double m1;
-        if(l0x == l1x)
-            m0 = Double.MAX_VALUE;
-        else
-            m0 = (l1y - l0y) / (l1x - l0x);
-
-        if(px == l0x)
-            m1 = Double.MAX_VALUE;
-        else
-            m1 = (py - l0y) / (px - l0x);
-
-        return m1 >= m0;
+    /**
+     * Returns the PreparedGeoFence used for containment tests.
+     *
+     * @return prepared fence
+     */
+    public PreparedGeoFence GetPrepared() {
+        return Prepared;
     }
 
     /**
@@ -193,11 +149,11 @@ public class GeoFence {
     }
 
 
-    protected static double ToRadian(Double deg) {
-        return deg / 180.0 * Math.PI;
+    protected static double ToRadian(double deg) {
+        return GeoMath.ToRadian(deg);
     }
 
-    protected static double ToDegree(Double rad) {
-        return rad * 180.0 / Math.PI;
+    protected static double ToDegree(double rad) {
+        return GeoMath.ToDegree(rad);
     }
 }
\ No newline at end of file
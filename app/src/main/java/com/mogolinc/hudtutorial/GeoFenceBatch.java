@@ -0,0 +1,368 @@
+package com.mogolinc.hudtutorial;
+
+import java.nio.DoubleBuffer;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Batch containment tests of many points against one PreparedGeoFence.
+ * <br /><br />
+ * Points are passed as parallel latitude/longitude arrays or DoubleBuffers, and results come back
+ * as a BitSet with bit i set if point i is contained. Results are identical to calling
+ * PreparedGeoFence.Contains for every point.
+ * <br /><br />
+ * Points are processed in blocks. The points of a block inside the fence's bounds are compacted
+ * and counting-sorted into latitude buckets, then the crossing test runs edge by edge over only
+ * the points in the edge's latitude band. The inner loop is a branch-light counted loop over
+ * primitive arrays with no calls or allocation, which the JIT can unroll and vectorize. Edge
+ * orientation, direction and extent are computed once per batch rather than once per point and edge.
+ * Horizontal edges are dropped up front: the crossing rule never counts them.
+ * <br /><br />
+ * The parallel overloads split large batches across a ForkJoinPool. They are meant for offline
+ * analysis of recorded traces on a JVM; ForkJoinPool requires API 21 on Android.
+ */
+
+public class GeoFenceBatch {
+    /** Points tested per pass over the edges. A multiple of 64, so blocks own whole BitSet words. */
+    public static final int BlockSize = 1024;
+    /** Default number of points below which a fork-join task is not split further. */
+    public static final int DefaultGrain = 64 * BlockSize;
+    /** Latitude buckets per block. */
+    protected static final int Buckets = 64;
+
+    protected final PreparedGeoFence Fence;
+    protected final int Grain;
+
+    // Non-horizontal edges, oriented so that Y0 < Y1, as Intersect orients them.
+    protected final int Edges;
+    protected final double[] Y0;
+    protected final double[] X0;
+    protected final double[] Y1;
+    protected final double[] MinX;
+    protected final double[] MaxX;
+    protected final double[] DeltaX;
+    protected final double[] DeltaY;
+
+    protected final double LowLatitude;
+    protected final double LowLongitude;
+    protected final double HighLatitude;
+    protected final double HighLongitude;
+    protected final double BucketScale;
+
+
+    /**
+     * Constructs a new GeoFenceBatch for the input fence.
+     *
+     * @param fence fence to test against
+     */
+    public GeoFenceBatch(PreparedGeoFence fence) {
+        this(fence, DefaultGrain);
+    }
+
+    /**
+     * Constructs a new GeoFenceBatch for the input fence.
+     *
+     * @param fence fence to test against
+     * @param grain number of points below which a fork-join task is not split further
+     */
+    public GeoFenceBatch(PreparedGeoFence fence, int grain) {
+        Fence = fence;
+        Grain = Math.max(BlockSize, grain);
+
+        int n = fence.GetNumVertices();
+        double[] y0 = new double[n];
+        double[] x0 = new double[n];
+        double[] y1 = new double[n];
+        double[] minX = new double[n];
+        double[] maxX = new double[n];
+        double[] dx = new double[n];
+        double[] dy = new double[n];
+        int edges = 0;
+
+        for(int i = 0; i < n; i++) {
+            int i1 = (i + 1 >= n ? 0 : i + 1);
+            double ay = fence.GetLatitude(i);
+            double ax = fence.GetLongitude(i);
+            double by = fence.GetLatitude(i1);
+            double bx = fence.GetLongitude(i1);
+            if(ay == by)
+                continue; // Horizontal: never counted as a crossing
+            if(ay > by) {
+                double ty = ay;
+                double tx = ax;
+                ay = by;
+                ax = bx;
+                by = ty;
+                bx = tx;
+            }
+
+            y0[edges] = ay;
+            x0[edges] = ax;
+            y1[edges] = by;
+            minX[edges] = Math.min(ax, bx);
+            maxX[edges] = Math.max(ax, bx);
+            dx[edges] = bx - ax;
+            dy[edges] = by - ay;
+            edges++;
+        }
+
+        Edges = edges;
+        Y0 = y0;
+        X0 = x0;
+        Y1 = y1;
+        MinX = minX;
+        MaxX = maxX;
+        DeltaX = dx;
+        DeltaY = dy;
+
+        LocationBounds bounds = fence.GetBounds();
+        LowLatitude = bounds.getLowLatitude();
+        LowLongitude = bounds.getLowLongitude();
+        HighLatitude = bounds.getHighLatitude();
+        HighLongitude = bounds.getHighLongitude();
+        BucketScale = (HighLatitude > LowLatitude ? Buckets / (HighLatitude - LowLatitude) : 0);
+    }
+
+
+    /**
+     * Tests every point on the calling thread.
+     *
+     * @param latitudes point latitudes
+     * @param longitudes point longitudes
+     * @return bit i set if point i is contained
+     */
+    public BitSet Contains(double[] latitudes, double[] longitudes) {
+        long[] words = new long[Words(Length(latitudes.length, longitudes.length))];
+        ContainsRange(latitudes, longitudes, null, null, 0, latitudes.length, words);
+        return ToBitSet(words);
+    }
+
+    /**
+     * Tests every point from the buffers' positions to their limits on the calling thread.
+     * The buffers' positions are not changed.
+     *
+     * @param latitudes point latitudes
+     * @param longitudes point longitudes
+     * @return bit i set if the point at position + i is contained
+     */
+    public BitSet Contains(DoubleBuffer latitudes, DoubleBuffer longitudes) {
+        int count = Length(latitudes.remaining(), longitudes.remaining());
+        long[] words = new long[Words(count)];
+        ContainsRange(null, null, latitudes.slice(), longitudes.slice(), 0, count, words);
+        return ToBitSet(words);
+    }
+
+    /**
+     * Tests every point, splitting the batch across the input pool.
+     *
+     * @param latitudes point latitudes
+     * @param longitudes point longitudes
+     * @param pool pool to run on
+     * @return bit i set if point i is contained
+     */
+    public BitSet Contains(double[] latitudes, double[] longitudes, ForkJoinPool pool) {
+        long[] words = new long[Words(Length(latitudes.length, longitudes.length))];
+        pool.invoke(new BatchTask(latitudes, longitudes, null, null, 0, latitudes.length, words));
+        return ToBitSet(words);
+    }
+
+    /**
+     * Tests every point from the buffers' positions to their limits, splitting the batch across
+     * the input pool. The buffers' positions are not changed.
+     *
+     * @param latitudes point latitudes
+     * @param longitudes point longitudes
+     * @param pool pool to run on
+     * @return bit i set if the point at position + i is contained
+     */
+    public BitSet Contains(DoubleBuffer latitudes, DoubleBuffer longitudes, ForkJoinPool pool) {
+        int count = Length(latitudes.remaining(), longitudes.remaining());
+        long[] words = new long[Words(count)];
+        pool.invoke(new BatchTask(null, null, latitudes.slice(), longitudes.slice(), 0, count, words));
+        return ToBitSet(words);
+    }
+
+    public PreparedGeoFence GetFence() {
+        return Fence;
+    }
+
+    /**
+     * Copies result words into a BitSet. BitSet.valueOf requires API 19 on Android.
+     */
+    private static BitSet ToBitSet(long[] words) {
+        BitSet bits = new BitSet(words.length * 64);
+        for(int w = 0; w < words.length; w++) {
+            for(long word = words[w]; word != 0; word &= word - 1)
+                bits.set(w * 64 + Long.numberOfTrailingZeros(word));
+        }
+        return bits;
+    }
+
+    private static int Length(int latitudes, int longitudes) {
+        if(latitudes != longitudes)
+            throw new IllegalArgumentException("latitudes and longitudes must have the same length");
+        return latitudes;
+    }
+
+    private static int Words(int points) {
+        return (points + 63) >>> 6;
+    }
+
+    private int Bucket(double lat) {
+        int b = (int) ((lat - LowLatitude) * BucketScale);
+        return (b < 0 ? 0 : (b >= Buckets ? Buckets - 1 : b));
+    }
+
+    /**
+     * Tests points [from, from + count) of the input arrays, setting bits from "bit" onwards.
+     * "bit" must be a multiple of 64.
+     */
+    private void ContainsBlock(double[] lats, double[] lons, int from, int count, Scratch s, long[] words, int bit) {
+        // Counting sort of the in-bounds points into latitude buckets. Bucket is monotonic in
+        // latitude, so the points an edge can cross are a contiguous run of the sorted arrays.
+        int[] starts = s.Starts;
+        for(int b = 0; b <= Buckets; b++)
+            starts[b] = 0;
+        for(int k = 0; k < count; k++) {
+            double py = lats[from + k];
+            double px = lons[from + k];
+            boolean inBounds = (py >= LowLatitude) & (py <= HighLatitude) & (px >= LowLongitude) & (px <= HighLongitude);
+            int b = (inBounds ? Bucket(py) : -1);
+            s.PointBuckets[k] = b;
+            if(b >= 0)
+                starts[b + 1]++;
+        }
+        for(int b = 0; b < Buckets; b++) {
+            starts[b + 1] += starts[b];
+            s.Fill[b] = starts[b];
+        }
+        for(int k = 0; k < count; k++) {
+            int b = s.PointBuckets[k];
+            if(b < 0)
+                continue;
+            int p = s.Fill[b]++;
+            s.Latitudes[p] = lats[from + k];
+            s.Longitudes[p] = lons[from + k];
+            s.Indices[p] = k;
+            s.Parity[p] = 0;
+        }
+
+        double[] sortedLats = s.Latitudes;
+        double[] sortedLons = s.Longitudes;
+        int[] parity = s.Parity;
+        for(int e = 0; e < Edges; e++) {
+            double y0 = Y0[e];
+            double x0 = X0[e];
+            double y1 = Y1[e];
+            double minX = MinX[e];
+            double maxX = MaxX[e];
+            double dx = DeltaX[e];
+            double dy = DeltaY[e];
+            int end = starts[Bucket(y1) + 1];
+
+            // Same decisions as PreparedGeoFence.Intersect, without branches on the point.
+            for(int k = starts[Bucket(y0)]; k < end; k++) {
+                double py = sortedLats[k];
+                double px = sortedLons[k];
+                boolean inRange = (py < y1) & (py >= y0) & (px <= maxX);
+                boolean cross = inRange & ((px < minX) | ((px - x0) * dy <= (py - y0) * dx));
+                parity[k] ^= (cross ? 1 : 0);
+            }
+        }
+
+        int inBounds = starts[Buckets];
+        for(int k = 0; k < inBounds; k++) {
+            if(parity[k] != 0) {
+                int i = bit + s.Indices[k];
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+
+    /**
+     * Per-task working arrays of ContainsBlock.
+     */
+    private static class Scratch {
+        final int[] Starts = new int[Buckets + 1];
+        final int[] Fill = new int[Buckets];
+        final int[] PointBuckets = new int[BlockSize];
+        final double[] Latitudes = new double[BlockSize];
+        final double[] Longitudes = new double[BlockSize];
+        final int[] Indices = new int[BlockSize];
+        final int[] Parity = new int[BlockSize];
+    }
+
+
+    /**
+     * Tests points [from, to) of either the arrays or the buffers into "words". Kept out of
+     * BatchTask so the sequential overloads do not load RecursiveAction, which requires API 21.
+     */
+    private void ContainsRange(double[] latitudes, double[] longitudes, DoubleBuffer latitudeBuffer,
+                               DoubleBuffer longitudeBuffer, int from, int to, long[] words) {
+        Scratch scratch = new Scratch();
+        double[] lats = latitudes;
+        double[] lons = longitudes;
+        if(lats == null) {
+            lats = new double[BlockSize];
+            lons = new double[BlockSize];
+        }
+
+        for(int start = from; start < to; start += BlockSize) {
+            int count = Math.min(BlockSize, to - start);
+            if(latitudes != null) {
+                ContainsBlock(lats, lons, start, count, scratch, words, start);
+            } else {
+                // Absolute bulk copies; the shared buffers' positions are never touched.
+                DoubleBuffer latSlice = latitudeBuffer.duplicate();
+                DoubleBuffer lonSlice = longitudeBuffer.duplicate();
+                latSlice.position(start);
+                lonSlice.position(start);
+                latSlice.get(lats, 0, count);
+                lonSlice.get(lons, 0, count);
+                ContainsBlock(lats, lons, 0, count, scratch, words, start);
+            }
+        }
+    }
+
+    /**
+     * Tests points [from, to) of either the arrays or the buffers. "from" is always a multiple of
+     * BlockSize, so concurrent tasks never write the same word.
+     */
+    private class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] latitudes;
+        private final double[] longitudes;
+        private final DoubleBuffer latitudeBuffer;
+        private final DoubleBuffer longitudeBuffer;
+        private final int from;
+        private final int to;
+        private final long[] words;
+
+        BatchTask(double[] latitudes, double[] longitudes, DoubleBuffer latitudeBuffer, DoubleBuffer longitudeBuffer,
+                  int from, int to, long[] words) {
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+            this.latitudeBuffer = latitudeBuffer;
+            this.longitudeBuffer = longitudeBuffer;
+            this.from = from;
+            this.to = to;
+            this.words = words;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= Grain) {
+                ContainsRange(latitudes, longitudes, latitudeBuffer, longitudeBuffer, from, to, words);
+                return;
+            }
+
+            // Grain >= BlockSize, so both halves are non-empty.
+            int mid = from + Math.max(1, (to - from) / 2 / BlockSize) * BlockSize;
+            invokeAll(new BatchTask(latitudes, longitudes, latitudeBuffer, longitudeBuffer, from, mid, words),
+                    new BatchTask(latitudes, longitudes, latitudeBuffer, longitudeBuffer, mid, to, words));
+        }
+    }
+}
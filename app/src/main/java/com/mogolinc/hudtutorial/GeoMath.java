@@ -0,0 +1,140 @@
+package com.mogolinc.hudtutorial;
+
+/**
+ * Spherical geodesy helpers operating on primitive latitude/longitude pairs.
+ * <br /><br />
+ * Mirrors the math in GeoFence.CalculateDestinationFromLocation, but never allocates Location
+ * objects, so it can be used from per-fix code paths.
+ */
+
+public final class GeoMath {
+    /**
+     * Sphere radius used for all calculations, in meters.
+     */
+    public static final double EarthRadius = 6378137.0;
+
+    private GeoMath() {
+    }
+
+    /**
+     * Returns the great circle (haversine) distance between two points, in meters.
+     *
+     * @param lat0 start latitude
+     * @param lon0 start longitude
+     * @param lat1 end latitude
+     * @param lon1 end longitude
+     * @return distance in meters
+     */
+    public static double Distance(double lat0, double lon0, double lat1, double lon1) {
+        double lat0R = ToRadian(lat0);
+        double lat1R = ToRadian(lat1);
+        double sinDLat = Math.sin((lat1R - lat0R) / 2);
+        double sinDLon = Math.sin(ToRadian(lon1 - lon0) / 2);
+
+        double h = sinDLat * sinDLat + Math.cos(lat0R) * Math.cos(lat1R) * sinDLon * sinDLon;
+
+        return 2 * EarthRadius * Math.asin(Math.min(1.0, Math.sqrt(h)));
+    }
+
+    /**
+     * Returns the equirectangular distance between two nearby points, in meters.
+     * <br /><br />
+     * Costs one cosine instead of the haversine's trigonometry. Relative error against Distance
+     * is below 1e-6 for points up to 10 km apart at latitudes up to 70 degrees; see DistanceMode.
+     *
+     * @param lat0 start latitude
+     * @param lon0 start longitude
+     * @param lat1 end latitude
+     * @param lon1 end longitude
+     * @return distance in meters
+     */
+    public static double PlanarDistance(double lat0, double lon0, double lat1, double lon1) {
+        double x = ToRadian(lon1 - lon0) * Math.cos(ToRadian((lat0 + lat1) / 2));
+        double y = ToRadian(lat1 - lat0);
+
+        return EarthRadius * Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * Returns the equirectangular distance from a point to the nearest point of a short segment,
+     * in meters. The frame is centered on the point, so errors are those of PlanarDistance.
+     *
+     * @param lat point latitude
+     * @param lon point longitude
+     * @param lat0 segment start latitude
+     * @param lon0 segment start longitude
+     * @param lat1 segment end latitude
+     * @param lon1 segment end longitude
+     * @return distance in meters
+     */
+    public static double PlanarDistanceToSegment(double lat, double lon, double lat0, double lon0, double lat1, double lon1) {
+        double scale = Math.cos(ToRadian(lat));
+        double x0 = ToRadian(lon0 - lon) * scale;
+        double y0 = ToRadian(lat0 - lat);
+        double dx = ToRadian(lon1 - lon0) * scale;
+        double dy = ToRadian(lat1 - lat0);
+        double lengthSquared = dx * dx + dy * dy;
+
+        double t = (lengthSquared > 0 ? Math.max(0, Math.min(1, -(x0 * dx + y0 * dy) / lengthSquared)) : 0);
+        double x = x0 + t * dx;
+        double y = y0 + t * dy;
+        return EarthRadius * Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * Returns the initial bearing of the great circle from the start to the end point.
+     * <br /><br />
+     * Like Location.bearingTo, the result is in degrees in the range (-180, 180].
+     *
+     * @param lat0 start latitude
+     * @param lon0 start longitude
+     * @param lat1 end latitude
+     * @param lon1 end longitude
+     * @return initial bearing in degrees
+     */
+    public static double Bearing(double lat0, double lon0, double lat1, double lon1) {
+        double lat0R = ToRadian(lat0);
+        double lat1R = ToRadian(lat1);
+        double dLonR = ToRadian(lon1 - lon0);
+
+        double y = Math.sin(dLonR) * Math.cos(lat1R);
+        double x = Math.cos(lat0R) * Math.sin(lat1R) - Math.sin(lat0R) * Math.cos(lat1R) * Math.cos(dLonR);
+
+        return ToDegree(Math.atan2(y, x));
+    }
+
+    /**
+     * Calculates the point at the end of a great circle arc.
+     * <br /><br />
+     * Primitive counterpart of GeoFence.CalculateDestinationFromLocation. The destination
+     * latitude is written to out[0] and the longitude to out[1].
+     *
+     * @param lat start latitude
+     * @param lon start longitude
+     * @param bearing initial bearing of the arc
+     * @param distance total length of the arc
+     * @param out destination array, at least two elements long
+     */
+    public static void Destination(double lat, double lon, double bearing, double distance, double[] out) {
+        double bR = ToRadian(bearing);
+        double dR = distance / EarthRadius;
+        double latR = ToRadian(lat);
+        double lonR = ToRadian(lon);
+
+        double dLatR = Math.asin(Math.sin(latR) * Math.cos(dR) + Math.cos(latR) *
+                Math.sin(dR) * Math.cos(bR));
+        double dLonR = lonR + Math.atan2(Math.sin(bR) * Math.sin(dR) * Math.cos(latR),
+                Math.cos(dR) - Math.sin(latR) * Math.sin(dLatR));
+
+        out[0] = ToDegree(dLatR);
+        out[1] = ToDegree(dLonR);
+    }
+
+    public static double ToRadian(double deg) {
+        return deg / 180.0 * Math.PI;
+    }
+
+    public static double ToDegree(double rad) {
+        return rad * 180.0 / Math.PI;
+    }
+}
@@ -0,0 +1,59 @@
+package com.mogolinc.hudtutorial;
+
+/**
+ * Geohash encoding of latitude/longitude pairs.
+ * <br /><br />
+ * A geohash of precision n names a lat/lon aligned cell; nearby points share a prefix.
+ * Precision 6 cells are roughly 1.2 x 0.6 km, precision 7 cells roughly 150 x 150 m.
+ */
+
+public final class Geohash {
+    private static final char[] Base32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {
+    }
+
+    /**
+     * Returns the geohash of the cell containing the input point.
+     *
+     * @param lat latitude
+     * @param lon longitude
+     * @param precision number of characters, 1 to 12
+     * @return geohash
+     */
+    public static String Encode(double lat, double lon, int precision) {
+        char[] hash = new char[precision];
+        double latLow = -90;
+        double latHigh = 90;
+        double lonLow = -180;
+        double lonHigh = 180;
+        boolean even = true;
+
+        for(int i = 0; i < precision; i++) {
+            int ch = 0;
+            for(int bit = 4; bit >= 0; bit--) {
+                if(even) {
+                    double mid = (lonLow + lonHigh) / 2;
+                    if(lon >= mid) {
+                        ch |= 1 << bit;
+                        lonLow = mid;
+                    } else {
+                        lonHigh = mid;
+                    }
+                } else {
+                    double mid = (latLow + latHigh) / 2;
+                    if(lat >= mid) {
+                        ch |= 1 << bit;
+                        latLow = mid;
+                    } else {
+                        latHigh = mid;
+                    }
+                }
+                even = !even;
+            }
+            hash[i] = Base32[ch];
+        }
+
+        return new String(hash);
+    }
+}
@@ -0,0 +1,279 @@
+package com.mogolinc.hudtutorial;
+
+import java.util.Arrays;
+
+/**
+ * Geometry of a condition message, prepared once per response.
+ * <br /><br />
+ * Supports every GeoJSON geometry type with coordinates. Point and MultiPoint hazards are sets
+ * of points; LineString and MultiLineString hazards are sets of polylines; Polygon and
+ * MultiPolygon hazards are areas whose rings are PreparedGeoFences, with LocationBounds and,
+ * for large rings, an edge index. The first ring of every polygon is its outer boundary and the
+ * others are holes.
+ * <br /><br />
+ * The hazard is located on a route by its entry offset: the first distance along the route at
+ * which the route reaches the hazard. It is computed once, when the MessageTimeline is built, so
+ * areas cost the same per fix as points.
+ */
+
+public class HazardGeometry {
+    public enum Kind { POINTS, LINES, AREAS }
+
+    protected final Kind Type;
+    protected final double[] Latitudes;
+    protected final double[] Longitudes;
+    protected final int[] PartEnds;
+    protected final LocationBounds Bounds;
+
+    // AREAS only: one fence per part, and the end of every polygon's rings in Rings.
+    protected final PreparedGeoFence[] Rings;
+    protected final int[] PolygonEnds;
+    protected final int Hash;
+
+
+    /**
+     * Constructs a new HazardGeometry from flattened GeoJSON coordinates.
+     * <br /><br />
+     * Parts are the innermost coordinate arrays (the vertices of a LineString or of a ring);
+     * polygons are the arrays of rings of a MultiPolygon. A Point or MultiPoint is a single part.
+     *
+     * @param type kind of geometry
+     * @param latitudes vertex latitudes
+     * @param longitudes vertex longitudes
+     * @param partEnds end of every part in the vertex arrays
+     * @param polygonEnds AREAS only: end of every polygon's parts in partEnds, or null for a single polygon
+     */
+    public HazardGeometry(Kind type, double[] latitudes, double[] longitudes, int[] partEnds, int[] polygonEnds) {
+        if(latitudes.length != longitudes.length)
+            throw new IllegalArgumentException("latitudes and longitudes must have the same length");
+
+        Type = type;
+        Latitudes = latitudes;
+        Longitudes = longitudes;
+        PartEnds = partEnds;
+        Bounds = new LocationBounds();
+        for(int i = 0; i < latitudes.length; i++)
+            Bounds.AddLocation(latitudes[i], longitudes[i]);
+
+        Hash = (31 * (31 * type.hashCode() + Arrays.hashCode(latitudes)) + Arrays.hashCode(longitudes)) * 31 + Arrays.hashCode(partEnds);
+
+        if(type != Kind.AREAS) {
+            Rings = null;
+            PolygonEnds = null;
+            return;
+        }
+
+        Rings = new PreparedGeoFence[partEnds.length];
+        for(int p = 0; p < partEnds.length; p++) {
+            int start = (p == 0 ? 0 : partEnds[p - 1]);
+            int end = partEnds[p];
+            // GeoJSON rings repeat their first vertex; fences close themselves.
+            if(end - start > 1 && latitudes[end - 1] == latitudes[start] && longitudes[end - 1] == longitudes[start])
+                end--;
+            Rings[p] = new PreparedGeoFence(Arrays.copyOfRange(latitudes, start, end),
+                    Arrays.copyOfRange(longitudes, start, end));
+        }
+        PolygonEnds = (polygonEnds != null ? polygonEnds : new int[] { partEnds.length });
+    }
+
+
+    /**
+     * Returns the kind of geometry for a lower case GeoJSON geometry type.
+     *
+     * @param geometryType GeoJSON geometry type
+     * @return kind, or null if the type has no coordinates of its own, e.g. "geometrycollection"
+     */
+    public static Kind KindOf(String geometryType) {
+        if(geometryType == null)
+            return null;
+
+        switch(geometryType) {
+            case "point":
+            case "multipoint":
+                return Kind.POINTS;
+            case "linestring":
+            case "multilinestring":
+                return Kind.LINES;
+            case "polygon":
+            case "multipolygon":
+                return Kind.AREAS;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns true if the point is inside one of the polygons of an AREAS geometry, i.e. inside
+     * its outer ring and outside its holes. Always false for points and lines.
+     *
+     * @param lat point latitude
+     * @param lon point longitude
+     * @return true if contained
+     */
+    public boolean Contains(double lat, double lon) {
+        if(Rings == null || !Bounds.Contains(lat, lon))
+            return false;
+
+        for(int g = 0; g < PolygonEnds.length; g++) {
+            int first = (g == 0 ? 0 : PolygonEnds[g - 1]);
+            if(first >= PolygonEnds[g] || !Rings[first].Contains(lat, lon))
+                continue;
+
+            boolean inHole = false;
+            for(int r = first + 1; r < PolygonEnds[g] && !inHole; r++)
+                inHole = Rings[r].Contains(lat, lon);
+            if(!inHole)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the first distance along the route at which the route reaches this hazard.
+     * <br /><br />
+     * That is the earliest of: the start of the route if it is inside an area; the first point
+     * where the route's center line crosses a line or area boundary; and the offset of any
+     * hazard vertex within the route's corridor, which locates points and hazards beside the
+     * road.
+     *
+     * @param route route to locate the hazard on
+     * @return offset in meters, or -1 if the hazard is not on the route
+     */
+    public double EntryOffset(CompiledRoute route) {
+        if(route.GetNumVertices() == 0 || Latitudes.length == 0)
+            return -1;
+        if(Contains(route.GetLatitude(0), route.GetLongitude(0)))
+            return route.GetCumulativeDistance(0);
+
+        double entry = -1;
+        for(int i = 0; i < Latitudes.length; i++) {
+            double offset = route.OffsetOf(Latitudes[i], Longitudes[i]);
+            if(offset >= 0 && (entry < 0 || offset < entry))
+                entry = offset;
+        }
+
+        if(Type == Kind.POINTS)
+            return entry;
+
+        // Segments are visited in route order, so the first crossing found is the earliest.
+        for(int s = 0; s < route.GetNumSegments(); s++) {
+            if(entry >= 0 && route.GetCumulativeDistance(s) >= entry)
+                break;
+            if(!route.GetSegmentBounds(s).Intersects(Bounds))
+                continue;
+
+            double t = FirstCrossing(route.GetLatitude(s), route.GetLongitude(s), route.GetLatitude(s + 1), route.GetLongitude(s + 1));
+            if(t >= 0) {
+                double offset = route.GetCumulativeDistance(s) + t * route.GetSegmentLength(s);
+                return (entry >= 0 ? Math.min(entry, offset) : offset);
+            }
+        }
+
+        return entry;
+    }
+
+    private double FirstCrossing(double lat0, double lon0, double lat1, double lon1) {
+        double first = -1;
+
+        if(Rings != null) {
+            for(PreparedGeoFence ring : Rings) {
+                double t = ring.FirstCrossing(lat0, lon0, lat1, lon1);
+                if(t >= 0 && (first < 0 || t < first))
+                    first = t;
+            }
+            return first;
+        }
+
+        for(int p = 0; p < PartEnds.length; p++) {
+            for(int i = (p == 0 ? 0 : PartEnds[p - 1]); i + 1 < PartEnds[p]; i++) {
+                double t = PreparedGeoFence.SegmentCrossing(lat0, lon0, lat1, lon1,
+                        Latitudes[i], Longitudes[i], Latitudes[i + 1], Longitudes[i + 1]);
+                if(t >= 0 && (first < 0 || t < first))
+                    first = t;
+            }
+        }
+
+        return first;
+    }
+
+    /**
+     * Returns true if the input is a HazardGeometry of the same kind with the same coordinates
+     * and parts.
+     *
+     * @param o object to compare with
+     * @return true if equal
+     */
+    @Override
+    public boolean equals(Object o) {
+        if(this == o)
+            return true;
+        if(!(o instanceof HazardGeometry))
+            return false;
+
+        HazardGeometry other = (HazardGeometry) o;
+        return Hash == other.Hash && Type == other.Type &&
+                Arrays.equals(Latitudes, other.Latitudes) && Arrays.equals(Longitudes, other.Longitudes) &&
+                Arrays.equals(PartEnds, other.PartEnds) && Arrays.equals(PolygonEnds, other.PolygonEnds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Hash;
+    }
+
+    public Kind GetKind() {
+        return Type;
+    }
+
+    public int GetNumVertices() {
+        return Latitudes.length;
+    }
+
+    public int GetNumParts() {
+        return PartEnds.length;
+    }
+
+    /**
+     * Returns the end of part "idx" in the vertex arrays.
+     *
+     * @param idx part index
+     * @return index after the last vertex of the part
+     */
+    public int GetPartEnd(int idx) {
+        return PartEnds[idx];
+    }
+
+    /**
+     * Returns the number of polygons of an AREAS geometry.
+     *
+     * @return number of polygons, 0 for points and lines
+     */
+    public int GetNumPolygons() {
+        return (PolygonEnds != null ? PolygonEnds.length : 0);
+    }
+
+    /**
+     * Returns the end of polygon "idx" of an AREAS geometry in the parts.
+     *
+     * @param idx polygon index
+     * @return index after the last ring of the polygon
+     */
+    public int GetPolygonEnd(int idx) {
+        return PolygonEnds[idx];
+    }
+
+    public LocationBounds GetBounds() {
+        return Bounds;
+    }
+
+    /**
+     * Returns the fence of ring "idx" of an AREAS geometry.
+     *
+     * @param idx ring index, across all polygons
+     * @return prepared ring
+     */
+    public PreparedGeoFence GetRing(int idx) {
+        return Rings[idx];
+    }
+}
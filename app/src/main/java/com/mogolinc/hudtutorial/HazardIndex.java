@@ -0,0 +1,532 @@
+package com.mogolinc.hudtutorial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Shared index of hazard messages from any number of responses or feeds, bucketed by grid cell.
+ * <br /><br />
+ * The world is divided into square cells of CellSize degrees. Every hazard is filed under
+ * each cell its bounds (the bounds of its geometry, or its start point) overlap; hazards
+ * overlapping more than MaxCellsPerHazard cells, e.g. state-wide advisories, are kept in a
+ * separate list that every query scans. Cells are hashed into a fixed number of buckets, and
+ * hazards by id into as many id buckets.
+ * <br /><br />
+ * Reads never lock. The index is a chain of immutable Snapshots: writers serialize on the
+ * index, copy the bucket tables and only the buckets they change, and publish the new
+ * snapshot through a volatile field. A reader takes GetSnapshot once and may query it for as
+ * long as it likes; it sees every write that completed before, and none that started after.
+ * <br /><br />
+ * Queries select cells from LocationBounds, either given or those of a route's segment
+ * corridors, and report each hazard once.
+ */
+
+public class HazardIndex {
+    /** Default cell size in degrees, about 1.1 km of latitude. */
+    public static final double DefaultCellSize = 0.01;
+    /** Number of cells above which a hazard is kept in the oversize list. */
+    public static final int MaxCellsPerHazard = 1024;
+    /** Number of cell buckets and of id buckets. A power of two. */
+    protected static final int Buckets = 8192;
+
+    private static final long[] NoCells = new long[0];
+    private static final Entry[] NoEntries = new Entry[0];
+
+    /**
+     * A hazard and its bounds. Immutable; the same entry may be filed in several indexes.
+     */
+    public static class Entry {
+        protected final String Id;
+        protected final RouteMessage Message;
+        protected final long ExpiresAt;
+        protected final LocationBounds Bounds;
+
+        /**
+         * Constructs a new Entry.
+         *
+         * @param id feed identifier of the hazard
+         * @param message hazard message, with a geometry or a start point
+         * @param expiresAt time after which ExpireBefore drops the hazard, in milliseconds,
+         *                  Long.MAX_VALUE for never
+         */
+        public Entry(String id, RouteMessage message, long expiresAt) {
+            if(message.GetGeometry() == null && !message.HasStart())
+                throw new IllegalArgumentException("message has no location");
+
+            Id = id;
+            Message = message;
+            ExpiresAt = expiresAt;
+            if(message.GetGeometry() != null) {
+                Bounds = message.GetGeometry().GetBounds();
+            } else {
+                Bounds = new LocationBounds();
+                Bounds.AddLocation(message.GetStartLatitude(), message.GetStartLongitude());
+            }
+        }
+
+        public String GetId() {
+            return Id;
+        }
+
+        public RouteMessage GetMessage() {
+            return Message;
+        }
+
+        public long GetExpiresAt() {
+            return ExpiresAt;
+        }
+
+        public LocationBounds GetBounds() {
+            return Bounds;
+        }
+    }
+
+    /**
+     * Consistent, immutable view of the index.
+     */
+    public static class Snapshot {
+        protected final double CellSize;
+        protected final long Version;
+        protected final int Count;
+
+        // Per cell bucket, parallel arrays: the cell of every filing and the filed entry
+        protected final long[][] Cells;
+        protected final Entry[][] Filed;
+        protected final Entry[][] Ids;
+        protected final Entry[] Oversize;
+
+        protected Snapshot(double cellSize, long version, int count, long[][] cells, Entry[][] filed,
+                           Entry[][] ids, Entry[] oversize) {
+            CellSize = cellSize;
+            Version = version;
+            Count = count;
+            Cells = cells;
+            Filed = filed;
+            Ids = ids;
+            Oversize = oversize;
+        }
+
+        /**
+         * Returns the hazard with the input id.
+         *
+         * @param id hazard id
+         * @return entry, or null if not in this snapshot
+         */
+        public Entry Get(String id) {
+            for(Entry entry : Ids[IdBucket(id)]) {
+                if(entry.Id.equals(id))
+                    return entry;
+            }
+            return null;
+        }
+
+        /**
+         * Adds the hazards whose bounds intersect the input bounds to "out", each once.
+         *
+         * @param bounds query bounds
+         * @param out receives matching entries
+         * @return number of entries added
+         */
+        public int Query(LocationBounds bounds, List<Entry> out) {
+            if(bounds.IsEmpty())
+                return 0;
+
+            int added = 0;
+            int lowRow = Cell(bounds.getLowLatitude(), CellSize);
+            int lowColumn = Cell(bounds.getLowLongitude(), CellSize);
+            int highRow = Cell(bounds.getHighLatitude(), CellSize);
+            int highColumn = Cell(bounds.getHighLongitude(), CellSize);
+
+            for(int row = lowRow; row <= highRow; row++) {
+                for(int column = lowColumn; column <= highColumn; column++) {
+                    long cell = Key(row, column);
+                    int b = CellBucket(cell);
+                    long[] cells = Cells[b];
+                    for(int i = 0; i < cells.length; i++) {
+                        if(cells[i] != cell)
+                            continue;
+
+                        // Report an entry only from the first cell it shares with the query.
+                        Entry entry = Filed[b][i];
+                        if(row != Math.max(lowRow, Cell(entry.Bounds.getLowLatitude(), CellSize))
+                                || column != Math.max(lowColumn, Cell(entry.Bounds.getLowLongitude(), CellSize)))
+                            continue;
+                        if(entry.Bounds.Intersects(bounds)) {
+                            out.add(entry);
+                            added++;
+                        }
+                    }
+                }
+            }
+
+            for(Entry entry : Oversize) {
+                if(entry.Bounds.Intersects(bounds)) {
+                    out.add(entry);
+                    added++;
+                }
+            }
+
+            return added;
+        }
+
+        /**
+         * Returns the hazards whose bounds intersect the corridor of at least one segment of
+         * the input route. Candidates only: MessageTimeline places them on the route and drops
+         * those the route does not reach.
+         *
+         * @param route route whose segment corridors to query
+         * @return matching entries, each once, in no particular order
+         */
+        public List<Entry> QueryCorridor(CompiledRoute route) {
+            List<Entry> found = new ArrayList<>();
+            IdentityHashMap<Entry, Boolean> seen = new IdentityHashMap<>();
+            List<Entry> segment = new ArrayList<>();
+
+            for(int s = 0; s < route.GetNumSegments(); s++) {
+                segment.clear();
+                Query(route.GetSegmentBounds(s), segment);
+                for(Entry entry : segment) {
+                    if(seen.put(entry, Boolean.TRUE) == null)
+                        found.add(entry);
+                }
+            }
+
+            return found;
+        }
+
+        /**
+         * Places the hazards along the input route.
+         *
+         * @param route route to place the hazards on
+         * @return timeline of the hazards the route reaches
+         */
+        public MessageTimeline Timeline(CompiledRoute route) {
+            List<Entry> entries = QueryCorridor(route);
+            List<RouteMessage> messages = new ArrayList<>(entries.size());
+            for(Entry entry : entries)
+                messages.add(entry.Message);
+            return new MessageTimeline(route, messages);
+        }
+
+        /**
+         * Returns the number of writes that led to this snapshot.
+         *
+         * @return version, 0 for an empty index
+         */
+        public long GetVersion() {
+            return Version;
+        }
+
+        public int GetCount() {
+            return Count;
+        }
+    }
+
+    protected final double CellSize;
+    protected volatile Snapshot Current;
+
+
+    /**
+     * Constructs a new, empty HazardIndex with cells of DefaultCellSize.
+     */
+    public HazardIndex() {
+        this(DefaultCellSize);
+    }
+
+    /**
+     * Constructs a new, empty HazardIndex.
+     *
+     * @param cellSize cell size in degrees
+     */
+    public HazardIndex(double cellSize) {
+        CellSize = cellSize;
+        long[][] cells = new long[Buckets][];
+        Entry[][] filed = new Entry[Buckets][];
+        Entry[][] ids = new Entry[Buckets][];
+        Arrays.fill(cells, NoCells);
+        Arrays.fill(filed, NoEntries);
+        Arrays.fill(ids, NoEntries);
+        Current = new Snapshot(cellSize, 0, 0, cells, filed, ids, NoEntries);
+    }
+
+
+    /**
+     * Returns the current snapshot. Never blocks.
+     *
+     * @return snapshot
+     */
+    public Snapshot GetSnapshot() {
+        return Current;
+    }
+
+    /**
+     * Adds a hazard, replacing any hazard with the same id.
+     *
+     * @param entry hazard
+     */
+    public void Upsert(Entry entry) {
+        UpsertAll(Collections.singletonList(entry));
+    }
+
+    /**
+     * Adds hazards, replacing those with the same ids, as a single write: readers see all of
+     * them or none.
+     *
+     * @param entries hazards
+     */
+    public synchronized void UpsertAll(Collection<Entry> entries) {
+        Writer writer = new Writer(Current);
+        for(Entry entry : entries) {
+            Entry previous = writer.Get(entry.Id);
+            if(previous != null)
+                writer.Remove(previous);
+            writer.Add(entry);
+        }
+        Current = writer.Publish();
+    }
+
+    /**
+     * Removes a hazard.
+     *
+     * @param id hazard id
+     * @return true if it was in the index
+     */
+    public synchronized boolean Remove(String id) {
+        Entry previous = Current.Get(id);
+        if(previous == null)
+            return false;
+
+        Writer writer = new Writer(Current);
+        writer.Remove(previous);
+        Current = writer.Publish();
+        return true;
+    }
+
+    /**
+     * Removes every hazard that expires at or before the input time, as a single write.
+     *
+     * @param now current time in milliseconds
+     * @return number of hazards removed
+     */
+    public synchronized int ExpireBefore(long now) {
+        Writer writer = new Writer(Current);
+        int removed = 0;
+        for(Entry[] bucket : Current.Ids) {
+            for(Entry entry : bucket) {
+                if(entry.ExpiresAt <= now) {
+                    writer.Remove(entry);
+                    removed++;
+                }
+            }
+        }
+
+        if(removed > 0)
+            Current = writer.Publish();
+        return removed;
+    }
+
+    public double GetCellSize() {
+        return CellSize;
+    }
+
+    protected static int Cell(double degrees, double cellSize) {
+        return (int) Math.floor(degrees / cellSize);
+    }
+
+    protected static long Key(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    protected static int CellBucket(long cell) {
+        long h = cell * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 51) & (Buckets - 1);
+    }
+
+    protected static int IdBucket(String id) {
+        int h = id.hashCode();
+        return (h ^ (h >>> 16)) & (Buckets - 1);
+    }
+
+    /**
+     * Builds the next snapshot from the current one. Bucket tables are copied once; a bucket is
+     * copied the first time it is changed, and changed in place after that. Copied buckets grow
+     * by doubling and keep their size apart, and are trimmed to size once, in Publish.
+     */
+    private class Writer {
+        final Snapshot Snapshot;
+        final long[][] Cells;
+        final Entry[][] Filed;
+        final Entry[][] Ids;
+        final boolean[] CellsCopied = new boolean[Buckets];
+        final boolean[] IdsCopied = new boolean[Buckets];
+        final int[] CellCounts = new int[Buckets]; // Of copied buckets
+        final int[] IdCounts = new int[Buckets];
+        final List<Entry> Oversize;
+        int Count;
+
+        Writer(Snapshot snapshot) {
+            Snapshot = snapshot;
+            Cells = snapshot.Cells.clone();
+            Filed = snapshot.Filed.clone();
+            Ids = snapshot.Ids.clone();
+            Oversize = new ArrayList<>(Arrays.asList(snapshot.Oversize));
+            Count = snapshot.Count;
+        }
+
+        Entry Get(String id) {
+            int b = IdBucket(id);
+            Entry[] ids = Ids[b];
+            for(int i = 0, n = IdCount(b); i < n; i++) {
+                if(ids[i].Id.equals(id))
+                    return ids[i];
+            }
+            return null;
+        }
+
+        void Add(Entry entry) {
+            LocationBounds bounds = entry.Bounds;
+            if(IsOversize(bounds)) {
+                Oversize.add(entry);
+            } else {
+                for(int row = Cell(bounds.getLowLatitude(), CellSize); row <= Cell(bounds.getHighLatitude(), CellSize); row++) {
+                    for(int column = Cell(bounds.getLowLongitude(), CellSize); column <= Cell(bounds.getHighLongitude(), CellSize); column++) {
+                        long cell = Key(row, column);
+                        int b = CellBucket(cell);
+                        int n = CellCount(b);
+                        ReserveCells(b, n + 1);
+                        Cells[b][n] = cell;
+                        Filed[b][n] = entry;
+                        CellCounts[b] = n + 1;
+                    }
+                }
+            }
+
+            int b = IdBucket(entry.Id);
+            int n = IdCount(b);
+            ReserveIds(b, n + 1);
+            Ids[b][n] = entry;
+            IdCounts[b] = n + 1;
+            Count++;
+        }
+
+        void Remove(Entry entry) {
+            LocationBounds bounds = entry.Bounds;
+            if(IsOversize(bounds)) {
+                Oversize.remove(entry);
+            } else {
+                for(int row = Cell(bounds.getLowLatitude(), CellSize); row <= Cell(bounds.getHighLatitude(), CellSize); row++) {
+                    for(int column = Cell(bounds.getLowLongitude(), CellSize); column <= Cell(bounds.getHighLongitude(), CellSize); column++) {
+                        int b = CellBucket(Key(row, column));
+                        int i = IndexOf(Filed[b], CellCount(b), entry);
+                        if(i < 0)
+                            continue; // Already removed from this bucket through another cell
+                        RemoveAt(b, i, entry);
+                    }
+                }
+            }
+
+            int b = IdBucket(entry.Id);
+            int i = IndexOf(Ids[b], IdCount(b), entry);
+            ReserveIds(b, 0);
+            int n = --IdCounts[b];
+            Ids[b][i] = Ids[b][n];
+            Ids[b][n] = null;
+            Count--;
+        }
+
+        /**
+         * Removes every filing of "entry" in cell bucket b, from position i onwards.
+         */
+        private void RemoveAt(int b, int i, Entry entry) {
+            ReserveCells(b, 0);
+            long[] cells = Cells[b];
+            Entry[] filed = Filed[b];
+            int n = CellCounts[b];
+            for(; i < n; i++) {
+                if(filed[i] != entry)
+                    continue;
+                n--;
+                cells[i] = cells[n];
+                filed[i] = filed[n];
+                filed[n] = null;
+                i--;
+            }
+            CellCounts[b] = n;
+        }
+
+        Snapshot Publish() {
+            for(int b = 0; b < Buckets; b++) {
+                if(CellsCopied[b] && CellCounts[b] < Cells[b].length) {
+                    Cells[b] = (CellCounts[b] == 0 ? NoCells : Arrays.copyOf(Cells[b], CellCounts[b]));
+                    Filed[b] = (CellCounts[b] == 0 ? NoEntries : Arrays.copyOf(Filed[b], CellCounts[b]));
+                }
+                if(IdsCopied[b] && IdCounts[b] < Ids[b].length)
+                    Ids[b] = (IdCounts[b] == 0 ? NoEntries : Arrays.copyOf(Ids[b], IdCounts[b]));
+            }
+
+            return new Snapshot(CellSize, Snapshot.Version + 1, Count, Cells, Filed, Ids,
+                    Oversize.toArray(new Entry[Oversize.size()]));
+        }
+
+        private int CellCount(int b) {
+            return (CellsCopied[b] ? CellCounts[b] : Cells[b].length);
+        }
+
+        private int IdCount(int b) {
+            return (IdsCopied[b] ? IdCounts[b] : Ids[b].length);
+        }
+
+        /**
+         * Makes cell bucket b this writer's own, with room for at least "capacity" filings.
+         */
+        private void ReserveCells(int b, int capacity) {
+            if(CellsCopied[b] && capacity <= Cells[b].length)
+                return;
+            if(!CellsCopied[b]) {
+                CellCounts[b] = Cells[b].length;
+                CellsCopied[b] = true;
+            }
+
+            int length = Cells[b].length;
+            if(capacity > length)
+                length = Math.max(capacity, 2 * length);
+            Cells[b] = Arrays.copyOf(Cells[b], length);
+            Filed[b] = Arrays.copyOf(Filed[b], length);
+        }
+
+        /**
+         * Makes id bucket b this writer's own, with room for at least "capacity" entries.
+         */
+        private void ReserveIds(int b, int capacity) {
+            if(IdsCopied[b] && capacity <= Ids[b].length)
+                return;
+            if(!IdsCopied[b]) {
+                IdCounts[b] = Ids[b].length;
+                IdsCopied[b] = true;
+            }
+
+            int length = Ids[b].length;
+            if(capacity > length)
+                length = Math.max(capacity, 2 * length);
+            Ids[b] = Arrays.copyOf(Ids[b], length);
+        }
+
+        private boolean IsOversize(LocationBounds bounds) {
+            long rows = (long) Cell(bounds.getHighLatitude(), CellSize) - Cell(bounds.getLowLatitude(), CellSize) + 1;
+            long columns = (long) Cell(bounds.getHighLongitude(), CellSize) - Cell(bounds.getLowLongitude(), CellSize) + 1;
+            return rows * columns > MaxCellsPerHazard;
+        }
+    }
+
+    private static int IndexOf(Entry[] entries, int count, Entry entry) {
+        for(int i = 0; i < count; i++) {
+            if(entries[i] == entry)
+                return i;
+        }
+        return -1;
+    }
+}
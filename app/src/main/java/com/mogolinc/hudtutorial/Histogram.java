@@ -0,0 +1,161 @@
+package com.mogolinc.hudtutorial;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, log-linear histogram of non-negative long values (e.g. nanoseconds or bytes).
+ * <br /><br />
+ * Values below SubBuckets are counted exactly. Above that, every power of two is split into
+ * SubBuckets linear buckets, so a recorded value is known to within 1/SubBuckets (12.5%).
+ * Values of 2^MaxExponent and above are counted in the last bucket; the exact maximum is kept
+ * separately.
+ * <br /><br />
+ * Recording does not allocate and is safe from any thread. Reads taken while other threads
+ * record may be off by the values being recorded.
+ */
+
+public class Histogram {
+    public static final int SubBucketBits = 3;
+    public static final int SubBuckets = 1 << SubBucketBits;
+    public static final int MaxExponent = 48;
+    public static final int NumBuckets = (MaxExponent - SubBucketBits + 1) * SubBuckets;
+
+    protected final String Name;
+    protected final AtomicLongArray Counts = new AtomicLongArray(NumBuckets);
+    protected final AtomicLong Count = new AtomicLong();
+    protected final AtomicLong Total = new AtomicLong();
+    protected final AtomicLong Max = new AtomicLong();
+
+
+    /**
+     * Constructs a new, empty Histogram.
+     *
+     * @param name name used in snapshots, including the unit (e.g. "fetch_latency_ms")
+     */
+    public Histogram(String name) {
+        Name = name;
+    }
+
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value value to record
+     */
+    public void Record(long value) {
+        if(value < 0)
+            value = 0;
+
+        Counts.incrementAndGet(BucketOf(value));
+        Count.incrementAndGet();
+        Total.addAndGet(value);
+
+        long max = Max.get();
+        while(value > max && !Max.compareAndSet(max, value))
+            max = Max.get();
+    }
+
+    /**
+     * Records the time elapsed since a System.nanoTime() reading, in nanoseconds.
+     *
+     * @param startNanos System.nanoTime() at the start of the measured section
+     */
+    public void RecordSince(long startNanos) {
+        Record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void Reset() {
+        for(int i = 0; i < NumBuckets; i++)
+            Counts.set(i, 0);
+        Count.set(0);
+        Total.set(0);
+        Max.set(0);
+    }
+
+    public String GetName() {
+        return Name;
+    }
+
+    public long GetCount() {
+        return Count.get();
+    }
+
+    public long GetTotal() {
+        return Total.get();
+    }
+
+    public long GetMax() {
+        return Max.get();
+    }
+
+    public double GetMean() {
+        long count = Count.get();
+        return count == 0 ? 0 : (double) Total.get() / count;
+    }
+
+    public long GetBucketCount(int bucket) {
+        return Counts.get(bucket);
+    }
+
+    /**
+     * Returns an upper bound of the value below which "percentile" percent of the recorded
+     * values fall, never more than the recorded maximum.
+     *
+     * @param percentile percentile in the range [0, 100]
+     * @return value at the percentile, or 0 if nothing was recorded
+     */
+    public long GetValueAtPercentile(double percentile) {
+        long count = Count.get();
+        if(count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for(int i = 0; i < NumBuckets; i++) {
+            seen += Counts.get(i);
+            if(seen >= rank)
+                return Math.min(BucketUpperBound(i), Max.get());
+        }
+
+        return Max.get();
+    }
+
+    /**
+     * Returns the bucket a value is counted in.
+     *
+     * @param value non-negative value
+     * @return bucket index
+     */
+    public static int BucketOf(long value) {
+        if(value < SubBuckets)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if(exponent >= MaxExponent)
+            return NumBuckets - 1;
+
+        int sub = (int) (value >>> (exponent - SubBucketBits)) & (SubBuckets - 1);
+        return (exponent - SubBucketBits + 1) * SubBuckets + sub;
+    }
+
+    /**
+     * Returns the largest value counted in a bucket.
+     *
+     * @param bucket bucket index
+     * @return inclusive upper bound
+     */
+    public static long BucketUpperBound(int bucket) {
+        if(bucket < SubBuckets)
+            return bucket;
+        if(bucket == NumBuckets - 1)
+            return Long.MAX_VALUE;
+
+        int exponent = bucket / SubBuckets + SubBucketBits - 1;
+        long sub = bucket % SubBuckets;
+        return ((SubBuckets + sub + 1) << (exponent - SubBucketBits)) - 1;
+    }
+}
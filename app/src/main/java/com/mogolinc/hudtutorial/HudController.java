@@ -0,0 +1,493 @@
+package com.mogolinc.hudtutorial;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-fix logic of the HUD, independent of Android.
+ * <br /><br />
+ * Takes location fixes, matches them against the route through a RouteTracker, issues fetches
+ * through a FetchEngine and selects the message to display. HudActivity feeds it from the
+ * LocationManager; the replay harness in the unit tests feeds it recorded traces.
+ * <br /><br />
+ * Fixes are smoothed by a FixFilter before they reach the RouteTracker, which supplies the
+ * bearing and speed of fixes that lack them. Together with the tracker's off-route hysteresis
+ * this keeps GPS jitter near the corridor edge from issuing a fetch per fix.
+ * <br /><br />
+ * With a RouteCache attached to the FetchEngine, windows are looked up in the cache first. Every
+ * network request, i.e. the fetch after a miss or the refresh of a stale hit, must be allowed by
+ * a FetchPolicy, which rate limits requests, backs off after failures and stops requesting
+ * altogether while its circuit breaker is open. Cached windows and the last good route stay in
+ * use meanwhile, and a stale hit is refreshed once the policy allows. The policy runs on fix time.
+ * <br /><br />
+ * Host.Show is only called when the displayed text changes, i.e. when the next message or its
+ * distance step (see MessageFormatter) changes, and display texts are cached, so the steady
+ * state neither allocates nor renders.
+ * <br /><br />
+ * Not thread safe. All calls must come from one thread, the "owner" thread; fetch results are
+ * handed back to it through Host.Post. The owner need not be the UI thread; Host.Show then
+ * hands the text over to it.
+ */
+
+public class HudController {
+    /**
+     * Estimated speed below which the filter's direction of travel is too noisy to stand in for
+     * a missing bearing, in m/s.
+     */
+    public static final double MinBearingSpeed = 1;
+
+    public interface Host {
+        /**
+         * Displays a message. Called on the owner thread, only when the text changes.
+         *
+         * @param message message text, empty to clear the display
+         */
+        void Show(String message);
+
+        /**
+         * Logs a diagnostic message.
+         *
+         * @param message message text
+         */
+        void Log(String message);
+
+        /**
+         * Changes the location update interval. Called on the owner thread, only when the
+         * UpdateScheduler step changes.
+         *
+         * @param minTime minimum time between updates, in milliseconds
+         * @param minDistance minimum distance between updates, in meters
+         */
+        void SetUpdateInterval(long minTime, float minDistance);
+
+        /**
+         * Runs a task on the owner thread.
+         *
+         * @param task task to run
+         */
+        void Post(Runnable task);
+    }
+
+    protected final RouteTracker Tracker;
+    protected final UpdateScheduler Updates = new UpdateScheduler();
+    protected final FetchEngine Engine;
+    protected final Host Owner;
+    protected FetchCall CurrentCall = null;
+    protected FetchCall RefreshCall = null;
+    protected FetchCall StaleCall = null; // Stale cache hit in use, not refreshed yet
+    protected final MessageFormatter Formatter = new MessageFormatter();
+    protected String Shown = null;
+    protected double LatencyScale = 1;
+    protected FetchPolicy Policy = new FetchPolicy();
+    protected long LastFixTime;
+
+    protected final FixFilter Filter = new FixFilter();
+
+    protected final Metrics Recorded = new Metrics();
+    protected final Histogram FixNanos = Recorded.NewHistogram("on_location_changed_ns");
+    protected final Histogram MatchNanos = Recorded.NewHistogram("is_on_route_ns");
+    protected final Histogram DisplayNanos = Recorded.NewHistogram("update_display_ns");
+    protected final Histogram FetchLatency = Recorded.NewHistogram("fetch_latency_ms");
+    protected final Histogram FetchBytes = Recorded.NewHistogram("fetch_bytes");
+    protected final AtomicLong Fixes = Recorded.NewCounter("fixes");
+    protected final AtomicLong FixesDropped = Recorded.NewCounter("fixes_dropped_during_fetch");
+    protected final AtomicLong FixesHeld = Recorded.NewCounter("fixes_held_on_route");
+    protected final AtomicLong FencesBuilt = Recorded.NewCounter("fences_built");
+    protected final AtomicLong FencesTested = Recorded.NewCounter("fences_tested");
+    protected final AtomicLong Fetches = Recorded.NewCounter("fetches");
+    protected final AtomicLong WindowsMerged = Recorded.NewCounter("windows_merged");
+    protected final AtomicLong SegmentsReused = Recorded.NewCounter("segments_reused");
+    protected final AtomicLong MessagesReused = Recorded.NewCounter("messages_reused");
+    protected final AtomicLong FetchFailures = Recorded.NewCounter("fetch_failures");
+    protected final AtomicLong FetchesRateLimited = Recorded.NewCounter("fetches_rate_limited");
+    protected final AtomicLong FetchesBackedOff = Recorded.NewCounter("fetches_backed_off");
+    protected final AtomicLong FetchesCircuitOpen = Recorded.NewCounter("fetches_circuit_open");
+    protected final AtomicLong CircuitOpens = Recorded.NewCounter("circuit_opens");
+    protected final AtomicLong CacheHits = Recorded.NewCounter("cache_hits");
+    protected final AtomicLong Renders = Recorded.NewCounter("display_renders");
+    protected final AtomicLong IntervalChanges = Recorded.NewCounter("update_interval_changes");
+
+
+    /**
+     * Constructs a new HudController with its own FetchEngine.
+     *
+     * @param tracker route tracker, owned by the controller from now on
+     * @param fetcher client used to fetch route windows
+     * @param host display, log and owner thread
+     */
+    public HudController(RouteTracker tracker, RouteFetcher fetcher, Host host) {
+        Tracker = tracker;
+        Owner = host;
+        Engine = new FetchEngine(fetcher, new FetchEngine.Listener() {
+            @Override
+            public void OnFetchCompleted(final FetchCall call, final RouteState state) {
+                Owner.Post(new Runnable() {
+                    @Override
+                    public void run() {
+                        OnRouteFetched(call, state);
+                    }
+                });
+            }
+
+            @Override
+            public void OnFetchFailed(final FetchCall call, final IOException e) {
+                Owner.Post(new Runnable() {
+                    @Override
+                    public void run() {
+                        OnRouteFetchFailed(call, e);
+                    }
+                });
+            }
+        });
+    }
+
+
+    /**
+     * Processes a location fix of unknown accuracy.
+     *
+     * @param lat fix latitude
+     * @param lon fix longitude
+     * @param bearing fix bearing in degrees, ignored if hasBearing is false
+     * @param hasBearing whether bearing is valid
+     * @param speed fix speed in m/s, ignored if hasSpeed is false
+     * @param hasSpeed whether speed is valid
+     * @param time fix time in milliseconds
+     */
+    public void OnFix(double lat, double lon, double bearing, boolean hasBearing, double speed, boolean hasSpeed, long time) {
+        OnFix(lat, lon, 0, bearing, hasBearing, speed, hasSpeed, time);
+    }
+
+    /**
+     * Processes a location fix.
+     *
+     * @param lat fix latitude
+     * @param lon fix longitude
+     * @param accuracy fix accuracy in meters, 0 if unknown
+     * @param bearing fix bearing in degrees, ignored if hasBearing is false
+     * @param hasBearing whether bearing is valid
+     * @param speed fix speed in m/s, ignored if hasSpeed is false
+     * @param hasSpeed whether speed is valid
+     * @param time fix time in milliseconds
+     */
+    public void OnFix(double lat, double lon, double accuracy, double bearing, boolean hasBearing, double speed, boolean hasSpeed, long time) {
+        long start = System.nanoTime();
+        Fixes.incrementAndGet();
+        LastFixTime = time;
+
+        // Smooth out jitter; the filter's velocity stands in for a missing bearing or speed.
+        Filter.Update(lat, lon, accuracy, bearing, hasBearing, speed, hasSpeed, time);
+        lat = Filter.GetLatitude();
+        lon = Filter.GetLongitude();
+        if(!hasBearing && Filter.GetSpeed() >= MinBearingSpeed) {
+            bearing = Filter.GetBearing();
+            hasBearing = true;
+        }
+        if(!hasSpeed)
+            speed = Filter.GetSpeed();
+
+        long matchStart = System.nanoTime();
+        boolean onRoute = Tracker.Update(lat, lon, bearing, hasBearing, speed);
+        MatchNanos.RecordSince(matchStart);
+        FencesTested.addAndGet(Tracker.GetLastTestCount());
+        if(Tracker.IsHolding())
+            FixesHeld.incrementAndGet();
+
+        if(onRoute)
+            UpdateDisplay();
+        else if(Tracker.IsFetchInProgress())
+            FixesDropped.incrementAndGet(); // Nothing to show until the window in flight arrives
+
+        // Fetches when off route, or early enough that the next window arrives before the
+        // vehicle reaches the refresh boundary of the current one. A fetch issued while another
+        // is in flight supersedes (cancels) it. While on route, the next window is merged into
+        // the current one from the vehicle's segment onwards. The cache is consulted before the
+        // fetch policy; only a miss goes on to Fetch.
+        if(Tracker.NeedsFetch()) {
+            if(Engine.GetCache() != null) {
+                Tracker.OnFetchStarted(lat, lon);
+                Supersede();
+                CurrentCall = Engine.SubmitCached(lat, lon, bearing);
+            } else {
+                Fetch(lat, lon, bearing);
+            }
+        } else if(StaleCall != null && CurrentCall == null && RefreshCall == null) {
+            Refresh(StaleCall);
+        }
+
+        // Fewer fixes while the next hazard and the next fetch are far away
+        int next = (onRoute ? Tracker.GetNextMessage() : -1);
+        double hazardDistance = (next >= 0 ? Tracker.GetDistanceToMessage(next) : -1);
+        double refreshDistance = (onRoute ? Tracker.GetDistanceToRefresh() : -1);
+        if(Updates.Update(time, speed, onRoute, hazardDistance, refreshDistance)) {
+            IntervalChanges.incrementAndGet();
+            Owner.SetUpdateInterval(Updates.GetMinTime(), Updates.GetMinDistance());
+        }
+
+        FixNanos.RecordSince(start);
+    }
+
+    /**
+     * Cancels any fetch in flight and stops the fetch worker.
+     */
+    public void Shutdown() {
+        Engine.Shutdown();
+    }
+
+    /**
+     * Sets the factor applied to measured fetch latencies before they are used. Replays at N
+     * times real time set N, so that latencies are in the same (trace) time as fixes.
+     *
+     * @param scale latency scale, 1 by default
+     */
+    public void SetLatencyScale(double scale) {
+        LatencyScale = scale;
+    }
+
+    /**
+     * Replaces the policy that decides whether fetches may be issued.
+     *
+     * @param policy fetch policy
+     */
+    public void SetFetchPolicy(FetchPolicy policy) {
+        Policy = policy;
+    }
+
+    public FetchPolicy GetFetchPolicy() {
+        return Policy;
+    }
+
+    public RouteTracker GetTracker() {
+        return Tracker;
+    }
+
+    public UpdateScheduler GetUpdateScheduler() {
+        return Updates;
+    }
+
+    public FetchEngine GetFetchEngine() {
+        return Engine;
+    }
+
+    public Metrics GetMetrics() {
+        return Recorded;
+    }
+
+    /**
+     * Builds the display text for a message.
+     *
+     * @param condition message condition
+     * @param subcondition message subcondition
+     * @param distance distance to the message along the route, in meters
+     * @return display text
+     */
+    public static String CreateMessage(String condition, String subcondition, double distance) {
+        String distanceString = distance < 1000 ? String.format("%.0f m", Math.floor(distance / 100) * 100) : String.format("%.0f km", Math.floor(distance / 1000));
+
+        String message = null;
+
+        switch(condition) {
+            case "incident": message = String.format("Accident in %s", distanceString); break;
+            case "pavement": message = String.format("Slippery road in %s", distanceString); break;
+            case "closed": message = String.format("Road closed in %s", distanceString); break;
+            case "construction": message = String.format("Construction in %s", distanceString); break;
+            case "information": message = subcondition; break;
+            default: message = condition; break;
+
+        }
+
+        return message;
+    }
+
+    /**
+     * Asks the fetch policy whether a fetch may be issued, counting denials by reason.
+     */
+    protected boolean Allow(long time) {
+        FetchPolicy.State before = Policy.GetState();
+        FetchPolicy.Decision decision = Policy.Acquire(time);
+        if(Policy.GetState() != before)
+            Owner.Log(String.format("Fetch circuit %s", Policy.GetState()));
+
+        switch(decision) {
+            case ALLOW: return true;
+            case RATE_LIMITED: FetchesRateLimited.incrementAndGet(); break;
+            case BACKING_OFF: FetchesBackedOff.incrementAndGet(); break;
+            case CIRCUIT_OPEN: FetchesCircuitOpen.incrementAndGet(); break;
+        }
+
+        return false;
+    }
+
+    /**
+     * Submits a network request for the window at a position, if the fetch policy allows it.
+     * Returns false if it does not.
+     */
+    protected boolean Fetch(double lat, double lon, double bearing) {
+        if(!Allow(LastFixTime))
+            return false;
+
+        Owner.Log(String.format(Locale.US, "Fetching new route for %.6f,%.6f, %.1f", lat, lon, bearing));
+        Tracker.OnFetchStarted(lat, lon);
+        Supersede();
+        if(Tracker.IsOnRoute())
+            CurrentCall = Engine.Submit(lat, lon, bearing, Tracker.GetFront(), Tracker.GetSegment());
+        else
+            CurrentCall = Engine.Submit(lat, lon, bearing);
+        return true;
+    }
+
+    /**
+     * Refreshes a stale cache hit, if the fetch policy allows it. Otherwise it is retried on the
+     * next fix.
+     */
+    protected void Refresh(FetchCall stale) {
+        StaleCall = stale;
+        if(!Allow(LastFixTime))
+            return;
+
+        StaleCall = null;
+        RefreshCall = Engine.Refresh(stale);
+        if(RefreshCall == null)
+            Policy.OnAbandoned(); // A newer call is current
+    }
+
+    /**
+     * Gives up on the calls in flight before a new one is submitted, which cancels them.
+     */
+    protected void Supersede() {
+        if(CurrentCall != null && !CurrentCall.IsCacheOnly())
+            Policy.OnAbandoned();
+        if(RefreshCall != null)
+            Policy.OnAbandoned();
+        RefreshCall = null;
+    }
+
+    protected void OnPolicySuccess() {
+        if(Policy.GetState() != FetchPolicy.State.CLOSED)
+            Owner.Log("Fetch circuit CLOSED");
+        Policy.OnSuccess();
+    }
+
+    protected void OnPolicyFailure() {
+        int opened = Policy.GetOpenCount();
+        Policy.OnFailure(LastFixTime);
+        if(Policy.GetOpenCount() != opened) {
+            CircuitOpens.incrementAndGet();
+            Owner.Log(String.format("Fetch circuit OPEN after %d failures", Policy.GetConsecutiveFailures()));
+        }
+    }
+
+    protected void UpdateDisplay() {
+        long start = System.nanoTime();
+
+        // Select closest message ahead along the route and display. Messages were projected
+        // onto the route when the response arrived, so this is a binary search on our offset.
+        int closestIdx = Tracker.GetNextMessage();
+
+        String text = ""; // Clear
+        if(closestIdx >= 0) {
+            RouteMessage toDisplay = Tracker.GetFront().GetMessages().GetMessage(closestIdx);
+            text = Formatter.Format(toDisplay.GetCondition(), toDisplay.GetSubcondition(), Tracker.GetDistanceToMessage(closestIdx));
+            if(text == null)
+                text = ""; // e.g. "information" without a subcondition
+        }
+
+        // Texts are cached, so most fixes end here without allocating or touching the view.
+        if(!text.equals(Shown)) {
+            Shown = text;
+            Renders.incrementAndGet();
+            Owner.Show(text);
+        }
+
+        DisplayNanos.RecordSince(start);
+    }
+
+    protected void OnRouteFetched(FetchCall call, RouteState state) {
+        RecordFetch(call, state);
+        if(state != null)
+            Formatter.Prepare(state.GetMessages()); // Texts of the window's messages, built once up front
+
+        if(call.IsRefresh()) {
+            if(call != RefreshCall)
+                return; // Superseded while the result was being posted
+
+            // Background refresh of a stale cached window we are already using
+            RefreshCall = null;
+            OnPolicySuccess();
+            if(CurrentCall == null) {
+                Tracker.OnRefreshed(state);
+                if(Tracker.IsOnRoute())
+                    UpdateDisplay();
+            }
+            return;
+        }
+        if(call != CurrentCall)
+            return; // Superseded while the result was being posted
+
+        if(!call.IsFromCache())
+            OnPolicySuccess();
+        else if(!call.IsCacheOnly())
+            Policy.OnAbandoned(); // Allowed, but served from the cache; says nothing about the server
+
+        if(call.IsFromCache())
+            Owner.Log(String.format("Route served from cache%s", call.IsStale() ? " (stale)" : ""));
+        else
+            Owner.Log(String.format(Locale.US, "Fetched route in %d ms, %d bytes", call.GetLatencyMillis(), call.GetBytes()));
+        CurrentCall = null;
+        StaleCall = null;
+        Tracker.OnFetchCompleted(state, call.IsFromCache() ? -1 : Math.round(call.GetLatencyMillis() * LatencyScale));
+        if(Tracker.IsOnRoute())
+            UpdateDisplay();
+
+        if(call.IsStale())
+            Refresh(call);
+    }
+
+    protected void OnRouteFetchFailed(FetchCall call, IOException e) {
+        if(call == RefreshCall) {
+            // Keeps using the stale window, and refreshes it once the policy allows.
+            Owner.Log(String.format("Failed to refresh cached route: %s", e.getMessage()));
+            RefreshCall = null;
+            OnPolicyFailure();
+            if(CurrentCall == null)
+                StaleCall = call;
+            return;
+        }
+        if(call != CurrentCall)
+            return; // Superseded, and abandoned then
+
+        CurrentCall = null;
+        if(call.IsCacheOnly()) {
+            // Cache miss: on to the network, if the policy allows
+            if(!Fetch(call.GetLatitude(), call.GetLongitude(), call.GetBearing()))
+                Tracker.OnFetchFailed();
+            return;
+        }
+
+        // Keeps the last good route; the policy decides when to try again.
+        OnPolicyFailure();
+        Owner.Log(String.format("Failed to retrieve condition data for current position: %s", e.getMessage()));
+        FetchFailures.incrementAndGet();
+        Tracker.OnFetchFailed();
+    }
+
+    protected void RecordFetch(FetchCall call, RouteState state) {
+        if(state != null) {
+            int reused = state.GetRoute().GetReusedSegments();
+            FencesBuilt.addAndGet(state.GetRoute().GetNumSegments() - reused);
+            if(reused > 0) {
+                WindowsMerged.incrementAndGet();
+                SegmentsReused.addAndGet(reused);
+                MessagesReused.addAndGet(state.GetMessages().GetReusedCount());
+            }
+        }
+
+        if(call.IsFromCache()) {
+            CacheHits.incrementAndGet();
+        } else {
+            Fetches.incrementAndGet();
+            FetchLatency.Record(Math.round(call.GetLatencyMillis() * LatencyScale));
+            FetchBytes.Record(call.GetBytes());
+        }
+    }
+}
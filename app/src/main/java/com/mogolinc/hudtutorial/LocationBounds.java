@@ -5,11 +5,16 @@ import android.location.Location;
 
 /**
  * Latitude- and longitude-aligned pseudo-rectangular boundary defined by low and high corners.
+ * <br /><br />
+ * Corners are stored as primitive coordinates so bounds can be built and tested on hot paths
+ * without allocating Location objects.
  */
 
 public class LocationBounds {
-    protected Location Low;
-    protected Location High;
+    protected double LowLatitude = Double.NaN;
+    protected double LowLongitude = Double.NaN;
+    protected double HighLatitude = Double.NaN;
+    protected double HighLongitude = Double.NaN;
 
     /**
      * Constructs a new, empty LocationBounds with uninitialized low and high corners.
@@ -23,8 +28,10 @@ public class LocationBounds {
      * @param bounds the LocationBounds to copy
      */
     public LocationBounds(LocationBounds bounds) {
-        Low = bounds.Low;
-        High = bounds.High;
+        LowLatitude = bounds.LowLatitude;
+        LowLongitude = bounds.LowLongitude;
+        HighLatitude = bounds.HighLatitude;
+        HighLongitude = bounds.HighLongitude;
     }
 
     /**
@@ -34,8 +41,22 @@ public class LocationBounds {
      * @param high high corner Location
      */
     public LocationBounds(Location low, Location high) {
-        Low = new Location(low);
-        High = new Location(high);
+        this(low.getLatitude(), low.getLongitude(), high.getLatitude(), high.getLongitude());
+    }
+
+    /**
+     * Constructs a new LocationBounds with the given low and high corner coordinates.
+     *
+     * @param lowLatitude low corner latitude
+     * @param lowLongitude low corner longitude
+     * @param highLatitude high corner latitude
+     * @param highLongitude high corner longitude
+     */
+    public LocationBounds(double lowLatitude, double lowLongitude, double highLatitude, double highLongitude) {
+        LowLatitude = lowLatitude;
+        LowLongitude = lowLongitude;
+        HighLatitude = highLatitude;
+        HighLongitude = highLongitude;
     }
 
     /**
@@ -47,16 +68,48 @@ public class LocationBounds {
      * @param location
      */
     public void AddLocation(Location location) {
-        if(Low == null || High == null) {
-            Low = new Location(location);
-            High = new Location(location);
+        AddLocation(location.getLatitude(), location.getLongitude());
+    }
+
+    /**
+     * Primitive counterpart of AddLocation(Location).
+     *
+     * @param latitude input latitude
+     * @param longitude input longitude
+     */
+    public void AddLocation(double latitude, double longitude) {
+        if(IsEmpty()) {
+            LowLatitude = HighLatitude = latitude;
+            LowLongitude = HighLongitude = longitude;
             return;
         }
 
-        Low.setLatitude(Math.min(location.getLatitude(),Low.getLatitude()));
-        Low.setLongitude(Math.min(location.getLongitude(),Low.getLongitude()));
-        High.setLatitude(Math.max(location.getLatitude(),High.getLatitude()));
-        High.setLongitude(Math.max(location.getLongitude(),High.getLongitude()));
+        LowLatitude = Math.min(latitude, LowLatitude);
+        LowLongitude = Math.min(longitude, LowLongitude);
+        HighLatitude = Math.max(latitude, HighLatitude);
+        HighLongitude = Math.max(longitude, HighLongitude);
+    }
+
+    /**
+     * Expands these boundaries to also encompass the input LocationBounds.
+     *
+     * @param bounds input LocationBounds
+     */
+    public void AddBounds(LocationBounds bounds) {
+        if(bounds.IsEmpty())
+            return;
+
+        AddLocation(bounds.LowLatitude, bounds.LowLongitude);
+        AddLocation(bounds.HighLatitude, bounds.HighLongitude);
+    }
+
+    /**
+     * Returns true if no Location has been added yet.
+     *
+     * @return true if uninitialized
+     */
+    public boolean IsEmpty() {
+        return Double.isNaN(LowLatitude);
     }
 
     /**
@@ -65,7 +118,10 @@ public class LocationBounds {
      * @return low corner
      */
     public Location getLowCorner() {
-        return new Location(Low);
+        Location low = new Location("app");
+        low.setLatitude(LowLatitude);
+        low.setLongitude(LowLongitude);
+        return low;
     }
 
     /**
@@ -74,7 +130,26 @@ public class LocationBounds {
      * @return high corner
      */
     public Location getHighCorner() {
-        return new Location(High);
+        Location high = new Location("app");
+        high.setLatitude(HighLatitude);
+        high.setLongitude(HighLongitude);
+        return high;
+    }
+
+    public double getLowLatitude() {
+        return LowLatitude;
+    }
+
+    public double getLowLongitude() {
+        return LowLongitude;
+    }
+
+    public double getHighLatitude() {
+        return HighLatitude;
+    }
+
+    public double getHighLongitude() {
+        return HighLongitude;
     }
 
     /**
@@ -84,9 +159,33 @@ public class LocationBounds {
      * @return true if input is within these boundaries
      */
     public boolean Contains(Location location) {
-        return Low.getLatitude() <= location.getLatitude() &&
-                High.getLatitude() >= location.getLatitude() &&
-                Low.getLongitude() <= location.getLongitude() &&
-                High.getLongitude() >= location.getLongitude();
+        return Contains(location.getLatitude(), location.getLongitude());
+    }
+
+    /**
+     * Primitive counterpart of Contains(Location). Always false for empty boundaries.
+     *
+     * @param latitude input latitude
+     * @param longitude input longitude
+     * @return true if input is within these boundaries
+     */
+    public boolean Contains(double latitude, double longitude) {
+        return LowLatitude <= latitude &&
+                HighLatitude >= latitude &&
+                LowLongitude <= longitude &&
+                HighLongitude >= longitude;
+    }
+
+    /**
+     * Returns whether or not these boundaries overlap the input LocationBounds.
+     *
+     * @param bounds input LocationBounds
+     * @return true if the two boundaries share at least one point
+     */
+    public boolean Intersects(LocationBounds bounds) {
+        return LowLatitude <= bounds.HighLatitude &&
+                HighLatitude >= bounds.LowLatitude &&
+                LowLongitude <= bounds.HighLongitude &&
+                HighLongitude >= bounds.LowLongitude;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+package com.mogolinc.hudtutorial;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds display texts for messages without allocating in the steady state.
+ * <br /><br />
+ * Distances are shown in 100 m steps below 1 km and in 1 km steps above, so each condition
+ * only has a handful of possible texts. They are built with HudController.CreateMessage when a
+ * window with messages of that condition is loaded (see Prepare), or otherwise the first time
+ * they are needed, and returned from a cache afterwards; texts that do not depend on the
+ * distance are the message's own strings. The same input therefore always yields the same
+ * String instance, and callers can detect a change of text with a reference comparison.
+ * <br /><br />
+ * Not thread safe.
+ */
+
+public class MessageFormatter {
+    /**
+     * Number of 100 m distance steps below 1 km.
+     */
+    public static final int MeterBuckets = 10;
+
+    /**
+     * Distances of this many kilometers and more are formatted on every call.
+     */
+    public static final int MaxCachedKilometers = 100;
+
+    private static final String[] DistanceConditions = { "incident", "pavement", "closed", "construction" };
+
+    protected final Map<String, String[]> Texts = new HashMap<>();
+
+
+    public MessageFormatter() {
+        for(String condition : DistanceConditions)
+            Texts.put(condition, new String[MeterBuckets + MaxCachedKilometers]);
+    }
+
+
+    /**
+     * Returns the display text for a message at a distance.
+     *
+     * @param condition message condition
+     * @param subcondition message subcondition
+     * @param distance distance to the message along the route, in meters
+     * @return display text, identical to HudController.CreateMessage; null for a null condition, or
+     * for "information" with a null subcondition
+     */
+    public String Format(String condition, String subcondition, double distance) {
+        String[] texts = Texts.get(condition);
+        if(texts == null)
+            return "information".equals(condition) ? subcondition : condition;
+
+        int bucket = Bucket(distance);
+        if(bucket >= texts.length)
+            return HudController.CreateMessage(condition, subcondition, distance);
+
+        String text = texts[bucket];
+        if(text == null) {
+            text = HudController.CreateMessage(condition, subcondition, BucketDistance(bucket));
+            texts[bucket] = text;
+        }
+
+        return text;
+    }
+
+    /**
+     * Builds every distance step's text for the conditions of the input messages that have not
+     * been built yet, so that Format does not build any while the window is driven.
+     *
+     * @param messages messages of a newly loaded window
+     */
+    public void Prepare(MessageTimeline messages) {
+        for(int i = 0; i < messages.GetNumMessages(); i++) {
+            RouteMessage message = messages.GetMessage(i);
+            String[] texts = Texts.get(message.GetCondition());
+            if(texts == null)
+                continue;
+
+            for(int bucket = 0; bucket < texts.length; bucket++) {
+                if(texts[bucket] == null)
+                    texts[bucket] = HudController.CreateMessage(message.GetCondition(), message.GetSubcondition(), BucketDistance(bucket));
+            }
+        }
+    }
+
+    /**
+     * Returns the distance step a distance is displayed as: 0 to 9 for 0 m to 900 m, then 10
+     * for 1 km, 11 for 2 km and so on.
+     *
+     * @param distance distance in meters
+     * @return distance step
+     */
+    public static int Bucket(double distance) {
+        if(distance < 1000)
+            return (int) Math.max(0, Math.floor(distance / 100));
+
+        return (int) Math.min(Integer.MAX_VALUE - MeterBuckets, Math.floor(distance / 1000)) + MeterBuckets - 1;
+    }
+
+    private static double BucketDistance(int bucket) {
+        return bucket < MeterBuckets ? bucket * 100 : (bucket - MeterBuckets + 1) * 1000;
+    }
+}
@@ -0,0 +1,206 @@
+package com.mogolinc.hudtutorial;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RouteMessages projected onto a CompiledRoute and sorted by their offset along it.
+ * <br /><br />
+ * Messages are snapped to the route once, when the response is received: at the entry offset of
+ * their HazardGeometry if they have one, otherwise at their start point. Finding the closest
+ * message ahead of the vehicle is then a binary search on the vehicle's route offset.
+ * Messages that are not on the route are dropped.
+ * <br /><br />
+ * When a window is merged into the previous one, messages equal to a message of the previous
+ * timeline keep that message instance and its offset, shifted to the new route, instead of
+ * being projected again.
+ */
+
+public class MessageTimeline {
+    protected final RouteMessage[] Messages;
+    protected final double[] Offsets;
+    protected final int Reused;
+
+
+    /**
+     * Projects the input messages onto the input route.
+     *
+     * @param route route to project onto
+     * @param messages messages to project
+     */
+    public MessageTimeline(CompiledRoute route, List<RouteMessage> messages) {
+        this(route, messages, null, 0);
+    }
+
+    /**
+     * Projects the input messages onto a route merged from a previous window. Messages of the
+     * previous timeline that are still ahead of the start of the route are reused.
+     *
+     * @param route route to project onto
+     * @param messages messages to project
+     * @param previous timeline of the previous window, or null to project every message
+     * @param shift offset along the previous route of the first vertex of "route", in meters
+     */
+    public MessageTimeline(CompiledRoute route, List<RouteMessage> messages, MessageTimeline previous, double shift) {
+        double[] projected = new double[messages.size()];
+        RouteMessage[] kept = new RouteMessage[messages.size()];
+        int reused = 0;
+
+        Map<RouteMessage, Integer> known = new HashMap<>();
+        if(previous != null) {
+            for(int k = 0; k < previous.Messages.length; k++)
+                known.put(previous.Messages[k], k);
+        }
+
+        for(int i = 0; i < messages.size(); i++) {
+            RouteMessage message = messages.get(i);
+            Integer k = known.get(message);
+            kept[i] = message;
+            if(k != null && previous.Offsets[k] >= shift) {
+                kept[i] = previous.Messages[k];
+                projected[i] = previous.Offsets[k] - shift;
+                reused++;
+            } else {
+                projected[i] = Project(route, message);
+            }
+        }
+
+        Integer[] order = Order(projected);
+        Messages = new RouteMessage[order.length];
+        Offsets = new double[order.length];
+        Reused = reused;
+        for(int i = 0; i < order.length; i++) {
+            Messages[i] = kept[order[i]];
+            Offsets[i] = projected[order[i]];
+        }
+    }
+
+    /**
+     * Projects the input messages onto a packed route, one compiled stretch of
+     * RouteState.StretchSegments segments at a time. Messages are snapped to the first stretch
+     * they are on, so offsets are the same as on the whole route compiled at once.
+     *
+     * @param route route to project onto
+     * @param messages messages to project
+     */
+    public MessageTimeline(PackedRoute route, List<RouteMessage> messages) {
+        double[] projected = new double[messages.size()];
+        Arrays.fill(projected, -1);
+
+        int left = messages.size();
+        for(int from = 0; from < route.GetNumSegments() && left > 0; from += RouteState.StretchSegments) {
+            CompiledRoute stretch = RouteState.CompileStretch(route, from);
+            for(int i = 0; i < projected.length; i++) {
+                if(projected[i] < 0 && (projected[i] = Project(stretch, messages.get(i))) >= 0)
+                    left--;
+            }
+        }
+
+        Integer[] order = Order(projected);
+        Messages = new RouteMessage[order.length];
+        Offsets = new double[order.length];
+        Reused = 0;
+        for(int i = 0; i < order.length; i++) {
+            Messages[i] = messages.get(order[i]);
+            Offsets[i] = projected[order[i]];
+        }
+    }
+
+    /**
+     * Constructs a MessageTimeline from messages already projected and sorted by offset,
+     * e.g. as stored by RouteStateFormat.
+     *
+     * @param messages messages, sorted by offset
+     * @param offsets offset of every message along the route, in meters, non-decreasing
+     */
+    public MessageTimeline(RouteMessage[] messages, double[] offsets) {
+        if(messages.length != offsets.length)
+            throw new IllegalArgumentException("messages and offsets must have the same length");
+
+        Messages = messages;
+        Offsets = offsets;
+        Reused = 0;
+    }
+
+    /**
+     * Returns the offset of a message along the route, or -1 if it is not on the route.
+     */
+    private static double Project(CompiledRoute route, RouteMessage message) {
+        if(message.GetGeometry() != null)
+            return message.GetGeometry().EntryOffset(route);
+        if(message.HasStart())
+            return route.OffsetOf(message.GetStartLatitude(), message.GetStartLongitude());
+        return -1;
+    }
+
+    /**
+     * Returns the indices of the projected messages, i.e. those at offsets >= 0, by offset.
+     */
+    private static Integer[] Order(final double[] projected) {
+        Integer[] order = new Integer[projected.length];
+        int count = 0;
+        for(int i = 0; i < projected.length; i++) {
+            if(projected[i] >= 0)
+                order[count++] = i;
+        }
+
+        Arrays.sort(order, 0, count, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(projected[a], projected[b]);
+            }
+        });
+        return Arrays.copyOf(order, count);
+    }
+
+    /**
+     * Returns the index of the first message strictly ahead of the input route offset.
+     *
+     * @param offset distance along the route, in meters
+     * @return message index, or -1 if no message is ahead
+     */
+    public int NextAhead(double offset) {
+        int lo = 0;
+        int hi = Offsets.length;
+
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(Offsets[mid] <= offset)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+
+        return lo < Offsets.length ? lo : -1;
+    }
+
+    /**
+     * Returns the number of messages taken over from the previous timeline.
+     *
+     * @return reused messages
+     */
+    public int GetReusedCount() {
+        return Reused;
+    }
+
+    public int GetNumMessages() {
+        return Messages.length;
+    }
+
+    public RouteMessage GetMessage(int idx) {
+        return Messages[idx];
+    }
+
+    /**
+     * Returns the distance along the route from its first vertex to the start of message "idx".
+     *
+     * @param idx message index
+     * @return offset in meters
+     */
+    public double GetOffset(int idx) {
+        return Offsets[idx];
+    }
+}
@@ -0,0 +1,128 @@
+package com.mogolinc.hudtutorial;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of histograms and counters, with snapshots that can be written to a file.
+ * <br /><br />
+ * Metrics are created up front and held by the code that records them, so recording is a
+ * field access plus an atomic update and never allocates. Counters are plain AtomicLongs.
+ * <br /><br />
+ * Snapshots are tab separated text, one metric per line, in creation order:
+ * <pre>
+ *   build      &lt;build&gt;
+ *   time       &lt;wall clock milliseconds&gt;
+ *   counter    &lt;name&gt;  &lt;value&gt;
+ *   histogram  &lt;name&gt;  &lt;count&gt;  &lt;mean&gt;  &lt;p50&gt;  &lt;p90&gt;  &lt;p99&gt;  &lt;max&gt;
+ *   buckets    &lt;name&gt;  &lt;bucket&gt;:&lt;count&gt; ...
+ * </pre>
+ * The buckets lines list the non-empty Histogram buckets, so snapshots from several devices or
+ * drives can be merged before computing percentiles.
+ */
+
+public class Metrics {
+    protected final List<Histogram> Histograms = new ArrayList<>();
+    protected final List<String> CounterNames = new ArrayList<>();
+    protected final List<AtomicLong> Counters = new ArrayList<>();
+
+
+    /**
+     * Creates and registers a histogram.
+     *
+     * @param name name including the unit, e.g. "fetch_latency_ms"
+     * @return the new histogram
+     */
+    public synchronized Histogram NewHistogram(String name) {
+        Histogram histogram = new Histogram(name);
+        Histograms.add(histogram);
+        return histogram;
+    }
+
+    /**
+     * Creates and registers a counter.
+     *
+     * @param name counter name
+     * @return the new counter, starting at 0
+     */
+    public synchronized AtomicLong NewCounter(String name) {
+        AtomicLong counter = new AtomicLong();
+        CounterNames.add(name);
+        Counters.add(counter);
+        return counter;
+    }
+
+    /**
+     * Clears all histograms and counters.
+     */
+    public synchronized void Reset() {
+        for(Histogram histogram : Histograms)
+            histogram.Reset();
+        for(AtomicLong counter : Counters)
+            counter.set(0);
+    }
+
+    /**
+     * Writes a snapshot of all metrics.
+     *
+     * @param writer destination, not closed
+     * @param build identifies the software build that recorded the metrics
+     * @throws IOException if the writer fails
+     */
+    public synchronized void WriteTo(Writer writer, String build) throws IOException {
+        PrintWriter out = new PrintWriter(writer);
+        out.printf(Locale.US, "build\t%s\n", build);
+        out.printf(Locale.US, "time\t%d\n", System.currentTimeMillis());
+
+        for(int i = 0; i < Counters.size(); i++)
+            out.printf(Locale.US, "counter\t%s\t%d\n", CounterNames.get(i), Counters.get(i).get());
+
+        for(Histogram h : Histograms) {
+            out.printf(Locale.US, "histogram\t%s\t%d\t%.1f\t%d\t%d\t%d\t%d\n", h.GetName(), h.GetCount(), h.GetMean(),
+                    h.GetValueAtPercentile(50), h.GetValueAtPercentile(90), h.GetValueAtPercentile(99), h.GetMax());
+
+            out.printf(Locale.US, "buckets\t%s", h.GetName());
+            for(int b = 0; b < Histogram.NumBuckets; b++) {
+                long count = h.GetBucketCount(b);
+                if(count > 0)
+                    out.printf(Locale.US, "\t%d:%d", b, count);
+            }
+            out.print('\n');
+        }
+
+        out.flush();
+        if(out.checkError())
+            throw new IOException("Failed to write metrics snapshot");
+    }
+
+    /**
+     * Writes a snapshot to a file, replacing its previous content atomically.
+     *
+     * @param file destination file
+     * @param build identifies the software build that recorded the metrics
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void Dump(File file, String build) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+        try {
+            WriteTo(writer, build);
+        } finally {
+            writer.close();
+        }
+
+        if(!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException(String.format("Failed to write metrics to %s", file));
+        }
+    }
+}
@@ -0,0 +1,505 @@
+package com.mogolinc.hudtutorial;
+
+import java.util.Arrays;
+
+/**
+ * Route geometry packed for long lookahead windows, at a few bytes per vertex.
+ * <br /><br />
+ * A CompiledRoute keeps about 200 bytes per vertex of precomputed geometry (corners, bounds,
+ * frames), which is fine for a 2 km window but not for a 50 km highway corridor on a head unit.
+ * A PackedRoute keeps only the vertices, as degrees * 1e7 fixed point, split into blocks of
+ * BlockSize vertices. The first vertex of every block is stored as is in a small per-block
+ * index, together with the block's position in the data and the distance along the route to
+ * the block; the other vertices are zigzag varint deltas from their predecessor. With all
+ * indexes, a route takes about 5 bytes per vertex at 50 m spacing and 7 at 500 m.
+ * <br /><br />
+ * Vertex and distance access decode from the start of a block, so cost at most BlockSize
+ * steps. Corridor queries go through a RouteIndex over the corridors of whole blocks and
+ * decode only the candidate blocks, testing segments with the same PLANAR math as a
+ * CompiledRoute; results agree with a CompiledRoute of the same fixed-point vertices up to
+ * rounding. Queries take a few microseconds, against a fraction of one on a CompiledRoute, so
+ * Compile expands the stretch ahead of the vehicle into a CompiledRoute for per-fix tracking;
+ * RouteState stores windows of more than RouteState.PackThreshold vertices this way.
+ * <br /><br />
+ * Immutable, so safe to share between threads. PLANAR math only.
+ */
+
+public class PackedRoute {
+    /** Number of vertices per block. */
+    public static final int BlockSize = 32;
+
+    private static final int BlockShift = 5;
+    private static final double Scale = 1e7;
+    private static final double RadiansPerUnit = Math.PI / 180 / Scale;
+    private static final double MetersPerUnit = GeoMath.EarthRadius * RadiansPerUnit;
+    private static final int MaxVarintSize = 5;
+
+    protected final int Count;
+    protected final double Padding;
+    protected final double PaddingLatitude; // padding in degrees of latitude
+    protected final double PaddingUnits; // padding in fixed-point units of latitude, with a margin
+    protected final byte[] Data;
+    protected final int[] BlockOffsets;
+    protected final int[] BlockLatitudes;
+    protected final int[] BlockLongitudes;
+    protected final double[] BlockDistances;
+    protected final double Length;
+    protected final RouteIndex Index;
+
+
+    /**
+     * Constructs a new PackedRoute from parallel vertex arrays. Coordinates are rounded to 1e-7
+     * degrees (about 1 cm).
+     *
+     * @param latitudes vertex latitudes
+     * @param longitudes vertex longitudes
+     * @param padding corridor half-width around every segment, in meters
+     */
+    public PackedRoute(double[] latitudes, double[] longitudes, double padding) {
+        if(latitudes.length != longitudes.length)
+            throw new IllegalArgumentException("latitudes and longitudes must have the same length");
+
+        int n = latitudes.length;
+        int blocks = (n + BlockSize - 1) >> BlockShift;
+        Count = n;
+        Padding = padding;
+        PaddingLatitude = GeoMath.ToDegree(padding / GeoMath.EarthRadius);
+        PaddingUnits = PaddingLatitude * Scale * 1.01;
+        BlockOffsets = new int[blocks];
+        BlockLatitudes = new int[blocks];
+        BlockLongitudes = new int[blocks];
+        BlockDistances = new double[blocks];
+
+        byte[] data = new byte[Math.max(0, n - blocks) * 2 * MaxVarintSize];
+        int pos = 0;
+        int lat = 0;
+        int lon = 0;
+        double distance = 0;
+        double cos = 1;
+        double sin = 0;
+        for(int i = 0; i < n; i++) {
+            int nextLat = ToFixed(latitudes[i]);
+            int nextLon = ToFixed(longitudes[i]);
+            if(i > 0)
+                distance += PlanarLength(nextLat - lat, (double) nextLon - lon, cos, sin);
+
+            if((i & (BlockSize - 1)) == 0) {
+                int b = i >> BlockShift;
+                BlockOffsets[b] = pos;
+                BlockLatitudes[b] = nextLat;
+                BlockLongitudes[b] = nextLon;
+                BlockDistances[b] = distance;
+                cos = Math.cos(GeoMath.ToRadian(nextLat / Scale));
+                sin = Math.sin(GeoMath.ToRadian(nextLat / Scale));
+            } else {
+                // Deltas may overflow int across the antimeridian; they wrap back when decoded.
+                pos = WriteVarint(data, pos, ZigZag(nextLat - lat));
+                pos = WriteVarint(data, pos, ZigZag(nextLon - lon));
+                double d = (nextLat - lat) * RadiansPerUnit;
+                double cosD = CosStep(d);
+                double sinD = SinStep(d);
+                double c = cos * cosD - sin * sinD;
+                sin = sin * cosD + cos * sinD;
+                cos = c;
+            }
+            lat = nextLat;
+            lon = nextLon;
+        }
+        Data = Arrays.copyOf(data, pos);
+        Length = distance;
+
+        // One index entry per block of segments: its vertices plus the next block's first one.
+        LocationBounds[] bounds = new LocationBounds[(Math.max(0, n - 1) + BlockSize - 1) >> BlockShift];
+        for(int b = 0; b < bounds.length; b++) {
+            int last = Math.min((b + 1) << BlockShift, n - 1);
+            LocationBounds box = new LocationBounds();
+            for(int i = b << BlockShift; i <= last; i++)
+                box.AddLocation(GetLatitude(i), GetLongitude(i));
+
+            double maxLatitude = Math.max(Math.abs(box.getLowLatitude()), Math.abs(box.getHighLatitude())) + PaddingLatitude;
+            double padLat = PaddingLatitude * 1.01;
+            double padLon = padLat / Math.cos(GeoMath.ToRadian(Math.min(89, maxLatitude)));
+            bounds[b] = new LocationBounds(box.getLowLatitude() - padLat, box.getLowLongitude() - padLon,
+                    box.getHighLatitude() + padLat, box.getHighLongitude() + padLon);
+        }
+        Index = new RouteIndex(bounds);
+    }
+
+    /**
+     * Packs the vertices of a compiled route.
+     *
+     * @param route PLANAR route
+     * @return packed route with the same vertices and padding
+     */
+    public static PackedRoute Pack(CompiledRoute route) {
+        if(route.GetMode() != DistanceMode.PLANAR)
+            throw new IllegalArgumentException("PackedRoute only supports PLANAR routes");
+
+        return new PackedRoute(route.Latitudes, route.Longitudes, route.GetPadding());
+    }
+
+    /**
+     * Expands vertices "from" to "to" into a CompiledRoute. Offsets along the result are offsets
+     * along this route, i.e. its first vertex is at GetCumulativeDistance(from).
+     *
+     * @param from first vertex
+     * @param to last vertex, inclusive
+     * @return compiled stretch of the route
+     */
+    public CompiledRoute Compile(int from, int to) {
+        if(from < 0 || to >= Count || from > to)
+            throw new IndexOutOfBoundsException(String.format("Vertices %d to %d of %d", from, to, Count));
+
+        int n = to - from + 1;
+        double[] latitudes = new double[n];
+        double[] longitudes = new double[n];
+        double[] distances = new double[n];
+
+        int b = from >> BlockShift;
+        int pos = 0;
+        int lat = 0;
+        int lon = 0;
+        double distance = 0;
+        double cos = 1;
+        double sin = 0;
+        for(int i = b << BlockShift; i <= to; i++) {
+            if((i & (BlockSize - 1)) == 0) {
+                b = i >> BlockShift;
+                pos = BlockOffsets[b];
+                lat = BlockLatitudes[b];
+                lon = BlockLongitudes[b];
+                distance = BlockDistances[b];
+                cos = Math.cos(GeoMath.ToRadian(lat / Scale));
+                sin = Math.sin(GeoMath.ToRadian(lat / Scale));
+            } else {
+                long next = Next(Data, pos);
+                int nextLat = lat + (int) (next >> 32);
+                next = Next(Data, (int) next);
+                int nextLon = lon + (int) (next >> 32);
+                pos = (int) next;
+                distance += PlanarLength(nextLat - lat, (double) nextLon - lon, cos, sin);
+                double d = (nextLat - lat) * RadiansPerUnit;
+                double cosD = CosStep(d);
+                double sinD = SinStep(d);
+                double c = cos * cosD - sin * sinD;
+                sin = sin * cosD + cos * sinD;
+                cos = c;
+                lat = nextLat;
+                lon = nextLon;
+            }
+
+            if(i >= from) {
+                latitudes[i - from] = lat / Scale;
+                longitudes[i - from] = lon / Scale;
+                distances[i - from] = distance;
+            }
+        }
+
+        return new CompiledRoute(latitudes, longitudes, distances, Padding, DistanceMode.PLANAR);
+    }
+
+
+    public int GetNumVertices() {
+        return Count;
+    }
+
+    public int GetNumSegments() {
+        return Math.max(0, Count - 1);
+    }
+
+    public double GetLatitude(int idx) {
+        return Fixed(idx, false) / Scale;
+    }
+
+    public double GetLongitude(int idx) {
+        return Fixed(idx, true) / Scale;
+    }
+
+    /**
+     * Returns the corridor half-width around every segment.
+     *
+     * @return padding in meters
+     */
+    public double GetPadding() {
+        return Padding;
+    }
+
+    /**
+     * Returns the total length of the route.
+     *
+     * @return length in meters
+     */
+    public double GetLength() {
+        return Length;
+    }
+
+    /**
+     * Returns the memory held by the packed vertices and their indexes, excluding object
+     * headers.
+     *
+     * @return size in bytes
+     */
+    public long GetByteSize() {
+        return Data.length + BlockOffsets.length * (4L + 4 + 4 + 8) + (Index.CellStarts.length + Index.CellSegments.length) * 4L;
+    }
+
+    /**
+     * Returns the distance along the route from its first vertex to vertex "idx".
+     *
+     * @param idx vertex index
+     * @return distance in meters
+     */
+    public double GetCumulativeDistance(int idx) {
+        return DistanceTo(idx, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Returns the index of the segment containing the point, searching from segment "from".
+     * Same contract as CompiledRoute.FindSegment.
+     *
+     * @param lat point latitude
+     * @param lon point longitude
+     * @param from first segment to test
+     * @return segment index, or -1 if no segment from "from" onwards contains the point
+     */
+    public int FindSegment(double lat, double lon, int from) {
+        int cell = Index.FindCell(lat, lon);
+        if(cell < 0)
+            return -1;
+
+        double pointLat = lat * Scale;
+        double pointLon = lon * Scale;
+
+        // Candidates are sorted by block, so the first hit is the earliest segment.
+        for(int c = Index.GetCellStart(cell); c < Index.GetCellEnd(cell); c++) {
+            int b = Index.GetCandidate(c);
+            int first = b << BlockShift;
+            int last = Math.min(first + BlockSize, Count - 1); // last vertex of the block's segments
+            if(last <= from)
+                continue;
+
+            int pos = BlockOffsets[b];
+            int lat0 = BlockLatitudes[b];
+            int lon0 = BlockLongitudes[b];
+            double cos0 = Math.cos(GeoMath.ToRadian(lat0 / Scale));
+            double sin0 = Math.sin(GeoMath.ToRadian(lat0 / Scale));
+            for(int i = first; i < last; i++) {
+                int lat1;
+                int lon1;
+                if(i + 1 == last && (last & (BlockSize - 1)) == 0) {
+                    lat1 = BlockLatitudes[b + 1];
+                    lon1 = BlockLongitudes[b + 1];
+                } else {
+                    long next = Next(Data, pos);
+                    lat1 = lat0 + (int) (next >> 32);
+                    next = Next(Data, (int) next);
+                    lon1 = lon0 + (int) (next >> 32);
+                    pos = (int) next;
+                }
+                double d = (lat1 - lat0) * RadiansPerUnit;
+                double cosD = CosStep(d);
+                double sinD = SinStep(d);
+                double cos1 = cos0 * cosD - sin0 * sinD;
+                double sin1 = sin0 * cosD + cos0 * sinD;
+
+                if(i >= from && SegmentContains(lat0, lon0, lat1, lon1, cos0, sin0, pointLat, pointLon)) {
+                    if(i + 2 < Count && SegmentContains(lat1, lon1, Fixed(i + 2, false), Fixed(i + 2, true), cos1, sin1, pointLat, pointLon))
+                        return i + 1;
+                    return i;
+                }
+                lat0 = lat1;
+                lon0 = lon1;
+                cos0 = cos1;
+                sin0 = sin1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns true if the point is within the corridor of any route segment.
+     *
+     * @param lat point latitude
+     * @param lon point longitude
+     * @return true if on route
+     */
+    public boolean IsOnRoute(double lat, double lon) {
+        return FindSegment(lat, lon, 0) >= 0;
+    }
+
+    /**
+     * Returns the distance along the route from its first vertex to the point.
+     *
+     * @param lat point latitude
+     * @param lon point longitude
+     * @return distance in meters, or -1 if the point is not on the route
+     */
+    public double OffsetOf(double lat, double lon) {
+        int segment = FindSegment(lat, lon, 0);
+        if(segment < 0)
+            return -1;
+
+        return GetOffsetInSegment(segment, lat, lon);
+    }
+
+    /**
+     * Returns the distance along the route from its first vertex to a point matched to "segment".
+     *
+     * @param segment segment containing the point
+     * @param lat point latitude
+     * @param lon point longitude
+     * @return distance in meters
+     */
+    public double GetOffsetInSegment(int segment, double lat, double lon) {
+        return DistanceTo(segment, lat, lon);
+    }
+
+    /**
+     * Returns the distance along the route to vertex "idx", plus the distance from the vertex to
+     * the point (lat, lon) unless lat is NaN. Decodes the vertex's block once.
+     */
+    private double DistanceTo(int idx, double lat, double lon) {
+        if(idx < 0 || idx >= Count)
+            throw new IndexOutOfBoundsException(String.format("Vertex %d of %d", idx, Count));
+
+        int b = idx >> BlockShift;
+        int pos = BlockOffsets[b];
+        int lat0 = BlockLatitudes[b];
+        int lon0 = BlockLongitudes[b];
+        double distance = BlockDistances[b];
+        double cos = Math.cos(GeoMath.ToRadian(lat0 / Scale));
+        double sin = Math.sin(GeoMath.ToRadian(lat0 / Scale));
+        for(int k = idx & (BlockSize - 1); k > 0; k--) {
+            long next = Next(Data, pos);
+            int lat1 = lat0 + (int) (next >> 32);
+            next = Next(Data, (int) next);
+            int lon1 = lon0 + (int) (next >> 32);
+            pos = (int) next;
+            distance += PlanarLength(lat1 - lat0, (double) lon1 - lon0, cos, sin);
+            double d = (lat1 - lat0) * RadiansPerUnit;
+            double cosD = CosStep(d);
+            double sinD = SinStep(d);
+            double c = cos * cosD - sin * sinD;
+            sin = sin * cosD + cos * sinD;
+            cos = c;
+            lat0 = lat1;
+            lon0 = lon1;
+        }
+
+        if(!Double.isNaN(lat))
+            distance += PlanarLength(lat * Scale - lat0, lon * Scale - lon0, cos, sin);
+        return distance;
+    }
+
+    /**
+     * Returns the fixed-point latitude, or longitude if "longitude", of vertex "idx".
+     */
+    private int Fixed(int idx, boolean longitude) {
+        if(idx < 0 || idx >= Count)
+            throw new IndexOutOfBoundsException(String.format("Vertex %d of %d", idx, Count));
+
+        int b = idx >> BlockShift;
+        int pos = BlockOffsets[b];
+        int lat = BlockLatitudes[b];
+        int lon = BlockLongitudes[b];
+        for(int k = idx & (BlockSize - 1); k > 0; k--) {
+            long next = Next(Data, pos);
+            lat += (int) (next >> 32);
+            next = Next(Data, (int) next);
+            lon += (int) (next >> 32);
+            pos = (int) next;
+        }
+
+        return (longitude ? lon : lat);
+    }
+
+    /**
+     * Same test as CompiledRoute.SegmentContains in PLANAR mode, for the segment from (lat0, lon0)
+     * to (lat1, lon1) and the point (lat, lon), all in fixed-point units. "cos" and "sin" are those
+     * of lat0.
+     */
+    private boolean SegmentContains(int lat0, int lon0, int lat1, int lon1, double cos, double sin, double lat, double lon) {
+        // The corridor never reaches further north or south than the padding.
+        if(lat < Math.min(lat0, lat1) - PaddingUnits || lat > Math.max(lat0, lat1) + PaddingUnits)
+            return false;
+
+        double dx = MetersPerUnit * ((double) lon1 - lon0) * (cos - 0.5 * sin * (lat1 - lat0) * RadiansPerUnit);
+        double dy = MetersPerUnit * (lat1 - lat0);
+        double length = Math.sqrt(dx * dx + dy * dy);
+        if(length == 0)
+            return false;
+
+        double x = MetersPerUnit * (lon - lon0) * (cos - 0.5 * sin * (lat - lat0) * RadiansPerUnit);
+        double y = MetersPerUnit * (lat - lat0);
+        double along = (x * dx + y * dy) / length;
+        double cross = (x * dy - y * dx) / length;
+        return along >= 0 && along <= length && Math.abs(cross) <= Padding;
+    }
+
+    /**
+     * Returns the PLANAR length of a step of (dLat, dLon) fixed-point units in the frame of its
+     * start, as CompiledRoute computes segment lengths. "cos" and "sin" are those of the start
+     * latitude.
+     */
+    private static double PlanarLength(double dLat, double dLon, double cos, double sin) {
+        double dx = MetersPerUnit * dLon * (cos - 0.5 * sin * dLat * RadiansPerUnit);
+        double dy = MetersPerUnit * dLat;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Returns cos(d) for a latitude step "d" in radians. Walks carry the cosine and sine of the
+     * current latitude forward by rotating them by each step instead of calling Math.cos and
+     * Math.sin at every vertex; for the tiny steps between vertices the truncated series are
+     * exact to double precision.
+     */
+    private static double CosStep(double d) {
+        if(Math.abs(d) > 1e-3)
+            return Math.cos(d);
+        double d2 = d * d;
+        return 1 - d2 / 2 + d2 * d2 / 24;
+    }
+
+    /**
+     * Returns sin(d) for a latitude step "d" in radians. See CosStep.
+     */
+    private static double SinStep(double d) {
+        if(Math.abs(d) > 1e-3)
+            return Math.sin(d);
+        double d2 = d * d;
+        return d * (1 - d2 / 6 + d2 * d2 / 120);
+    }
+
+    private static int ToFixed(double degrees) {
+        return (int) Math.round(degrees * Scale);
+    }
+
+    private static int ZigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Decodes the zigzag varint at "pos". Returns the value in the high 32 bits and the position
+     * after it in the low 32 bits, so that decoding allocates nothing.
+     */
+    private static long Next(byte[] data, int pos) {
+        int v = 0;
+        for(int shift = 0; ; shift += 7) {
+            byte x = data[pos++];
+            v |= (x & 0x7F) << shift;
+            if(x >= 0)
+                break;
+        }
+        return ((long) ((v >>> 1) ^ -(v & 1)) << 32) | pos;
+    }
+
+    private static int WriteVarint(byte[] data, int pos, int value) {
+        while((value & ~0x7F) != 0) {
+            data[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[pos++] = (byte) value;
+        return pos;
+    }
+}
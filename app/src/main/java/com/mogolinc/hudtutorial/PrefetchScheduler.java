@@ -0,0 +1,90 @@
+package com.mogolinc.hudtutorial;
+
+/**
+ * Decides when to request the next route window.
+ * <br /><br />
+ * Estimates the time until the vehicle reaches the refresh boundary from its speed, and
+ * requests the next window once that time drops below the expected fetch latency (with a
+ * safety factor) plus a fixed lead time. Fetch latency is tracked as an exponentially weighted
+ * moving average of measured round trips.
+ */
+
+public class PrefetchScheduler {
+    /**
+     * Latency assumed before any fetch has been measured, in milliseconds.
+     */
+    public static final long InitialLatency = 2000;
+
+    protected final double SafetyFactor;
+    protected final long LeadTime;
+    protected final double MinSpeed;
+    protected double Latency = InitialLatency;
+
+
+    /**
+     * Constructs a new PrefetchScheduler with default tuning: a safety factor of 2, a lead time of
+     * 2 seconds and a minimum speed of 0.5 m/s.
+     */
+    public PrefetchScheduler() {
+        this(2.0, 2000, 0.5);
+    }
+
+    /**
+     * Constructs a new PrefetchScheduler.
+     *
+     * @param safetyFactor multiplier applied to the latency estimate
+     * @param leadTime extra time to leave before the boundary, in milliseconds
+     * @param minSpeed speed below which the vehicle is treated as stopped, in m/s
+     */
+    public PrefetchScheduler(double safetyFactor, long leadTime, double minSpeed) {
+        SafetyFactor = safetyFactor;
+        LeadTime = leadTime;
+        MinSpeed = minSpeed;
+    }
+
+
+    /**
+     * Folds a measured fetch round trip into the latency estimate.
+     *
+     * @param latencyMillis measured latency, in milliseconds
+     */
+    public void RecordLatency(long latencyMillis) {
+        Latency = 0.7 * Latency + 0.3 * latencyMillis;
+    }
+
+    /**
+     * Returns the current latency estimate.
+     *
+     * @return latency in milliseconds
+     */
+    public double GetLatency() {
+        return Latency;
+    }
+
+    /**
+     * Returns the estimated time until the boundary is reached.
+     *
+     * @param remaining distance to the refresh boundary, in meters
+     * @param speed vehicle speed, in m/s
+     * @return time in milliseconds, 0 if past the boundary, Double.MAX_VALUE if stopped
+     */
+    public double TimeToBoundary(double remaining, double speed) {
+        if(remaining <= 0)
+            return 0;
+        if(speed < MinSpeed)
+            return Double.MAX_VALUE;
+
+        return remaining / speed * 1000;
+    }
+
+    /**
+     * Returns true if the next window should be requested now.
+     *
+     * @param remaining distance to the refresh boundary, in meters
+     * @param speed vehicle speed, in m/s
+     * @return true if a fetch should be issued
+     */
+    public boolean ShouldPrefetch(double remaining, double speed) {
+        return TimeToBoundary(remaining, speed) <= Latency * SafetyFactor + LeadTime;
+    }
+}
@@ -0,0 +1,350 @@
+package com.mogolinc.hudtutorial;
+
+/**
+ * GeoFence prepared for repeated containment tests.
+ * <br /><br />
+ * Vertices are stored in primitive latitude/longitude arrays and every query is first checked
+ * against the fence's LocationBounds, so Contains never allocates and most points outside the
+ * fence are rejected without running the crossing test.
+ * <br /><br />
+ * Fences with at least IndexThreshold vertices, such as hazard areas from a conditions response,
+ * also get an edge index: the bounds are cut into latitude bands, each listing the edges whose
+ * latitude extent overlaps it. A query then only runs the crossing test on the edges of its own
+ * band, which gives the same result as testing every edge since the crossing rule never counts an
+ * edge that does not span the query latitude.
+ * <br /><br />
+ * The polygon described by the PreparedGeoFence object need not be convex.
+ */
+
+public class PreparedGeoFence {
+    /** Number of vertices from which an edge index is built. */
+    public static final int IndexThreshold = 32;
+    /** Average number of edges per latitude band of the edge index. */
+    protected static final int EdgesPerBand = 4;
+    /** Maximum number of latitude bands of the edge index. */
+    protected static final int MaxBands = 1024;
+
+    protected final double[] Latitudes;
+    protected final double[] Longitudes;
+    protected final LocationBounds Bounds;
+
+    // Edge index, null below IndexThreshold. Band b lists the start vertices of its edges in
+    // BandEdges[BandStarts[b]] to BandEdges[BandStarts[b+1] - 1].
+    protected final int[] BandStarts;
+    protected final int[] BandEdges;
+    protected final double BandScale;
+
+
+    /**
+     * Constructs a new PreparedGeoFence with input vertices. The LocationBounds are computed from
+     * the vertices.
+     *
+     * @param latitudes vertex latitudes
+     * @param longitudes vertex longitudes
+     */
+    public PreparedGeoFence(double[] latitudes, double[] longitudes) {
+        if(latitudes.length != longitudes.length)
+            throw new IllegalArgumentException("latitudes and longitudes must have the same length");
+
+        Latitudes = latitudes;
+        Longitudes = longitudes;
+        Bounds = new LocationBounds();
+
+        for(int i = 0; i < latitudes.length; i++)
+            Bounds.AddLocation(latitudes[i], longitudes[i]);
+
+        if(latitudes.length < IndexThreshold) {
+            BandStarts = null;
+            BandEdges = null;
+            BandScale = 0;
+            return;
+        }
+
+        int n = latitudes.length;
+        int bands = Math.max(1, Math.min(MaxBands, n / EdgesPerBand));
+        double height = Bounds.getHighLatitude() - Bounds.getLowLatitude();
+        BandScale = (height > 0 ? bands / height : 0);
+        BandStarts = new int[bands + 1];
+
+        // Counting sort of the edges into every band they overlap
+        for(int i = 0; i < n; i++) {
+            int i1 = (i + 1 == n ? 0 : i + 1);
+            int last = Band(Math.max(latitudes[i], latitudes[i1]));
+            for(int b = Band(Math.min(latitudes[i], latitudes[i1])); b <= last; b++)
+                BandStarts[b + 1]++;
+        }
+        for(int b = 0; b < bands; b++)
+            BandStarts[b + 1] += BandStarts[b];
+
+        BandEdges = new int[BandStarts[bands]];
+        int[] next = new int[bands];
+        System.arraycopy(BandStarts, 0, next, 0, bands);
+        for(int i = 0; i < n; i++) {
+            int i1 = (i + 1 == n ? 0 : i + 1);
+            int last = Band(Math.max(latitudes[i], latitudes[i1]));
+            for(int b = Band(Math.min(latitudes[i], latitudes[i1])); b <= last; b++)
+                BandEdges[next[b]++] = i;
+        }
+    }
+
+
+    /**
+     * Creates and returns a new rectangular PreparedGeoFence surrounding a great circle segment.
+     * <br /><br />
+     * Primitive counterpart of GeoFence.CreateFenceAroundEdge.
+     *
+     * @param lat0 Leg's start latitude
+     * @param lon0 Leg's start longitude
+     * @param lat1 Leg's end latitude
+     * @param lon1 Leg's end longitude
+     * @param padding how far to expand geofence on all sides
+     * @return new rectangular PreparedGeoFence
+     */
+    public static PreparedGeoFence CreateFenceAroundEdge(double lat0, double lon0, double lat1, double lon1, double padding) {
+        double[] latitudes = new double[4];
+        double[] longitudes = new double[4];
+
+        EdgeCorners(lat0, lon0, lat1, lon1, padding, latitudes, longitudes, 0);
+
+        return new PreparedGeoFence(latitudes, longitudes);
+    }
+
+
+    /**
+     * Writes the four corners of the rectangle surrounding a great circle segment into the output
+     * arrays, starting at "offset".
+     * <br /><br />
+     * Corners are in the same order GeoFence.CreateFenceAroundEdge uses.
+     *
+     * @param lat0 Leg's start latitude
+     * @param lon0 Leg's start longitude
+     * @param lat1 Leg's end latitude
+     * @param lon1 Leg's end longitude
+     * @param padding how far to expand the rectangle on all sides
+     * @param latitudes output corner latitudes
+     * @param longitudes output corner longitudes
+     * @param offset index of the first corner in the output arrays
+     */
+    public static void EdgeCorners(double lat0, double lon0, double lat1, double lon1, double padding,
+                                   double[] latitudes, double[] longitudes, int offset) {
+        double bearing = GeoMath.Bearing(lat0, lon0, lat1, lon1);
+        double b0 = (bearing + 90) % 360;
+        double b1 = (bearing - 90) % 360;
+
+        b1 = (b1 < 0 ? b1 + 360 : b1);
+
+        double[] corner = new double[2];
+        GeoMath.Destination(lat0, lon0, b0, padding, corner);
+        latitudes[offset] = corner[0];
+        longitudes[offset] = corner[1];
+        GeoMath.Destination(lat0, lon0, b1, padding, corner);
+        latitudes[offset+1] = corner[0];
+        longitudes[offset+1] = corner[1];
+        GeoMath.Destination(lat1, lon1, b1, padding, corner);
+        latitudes[offset+2] = corner[0];
+        longitudes[offset+2] = corner[1];
+        GeoMath.Destination(lat1, lon1, b0, padding, corner);
+        latitudes[offset+3] = corner[0];
+        longitudes[offset+3] = corner[1];
+    }
+
+
+    /**
+     * Returns true if the input point is contained within this PreparedGeoFence.
+     *
+     * @param lat point latitude
+     * @param lon point longitude
+     * @return true if contained
+     */
+    public boolean Contains(double lat, double lon) {
+        if(!Bounds.Contains(lat, lon))
+            return false;
+
+        if(BandEdges == null)
+            return Contains(Latitudes, Longitudes, 0, Latitudes.length, lat, lon);
+
+        int n = Latitudes.length;
+        int band = Band(lat);
+        int crossings = 0;
+        for(int k = BandStarts[band]; k < BandStarts[band + 1]; k++) {
+            int i = BandEdges[k];
+            int i1 = (i + 1 == n ? 0 : i + 1);
+            if(Intersect(lat, lon, Latitudes[i], Longitudes[i], Latitudes[i1], Longitudes[i1]))
+                crossings++;
+        }
+
+        return (crossings & 1) == 1;
+    }
+
+    /**
+     * Returns where a segment first crosses the boundary of this PreparedGeoFence.
+     * <br /><br />
+     * The crossing is computed on latitude/longitude as planar coordinates. The fraction along
+     * the segment is invariant under the per-segment scaling of PLANAR math, so the result can be
+     * turned into a distance with the segment's length.
+     *
+     * @param lat0 segment start latitude
+     * @param lon0 segment start longitude
+     * @param lat1 segment end latitude
+     * @param lon1 segment end longitude
+     * @return fraction of the segment from its start to the first crossing, in [0, 1], or -1 if
+     *         the segment does not cross the boundary
+     */
+    public double FirstCrossing(double lat0, double lon0, double lat1, double lon1) {
+        if(Math.max(lat0, lat1) < Bounds.getLowLatitude() || Math.min(lat0, lat1) > Bounds.getHighLatitude() ||
+                Math.max(lon0, lon1) < Bounds.getLowLongitude() || Math.min(lon0, lon1) > Bounds.getHighLongitude())
+            return -1;
+
+        int n = Latitudes.length;
+        double first = -1;
+
+        if(BandEdges == null) {
+            for(int i = 0; i < n; i++) {
+                int i1 = (i + 1 == n ? 0 : i + 1);
+                first = Earliest(first, SegmentCrossing(lat0, lon0, lat1, lon1, Latitudes[i], Longitudes[i], Latitudes[i1], Longitudes[i1]));
+            }
+            return first;
+        }
+
+        // Edges spanning several bands are tested more than once, which does not change the minimum.
+        int last = Band(Math.max(lat0, lat1));
+        for(int k = BandStarts[Band(Math.min(lat0, lat1))]; k < BandStarts[last + 1]; k++) {
+            int i = BandEdges[k];
+            int i1 = (i + 1 == n ? 0 : i + 1);
+            first = Earliest(first, SegmentCrossing(lat0, lon0, lat1, lon1, Latitudes[i], Longitudes[i], Latitudes[i1], Longitudes[i1]));
+        }
+
+        return first;
+    }
+
+    /**
+     * Returns where segment a crosses segment b, computed on latitude/longitude as planar
+     * coordinates. Touching counts as crossing; parallel segments never cross.
+     *
+     * @param aLat0 segment a start latitude
+     * @param aLon0 segment a start longitude
+     * @param aLat1 segment a end latitude
+     * @param aLon1 segment a end longitude
+     * @param bLat0 segment b start latitude
+     * @param bLon0 segment b start longitude
+     * @param bLat1 segment b end latitude
+     * @param bLon1 segment b end longitude
+     * @return fraction of segment a from its start to the crossing, in [0, 1], or -1 if the
+     *         segments do not cross
+     */
+    public static double SegmentCrossing(double aLat0, double aLon0, double aLat1, double aLon1,
+                                         double bLat0, double bLon0, double bLat1, double bLon1) {
+        double ax = aLon1 - aLon0;
+        double ay = aLat1 - aLat0;
+        double bx = bLon1 - bLon0;
+        double by = bLat1 - bLat0;
+        double denominator = ax * by - ay * bx;
+        if(denominator == 0)
+            return -1;
+
+        double cx = bLon0 - aLon0;
+        double cy = bLat0 - aLat0;
+        double t = (cx * by - cy * bx) / denominator;
+        double u = (cx * ay - cy * ax) / denominator;
+
+        return (t >= 0 && t <= 1 && u >= 0 && u <= 1 ? t : -1);
+    }
+
+    private static double Earliest(double first, double t) {
+        return (t >= 0 && (first < 0 || t < first) ? t : first);
+    }
+
+    /**
+     * Returns the edge index band of a latitude, clamped to the index. Monotonic in the
+     * latitude, so an edge spanning a query latitude is always registered in the query's band.
+     */
+    private int Band(double lat) {
+        int band = (int) ((lat - Bounds.getLowLatitude()) * BandScale);
+        return Math.max(0, Math.min(BandStarts.length - 2, band));
+    }
+
+
+    /**
+     * Returns true if the input point is contained within the polygon stored in the input arrays
+     * from "offset" to "offset + count".
+     * <br /><br />
+     * Lets callers keep many small polygons in shared flat arrays. No boundary prefilter is applied.
+     *
+     * @param latitudes vertex latitudes
+     * @param longitudes vertex longitudes
+     * @param offset index of the polygon's first vertex
+     * @param count number of polygon vertices
+     * @param lat point latitude
+     * @param lon point longitude
+     * @return true if contained
+     */
+    public static boolean Contains(double[] latitudes, double[] longitudes, int offset, int count, double lat, double lon) {
+        int crossings = 0;
+        int end = offset + count;
+
+        for(int i = offset; i < end; i++) {
+            int i1 = ((i+1) >= end ? offset : (i+1));
+            if(Intersect(lat, lon, latitudes[i], longitudes[i], latitudes[i1], longitudes[i1]))
+                crossings++;
+        }
+
+        return (crossings & 1) == 1;
+    }
+
+    static boolean Intersect(double py, double px, double l0y, double l0x, double l1y, double l1x) {
+        // l0 must be below l1
+        if(l0y > l1y) {
+            double ty = l0y;
+            double tx = l0x;
+            l0y = l1y;
+            l0x = l1x;
+            l1y = ty;
+            l1x = tx;
+        }
+
+        // Check if latitudinal ray with origin = loc
+        // crosses l0 and l1.
+
+        // A segment spans from the level of l0 up to, but
+        // not including, the level of l1. A ray through a
+        // vertex then crosses exactly one of the segments
+        // meeting there, and never a horizontal segment.
+        if(py < l0y || py >= l1y || px > Math.max(l0x, l1x))
+            return false;
+
+        // Check coord is to the left of both points. If so, it must intersect.
+        if(px < Math.min(l0x, l1x))
+            return true;
+
+        // Now, we know coord is somewhere in the middle
+        // of the segment. It intersects if it lies on or
+        // to the left of the segment, which the cross
+        // product tells without dividing by a slope.
+        return (px - l0x) * (l1y - l0y) <= (py - l0y) * (l1x - l0x);
+    }
+
+    public int GetNumVertices() {
+        return Latitudes.length;
+    }
+
+    public double GetLatitude(int idx) {
+        return Latitudes[idx];
+    }
+
+    public double GetLongitude(int idx) {
+        return Longitudes[idx];
+    }
+
+    public LocationBounds GetBounds() {
+        return Bounds;
+    }
+
+    /**
+     * Returns whether this fence has an edge index.
+     *
+     * @return true if the fence has at least IndexThreshold vertices
+     */
+    public boolean IsIndexed() {
+        return BandEdges != null;
+    }
+}
@@ -0,0 +1,273 @@
+package com.mogolinc.hudtutorial;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Persistent, size-bounded LRU cache of route windows.
+ * <br /><br />
+ * Entries are keyed by the geohash of the requested position and the requested bearing
+ * quantized to 45 degree sectors, so a vehicle passing the same spot in the same direction
+ * hits the same entry. Each entry is one file holding the fetch time and the window encoded
+ * with RouteStateFormat; payloads are memory mapped on read.
+ * Entries older than the hazard TTL are returned as stale (the route geometry is still usable
+ * but the hazards should be refreshed); entries older than the maximum age are dropped.
+ * <br /><br />
+ * Least recently used entries are evicted once the total size exceeds the bound. Access order
+ * survives restarts through the files' modification times. All methods are synchronized.
+ */
+
+public class RouteCache {
+    public static final int DefaultPrecision = 7;
+    public static final int BearingSectors = 8;
+    public static final long DefaultMaxAge = 24 * 60 * 60 * 1000L; // milliseconds
+
+    private static final String Suffix = ".route";
+
+    protected final File Directory;
+    protected final long MaxBytes;
+    protected final long HazardTtl;
+    protected final long MaxAge;
+    protected final int Precision;
+
+    // Access ordered: iteration starts at the least recently used entry.
+    protected final LinkedHashMap<String, Long> Sizes = new LinkedHashMap<>(16, 0.75f, true);
+    protected long TotalBytes = 0;
+
+
+    /**
+     * Opens (or creates) a cache in the input directory.
+     *
+     * @param directory cache directory
+     * @param maxBytes size bound of all entries, in bytes
+     * @param hazardTtl age after which entries are stale, in milliseconds
+     */
+    public RouteCache(File directory, long maxBytes, long hazardTtl) {
+        this(directory, maxBytes, hazardTtl, DefaultMaxAge, DefaultPrecision);
+    }
+
+    /**
+     * Opens (or creates) a cache in the input directory.
+     *
+     * @param directory cache directory
+     * @param maxBytes size bound of all entries, in bytes
+     * @param hazardTtl age after which entries are stale, in milliseconds
+     * @param maxAge age after which entries are dropped, in milliseconds
+     * @param precision geohash precision of keys
+     */
+    public RouteCache(File directory, long maxBytes, long hazardTtl, long maxAge, int precision) {
+        Directory = directory;
+        MaxBytes = maxBytes;
+        HazardTtl = hazardTtl;
+        MaxAge = maxAge;
+        Precision = precision;
+
+        Directory.mkdirs();
+        File[] files = Directory.listFiles();
+        if(files == null)
+            files = new File[0];
+
+        // Rebuild the LRU order from modification times, oldest first.
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long x = a.lastModified();
+                long y = b.lastModified();
+                return x < y ? -1 : (x == y ? 0 : 1); // Long.compare needs API 19
+            }
+        });
+        for(File file : files) {
+            String name = file.getName();
+            if(!name.endsWith(Suffix)) {
+                file.delete();
+                continue;
+            }
+            Sizes.put(name.substring(0, name.length() - Suffix.length()), file.length());
+            TotalBytes += file.length();
+        }
+
+        Evict();
+    }
+
+
+    /**
+     * Returns the key of the entry for a position and bearing.
+     *
+     * @param lat latitude
+     * @param lon longitude
+     * @param bearing bearing in degrees
+     * @return cache key
+     */
+    public String Key(double lat, double lon, double bearing) {
+        double normalized = ((bearing % 360) + 360) % 360;
+        int sector = (int) Math.floor((normalized + 180.0 / BearingSectors) / (360.0 / BearingSectors)) % BearingSectors;
+
+        return String.format(Locale.US, "%s-%d", Geohash.Encode(lat, lon, Precision), sector);
+    }
+
+    /**
+     * Returns the entry for a position and bearing.
+     *
+     * @param lat latitude
+     * @param lon longitude
+     * @param bearing bearing in degrees
+     * @return entry, or null on a miss
+     */
+    public synchronized Entry Get(double lat, double lon, double bearing) {
+        String key = Key(lat, lon, bearing);
+        if(Sizes.get(key) == null) // get, not containsKey: marks the entry as recently used
+            return null;
+
+        File file = FileFor(key);
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                long storedAt = raf.readLong();
+                long age = System.currentTimeMillis() - storedAt;
+                if(age > MaxAge) {
+                    Remove(key);
+                    return null;
+                }
+
+                // The mapping stays valid after the file is closed (or evicted).
+                ByteBuffer payload = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 8, raf.length() - 8);
+                file.setLastModified(System.currentTimeMillis());
+
+                return new Entry(key, payload, storedAt, age > HazardTtl);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            // Unreadable entry; treat as a miss.
+            Remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the encoded window fetched for a position and bearing.
+     *
+     * @param lat requested latitude
+     * @param lon requested longitude
+     * @param bearing requested bearing in degrees
+     * @param payload window encoded with RouteStateFormat
+     * @throws IOException if the entry cannot be written
+     */
+    public synchronized void Put(double lat, double lon, double bearing, byte[] payload) throws IOException {
+        String key = Key(lat, lon, bearing);
+        File temp = new File(Directory, key + ".tmp");
+
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(temp));
+        try {
+            out.writeLong(System.currentTimeMillis());
+            out.write(payload);
+        } finally {
+            out.close();
+        }
+
+        // Replace any previous entry atomically.
+        Remove(key);
+        if(!temp.renameTo(FileFor(key))) {
+            temp.delete();
+            throw new IOException(String.format("Failed to store cache entry %s", key));
+        }
+
+        Sizes.put(key, payload.length + 8L);
+        TotalBytes += payload.length + 8L;
+        Evict();
+    }
+
+    /**
+     * Removes the entry with the input key, if present.
+     *
+     * @param key cache key
+     */
+    public synchronized void Remove(String key) {
+        Long size = Sizes.remove(key);
+        if(size != null)
+            TotalBytes -= size;
+        FileFor(key).delete();
+    }
+
+    public synchronized int GetNumEntries() {
+        return Sizes.size();
+    }
+
+    public synchronized long GetTotalBytes() {
+        return TotalBytes;
+    }
+
+    private void Evict() {
+        Iterator<Map.Entry<String, Long>> it = Sizes.entrySet().iterator();
+        while(TotalBytes > MaxBytes && it.hasNext()) {
+            Map.Entry<String, Long> lru = it.next();
+            TotalBytes -= lru.getValue();
+            FileFor(lru.getKey()).delete();
+            it.remove();
+        }
+    }
+
+    private File FileFor(String key) {
+        return new File(Directory, key + Suffix);
+    }
+
+
+    /**
+     * A cached window.
+     */
+    public static class Entry {
+        protected final String Key;
+        protected final ByteBuffer Payload;
+        protected final long StoredAt;
+        protected final boolean Stale;
+
+        public Entry(String key, ByteBuffer payload, long storedAt, boolean stale) {
+            Key = key;
+            Payload = payload;
+            StoredAt = storedAt;
+            Stale = stale;
+        }
+
+        public String GetKey() {
+            return Key;
+        }
+
+        /**
+         * Returns the encoded window, positioned at its start.
+         *
+         * @return read-only payload, decodable with RouteStateFormat.Decode
+         */
+        public ByteBuffer GetPayload() {
+            return Payload.duplicate();
+        }
+
+        /**
+         * Returns the time the window was fetched.
+         *
+         * @return milliseconds since the epoch
+         */
+        public long GetStoredAt() {
+            return StoredAt;
+        }
+
+        /**
+         * Returns true if the entry is older than the hazard TTL and should be refreshed.
+         *
+         * @return true if stale
+         */
+        public boolean IsStale() {
+            return Stale;
+        }
+    }
+}
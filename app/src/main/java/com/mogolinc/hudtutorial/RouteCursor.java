@@ -0,0 +1,160 @@
+package com.mogolinc.hudtutorial;
+
+/**
+ * Map-matching state of a vehicle travelling along a CompiledRoute.
+ * <br /><br />
+ * Remembers the last matched segment and the offset along the route. Each update only tests a
+ * small window of segments around the previous match, since vehicles move monotonically along
+ * the route, and falls back to a global RouteIndex search only when the match is lost. When the
+ * fix has a bearing, it is used to choose between overlapping segment corridors (e.g. at
+ * switchbacks or where the route doubles back on itself).
+ */
+
+public class RouteCursor {
+    /**
+     * Number of segments past the current match tested before falling back to a global search.
+     */
+    public static final int ForwardWindow = 8;
+
+    protected final CompiledRoute Route;
+    protected int Segment = -1;
+    protected double Offset = -1;
+    protected int Tests = 0;
+
+
+    /**
+     * Constructs a new, unmatched RouteCursor on the input route.
+     *
+     * @param route route to match against
+     */
+    public RouteCursor(CompiledRoute route) {
+        Route = route;
+    }
+
+
+    /**
+     * Matches a new fix against the route.
+     *
+     * @param lat fix latitude
+     * @param lon fix longitude
+     * @param bearing fix bearing in degrees, ignored if hasBearing is false
+     * @param hasBearing whether bearing is valid
+     * @return true if the fix is on the route
+     */
+    public boolean Update(double lat, double lon, double bearing, boolean hasBearing) {
+        int match = -1;
+        Tests = 0;
+
+        if(Segment >= 0) {
+            int from = Math.max(0, Segment - 1);
+            int to = Math.min(Route.GetNumSegments() - 1, Segment + ForwardWindow);
+            match = MatchWindow(lat, lon, bearing, hasBearing, from, to);
+        }
+
+        if(match < 0)
+            match = MatchGlobal(lat, lon, bearing, hasBearing);
+
+        Segment = match;
+        Offset = (match < 0 ? -1 : Route.GetOffsetInSegment(match, lat, lon));
+
+        return match >= 0;
+    }
+
+    /**
+     * Forgets the current match so that the next update performs a global search.
+     */
+    public void Reset() {
+        Segment = -1;
+        Offset = -1;
+    }
+
+    public CompiledRoute GetRoute() {
+        return Route;
+    }
+
+    /**
+     * Returns the last matched segment.
+     *
+     * @return segment index, or -1 if not matched
+     */
+    public int GetSegment() {
+        return Segment;
+    }
+
+    /**
+     * Returns the distance along the route from its first vertex to the last matched fix.
+     *
+     * @return offset in meters, or -1 if not matched
+     */
+    public double GetOffset() {
+        return Offset;
+    }
+
+    public boolean IsMatched() {
+        return Segment >= 0;
+    }
+
+    /**
+     * Returns the number of segment corridors tested by the last update.
+     *
+     * @return number of SegmentContains calls
+     */
+    public int GetLastTestCount() {
+        return Tests;
+    }
+
+    private int MatchWindow(double lat, double lon, double bearing, boolean hasBearing, int from, int to) {
+        int best = -1;
+        double bestScore = Double.MAX_VALUE;
+
+        for(int i = from; i <= to; i++) {
+            Tests++;
+            if(!Route.SegmentContains(i, lat, lon))
+                continue;
+
+            double score = Score(i, bearing, hasBearing);
+            // "<=" so that the latter of two overlapping corridors wins ties.
+            if(score <= bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+
+        return best;
+    }
+
+    private int MatchGlobal(double lat, double lon, double bearing, boolean hasBearing) {
+        RouteIndex index = Route.GetIndex();
+        int cell = index.FindCell(lat, lon);
+        if(cell < 0)
+            return -1;
+
+        int best = -1;
+        double bestScore = Double.MAX_VALUE;
+
+        for(int pos = index.GetCellStart(cell); pos < index.GetCellEnd(cell); pos++) {
+            int i = index.GetCandidate(pos);
+            Tests++;
+            if(!Route.SegmentContains(i, lat, lon))
+                continue;
+
+            double score = Score(i, bearing, hasBearing);
+            if(best >= 0 && !hasBearing && i > best + 1)
+                break;  // Without a bearing, keep the earliest match (and its overlapping successor).
+            if(score <= bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+
+        return best;
+    }
+
+    private double Score(int segment, double bearing, boolean hasBearing) {
+        if(!hasBearing)
+            return 0;
+
+        double diff = Math.abs(bearing - Route.GetSegmentBearing(segment)) % 360;
+        return diff > 180 ? 360 - diff : diff;
+    }
+}
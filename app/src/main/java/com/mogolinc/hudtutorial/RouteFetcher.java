@@ -0,0 +1,241 @@
+package com.mogolinc.hudtutorial;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Synchronous client for the conditions/route endpoint.
+ * <br /><br />
+ * Builds the request URL for a position and bearing, performs the request on the calling thread
+ * and streams the body through a RouteResponseDecoder. The base URL is configurable so that the
+ * client can be pointed at a local stand-in server.
+ * <br /><br />
+ * Requests carry connect and read timeouts and ask for gzip compressed responses. Bodies are
+ * always read to the end before the stream is closed, so the underlying keep-alive connection
+ * can be reused by the next request.
+ * <br /><br />
+ * Unless compact responses are disabled, requests also accept the RouteResponseFormat, which is
+ * several times smaller and faster to decode than JSON. The body is decoded according to the
+ * response Content-Type, so servers that only speak JSON keep working.
+ */
+
+public class RouteFetcher {
+    public static final String DefaultBaseUrl = "https://api.mogolinc.com/conditions/route";
+    public static final int DefaultConnectTimeout = 5000; // milliseconds
+    public static final int DefaultReadTimeout = 10000; // milliseconds
+
+    protected final String BaseUrl;
+    protected final String ApiKey;
+    protected final int LookaheadDistance;
+    protected final RouteResponseDecoder Decoder;
+    protected int ConnectTimeout = DefaultConnectTimeout;
+    protected int ReadTimeout = DefaultReadTimeout;
+    protected boolean Compact = true;
+
+
+    /**
+     * Constructs a new RouteFetcher.
+     *
+     * @param baseUrl endpoint URL, without query string
+     * @param apiKey value of the x-api-key header
+     * @param lookaheadDistance length of the requested route window, in meters
+     * @param padding corridor half-width of decoded routes, in meters
+     */
+    public RouteFetcher(String baseUrl, String apiKey, int lookaheadDistance, double padding) {
+        this(baseUrl, apiKey, lookaheadDistance, padding, DistanceMode.PLANAR);
+    }
+
+    /**
+     * Constructs a new RouteFetcher.
+     *
+     * @param baseUrl endpoint URL, without query string
+     * @param apiKey value of the x-api-key header
+     * @param lookaheadDistance length of the requested route window, in meters
+     * @param padding corridor half-width of decoded routes, in meters
+     * @param mode math used by decoded routes
+     */
+    public RouteFetcher(String baseUrl, String apiKey, int lookaheadDistance, double padding, DistanceMode mode) {
+        BaseUrl = baseUrl;
+        ApiKey = apiKey;
+        LookaheadDistance = lookaheadDistance;
+        Decoder = new RouteResponseDecoder(padding, mode);
+    }
+
+
+    /**
+     * Sets the connect and read timeouts of subsequent requests.
+     *
+     * @param connectTimeout connect timeout, in milliseconds
+     * @param readTimeout read timeout, in milliseconds
+     */
+    public void SetTimeouts(int connectTimeout, int readTimeout) {
+        ConnectTimeout = connectTimeout;
+        ReadTimeout = readTimeout;
+    }
+
+    /**
+     * Sets whether subsequent requests ask for compact responses. Enabled by default.
+     *
+     * @param compact true to accept the RouteResponseFormat, false for JSON only
+     */
+    public void SetCompact(boolean compact) {
+        Compact = compact;
+    }
+
+    public boolean IsCompact() {
+        return Compact;
+    }
+
+    public DistanceMode GetMode() {
+        return Decoder.GetMode();
+    }
+
+    /**
+     * Returns the request URL for a position and bearing.
+     *
+     * @param lat latitude
+     * @param lon longitude
+     * @param bearing bearing in degrees
+     * @return request URL
+     */
+    public String GetUrl(double lat, double lon, double bearing) {
+        // Locale.US so the decimal separator is always '.'
+        return String.format(Locale.US, "%s?location=%f,%f&bearing=%f&distance=%d&f=coordinates", BaseUrl, lat, lon, bearing, LookaheadDistance);
+    }
+
+    /**
+     * Requests and decodes the route window starting at a position.
+     *
+     * @param lat latitude
+     * @param lon longitude
+     * @param bearing bearing in degrees
+     * @return decoded response
+     * @throws IOException on connection failure, non-200 status or malformed response
+     */
+    public RouteResponse Fetch(double lat, double lon, double bearing) throws IOException {
+        return Fetch(new FetchCall(lat, lon, bearing));
+    }
+
+    /**
+     * Performs a FetchCall, recording its status, latency and bytes received.
+     *
+     * @param call call to perform
+     * @return decoded response
+     * @throws IOException on connection failure, cancellation, non-200 status or malformed response
+     */
+    public RouteResponse Fetch(FetchCall call) throws IOException {
+        long start = System.nanoTime();
+        HttpURLConnection urlConnection = (HttpURLConnection) new URL(GetUrl(call.Latitude, call.Longitude, call.Bearing)).openConnection();
+        urlConnection.setConnectTimeout(ConnectTimeout);
+        urlConnection.setReadTimeout(ReadTimeout);
+        urlConnection.setRequestProperty("x-api-key", ApiKey);
+        urlConnection.setRequestProperty("Content-Type", "application/json");
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        if(Compact)
+            urlConnection.setRequestProperty("Accept", RouteResponseFormat.ContentType + ", application/json;q=0.5");
+
+        call.Connection = urlConnection;
+        try {
+            if(call.Cancelled)
+                throw new InterruptedIOException("Request cancelled");
+
+            int status = urlConnection.getResponseCode();
+            call.Status = status;
+            if(status == 200) {
+                InputStream in = OpenBody(urlConnection, urlConnection.getInputStream(), call);
+                try {
+                    call.Compact = IsCompact(urlConnection.getContentType());
+                    RouteResponse response = (call.Compact ? Decoder.DecodeCompact(in) : Decoder.Decode(in));
+                    Drain(in);
+                    return response;
+                } finally {
+                    in.close();
+                }
+            }
+
+            InputStream error = urlConnection.getErrorStream();
+            String body = (error == null ? "" : ReadError(OpenBody(urlConnection, error, call)));
+            throw new IOException(String.format(Locale.US, "API request failed (%d):\n %s", status, body));
+        } catch (IOException e) {
+            if(call.Cancelled)
+                throw new InterruptedIOException("Request cancelled");
+            throw e;
+        } finally {
+            call.Connection = null;
+            call.LatencyMillis = (System.nanoTime() - start) / 1000000;
+        }
+    }
+
+    private static InputStream OpenBody(HttpURLConnection urlConnection, InputStream raw, FetchCall call) throws IOException {
+        // Count bytes as received, before decompression.
+        InputStream in = new CountingInputStream(raw, call);
+        if("gzip".equalsIgnoreCase(urlConnection.getContentEncoding()))
+            in = new GZIPInputStream(in);
+        return in;
+    }
+
+    private static boolean IsCompact(String contentType) {
+        if(contentType == null)
+            return false;
+
+        int end = contentType.indexOf(';');
+        String type = (end >= 0 ? contentType.substring(0, end) : contentType).trim();
+        return RouteResponseFormat.ContentType.equalsIgnoreCase(type);
+    }
+
+    private static void Drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[512];
+        while(in.read(buffer) >= 0) {
+            // Discard trailing bytes so the connection can be reused.
+        }
+    }
+
+    private static String ReadError(InputStream in) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        StringBuilder sb = new StringBuilder();
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                sb.append(line);
+            }
+        } finally {
+            br.close();
+        }
+
+        return sb.toString();
+    }
+
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final FetchCall call;
+
+        CountingInputStream(InputStream in, FetchCall call) {
+            super(in);
+            this.call = call;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0)
+                call.Bytes++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if(n > 0)
+                call.Bytes += n;
+            return n;
+        }
+    }
+}
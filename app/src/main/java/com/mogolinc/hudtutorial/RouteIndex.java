@@ -0,0 +1,159 @@
+package com.mogolinc.hudtutorial;
+
+/**
+ * Uniform grid spatial index over route segments.
+ * <br /><br />
+ * Every segment is registered in each grid cell its LocationBounds overlaps. A point query
+ * returns the segments registered in the single cell containing the point, so on-route checks
+ * only test the handful of segments near a fix instead of the whole route.
+ * <br /><br />
+ * Cell contents are stored in compressed row form (one offsets array, one segment array) and
+ * are sorted by ascending segment index. The index is immutable once built.
+ */
+
+public class RouteIndex {
+    protected final double OriginLatitude;
+    protected final double OriginLongitude;
+    protected final double CellHeight;
+    protected final double CellWidth;
+    protected final int Rows;
+    protected final int Columns;
+    protected final int[] CellStarts;
+    protected final int[] CellSegments;
+
+    /**
+     * Constructs a new RouteIndex over the input segment boundaries.
+     *
+     * @param segmentBounds boundaries of every segment, indexed by segment
+     */
+    public RouteIndex(LocationBounds[] segmentBounds) {
+        LocationBounds all = new LocationBounds();
+        double latSpan = 0;
+        double lonSpan = 0;
+
+        for(LocationBounds b : segmentBounds) {
+            all.AddBounds(b);
+            latSpan += b.getHighLatitude() - b.getLowLatitude();
+            lonSpan += b.getHighLongitude() - b.getLowLongitude();
+        }
+
+        if(segmentBounds.length == 0) {
+            OriginLatitude = OriginLongitude = 0;
+            CellHeight = CellWidth = 1;
+            Rows = Columns = 0;
+            CellStarts = new int[1];
+            CellSegments = new int[0];
+            return;
+        }
+
+        // Size cells after the average segment, so most segments touch few cells.
+        double height = Math.max(latSpan / segmentBounds.length, 1e-6);
+        double width = Math.max(lonSpan / segmentBounds.length, 1e-6);
+        double totalHeight = all.getHighLatitude() - all.getLowLatitude();
+        double totalWidth = all.getHighLongitude() - all.getLowLongitude();
+
+        // Keep the number of cells proportional to the number of segments.
+        double maxCells = 4.0 * segmentBounds.length + 16;
+        double cells = (Math.floor(totalHeight / height) + 1) * (Math.floor(totalWidth / width) + 1);
+        if(cells > maxCells) {
+            double scale = Math.sqrt(cells / maxCells);
+            height *= scale;
+            width *= scale;
+        }
+
+        OriginLatitude = all.getLowLatitude();
+        OriginLongitude = all.getLowLongitude();
+        CellHeight = height;
+        CellWidth = width;
+        Rows = (int) Math.floor(totalHeight / height) + 1;
+        Columns = (int) Math.floor(totalWidth / width) + 1;
+
+        // First pass counts entries per cell, second pass fills them in segment order.
+        int[] starts = new int[Rows * Columns + 1];
+        for(LocationBounds b : segmentBounds) {
+            int r0 = Row(b.getLowLatitude());
+            int r1 = Row(b.getHighLatitude());
+            int c0 = Column(b.getLowLongitude());
+            int c1 = Column(b.getHighLongitude());
+            for(int r = r0; r <= r1; r++)
+                for(int c = c0; c <= c1; c++)
+                    starts[r * Columns + c + 1]++;
+        }
+        for(int i = 1; i < starts.length; i++)
+            starts[i] += starts[i-1];
+
+        int[] fill = new int[Rows * Columns];
+        int[] segments = new int[starts[starts.length - 1]];
+        for(int s = 0; s < segmentBounds.length; s++) {
+            LocationBounds b = segmentBounds[s];
+            int r0 = Row(b.getLowLatitude());
+            int r1 = Row(b.getHighLatitude());
+            int c0 = Column(b.getLowLongitude());
+            int c1 = Column(b.getHighLongitude());
+            for(int r = r0; r <= r1; r++) {
+                for(int c = c0; c <= c1; c++) {
+                    int cell = r * Columns + c;
+                    segments[starts[cell] + fill[cell]++] = s;
+                }
+            }
+        }
+
+        CellStarts = starts;
+        CellSegments = segments;
+    }
+
+    /**
+     * Returns the cell containing the input point.
+     *
+     * @param lat point latitude
+     * @param lon point longitude
+     * @return cell index, or -1 if the point is outside the indexed area
+     */
+    public int FindCell(double lat, double lon) {
+        double r = Math.floor((lat - OriginLatitude) / CellHeight);
+        double c = Math.floor((lon - OriginLongitude) / CellWidth);
+
+        if(r < 0 || c < 0 || r >= Rows || c >= Columns)
+            return -1;
+
+        return (int) r * Columns + (int) c;
+    }
+
+    /**
+     * Returns the position of the first candidate segment of a cell, for use with GetCandidate.
+     *
+     * @param cell cell index from FindCell
+     * @return first candidate position
+     */
+    public int GetCellStart(int cell) {
+        return CellStarts[cell];
+    }
+
+    /**
+     * Returns the position past the last candidate segment of a cell, for use with GetCandidate.
+     *
+     * @param cell cell index from FindCell
+     * @return end candidate position (exclusive)
+     */
+    public int GetCellEnd(int cell) {
+        return CellStarts[cell + 1];
+    }
+
+    /**
+     * Returns the segment index stored at candidate position "pos".
+     *
+     * @param pos candidate position between GetCellStart and GetCellEnd
+     * @return segment index
+     */
+    public int GetCandidate(int pos) {
+        return CellSegments[pos];
+    }
+
+    private int Row(double lat) {
+        return Math.min(Rows - 1, Math.max(0, (int) Math.floor((lat - OriginLatitude) / CellHeight)));
+    }
+
+    private int Column(double lon) {
+        return Math.min(Columns - 1, Math.max(0, (int) Math.floor((lon - OriginLongitude) / CellWidth)));
+    }
+}
@@ -0,0 +1,126 @@
+package com.mogolinc.hudtutorial;
+
+/**
+ * Condition message returned alongside a route.
+ * <br /><br />
+ * Holds the message properties, the start point of its geometry and, for messages decoded from
+ * a response, the prepared HazardGeometry used to locate the message on the route. Areas have no
+ * start point.
+ * <br /><br />
+ * Two messages are equal when all their properties and geometries are, which identifies the
+ * same hazard across overlapping route windows.
+ */
+
+public class RouteMessage {
+    protected final String Condition;
+    protected final String Subcondition;
+    protected final String GeometryType;
+    protected final double StartLatitude;
+    protected final double StartLongitude;
+    protected final HazardGeometry Geometry;
+
+
+    /**
+     * Constructs a new RouteMessage without a prepared geometry, e.g. one already projected onto
+     * its route.
+     *
+     * @param condition message condition
+     * @param subcondition message subcondition
+     * @param geometryType lower case GeoJSON geometry type
+     * @param startLatitude start point latitude, NaN if the geometry has no usable start point
+     * @param startLongitude start point longitude, NaN if the geometry has no usable start point
+     */
+    public RouteMessage(String condition, String subcondition, String geometryType, double startLatitude, double startLongitude) {
+        this(condition, subcondition, geometryType, startLatitude, startLongitude, null);
+    }
+
+    /**
+     * Constructs a new RouteMessage.
+     *
+     * @param condition message condition
+     * @param subcondition message subcondition
+     * @param geometryType lower case GeoJSON geometry type
+     * @param startLatitude start point latitude, NaN if the geometry has no usable start point
+     * @param startLongitude start point longitude, NaN if the geometry has no usable start point
+     * @param geometry prepared geometry, or null
+     */
+    public RouteMessage(String condition, String subcondition, String geometryType, double startLatitude, double startLongitude,
+                        HazardGeometry geometry) {
+        Condition = condition;
+        Subcondition = subcondition;
+        GeometryType = geometryType;
+        StartLatitude = startLatitude;
+        StartLongitude = startLongitude;
+        Geometry = geometry;
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o)
+            return true;
+        if(!(o instanceof RouteMessage))
+            return false;
+
+        RouteMessage other = (RouteMessage) o;
+        return Same(Condition, other.Condition) && Same(Subcondition, other.Subcondition) &&
+                Same(GeometryType, other.GeometryType) &&
+                Double.compare(StartLatitude, other.StartLatitude) == 0 &&
+                Double.compare(StartLongitude, other.StartLongitude) == 0 &&
+                Same(Geometry, other.Geometry);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = (Condition != null ? Condition.hashCode() : 0);
+        hash = 31 * hash + (Subcondition != null ? Subcondition.hashCode() : 0);
+        hash = 31 * hash + (GeometryType != null ? GeometryType.hashCode() : 0);
+        hash = 31 * hash + Double.valueOf(StartLatitude).hashCode();
+        hash = 31 * hash + Double.valueOf(StartLongitude).hashCode();
+        return 31 * hash + (Geometry != null ? Geometry.hashCode() : 0);
+    }
+
+    // java.util.Objects requires API 19
+    private static boolean Same(Object a, Object b) {
+        return (a == null ? b == null : a.equals(b));
+    }
+
+    public String GetCondition() {
+        return Condition;
+    }
+
+    public String GetSubcondition() {
+        return Subcondition;
+    }
+
+    public String GetGeometryType() {
+        return GeometryType;
+    }
+
+    /**
+     * Returns whether the geometry of this message had a usable start point.
+     *
+     * @return true if GetStartLatitude/GetStartLongitude are valid
+     */
+    public boolean HasStart() {
+        return !Double.isNaN(StartLatitude);
+    }
+
+    public double GetStartLatitude() {
+        return StartLatitude;
+    }
+
+    public double GetStartLongitude() {
+        return StartLongitude;
+    }
+
+    /**
+     * Returns the prepared geometry of this message.
+     *
+     * @return geometry, or null if the message was not decoded from a response or its geometry
+     *         type is not supported
+     */
+    public HazardGeometry GetGeometry() {
+        return Geometry;
+    }
+}
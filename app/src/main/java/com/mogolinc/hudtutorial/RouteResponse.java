@@ -0,0 +1,98 @@
+package com.mogolinc.hudtutorial;
+
+import java.util.List;
+
+/**
+ * Decoded conditions/route response: the route and the messages along it.
+ * <br /><br />
+ * Route vertices are kept as decoded and only compiled into a CompiledRoute when it is first
+ * asked for, so that a window merged into the previous one (see RouteState.Merge) never pays for
+ * compiling the segments it shares with it.
+ */
+
+public class RouteResponse {
+    protected final double[] RouteLatitudes;
+    protected final double[] RouteLongitudes;
+    protected final double Padding;
+    protected final DistanceMode Mode;
+    protected final List<RouteMessage> Messages;
+    protected CompiledRoute Route;
+
+
+    /**
+     * Constructs a new RouteResponse.
+     *
+     * @param route compiled route, null if the response did not contain one
+     * @param messages messages in response order
+     */
+    public RouteResponse(CompiledRoute route, List<RouteMessage> messages) {
+        Route = route;
+        RouteLatitudes = null;
+        RouteLongitudes = null;
+        Padding = (route != null ? route.GetPadding() : 0);
+        Mode = (route != null ? route.GetMode() : DistanceMode.PLANAR);
+        Messages = messages;
+    }
+
+    /**
+     * Constructs a new RouteResponse whose route is compiled on first use.
+     *
+     * @param latitudes route vertex latitudes
+     * @param longitudes route vertex longitudes
+     * @param padding corridor half-width of the route, in meters
+     * @param mode math used by the route
+     * @param messages messages in response order
+     */
+    public RouteResponse(double[] latitudes, double[] longitudes, double padding, DistanceMode mode, List<RouteMessage> messages) {
+        RouteLatitudes = latitudes;
+        RouteLongitudes = longitudes;
+        Padding = padding;
+        Mode = mode;
+        Messages = messages;
+    }
+
+    /**
+     * Returns the compiled route, compiling it if needed.
+     *
+     * @return route, or null if the response did not contain one
+     */
+    public CompiledRoute GetRoute() {
+        if(Route == null && RouteLatitudes != null)
+            Route = new CompiledRoute(RouteLatitudes, RouteLongitudes, null, Padding, Mode);
+        return Route;
+    }
+
+    public boolean HasRoute() {
+        return Route != null || RouteLatitudes != null;
+    }
+
+    /**
+     * Returns the route vertex latitudes, without compiling the route.
+     *
+     * @return latitudes, or null if the response did not contain a route
+     */
+    public double[] GetRouteLatitudes() {
+        return (Route != null && RouteLatitudes == null ? Route.Latitudes : RouteLatitudes);
+    }
+
+    /**
+     * Returns the route vertex longitudes, without compiling the route.
+     *
+     * @return longitudes, or null if the response did not contain a route
+     */
+    public double[] GetRouteLongitudes() {
+        return (Route != null && RouteLongitudes == null ? Route.Longitudes : RouteLongitudes);
+    }
+
+    public double GetPadding() {
+        return Padding;
+    }
+
+    public DistanceMode GetMode() {
+        return Mode;
+    }
+
+    public List<RouteMessage> GetMessages() {
+        return Messages;
+    }
+}
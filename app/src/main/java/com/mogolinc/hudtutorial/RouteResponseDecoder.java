@@ -0,0 +1,304 @@
+package com.mogolinc.hudtutorial;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming decoder for conditions/route responses.
+ * <br /><br />
+ * Reads the GeoJSON FeatureCollection token by token and emits the route and the message records
+ * directly, without materializing the response string or a JSON object tree. Coordinates are
+ * accumulated straight into primitive arrays, and every message geometry is prepared as a
+ * HazardGeometry while the response is decoded. The route is compiled when the RouteResponse
+ * is first asked for it.
+ * <br /><br />
+ * Features without a condition carry nothing to display and are skipped; a missing
+ * subcondition is read as "".
+ */
+
+public class RouteResponseDecoder {
+    protected final double Padding;
+    protected final DistanceMode Mode;
+
+
+    /**
+     * Constructs a new RouteResponseDecoder compiling routes with PLANAR math.
+     *
+     * @param padding corridor half-width of decoded routes, in meters
+     */
+    public RouteResponseDecoder(double padding) {
+        this(padding, DistanceMode.PLANAR);
+    }
+
+    /**
+     * Constructs a new RouteResponseDecoder.
+     *
+     * @param padding corridor half-width of decoded routes, in meters
+     * @param mode math used by decoded routes
+     */
+    public RouteResponseDecoder(double padding, DistanceMode mode) {
+        Padding = padding;
+        Mode = mode;
+    }
+
+    public DistanceMode GetMode() {
+        return Mode;
+    }
+
+
+    /**
+     * Decodes a UTF-8 encoded response body. The stream is not closed.
+     *
+     * @param in response body
+     * @return decoded response
+     * @throws IOException if the stream cannot be read or is not a valid response
+     */
+    public RouteResponse Decode(InputStream in) throws IOException {
+        return Decode(new InputStreamReader(in, "UTF-8"));
+    }
+
+    /**
+     * Decodes a response body in the compact RouteResponseFormat. The stream is not closed.
+     *
+     * @param in response body
+     * @return decoded response
+     * @throws IOException if the stream cannot be read or is not a valid response
+     */
+    public RouteResponse DecodeCompact(InputStream in) throws IOException {
+        return RouteResponseFormat.Decode(in, Padding, Mode);
+    }
+
+    /**
+     * Decodes a response body. The reader is not closed.
+     *
+     * @param in response body
+     * @return decoded response
+     * @throws IOException if the stream cannot be read or is not a valid response
+     */
+    public RouteResponse Decode(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        try {
+            return ReadCollection(reader);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException(String.format("Malformed route response: %s", e.getMessage()), e);
+        }
+    }
+
+    private RouteResponse ReadCollection(JsonReader reader) throws IOException {
+        double[] latitudes = null;
+        double[] longitudes = null;
+        List<RouteMessage> messages = new ArrayList<>();
+        FeatureBuffer feature = new FeatureBuffer();
+
+        reader.beginObject();
+        while(reader.hasNext()) {
+            if(!reader.nextName().equals("features")) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+            while(reader.hasNext()) {
+                feature.Reset();
+                ReadFeature(reader, feature);
+
+                if("route".equalsIgnoreCase(feature.Type)) {
+                    latitudes = feature.Latitudes.ToArray();
+                    longitudes = feature.Longitudes.ToArray();
+                } else if("feature".equalsIgnoreCase(feature.Type) && feature.Condition != null) {
+                    messages.add(feature.ToMessage());
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+
+        return new RouteResponse(latitudes, longitudes, Padding, Mode, messages);
+    }
+
+    private void ReadFeature(JsonReader reader, FeatureBuffer feature) throws IOException {
+        reader.beginObject();
+        while(reader.hasNext()) {
+            switch(reader.nextName()) {
+                case "type": feature.Type = reader.nextString(); break;
+                case "geometry": ReadGeometry(reader, feature); break;
+                case "properties": ReadProperties(reader, feature); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+    }
+
+    private void ReadGeometry(JsonReader reader, FeatureBuffer feature) throws IOException {
+        if(reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+
+        reader.beginObject();
+        while(reader.hasNext()) {
+            switch(reader.nextName()) {
+                case "type": feature.GeometryType = reader.nextString().toLowerCase(); break;
+                case "coordinates": ReadCoordinates(reader, feature); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+    }
+
+    private void ReadProperties(JsonReader reader, FeatureBuffer feature) throws IOException {
+        if(reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+
+        reader.beginObject();
+        while(reader.hasNext()) {
+            switch(reader.nextName()) {
+                case "condition": feature.Condition = NextStringOrNull(reader); break;
+                case "subcondition": feature.Subcondition = NextStringOrNull(reader); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads nested coordinate arrays of any depth, appending every [lon, lat, ...] position.
+     * <br /><br />
+     * Arrays of positions end a part; arrays of parts end a polygon.
+     *
+     * @return nesting level of the array read: 0 for a position, 1 for an array of positions, ...
+     */
+    private int ReadCoordinates(JsonReader reader, FeatureBuffer feature) throws IOException {
+        reader.beginArray();
+        if(reader.hasNext() && reader.peek() == JsonToken.NUMBER) {
+            // A single position
+            double lon = reader.nextDouble();
+            double lat = reader.nextDouble();
+            while(reader.hasNext())
+                reader.skipValue();
+            reader.endArray();
+            feature.Latitudes.Add(lat);
+            feature.Longitudes.Add(lon);
+            return 0;
+        }
+
+        int level = 1;
+        while(reader.hasNext())
+            level = ReadCoordinates(reader, feature) + 1;
+        reader.endArray();
+
+        if(level == 1)
+            feature.PartEnds.Add(feature.Latitudes.Size);
+        else if(level == 2)
+            feature.PolygonEnds.Add(feature.PartEnds.Size);
+        return level;
+    }
+
+    private static String NextStringOrNull(JsonReader reader) throws IOException {
+        if(reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+
+    /**
+     * Scratch state of the feature being decoded, reused between features.
+     */
+    private static class FeatureBuffer {
+        String Type;
+        String GeometryType;
+        String Condition;
+        String Subcondition;
+        final DoubleList Latitudes = new DoubleList();
+        final DoubleList Longitudes = new DoubleList();
+        final IntList PartEnds = new IntList();
+        final IntList PolygonEnds = new IntList();
+
+        void Reset() {
+            Type = null;
+            GeometryType = null;
+            Condition = null;
+            Subcondition = null;
+            Latitudes.Clear();
+            Longitudes.Clear();
+            PartEnds.Clear();
+            PolygonEnds.Clear();
+        }
+
+        RouteMessage ToMessage() {
+            HazardGeometry.Kind kind = HazardGeometry.KindOf(GeometryType);
+            HazardGeometry geometry = null;
+            if(kind != null && Latitudes.Size > 0) {
+                // A Point has no array of positions, and a MultiPoint is a single one.
+                int[] partEnds = (kind == HazardGeometry.Kind.POINTS || PartEnds.Size == 0 ?
+                        new int[] { Latitudes.Size } : PartEnds.ToArray());
+                int[] polygonEnds = (PolygonEnds.Size > 0 ? PolygonEnds.ToArray() : null);
+                geometry = new HazardGeometry(kind, Latitudes.ToArray(), Longitudes.ToArray(), partEnds, polygonEnds);
+            }
+
+            // Areas have no start point.
+            boolean hasStart = (geometry != null && kind != HazardGeometry.Kind.AREAS);
+
+            return new RouteMessage(Condition, Subcondition != null ? Subcondition : "", GeometryType,
+                    hasStart ? Latitudes.Values[0] : Double.NaN,
+                    hasStart ? Longitudes.Values[0] : Double.NaN,
+                    geometry);
+        }
+    }
+
+    /**
+     * Growable primitive double array.
+     */
+    private static class DoubleList {
+        double[] Values = new double[64];
+        int Size;
+
+        void Add(double value) {
+            if(Size == Values.length)
+                Values = Arrays.copyOf(Values, Size * 2);
+            Values[Size++] = value;
+        }
+
+        void Clear() {
+            Size = 0;
+        }
+
+        double[] ToArray() {
+            return Arrays.copyOf(Values, Size);
+        }
+    }
+
+    /**
+     * Growable primitive int array.
+     */
+    private static class IntList {
+        int[] Values = new int[16];
+        int Size;
+
+        void Add(int value) {
+            if(Size == Values.length)
+                Values = Arrays.copyOf(Values, Size * 2);
+            Values[Size++] = value;
+        }
+
+        void Clear() {
+            Size = 0;
+        }
+
+        int[] ToArray() {
+            return Arrays.copyOf(Values, Size);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.mogolinc.hudtutorial;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact wire encoding of a conditions/route response, negotiated as ContentType.
+ * <br /><br />
+ * A length-prefixed stream of features after a short header:
+ * <pre>
+ *   byte[4] magic "HUDF"
+ *   byte    version
+ *   feature*
+ *   varint  0                                   end of stream
+ *
+ *   feature: varint length L (> 0), then L bytes:
+ *     byte  tag
+ *     tag 1, route:   varint vertex count V, V x coordinate
+ *     tag 2, message: string condition, string subcondition, string geometry type,
+ *                     varint vertex count V; if V > 0:
+ *                     byte kind (HazardGeometry.Kind ordinal), varint part count P,
+ *                     P x varint part length, varint polygon count G, G x varint polygon part count,
+ *                     V x coordinate
+ * </pre>
+ * Varints are unsigned LEB128. Strings are a varint of the UTF-8 length plus one, 0 for null,
+ * followed by the bytes. Coordinates are zigzag varint deltas of latitude then longitude in
+ * degrees * 1e7 from the previous coordinate of the same feature (the first from 0,0), as in
+ * encoded polylines: the 7 decimals the JSON responses carry are kept exactly, and a typical
+ * vertex takes 4 to 6 bytes instead of about 25 characters. Decoders skip features with an
+ * unknown tag, and, as RouteResponseDecoder does, messages without a condition; a missing
+ * subcondition is read as "".
+ * <br /><br />
+ * Route coordinates are decoded straight into the arrays the CompiledRoute is built from, and
+ * message geometries into HazardGeometry arrays, with no intermediate text or tokens.
+ */
+
+public final class RouteResponseFormat {
+    public static final String ContentType = "application/vnd.mogolinc.route+binary";
+    public static final byte Version = 1;
+
+    private static final byte[] Magic = { 'H', 'U', 'D', 'F' };
+    private static final int RouteTag = 1;
+    private static final int MessageTag = 2;
+    private static final double Scale = 1e7;
+    private static final Charset Utf8 = Charset.forName("UTF-8");
+
+    private RouteResponseFormat() {
+    }
+
+    /**
+     * Encodes a response, e.g. for a server or a test.
+     *
+     * @param response response whose raw route vertices and messages to encode
+     * @return encoded bytes
+     */
+    public static byte[] Encode(RouteResponse response) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(Magic, 0, Magic.length);
+        out.write(Version);
+
+        Feature feature = new Feature();
+        if(response.HasRoute()) {
+            double[] latitudes = response.GetRouteLatitudes();
+            double[] longitudes = response.GetRouteLongitudes();
+            feature.reset();
+            feature.write(RouteTag);
+            WriteVarint(feature, latitudes.length);
+            WriteCoordinates(feature, latitudes, longitudes, latitudes.length);
+            feature.WriteTo(out);
+        }
+
+        for(RouteMessage message : response.GetMessages()) {
+            feature.reset();
+            feature.write(MessageTag);
+            WriteString(feature, message.GetCondition());
+            WriteString(feature, message.GetSubcondition());
+            WriteString(feature, message.GetGeometryType());
+
+            HazardGeometry geometry = message.GetGeometry();
+            int vertices = (geometry != null ? geometry.GetNumVertices() : 0);
+            WriteVarint(feature, vertices);
+            if(vertices > 0) {
+                feature.write(geometry.GetKind().ordinal());
+                WriteVarint(feature, geometry.GetNumParts());
+                for(int p = 0, start = 0; p < geometry.GetNumParts(); start = geometry.GetPartEnd(p++))
+                    WriteVarint(feature, geometry.GetPartEnd(p) - start);
+                WriteVarint(feature, geometry.GetNumPolygons());
+                for(int g = 0, start = 0; g < geometry.GetNumPolygons(); start = geometry.GetPolygonEnd(g++))
+                    WriteVarint(feature, geometry.GetPolygonEnd(g) - start);
+                WriteCoordinates(feature, geometry.Latitudes, geometry.Longitudes, vertices);
+            }
+            feature.WriteTo(out);
+        }
+
+        WriteVarint(out, 0);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a response. Reads the stream up to the end-of-stream marker.
+     *
+     * @param in encoded response
+     * @param padding corridor half-width of the decoded route, in meters
+     * @param mode math used by the decoded route
+     * @return decoded response
+     * @throws IOException on read failure or malformed input
+     */
+    public static RouteResponse Decode(InputStream in, double padding, DistanceMode mode) throws IOException {
+        byte[] header = new byte[Magic.length + 1];
+        ReadFully(in, header, header.length);
+        for(int i = 0; i < Magic.length; i++) {
+            if(header[i] != Magic[i])
+                throw new IOException("Not a compact route response");
+        }
+        if(header[Magic.length] != Version)
+            throw new IOException(String.format("Unsupported compact route response version %d", header[Magic.length]));
+
+        double[] latitudes = null;
+        double[] longitudes = null;
+        List<RouteMessage> messages = new ArrayList<>();
+        Cursor feature = new Cursor();
+
+        for(int length = ReadVarint(in); length > 0; length = ReadVarint(in)) {
+            feature.Load(in, length);
+            switch(feature.Byte()) {
+                case RouteTag: {
+                    int vertices = feature.Count();
+                    latitudes = new double[vertices];
+                    longitudes = new double[vertices];
+                    feature.Coordinates(latitudes, longitudes, vertices);
+                    break;
+                }
+                case MessageTag: {
+                    RouteMessage message = ReadMessage(feature);
+                    if(message.GetCondition() != null)
+                        messages.add(message);
+                    break;
+                }
+                default:
+                    break; // Newer feature; skipped
+            }
+        }
+
+        return new RouteResponse(latitudes, longitudes, padding, mode, messages);
+    }
+
+    private static RouteMessage ReadMessage(Cursor feature) throws IOException {
+        String condition = feature.String();
+        String subcondition = feature.String();
+        if(subcondition == null)
+            subcondition = "";
+        String geometryType = feature.String();
+        int vertices = feature.Count();
+        if(vertices == 0)
+            return new RouteMessage(condition, subcondition, geometryType, Double.NaN, Double.NaN, null);
+
+        int kindIndex = feature.Byte();
+        if(kindIndex >= HazardGeometry.Kind.values().length)
+            throw new IOException("Unknown geometry kind");
+        HazardGeometry.Kind kind = HazardGeometry.Kind.values()[kindIndex];
+
+        int[] partEnds = feature.Ends(vertices);
+        int polygons = feature.Count();
+        int[] polygonEnds = null;
+        if(polygons > 0) {
+            feature.Back();
+            polygonEnds = feature.Ends(partEnds.length);
+        }
+
+        double[] latitudes = new double[vertices];
+        double[] longitudes = new double[vertices];
+        feature.Coordinates(latitudes, longitudes, vertices);
+        HazardGeometry geometry = new HazardGeometry(kind, latitudes, longitudes, partEnds, polygonEnds);
+
+        // Areas have no start point, as in RouteResponseDecoder.
+        boolean hasStart = (kind != HazardGeometry.Kind.AREAS);
+        return new RouteMessage(condition, subcondition, geometryType,
+                hasStart ? latitudes[0] : Double.NaN, hasStart ? longitudes[0] : Double.NaN, geometry);
+    }
+
+    private static void WriteCoordinates(ByteArrayOutputStream out, double[] latitudes, double[] longitudes, int count) {
+        long lat = 0;
+        long lon = 0;
+        for(int i = 0; i < count; i++) {
+            long nextLat = Math.round(latitudes[i] * Scale);
+            long nextLon = Math.round(longitudes[i] * Scale);
+            WriteVarint(out, ZigZag(nextLat - lat));
+            WriteVarint(out, ZigZag(nextLon - lon));
+            lat = nextLat;
+            lon = nextLon;
+        }
+    }
+
+    private static void WriteString(ByteArrayOutputStream out, String value) {
+        if(value == null) {
+            WriteVarint(out, 0);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(Utf8);
+        WriteVarint(out, bytes.length + 1L);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void WriteVarint(ByteArrayOutputStream out, long value) {
+        while((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long ZigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int ReadVarint(InputStream in) throws IOException {
+        int value = 0;
+        for(int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if(b < 0)
+                throw new EOFException("Truncated compact route response");
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                if(value < 0)
+                    break;
+                return value;
+            }
+        }
+        throw new IOException("Corrupt compact route response length");
+    }
+
+    private static void ReadFully(InputStream in, byte[] buffer, int length) throws IOException {
+        for(int n = 0; n < length; ) {
+            int read = in.read(buffer, n, length - n);
+            if(read < 0)
+                throw new EOFException("Truncated compact route response");
+            n += read;
+        }
+    }
+
+    /**
+     * Feature being encoded, written out with its length prefix.
+     */
+    private static class Feature extends ByteArrayOutputStream {
+        void WriteTo(ByteArrayOutputStream out) {
+            WriteVarint(out, count);
+            out.write(buf, 0, count);
+        }
+    }
+
+    /**
+     * Reads the fields of one feature from a reused buffer.
+     */
+    private static class Cursor {
+        byte[] Buffer = new byte[256];
+        int Length;
+        int Position;
+        int Mark;
+
+        void Load(InputStream in, int length) throws IOException {
+            if(Buffer.length < length)
+                Buffer = new byte[Math.max(length, Buffer.length * 2)];
+            ReadFully(in, Buffer, length);
+            Length = length;
+            Position = 0;
+        }
+
+        int Byte() throws IOException {
+            if(Position >= Length)
+                throw new IOException("Truncated compact route feature");
+            return Buffer[Position++] & 0xFF;
+        }
+
+        long Varint() throws IOException {
+            long value = 0;
+            for(int shift = 0; shift < 64; shift += 7) {
+                int b = Byte();
+                value |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IOException("Corrupt compact route varint");
+        }
+
+        /**
+         * Reads a count, which can be no larger than the bytes left in the feature.
+         */
+        int Count() throws IOException {
+            Mark = Position;
+            long value = Varint();
+            if(value > Length - Position)
+                throw new IOException("Corrupt compact route count");
+            return (int) value;
+        }
+
+        /**
+         * Steps back to before the last count.
+         */
+        void Back() {
+            Position = Mark;
+        }
+
+        /**
+         * Reads a count followed by as many lengths, returning their running sums, which must
+         * add up to "total".
+         */
+        int[] Ends(int total) throws IOException {
+            int[] ends = new int[Count()];
+            int end = 0;
+            for(int i = 0; i < ends.length; i++) {
+                long length = Varint();
+                if(length > total - end)
+                    throw new IOException("Corrupt compact route parts");
+                end += (int) length;
+                ends[i] = end;
+            }
+            if(end != total)
+                throw new IOException("Corrupt compact route parts");
+            return ends;
+        }
+
+        String String() throws IOException {
+            long length = Varint();
+            if(length == 0)
+                return null;
+            if(length - 1 > Length - Position)
+                throw new IOException("Corrupt compact route string");
+
+            String value = new String(Buffer, Position, (int) (length - 1), Utf8);
+            Position += (int) (length - 1);
+            return value;
+        }
+
+        void Coordinates(double[] latitudes, double[] longitudes, int count) throws IOException {
+            long lat = 0;
+            long lon = 0;
+            for(int i = 0; i < count; i++) {
+                long dLat = Varint();
+                long dLon = Varint();
+                lat += (dLat >>> 1) ^ -(dLat & 1);
+                lon += (dLon >>> 1) ^ -(dLon & 1);
+                latitudes[i] = lat / Scale;
+                longitudes[i] = lon / Scale;
+            }
+        }
+    }
+}
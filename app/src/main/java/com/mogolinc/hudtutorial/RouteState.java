@@ -0,0 +1,210 @@
+package com.mogolinc.hudtutorial;
+
+/**
+ * Immutable route window: a compiled route and the messages projected onto it.
+ * <br /><br />
+ * Built off the display thread when a response arrives and handed to a RouteTracker as a
+ * whole, so that a window is either fully in use or not at all.
+ * <br /><br />
+ * Consecutive windows overlap by about half. Merge builds the next window from the previous one
+ * instead: segments behind the vehicle are evicted, segments still ahead are reused as compiled,
+ * only the new tail of the response is compiled, and hazards already known keep their message
+ * and offset.
+ * <br /><br />
+ * Long windows, of more than PackThreshold vertices, are stored as a PackedRoute instead, and
+ * only a stretch of StretchSegments segments from the vehicle on is compiled: GetRoute returns
+ * that stretch, with offsets along the whole window. Advance moves on to the next stretch once
+ * the vehicle is halfway through the current one, and Locate jumps to the stretch of a position
+ * off the current one. Packed windows are not merged.
+ */
+
+public class RouteState {
+    /** Vertices above which a PLANAR window is stored as a PackedRoute. */
+    public static final int PackThreshold = 4096;
+    /** Segments of a packed window compiled at a time. */
+    public static final int StretchSegments = 1024;
+
+    protected final CompiledRoute Route;
+    protected final MessageTimeline Messages;
+    protected final PackedRoute Packed;
+    protected final int First;
+
+
+    /**
+     * Constructs a new RouteState.
+     *
+     * @param route compiled route
+     * @param messages messages projected onto route
+     */
+    public RouteState(CompiledRoute route, MessageTimeline messages) {
+        this(route, messages, null, 0);
+    }
+
+    /**
+     * Constructs a new RouteState over a packed route, compiling its first stretch.
+     *
+     * @param route packed route
+     * @param messages messages projected onto route
+     */
+    public RouteState(PackedRoute route, MessageTimeline messages) {
+        this(CompileStretch(route, 0), messages, route, 0);
+    }
+
+    private RouteState(CompiledRoute route, MessageTimeline messages, PackedRoute packed, int first) {
+        Route = route;
+        Messages = messages;
+        Packed = packed;
+        First = first;
+    }
+
+
+    /**
+     * Projects the messages of a response onto its route.
+     *
+     * @param response decoded response
+     * @return new RouteState, or null if the response did not contain a route
+     */
+    public static RouteState FromResponse(RouteResponse response) {
+        if(!response.HasRoute())
+            return null;
+
+        double[] latitudes = response.GetRouteLatitudes();
+        if(latitudes.length > PackThreshold && response.GetMode() == DistanceMode.PLANAR) {
+            PackedRoute route = new PackedRoute(latitudes, response.GetRouteLongitudes(), response.GetPadding());
+            return new RouteState(route, new MessageTimeline(route, response.GetMessages()));
+        }
+
+        return new RouteState(response.GetRoute(), new MessageTimeline(response.GetRoute(), response.GetMessages()));
+    }
+
+    /**
+     * Merges a response into the previous window.
+     * <br /><br />
+     * The response's route must start on the previous route at or after segment "keepFrom",
+     * follow it to its end and continue beyond it. The merged route is then the previous route
+     * from segment "keepFrom" onwards, followed by the vertices of the response past the end of
+     * the previous route. Otherwise, e.g. after a detour or if either window is packed, the
+     * response is used on its own as by FromResponse.
+     *
+     * @param previous previous window, or null
+     * @param keepFrom first segment of the previous route to keep, i.e. the vehicle's segment
+     * @param response decoded response
+     * @return new RouteState, or null if the response did not contain a route
+     */
+    public static RouteState Merge(RouteState previous, int keepFrom, RouteResponse response) {
+        if(!response.HasRoute())
+            return null;
+        if(previous == null || keepFrom < 0 || keepFrom >= previous.Route.GetNumSegments() || previous.Packed != null
+                || response.GetRouteLatitudes().length > PackThreshold)
+            return FromResponse(response);
+
+        double[] latitudes = response.GetRouteLatitudes();
+        double[] longitudes = response.GetRouteLongitudes();
+        int tail = FindTail(previous.Route, keepFrom, latitudes, longitudes);
+        if(tail < 0)
+            return FromResponse(response);
+
+        CompiledRoute route = CompiledRoute.Extend(previous.Route, keepFrom, latitudes, longitudes, tail);
+        double shift = previous.Route.GetCumulativeDistance(keepFrom);
+        return new RouteState(route, new MessageTimeline(route, response.GetMessages(), previous.Messages, shift));
+    }
+
+    /**
+     * Returns the window to track a vehicle on segment "segment" of GetRoute with. For a packed
+     * window whose vehicle is halfway through the compiled stretch, this is the same window with
+     * the stretch starting at that segment compiled instead; otherwise it is this window.
+     *
+     * @param segment segment of GetRoute the vehicle is on
+     * @return window to track with from now on
+     */
+    public RouteState Advance(int segment) {
+        if(Packed == null || segment < StretchSegments / 2 || First + Route.GetNumSegments() >= Packed.GetNumSegments())
+            return this;
+
+        return new RouteState(CompileStretch(Packed, First + segment), Messages, Packed, First + segment);
+    }
+
+    /**
+     * Returns the window to track a vehicle at a position that is not on GetRoute with. For a
+     * packed window with the position on another stretch, this is the same window with the
+     * stretch starting at the position's segment compiled instead; otherwise it is this window.
+     *
+     * @param lat latitude
+     * @param lon longitude
+     * @return window to track with from now on
+     */
+    public RouteState Locate(double lat, double lon) {
+        if(Packed == null)
+            return this;
+
+        int segment = Packed.FindSegment(lat, lon, 0);
+        if(segment < 0 || (segment >= First && segment < First + Route.GetNumSegments()))
+            return this;
+
+        return new RouteState(CompileStretch(Packed, segment), Messages, Packed, segment);
+    }
+
+    /**
+     * Compiles the stretch of a packed route from vertex "from" on.
+     */
+    static CompiledRoute CompileStretch(PackedRoute route, int from) {
+        return route.Compile(from, Math.max(from, Math.min(from + StretchSegments, route.GetNumVertices() - 1)));
+    }
+
+    /**
+     * Returns the first vertex of a newer window past the end of "route", or -1 if the newer
+     * window does not start on the route at or after segment "from" and leave it through its
+     * last vertex.
+     */
+    static int FindTail(CompiledRoute route, int from, double[] latitudes, double[] longitudes) {
+        int segment = from;
+        int i = 0;
+        for(; i < latitudes.length; i++) {
+            int match = route.FindSegment(latitudes[i], longitudes[i], segment);
+            if(match < 0)
+                break;
+            segment = match;
+        }
+
+        int last = route.GetNumSegments() - 1;
+        if(i == 0 || i == latitudes.length || segment != last)
+            return -1;
+
+        // The step off the route must pass through its end, not branch off before it.
+        double distance = GeoMath.PlanarDistanceToSegment(route.GetLatitude(last + 1), route.GetLongitude(last + 1),
+                latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+        return (distance <= route.GetPadding() ? i : -1);
+    }
+
+    /**
+     * Returns the compiled route, or for a packed window the compiled stretch ahead of the
+     * vehicle. Offsets along it are offsets along the whole window.
+     *
+     * @return compiled route
+     */
+    public CompiledRoute GetRoute() {
+        return Route;
+    }
+
+    /**
+     * Returns the packed route of a long window.
+     *
+     * @return packed route, or null if the whole window is compiled
+     */
+    public PackedRoute GetPacked() {
+        return Packed;
+    }
+
+    /**
+     * Returns the length of the whole window, which for a packed window extends past GetRoute.
+     *
+     * @return length in meters
+     */
+    public double GetLength() {
+        return (Packed != null ? Packed.GetLength() : Route.GetLength());
+    }
+
+    public MessageTimeline GetMessages() {
+        return Messages;
+    }
+}
@@ -0,0 +1,289 @@
+package com.mogolinc.hudtutorial;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of a RouteState.
+ * <br /><br />
+ * Layout (little endian):
+ * <pre>
+ *   int    magic "HUDR"
+ *   short  version
+ *   short  reserved
+ *   int    vertex count V
+ *   int    message count M
+ *   int    string count S
+ *   double padding, meters
+ *   int[V] vertex latitudes, degrees * 1e7
+ *   int[V] vertex longitudes, degrees * 1e7
+ *   double[V] cumulative distances, meters
+ *   S x { short length, UTF-8 bytes }          string table
+ *   M x { double offset, int condition, int subcondition, int geometry type,
+ *         int start latitude * 1e7, int start longitude * 1e7 }
+ * </pre>
+ * Message strings are indices into the string table, -1 for null. Messages are stored already
+ * projected onto the route and sorted by offset; a missing start point is Integer.MIN_VALUE.
+ * <br /><br />
+ * A packed window (see RouteState) is stored whole, and decoded packed again.
+ * <br /><br />
+ * Fixed-point coordinates are accurate to about 1 cm. Vertex data is read with bulk gets into
+ * primitive arrays, so a window loads from a MappedByteBuffer without per-vertex objects, JSON
+ * parsing or distance computation.
+ */
+
+public final class RouteStateFormat {
+    public static final int Magic = 0x52445548; // "HUDR" read little endian
+    public static final short Version = 1;
+
+    private static final double Scale = 1e7;
+    private static final int NoCoordinate = Integer.MIN_VALUE;
+    private static final int HeaderSize = 4 + 2 + 2 + 4 + 4 + 4 + 8;
+    private static final int MessageSize = 8 + 4 * 5;
+    private static final Charset Utf8 = Charset.forName("UTF-8");
+
+    private RouteStateFormat() {
+    }
+
+    /**
+     * Encodes a RouteState.
+     *
+     * @param state window to encode
+     * @return encoded bytes
+     */
+    public static byte[] Encode(RouteState state) {
+        CompiledRoute route = state.GetRoute();
+        PackedRoute packed = state.GetPacked();
+        MessageTimeline messages = state.GetMessages();
+        int vertices = (packed != null ? packed.GetNumVertices() : route.GetNumVertices());
+
+        // Intern message strings
+        List<byte[]> strings = new ArrayList<>();
+        Map<String, Integer> stringIds = new HashMap<>();
+        int[] ids = new int[messages.GetNumMessages() * 3];
+        int stringBytes = 0;
+        for(int i = 0; i < messages.GetNumMessages(); i++) {
+            RouteMessage message = messages.GetMessage(i);
+            String[] values = { message.GetCondition(), message.GetSubcondition(), message.GetGeometryType() };
+            for(int k = 0; k < 3; k++) {
+                if(values[k] == null) {
+                    ids[i * 3 + k] = -1;
+                    continue;
+                }
+                Integer id = stringIds.get(values[k]);
+                if(id == null) {
+                    byte[] bytes = values[k].getBytes(Utf8);
+                    if(bytes.length > Short.MAX_VALUE)
+                        throw new IllegalArgumentException("String too long for the string table");
+                    id = strings.size();
+                    strings.add(bytes);
+                    stringIds.put(values[k], id);
+                    stringBytes += 2 + bytes.length;
+                }
+                ids[i * 3 + k] = id;
+            }
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(HeaderSize + vertices * 16 + stringBytes + messages.GetNumMessages() * MessageSize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(Magic);
+        out.putShort(Version);
+        out.putShort((short) 0);
+        out.putInt(vertices);
+        out.putInt(messages.GetNumMessages());
+        out.putInt(strings.size());
+        out.putDouble(route.GetPadding());
+
+        if(packed != null) {
+            PutVertices(out, packed, vertices);
+        } else {
+            for(int i = 0; i < vertices; i++)
+                out.putInt(ToFixed(route.GetLatitude(i)));
+            for(int i = 0; i < vertices; i++)
+                out.putInt(ToFixed(route.GetLongitude(i)));
+            for(int i = 0; i < vertices; i++)
+                out.putDouble(route.GetCumulativeDistance(i));
+        }
+
+        for(byte[] bytes : strings) {
+            out.putShort((short) bytes.length);
+            out.put(bytes);
+        }
+
+        for(int i = 0; i < messages.GetNumMessages(); i++) {
+            RouteMessage message = messages.GetMessage(i);
+            out.putDouble(messages.GetOffset(i));
+            out.putInt(ids[i * 3]);
+            out.putInt(ids[i * 3 + 1]);
+            out.putInt(ids[i * 3 + 2]);
+            out.putInt(message.HasStart() ? ToFixed(message.GetStartLatitude()) : NoCoordinate);
+            out.putInt(message.HasStart() ? ToFixed(message.GetStartLongitude()) : NoCoordinate);
+        }
+
+        return out.array();
+    }
+
+    /**
+     * Decodes a RouteState using PLANAR math. See Decode(ByteBuffer, DistanceMode).
+     *
+     * @param buffer encoded window, e.g. a MappedByteBuffer
+     * @return decoded window
+     * @throws IOException if the buffer does not hold a valid encoded window
+     */
+    public static RouteState Decode(ByteBuffer buffer) throws IOException {
+        return Decode(buffer, DistanceMode.PLANAR);
+    }
+
+    /**
+     * Decodes a RouteState from the buffer's position onwards. The buffer's position is
+     * advanced past the encoded window; its byte order is left unchanged.
+     *
+     * @param buffer encoded window, e.g. a MappedByteBuffer
+     * @param mode math used by the decoded route
+     * @return decoded window
+     * @throws IOException if the buffer does not hold a valid encoded window
+     */
+    public static RouteState Decode(ByteBuffer buffer, DistanceMode mode) throws IOException {
+        ByteBuffer in = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if(in.getInt() != Magic)
+                throw new IOException("Not an encoded route window");
+            short version = in.getShort();
+            if(version != Version)
+                throw new IOException(String.format("Unsupported route window version %d", version));
+            in.getShort();
+
+            int vertices = in.getInt();
+            int count = in.getInt();
+            int stringCount = in.getInt();
+            double padding = in.getDouble();
+            if(vertices < 0 || count < 0 || stringCount < 0 || (long) vertices * 16 > in.remaining())
+                throw new IOException("Corrupt route window header");
+
+            double[] latitudes = new double[vertices];
+            double[] longitudes = new double[vertices];
+            double[] cumulative = new double[vertices];
+            int[] fixed = new int[vertices];
+
+            in.asIntBuffer().get(fixed);
+            in.position(in.position() + vertices * 4);
+            for(int i = 0; i < vertices; i++)
+                latitudes[i] = fixed[i] / Scale;
+            in.asIntBuffer().get(fixed);
+            in.position(in.position() + vertices * 4);
+            for(int i = 0; i < vertices; i++)
+                longitudes[i] = fixed[i] / Scale;
+            in.asDoubleBuffer().get(cumulative);
+            in.position(in.position() + vertices * 8);
+
+            String[] strings = new String[stringCount];
+            for(int i = 0; i < stringCount; i++) {
+                short length = in.getShort();
+                if(length < 0)
+                    throw new IOException("Corrupt route window string table");
+                byte[] bytes = new byte[length];
+                in.get(bytes);
+                strings[i] = new String(bytes, Utf8);
+            }
+
+            RouteMessage[] messages = new RouteMessage[count];
+            double[] offsets = new double[count];
+            for(int i = 0; i < count; i++) {
+                offsets[i] = in.getDouble();
+                String condition = StringAt(strings, in.getInt());
+                String subcondition = StringAt(strings, in.getInt());
+                String geometryType = StringAt(strings, in.getInt());
+                int startLat = in.getInt();
+                int startLon = in.getInt();
+                messages[i] = new RouteMessage(condition, subcondition, geometryType,
+                        startLat == NoCoordinate ? Double.NaN : startLat / Scale,
+                        startLon == NoCoordinate ? Double.NaN : startLon / Scale);
+            }
+
+            buffer.position(buffer.position() + in.position());
+
+            if(vertices > RouteState.PackThreshold && mode == DistanceMode.PLANAR)
+                return new RouteState(new PackedRoute(latitudes, longitudes, padding), new MessageTimeline(messages, offsets));
+
+            CompiledRoute route = new CompiledRoute(latitudes, longitudes, cumulative, padding, mode);
+            return new RouteState(route, new MessageTimeline(messages, offsets));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupt route window", e);
+        }
+    }
+
+    /**
+     * Maps a file holding an encoded window and decodes it.
+     *
+     * @param file encoded window
+     * @return decoded window
+     * @throws IOException if the file cannot be read or is not a valid encoded window
+     */
+    public static RouteState Load(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            return Decode(mapped);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Converts a conditions/route GeoJSON response to the binary format.
+     *
+     * @param json response body
+     * @param padding corridor half-width, in meters
+     * @return encoded window
+     * @throws IOException if the response is malformed or does not contain a route
+     */
+    public static byte[] FromGeoJson(InputStream json, double padding) throws IOException {
+        RouteState state = RouteState.FromResponse(new RouteResponseDecoder(padding).Decode(json));
+        if(state == null)
+            throw new IOException("Response does not contain a route");
+
+        return Encode(state);
+    }
+
+    /**
+     * Writes the vertex arrays of a packed route, one compiled stretch at a time.
+     */
+    private static void PutVertices(ByteBuffer out, PackedRoute route, int vertices) {
+        int latitudes = out.position();
+        int longitudes = latitudes + vertices * 4;
+        int distances = longitudes + vertices * 4;
+        for(int from = 0; from < vertices; from += RouteState.StretchSegments + 1) {
+            CompiledRoute stretch = RouteState.CompileStretch(route, from);
+            for(int i = 0; i < stretch.GetNumVertices(); i++) {
+                out.putInt(latitudes + (from + i) * 4, ToFixed(stretch.GetLatitude(i)));
+                out.putInt(longitudes + (from + i) * 4, ToFixed(stretch.GetLongitude(i)));
+                out.putDouble(distances + (from + i) * 8, stretch.GetCumulativeDistance(i));
+            }
+        }
+        out.position(distances + vertices * 8);
+    }
+
+    private static int ToFixed(double degrees) {
+        return (int) Math.round(degrees * Scale);
+    }
+
+    private static String StringAt(String[] strings, int idx) throws IOException {
+        if(idx == -1)
+            return null;
+        if(idx < 0 || idx >= strings.length)
+            throw new IOException("Corrupt route window string index");
+        return strings[idx];
+    }
+}
@@ -0,0 +1,341 @@
+package com.mogolinc.hudtutorial;
+
+/**
+ * Per-fix routing logic of the HUD, independent of Android.
+ * <br /><br />
+ * Matches fixes against the front RouteState and decides when the next window must be fetched.
+ * Windows are double-buffered: a prefetched window is held in a back buffer and swapped in
+ * atomically once the vehicle reaches the refresh boundary (or leaves the front route), so the
+ * display never goes without data while a request is in flight.
+ * <br /><br />
+ * Leaving the route is subject to hysteresis, so that noisy fixes near the corridor edge do not
+ * flip the tracker off route and trigger a fetch each. A fix outside every corridor only takes
+ * the tracker off route once OffRouteMisses fixes in a row have missed, or as soon as it is
+ * farther than OffRouteMargin beyond the corridor of the last matched segment. Until then the
+ * tracker stays on route at the last matched offset.
+ * <br /><br />
+ * On a packed front window, the front is moved on to the next compiled stretch as the vehicle
+ * drives through it, or jumps to the stretch of a fix off the current one (see RouteState.Advance
+ * and Locate). Offsets are along the whole window throughout.
+ * <br /><br />
+ * Not thread safe; all calls must come from the thread that owns the tracker.
+ */
+
+public class RouteTracker {
+    /**
+     * Distance from the position of an in-flight request beyond which an off-route fix
+     * supersedes it, in meters.
+     */
+    public static final double SupersedeDistance = 100;
+
+    /**
+     * Number of consecutive fixes outside the route corridor that take the tracker off route.
+     */
+    public static final int OffRouteMisses = 3;
+
+    /**
+     * Distance beyond the route corridor within which misses are tolerated, in meters.
+     */
+    public static final double OffRouteMargin = 20;
+
+    protected final double RefreshDistance;
+    protected final PrefetchScheduler Scheduler;
+
+    protected RouteState Front = null;
+    protected RouteCursor Cursor = null;
+    protected RouteState Back = null;
+    protected boolean FetchInProgress = false;
+    protected double FetchLatitude;
+    protected double FetchLongitude;
+    protected boolean OnRoute = false;
+    protected double Offset = -1;
+    protected int Segment = -1;
+    protected int Misses = 0;
+    protected int LastTests = 0;
+
+    protected double LastLatitude;
+    protected double LastLongitude;
+    protected double LastBearing;
+    protected boolean LastHasBearing;
+    protected double LastSpeed;
+
+
+    /**
+     * Constructs a new RouteTracker with no route.
+     *
+     * @param refreshDistance offset along the front route at which the back buffer is swapped in, in meters
+     * @param scheduler prefetch scheduler
+     */
+    public RouteTracker(double refreshDistance, PrefetchScheduler scheduler) {
+        RefreshDistance = refreshDistance;
+        Scheduler = scheduler;
+    }
+
+
+    /**
+     * Matches a new fix, swapping in the back buffer if the refresh boundary has been reached.
+     *
+     * @param lat fix latitude
+     * @param lon fix longitude
+     * @param bearing fix bearing in degrees, ignored if hasBearing is false
+     * @param hasBearing whether bearing is valid
+     * @param speed fix speed in m/s, 0 if unknown
+     * @return true if the fix is on the front route
+     */
+    public boolean Update(double lat, double lon, double bearing, boolean hasBearing, double speed) {
+        LastLatitude = lat;
+        LastLongitude = lon;
+        LastBearing = bearing;
+        LastHasBearing = hasBearing;
+        LastSpeed = speed;
+
+        boolean matched = Cursor != null && Cursor.Update(lat, lon, bearing, hasBearing);
+        LastTests = (Cursor != null ? Cursor.GetLastTestCount() : 0);
+
+        if(matched) {
+            OnRoute = true;
+            Offset = Cursor.GetOffset();
+            Segment = Cursor.GetSegment();
+            Misses = 0;
+            Move(Front.Advance(Segment), lat, lon, bearing, hasBearing);
+        } else if(Front != null && Move(Front.Locate(lat, lon), lat, lon, bearing, hasBearing)) {
+            OnRoute = true;
+            Misses = 0;
+        } else {
+            OnRoute = OnRoute && Hold(lat, lon);
+        }
+
+        if(Back != null && (!OnRoute || Offset >= RefreshDistance))
+            Swap();
+
+        return OnRoute;
+    }
+
+    /**
+     * Moves a packed front window on to another stretch, see RouteState.Advance and Locate.
+     * Returns true if "next" differs from the front and the fix is on it.
+     */
+    private boolean Move(RouteState next, double lat, double lon, double bearing, boolean hasBearing) {
+        if(next == Front)
+            return false;
+
+        RouteCursor cursor = new RouteCursor(next.GetRoute());
+        boolean matched = cursor.Update(lat, lon, bearing, hasBearing);
+        LastTests += cursor.GetLastTestCount();
+        if(!matched)
+            return false;
+
+        Front = next;
+        Cursor = cursor;
+        Offset = cursor.GetOffset();
+        Segment = cursor.GetSegment();
+        return true;
+    }
+
+    /**
+     * Returns true if a fix that missed the route should leave the tracker on route.
+     */
+    private boolean Hold(double lat, double lon) {
+        if(++Misses >= OffRouteMisses)
+            return false;
+
+        CompiledRoute route = Front.GetRoute();
+        double distance = GeoMath.PlanarDistanceToSegment(lat, lon, route.GetLatitude(Segment), route.GetLongitude(Segment),
+                route.GetLatitude(Segment + 1), route.GetLongitude(Segment + 1));
+        return distance <= route.GetPadding() + OffRouteMargin;
+    }
+
+    /**
+     * Returns true if a request for the next window should be issued now.
+     * <br /><br />
+     * A request is needed when the last fix is off the front route, or when the scheduler
+     * predicts that the refresh boundary will be reached before a request completes. While a
+     * request is in flight, a new one is only needed if the vehicle is off route and has moved
+     * away from the in-flight request's position, i.e. the in-flight request is stale and should
+     * be superseded.
+     *
+     * @return true if a fetch should be started
+     */
+    public boolean NeedsFetch() {
+        if(FetchInProgress)
+            return !OnRoute && GeoMath.PlanarDistance(FetchLatitude, FetchLongitude, LastLatitude, LastLongitude) > SupersedeDistance;
+        if(!OnRoute)
+            return true;
+        if(Back != null)
+            return false;
+
+        return Scheduler.ShouldPrefetch(RefreshDistance - Offset, LastSpeed);
+    }
+
+    /**
+     * Records that a request was issued (or re-issued, superseding the previous one).
+     *
+     * @param lat requested latitude
+     * @param lon requested longitude
+     */
+    public void OnFetchStarted(double lat, double lon) {
+        FetchInProgress = true;
+        FetchLatitude = lat;
+        FetchLongitude = lon;
+    }
+
+    /**
+     * Stores a fetched window in the back buffer. It is swapped in immediately if there is no
+     * usable front route.
+     *
+     * @param state fetched window, null if the response did not contain a route
+     * @param latencyMillis measured network latency in milliseconds, negative if the window
+     *                      did not come from the network (e.g. a cache hit)
+     */
+    public void OnFetchCompleted(RouteState state, long latencyMillis) {
+        FetchInProgress = false;
+        if(latencyMillis >= 0)
+            Scheduler.RecordLatency(latencyMillis);
+
+        if(state == null)
+            return;
+
+        Back = state;
+        if(!OnRoute || Offset >= RefreshDistance)
+            Swap();
+    }
+
+    /**
+     * Replaces the window served from a stale cache entry with its refreshed version. If the
+     * stale window is still waiting in the back buffer it is replaced there; otherwise the
+     * refreshed window is swapped in immediately, so fresh hazards show without waiting for
+     * the next boundary.
+     *
+     * @param state refreshed window, null if the response did not contain a route
+     */
+    public void OnRefreshed(RouteState state) {
+        if(state == null)
+            return;
+
+        boolean waiting = Back != null;
+        Back = state;
+        if(!waiting && !Swap())
+            Back = null; // Not usable from here; keep prefetching normally
+    }
+
+    public void OnFetchFailed() {
+        FetchInProgress = false;
+    }
+
+    private boolean Swap() {
+        Back = Back.Locate(LastLatitude, LastLongitude);
+        RouteCursor cursor = new RouteCursor(Back.GetRoute());
+        boolean matched = cursor.Update(LastLatitude, LastLongitude, LastBearing, LastHasBearing);
+        LastTests += cursor.GetLastTestCount();
+        if(!matched)
+            return false;
+
+        Front = Back;
+        Cursor = cursor;
+        Back = null;
+        OnRoute = true;
+        Offset = cursor.GetOffset();
+        Segment = cursor.GetSegment();
+        Misses = 0;
+        return true;
+    }
+
+    public boolean IsOnRoute() {
+        return OnRoute;
+    }
+
+    /**
+     * Returns true if the last fix missed the route but the tracker is held on route by the
+     * off-route hysteresis.
+     *
+     * @return true if holding
+     */
+    public boolean IsHolding() {
+        return OnRoute && Misses > 0;
+    }
+
+    /**
+     * Returns the distance along the front route to the last matched fix. Held fixes keep the
+     * offset of the last fix that matched.
+     *
+     * @return offset in meters, or -1 if never matched
+     */
+    public double GetOffset() {
+        return Offset;
+    }
+
+    /**
+     * Returns the front route segment of the last matched fix.
+     *
+     * @return segment index, or -1 if never matched
+     */
+    public int GetSegment() {
+        return Segment;
+    }
+
+    public boolean IsFetchInProgress() {
+        return FetchInProgress;
+    }
+
+    public RouteState GetFront() {
+        return Front;
+    }
+
+    public RouteState GetBack() {
+        return Back;
+    }
+
+    public RouteCursor GetCursor() {
+        return Cursor;
+    }
+
+    /**
+     * Returns the distance along the front route from the last fix to the point where the next
+     * window is needed: the refresh boundary, or, once a window is waiting in the back buffer,
+     * the end of the front route. Only meaningful while on route.
+     *
+     * @return distance in meters, negative once the point has been passed
+     */
+    public double GetDistanceToRefresh() {
+        if(Back == null)
+            return RefreshDistance - Offset;
+
+        return Front.GetLength() - Offset;
+    }
+
+    /**
+     * Returns the number of segment corridors tested since the start of the last Update,
+     * including those tested when matching a window being swapped in.
+     *
+     * @return number of corridor tests
+     */
+    public int GetLastTestCount() {
+        return LastTests;
+    }
+
+    public PrefetchScheduler GetScheduler() {
+        return Scheduler;
+    }
+
+    /**
+     * Returns the closest message ahead of the last fix on the front route.
+     *
+     * @return message index in the front MessageTimeline, or -1 if none
+     */
+    public int GetNextMessage() {
+        if(!OnRoute)
+            return -1;
+
+        return Front.GetMessages().NextAhead(Offset);
+    }
+
+    /**
+     * Returns the distance along the route from the last fix to the start of message "idx".
+     *
+     * @param idx message index from GetNextMessage
+     * @return distance in meters
+     */
+    public double GetDistanceToMessage(int idx) {
+        return Front.GetMessages().GetOffset(idx) - Offset;
+    }
+}
@@ -0,0 +1,140 @@
+package com.mogolinc.hudtutorial;
+
+/**
+ * Chooses how often location updates are requested.
+ * <br /><br />
+ * Estimates the time until the next event that needs fixes (the next hazard, or the point where
+ * the next window must be fetched) from the vehicle's speed, and aims for FixesPerEvent fixes
+ * before it. The resulting interval is rounded down to a step of a fixed ladder (1, 2, 4 and 8
+ * seconds), so location updates are only re-registered when the step changes. Updates are as
+ * frequent as possible while off route, and as rare as possible while stopped.
+ * <br /><br />
+ * To avoid thrashing, tighter steps are taken immediately, while relaxing goes one step at a
+ * time, and only once the desired interval has exceeded the next step by RelaxMargin for
+ * HoldTime.
+ */
+
+public class UpdateScheduler {
+    /**
+     * Minimum time between location updates of each step, in milliseconds.
+     */
+    public static final long[] Intervals = { 1000, 2000, 4000, 8000 };
+
+    /**
+     * Minimum distance between location updates of each step, in meters.
+     */
+    public static final float[] Distances = { 10, 10, 20, 40 };
+
+    protected final double FixesPerEvent;
+    protected final double MinSpeed;
+    protected final long HoldTime;
+    protected final double RelaxMargin;
+    protected int Step = 0;
+    protected long RelaxSince = -1;
+
+
+    /**
+     * Constructs a new UpdateScheduler with default tuning: 10 fixes per event, a minimum speed
+     * of 0.5 m/s, a hold time of 15 seconds and a relax margin of 1.5. Starts at the tightest step.
+     */
+    public UpdateScheduler() {
+        this(10, 0.5, 15000, 1.5);
+    }
+
+    /**
+     * Constructs a new UpdateScheduler, starting at the tightest step.
+     *
+     * @param fixesPerEvent number of fixes wanted before reaching the next event
+     * @param minSpeed speed below which the vehicle is treated as stopped, in m/s
+     * @param holdTime time the desired interval must stay coarser before relaxing, in milliseconds
+     * @param relaxMargin factor by which the desired interval must exceed the next step to relax
+     */
+    public UpdateScheduler(double fixesPerEvent, double minSpeed, long holdTime, double relaxMargin) {
+        FixesPerEvent = fixesPerEvent;
+        MinSpeed = minSpeed;
+        HoldTime = holdTime;
+        RelaxMargin = relaxMargin;
+    }
+
+
+    /**
+     * Updates the step after a fix.
+     *
+     * @param time fix time in milliseconds
+     * @param speed speed in m/s
+     * @param onRoute whether the fix is on the route
+     * @param hazardDistance distance to the next hazard along the route in meters, negative if none
+     * @param refreshDistance distance to the point where the next window is needed in meters,
+     *                        negative if it has been passed
+     * @return true if the step changed and location updates should be re-registered
+     */
+    public boolean Update(long time, double speed, boolean onRoute, double hazardDistance, double refreshDistance) {
+        double desired = DesiredInterval(speed, onRoute, hazardDistance, refreshDistance);
+
+        int target = 0;
+        while(target + 1 < Intervals.length && Intervals[target + 1] <= desired)
+            target++;
+
+        if(target < Step) {
+            Step = target;
+            RelaxSince = -1;
+            return true;
+        }
+
+        if(target == Step || desired < Intervals[Step + 1] * RelaxMargin) {
+            RelaxSince = -1;
+            return false;
+        }
+
+        if(RelaxSince < 0)
+            RelaxSince = time;
+        if(time - RelaxSince < HoldTime)
+            return false;
+
+        Step++;
+        RelaxSince = (Step < target ? time : -1); // Hold again before the next step
+        return true;
+    }
+
+    /**
+     * Returns the location update interval that gives FixesPerEvent fixes before the next event.
+     *
+     * @param speed speed in m/s
+     * @param onRoute whether the last fix is on the route
+     * @param hazardDistance distance to the next hazard in meters, negative if none
+     * @param refreshDistance distance to the point where the next window is needed in meters,
+     *                        negative if it has been passed
+     * @return interval in milliseconds
+     */
+    public double DesiredInterval(double speed, boolean onRoute, double hazardDistance, double refreshDistance) {
+        if(!onRoute || refreshDistance < 0)
+            return 0;
+        if(speed < MinSpeed)
+            return Double.MAX_VALUE;
+
+        double distance = (hazardDistance >= 0 ? Math.min(hazardDistance, refreshDistance) : refreshDistance);
+        return distance / speed * 1000 / FixesPerEvent;
+    }
+
+    public int GetStep() {
+        return Step;
+    }
+
+    /**
+     * Returns the minimum time between location updates of the current step.
+     *
+     * @return interval in milliseconds
+     */
+    public long GetMinTime() {
+        return Intervals[Step];
+    }
+
+    /**
+     * Returns the minimum distance between location updates of the current step.
+     *
+     * @return distance in meters
+     */
+    public float GetMinDistance() {
+        return Distances[Step];
+    }
+}
@@ -0,0 +1,196 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks CompiledRoute against the per-fix walk over the route's JSON coordinates that
+ * HudActivity used before routes were compiled.
+ */
+public class CompiledRouteTest {
+    private static final double Padding = 30;
+
+    /**
+     * Returns the [lon, lat] coordinates of a wandering route, as in a GeoJSON LineString.
+     */
+    private static double[][] coordinates(int vertices, double spacing, long seed) {
+        Random random = new Random(seed);
+        double[][] coords = new double[vertices][];
+        double[] out = new double[2];
+        double lat = 44.9778;
+        double lon = -93.2650;
+        double heading = random.nextDouble() * 360;
+        for(int i = 0; i < vertices; i++) {
+            coords[i] = new double[] { lon, lat };
+            heading += random.nextGaussian() * 4;
+            GeoMath.Destination(lat, lon, heading, spacing * (0.5 + random.nextDouble()), out);
+            lat = out[0];
+            lon = out[1];
+        }
+        return coords;
+    }
+
+    private static CompiledRoute compile(double[][] coords) {
+        double[] latitudes = new double[coords.length];
+        double[] longitudes = new double[coords.length];
+        for(int i = 0; i < coords.length; i++) {
+            latitudes[i] = coords[i][1];
+            longitudes[i] = coords[i][0];
+        }
+        return new CompiledRoute(latitudes, longitudes, Padding);
+    }
+
+    /**
+     * The fence GeoFence.CreateFenceAroundEdge builds around segment "i", as {lats, lons}.
+     */
+    private static double[][] fence(double[][] coords, int i) {
+        double[] p = coords[i];
+        double[] c = coords[i + 1];
+        double bearing = GeoMath.Bearing(p[1], p[0], c[1], c[0]);
+        double b0 = (bearing + 90) % 360;
+        double b1 = (bearing - 90) % 360;
+        b1 = (b1 < 0 ? b1 + 360 : b1);
+
+        double[][] fence = new double[2][4];
+        double[] out = new double[2];
+        double[][] corners = { { p[1], p[0], b0 }, { p[1], p[0], b1 }, { c[1], c[0], b1 }, { c[1], c[0], b0 } };
+        for(int k = 0; k < 4; k++) {
+            GeoMath.Destination(corners[k][0], corners[k][1], corners[k][2], Padding, out);
+            fence[0][k] = out[0];
+            fence[1][k] = out[1];
+        }
+        return fence;
+    }
+
+    /**
+     * GeoFence.Contains: the latitudinal ray crossing test over the fence's edges.
+     */
+    private static boolean contains(double[][] fence, double lat, double lon) {
+        int count = 0;
+        for(int i = 0; i < 4; i++) {
+            int i1 = (i + 1) & 3;
+            double l0y = fence[0][i], l0x = fence[1][i], l1y = fence[0][i1], l1x = fence[1][i1];
+            double py = lat;
+            if(l0y > l1y) {
+                l0y = fence[0][i1];
+                l0x = fence[1][i1];
+                l1y = fence[0][i];
+                l1x = fence[1][i];
+            }
+            if(l0y == py && l1y == py)
+                py += 1e-7;
+            if(py > l1y || py < l0y || lon > Math.max(l0x, l1x))
+                continue;
+            if(lon < Math.min(l0x, l1x)) {
+                count++;
+                continue;
+            }
+            double m0 = (l0x == l1x ? Double.MAX_VALUE : (l1y - l0y) / (l1x - l0x));
+            double m1 = (lon == l0x ? Double.MAX_VALUE : (py - l0y) / (lon - l0x));
+            if(m1 >= m0)
+                count++;
+        }
+        return (count & 1) == 1;
+    }
+
+    /**
+     * The old distanceAlongRoute(start, end) walk.
+     */
+    private static double walk(double[][] coords, double[] start, double lat, double lon) {
+        double distance = 0;
+        for(int i = 1; i < coords.length; i++) {
+            double[] p = coords[i - 1];
+            double[] c = coords[i];
+            double[][] fence = fence(coords, i - 1);
+            if(contains(fence, start[1], start[0]))
+                distance = GeoMath.Distance(start[1], start[0], c[1], c[0]);
+            else if(contains(fence, lat, lon)) {
+                distance += GeoMath.Distance(p[1], p[0], lat, lon);
+                break;
+            } else if(i == coords.length - 1)
+                distance = -1;
+            else if(distance > 0)
+                distance += GeoMath.Distance(p[1], p[0], c[1], c[0]);
+        }
+        return distance;
+    }
+
+    @Test
+    public void compiled_matchesJsonWalk() {
+        double[][] coords = coordinates(200, 60, 17);
+        CompiledRoute route = compile(coords);
+        assertEquals(199, route.GetNumSegments());
+
+        // The first vertex lies on the edge of its fence, so walk from the middle of the segment.
+        double[] start = { (coords[0][0] + coords[1][0]) / 2, (coords[0][1] + coords[1][1]) / 2 };
+        assertTrue(contains(fence(coords, 0), start[1], start[0]));
+
+        Random random = new Random(5);
+        double[] out = new double[2];
+        int onRoute = 0;
+        int compared = 0;
+        for(int k = 0; k < 5000; k++) {
+            int s = random.nextInt(route.GetNumSegments());
+            GeoMath.Destination(coords[s][1], coords[s][0], random.nextDouble() * 360, random.nextDouble() * 70, out);
+
+            // Fences containing the point, as isOnRoute tested them one by one
+            int first = -1;
+            int count = 0;
+            for(int i = 0; i < route.GetNumSegments(); i++) {
+                if(contains(fence(coords, i), out[0], out[1])) {
+                    first = (first < 0 ? i : first);
+                    count++;
+                }
+            }
+
+            assertEquals(count > 0, route.IsOnRoute(out[0], out[1]));
+            if(count > 0)
+                onRoute++;
+
+            // Where the old walk is unambiguous: one fence, past the first segment
+            if(count == 1 && first > 0) {
+                assertEquals(walk(coords, start, out[0], out[1]), route.DistanceAlongRoute(start[1], start[0], out[0], out[1]), 1e-3);
+                compared++;
+            }
+        }
+
+        assertTrue(onRoute > 1000 && onRoute < 4500);
+        assertTrue(compared > 500);
+    }
+
+    @Test
+    public void compiled_measuresSegmentsAndLength() {
+        double[][] coords = coordinates(50, 100, 3);
+        CompiledRoute route = compile(coords);
+
+        double length = 0;
+        for(int i = 0; i < route.GetNumSegments(); i++) {
+            assertEquals(length, route.GetCumulativeDistance(i), 1e-6);
+            length += GeoMath.Distance(coords[i][1], coords[i][0], coords[i + 1][1], coords[i + 1][0]);
+        }
+        assertEquals(length, route.GetLength(), 1e-6);
+
+        // Offsets along the route from a point on it
+        double lat = (coords[10][1] + coords[11][1]) / 2;
+        double lon = (coords[10][0] + coords[11][0]) / 2;
+        double lat2 = (coords[30][1] + coords[31][1]) / 2;
+        double lon2 = (coords[30][0] + coords[31][0]) / 2;
+        assertEquals(route.OffsetOf(lat2, lon2) - route.OffsetOf(lat, lon), route.DistanceAlongRoute(lat, lon, lat2, lon2), 1e-6);
+        assertEquals(-1, route.DistanceAlongRoute(lat2, lon2, lat, lon), 0);
+    }
+
+    @Test
+    public void compiled_handlesDegenerateRoutes() {
+        CompiledRoute empty = new CompiledRoute(new double[0], new double[0], Padding);
+        assertEquals(0, empty.GetNumSegments());
+        assertEquals(0, empty.GetLength(), 0);
+        assertFalse(empty.IsOnRoute(45, -93));
+
+        CompiledRoute single = new CompiledRoute(new double[] { 45 }, new double[] { -93 }, Padding);
+        assertEquals(0, single.GetNumSegments());
+        assertEquals(-1, single.OffsetOf(45, -93), 0);
+    }
+}
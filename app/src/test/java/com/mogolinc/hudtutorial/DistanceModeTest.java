@@ -0,0 +1,79 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * PLANAR routes must agree with GREAT_CIRCLE routes away from the corridor edges.
+ */
+public class DistanceModeTest {
+    private static final double Padding = 30;
+
+    // Zig-zag route with 200 m segments
+    private CompiledRoute route(double startLat, DistanceMode mode) {
+        int count = 50;
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        double[] out = new double[2];
+        lats[0] = startLat;
+        lons[0] = -93.0;
+        for(int i = 1; i < count; i++) {
+            GeoMath.Destination(lats[i - 1], lons[i - 1], (i % 2 == 0 ? 20 : 70), 200, out);
+            lats[i] = out[0];
+            lons[i] = out[1];
+        }
+        return new CompiledRoute(lats, lons, null, Padding, mode);
+    }
+
+    private void assertModesAgree(double startLat) {
+        CompiledRoute planar = route(startLat, DistanceMode.PLANAR);
+        CompiledRoute sphere = route(startLat, DistanceMode.GREAT_CIRCLE);
+        Random random = new Random(11);
+        double[] out = new double[2];
+
+        assertEquals(sphere.GetLength(), planar.GetLength(), 0.01);
+
+        for(int i = 0; i < 2000; i++) {
+            int seg = random.nextInt(planar.GetNumSegments());
+            double along = (0.05 + 0.9 * random.nextDouble()) * sphere.GetSegmentLength(seg);
+            GeoMath.Destination(sphere.GetLatitude(seg), sphere.GetLongitude(seg), sphere.GetSegmentBearing(seg), along, out);
+
+            double inside = random.nextDouble() * (Padding - 5);
+            double outside = Padding + 5 + random.nextDouble() * 25;
+            double side = (random.nextBoolean() ? 90 : -90);
+            double[] near = new double[2];
+            double[] far = new double[2];
+            GeoMath.Destination(out[0], out[1], sphere.GetSegmentBearing(seg) + side, inside, near);
+            GeoMath.Destination(out[0], out[1], sphere.GetSegmentBearing(seg) + side, outside, far);
+
+            assertTrue(planar.SegmentContains(seg, near[0], near[1]));
+            assertTrue(sphere.SegmentContains(seg, near[0], near[1]));
+            assertEquals(sphere.IsOnRoute(far[0], far[1]), planar.IsOnRoute(far[0], far[1]));
+            assertEquals(sphere.GetOffsetInSegment(seg, near[0], near[1]),
+                    planar.GetOffsetInSegment(seg, near[0], near[1]), 0.01);
+        }
+    }
+
+    @Test
+    public void planar_agreesWithGreatCircleAtMidLatitude() {
+        assertModesAgree(45.0);
+    }
+
+    @Test
+    public void planar_agreesWithGreatCircleAtHighLatitude() {
+        assertModesAgree(70.0);
+    }
+
+    @Test
+    public void planarDistance_matchesHaversine() {
+        double[] out = new double[2];
+        for(int bearing = 0; bearing < 360; bearing += 15) {
+            GeoMath.Destination(70.0, -93.0, bearing, 10000, out);
+            double exact = GeoMath.Distance(70.0, -93.0, out[0], out[1]);
+            assertEquals(exact, GeoMath.PlanarDistance(70.0, -93.0, out[0], out[1]), exact * 1e-6);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exercises FetchEngine against a local stand-in server.
+ */
+public class FetchEngineTest {
+    private StandInConditionsServer server;
+    private RouteFetcher fetcher;
+    private final List<FetchCall> completed = Collections.synchronizedList(new ArrayList<FetchCall>());
+    private final List<FetchCall> failed = Collections.synchronizedList(new ArrayList<FetchCall>());
+    private CountDownLatch results;
+
+    private final FetchEngine.Listener listener = new FetchEngine.Listener() {
+        @Override
+        public void OnFetchCompleted(FetchCall call, RouteState state) {
+            assertNotNull(state);
+            completed.add(call);
+            results.countDown();
+        }
+
+        @Override
+        public void OnFetchFailed(FetchCall call, IOException e) {
+            failed.add(call);
+            results.countDown();
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StandInConditionsServer(new StandInConditionsServer.NorthboundCorridor(new double[0], 50));
+        fetcher = new RouteFetcher(server.GetBaseUrl(), "test", 2000, 30);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void fetch_decodesGzipAndCountsWireBytes() throws Exception {
+        server.SetGzip(true);
+        FetchEngine engine = new FetchEngine(fetcher, listener);
+        results = new CountDownLatch(1);
+
+        FetchCall call = engine.Submit(44.9, -93.2, 0);
+
+        assertTrue(results.await(5, TimeUnit.SECONDS));
+        assertEquals(1, completed.size());
+        assertEquals(200, call.GetStatus());
+        assertTrue(call.GetBytes() > 0);
+        assertTrue(call.GetBytes() < server.GetLastUncompressedLength());
+        assertEquals(call.GetBytes(), engine.GetTotalBytes());
+        engine.Shutdown();
+    }
+
+    @Test
+    public void submit_supersedesInFlightCall() throws Exception {
+        server.SetLatency(500);
+        FetchEngine engine = new FetchEngine(fetcher, listener);
+        results = new CountDownLatch(1);
+
+        FetchCall stale = engine.Submit(44.9, -93.2, 0);
+        Thread.sleep(100);
+        FetchCall fresh = engine.Submit(44.91, -93.2, 0);
+
+        assertTrue(results.await(5, TimeUnit.SECONDS));
+        Thread.sleep(600);
+        assertTrue(stale.IsCancelled());
+        assertEquals(Collections.singletonList(fresh), completed);
+        assertTrue(failed.isEmpty());
+        assertEquals(1, engine.GetCancelledCount());
+        assertFalse(engine.IsBusy());
+        engine.Shutdown();
+    }
+
+    @Test
+    public void fetch_reusesKeepAliveConnection() throws Exception {
+        FetchEngine engine = new FetchEngine(fetcher, listener);
+
+        for(int i = 0; i < 3; i++) {
+            results = new CountDownLatch(1);
+            engine.Submit(44.9 + i * 0.01, -93.2, 0);
+            assertTrue(results.await(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(3, completed.size());
+        assertEquals(1, server.GetConnectionCount());
+        engine.Shutdown();
+    }
+
+    @Test
+    public void fetch_failsOnReadTimeout() throws Exception {
+        server.SetLatency(1000);
+        fetcher.SetTimeouts(1000, 200);
+        FetchEngine engine = new FetchEngine(fetcher, listener);
+        results = new CountDownLatch(1);
+
+        engine.Submit(44.9, -93.2, 0);
+
+        assertTrue(results.await(5, TimeUnit.SECONDS));
+        assertEquals(1, failed.size());
+        assertEquals(1, engine.GetFailureCount());
+        engine.Shutdown();
+    }
+
+    @Test
+    public void fetch_reportsRuntimeExceptionsAsFailures() throws Exception {
+        RouteFetcher broken = new RouteFetcher(server.GetBaseUrl(), "test", 2000, 30) {
+            @Override
+            public RouteResponse Fetch(FetchCall call) throws IOException {
+                throw new NullPointerException();
+            }
+        };
+        final List<IOException> failures = Collections.synchronizedList(new ArrayList<IOException>());
+        FetchEngine engine = new FetchEngine(broken, new FetchEngine.Listener() {
+            @Override
+            public void OnFetchCompleted(FetchCall call, RouteState state) {
+                listener.OnFetchCompleted(call, state);
+            }
+
+            @Override
+            public void OnFetchFailed(FetchCall call, IOException e) {
+                failures.add(e);
+                listener.OnFetchFailed(call, e);
+            }
+        });
+
+        for(int i = 0; i < 2; i++) {
+            results = new CountDownLatch(1);
+            engine.Submit(44.9, -93.2, 0);
+            assertTrue(results.await(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(2, failed.size());
+        assertTrue(failures.get(0).getCause() instanceof NullPointerException);
+        assertEquals(2, engine.GetFailureCount());
+        assertFalse(engine.IsBusy());
+        engine.Shutdown();
+    }
+
+    @Test
+    public void fetch_servesCacheHitsAndRefreshesStaleEntries() throws Exception {
+        File directory = Files.createTempDirectory("routecache").toFile();
+        FetchEngine engine = new FetchEngine(fetcher, listener);
+        engine.SetCache(new RouteCache(directory, 1024 * 1024, 60000));
+
+        results = new CountDownLatch(1);
+        assertFalse(engine.Submit(44.9, -93.2, 0).IsFromCache());
+        assertTrue(results.await(5, TimeUnit.SECONDS));
+
+        // Same bucket, a few meters on: served from disk
+        results = new CountDownLatch(1);
+        FetchCall hit = engine.Submit(44.90002, -93.2, 0);
+        assertTrue(results.await(5, TimeUnit.SECONDS));
+        assertTrue(hit.IsFromCache());
+        assertFalse(hit.IsStale());
+        assertEquals(1, server.GetRequestCount());
+
+        // Everything stale: served from disk, and refreshed over the network only when asked to
+        engine.SetCache(new RouteCache(directory, 1024 * 1024, -1));
+        results = new CountDownLatch(1);
+        FetchCall stale = engine.SubmitCached(44.90002, -93.2, 0);
+        assertTrue(results.await(5, TimeUnit.SECONDS));
+        assertTrue(stale.IsFromCache());
+        assertTrue(stale.IsStale());
+        assertEquals(1, server.GetRequestCount());
+
+        results = new CountDownLatch(1);
+        FetchCall refresh = engine.Refresh(stale);
+        assertTrue(results.await(5, TimeUnit.SECONDS));
+        assertTrue(refresh.IsRefresh());
+        assertSame(refresh, completed.get(3));
+        assertEquals(2, server.GetRequestCount());
+        assertEquals(2, engine.GetCacheHitCount());
+
+        // Lookups alone never reach the network
+        results = new CountDownLatch(1);
+        FetchCall miss = engine.SubmitCached(45.5, -93.2, 0);
+        assertTrue(results.await(5, TimeUnit.SECONDS));
+        assertTrue(miss.IsCacheOnly());
+        assertSame(miss, failed.get(0));
+        assertEquals(2, server.GetRequestCount());
+        engine.Shutdown();
+
+        for(File file : directory.listFiles())
+            file.delete();
+        directory.delete();
+    }
+}
@@ -0,0 +1,203 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.mogolinc.hudtutorial.NorthboundWindows.*;
+import static org.junit.Assert.*;
+
+/**
+ * Rate limiting, backoff and circuit breaking of fetches, on their own and in HudController.
+ */
+public class FetchPolicyTest {
+    // 1 request per second, bursts of 2, backoff from 1 to 8 seconds, open after 3 failures for 30 seconds
+    private static FetchPolicy policy() {
+        return new FetchPolicy(1, 2, 1000, 8000, 3, 30000, new Random(5));
+    }
+
+    @Test
+    public void policy_limitsRate() {
+        FetchPolicy policy = policy();
+
+        assertEquals(FetchPolicy.Decision.ALLOW, policy.Acquire(0));
+        assertEquals(FetchPolicy.Decision.ALLOW, policy.Acquire(0));
+        assertEquals(FetchPolicy.Decision.RATE_LIMITED, policy.Acquire(0));
+        assertEquals(FetchPolicy.Decision.RATE_LIMITED, policy.Acquire(500));
+        assertEquals(FetchPolicy.Decision.ALLOW, policy.Acquire(1000));
+
+        // Sustained requests every 100 ms get through once per second.
+        int allowed = 0;
+        for(long t = 1100; t <= 11000; t += 100) {
+            if(policy.Acquire(t) == FetchPolicy.Decision.ALLOW)
+                allowed++;
+        }
+        assertEquals(10, allowed);
+
+        // Idle time refills no more than the burst.
+        assertEquals(FetchPolicy.Decision.ALLOW, policy.Acquire(100000));
+        assertEquals(FetchPolicy.Decision.ALLOW, policy.Acquire(100000));
+        assertEquals(FetchPolicy.Decision.RATE_LIMITED, policy.Acquire(100000));
+    }
+
+    @Test
+    public void policy_backsOffWithJitter() {
+        assertEquals(1000, policy().BackoffDelay(1));
+        assertEquals(4000, policy().BackoffDelay(3));
+        assertEquals(8000, policy().BackoffDelay(50));
+
+        // Wide burst and threshold, so only the backoff is exercised.
+        FetchPolicy policy = new FetchPolicy(100, 100, 1000, 8000, 100, 30000, new Random(5));
+        long now = 0;
+        long previous = 0;
+        for(int failure = 1; failure <= 6; failure++) {
+            assertEquals(FetchPolicy.Decision.ALLOW, policy.Acquire(now));
+            policy.OnFailure(now);
+
+            long delay = policy.GetRetryTime() - now;
+            long full = policy.BackoffDelay(failure);
+            assertTrue(delay >= full / 2 && delay <= full);
+            assertTrue(failure == 1 || delay > previous / 2);
+            assertEquals(FetchPolicy.Decision.BACKING_OFF, policy.Acquire(now + delay - 1));
+
+            previous = delay;
+            now += delay;
+        }
+        assertEquals(FetchPolicy.State.CLOSED, policy.GetState());
+
+        policy.OnSuccess();
+        assertEquals(0, policy.GetConsecutiveFailures());
+        assertEquals(FetchPolicy.Decision.ALLOW, policy.Acquire(now));
+    }
+
+    @Test
+    public void policy_opensAndClosesCircuit() {
+        FetchPolicy policy = policy();
+        long now = 0;
+
+        for(int failure = 1; failure <= 3; failure++) {
+            now = Math.max(now, policy.GetRetryTime()) + 1000;
+            assertEquals(FetchPolicy.Decision.ALLOW, policy.Acquire(now));
+            policy.OnFailure(now);
+        }
+        assertEquals(FetchPolicy.State.OPEN, policy.GetState());
+        assertEquals(1, policy.GetOpenCount());
+
+        // Nothing gets through while open, not even once the backoff has passed.
+        assertEquals(FetchPolicy.Decision.CIRCUIT_OPEN, policy.Acquire(now + 29999));
+
+        // Then one trial request, whose failure opens the circuit again.
+        now += 30000;
+        assertEquals(FetchPolicy.Decision.ALLOW, policy.Acquire(now));
+        assertEquals(FetchPolicy.State.HALF_OPEN, policy.GetState());
+        assertEquals(FetchPolicy.Decision.CIRCUIT_OPEN, policy.Acquire(now + 10));
+        policy.OnFailure(now + 10);
+        assertEquals(FetchPolicy.State.OPEN, policy.GetState());
+        assertEquals(2, policy.GetOpenCount());
+
+        // An abandoned trial allows another one.
+        now += 30010;
+        assertEquals(FetchPolicy.Decision.ALLOW, policy.Acquire(now));
+        policy.OnAbandoned();
+        now = Math.max(now, policy.GetRetryTime()) + 1000;
+        assertEquals(FetchPolicy.Decision.ALLOW, policy.Acquire(now));
+
+        // A successful trial closes it.
+        policy.OnSuccess();
+        assertEquals(FetchPolicy.State.CLOSED, policy.GetState());
+        assertEquals(FetchPolicy.Decision.ALLOW, policy.Acquire(now + 1000));
+    }
+
+    /**
+     * Runs the next task HudController posts to its owner thread.
+     */
+    private static void runPosted(BlockingQueue<Runnable> posted) throws InterruptedException {
+        Runnable task = posted.poll(5, TimeUnit.SECONDS);
+        assertNotNull(task);
+        task.run();
+    }
+
+    @Test
+    public void controller_servesStaleCacheWhileCircuitOpen() throws Exception {
+        StandInConditionsServer server = new StandInConditionsServer(new StandInConditionsServer.NorthboundCorridor(new double[0], VertexSpacing));
+        server.SetStatus(503);
+        File directory = Files.createTempDirectory("routecache").toFile();
+        final BlockingQueue<Runnable> posted = new LinkedBlockingQueue<>();
+        HudController controller = new HudController(new RouteTracker(1000, new PrefetchScheduler()),
+                new RouteFetcher(server.GetBaseUrl(), "test", 2000, Padding), new HudController.Host() {
+            @Override
+            public void Show(String message) {
+            }
+
+            @Override
+            public void Log(String message) {
+            }
+
+            @Override
+            public void SetUpdateInterval(long minTime, float minDistance) {
+            }
+
+            @Override
+            public void Post(Runnable task) {
+                posted.add(task);
+            }
+        });
+
+        try {
+            // Every entry is stale
+            RouteCache cache = new RouteCache(directory, 1024 * 1024, -1);
+            cache.Put(StartLat, Lon, 0, RouteStateFormat.Encode(RouteState.FromResponse(Window(0, 2000, new double[0]))));
+            controller.GetFetchEngine().SetCache(cache);
+
+            FetchPolicy policy = policy();
+            assertEquals(FetchPolicy.Decision.ALLOW, policy.Acquire(0));
+            policy.OnFailure(0);
+            policy.OnFailure(0);
+            policy.OnFailure(0);
+            assertEquals(FetchPolicy.State.OPEN, policy.GetState());
+            controller.SetFetchPolicy(policy);
+
+            // The stale window is served while the circuit is open, without a refresh
+            controller.OnFix(StartLat, Lon, 0, true, 10, true, 1000);
+            runPosted(posted);
+            assertTrue(controller.GetTracker().IsOnRoute());
+            assertEquals(1, controller.CacheHits.get());
+            controller.OnFix(North(10), Lon, 0, true, 10, true, 2000);
+            assertTrue(controller.GetTracker().IsOnRoute());
+            assertFalse(controller.GetFetchEngine().IsBusy());
+            assertEquals(0, server.GetRequestCount());
+            assertEquals(2, controller.FetchesCircuitOpen.get());
+            assertEquals(FetchPolicy.State.OPEN, policy.GetState());
+
+            // Once the circuit is half open, the refresh is its trial; failing, it opens it again
+            controller.OnFix(North(20), Lon, 0, true, 10, true, 31000);
+            runPosted(posted);
+            assertEquals(1, server.GetRequestCount());
+            assertEquals(FetchPolicy.State.OPEN, policy.GetState());
+            assertEquals(2, policy.GetOpenCount());
+            assertEquals(0, controller.FetchFailures.get());
+
+            // The next trial succeeds and closes it
+            server.SetStatus(200);
+            controller.OnFix(North(30), Lon, 0, true, 10, true, 62000);
+            runPosted(posted);
+            assertEquals(2, server.GetRequestCount());
+            assertEquals(FetchPolicy.State.CLOSED, policy.GetState());
+            assertEquals(2, controller.GetFetchEngine().GetRefreshCount());
+            controller.OnFix(North(40), Lon, 0, true, 10, true, 63000);
+            assertTrue(controller.GetTracker().IsOnRoute());
+            assertEquals(2, server.GetRequestCount());
+        } finally {
+            controller.Shutdown();
+            server.close();
+            for(File file : directory.listFiles())
+                file.delete();
+            directory.delete();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Smoothing of noisy fixes along a straight drive.
+ */
+public class FixFilterTest {
+    private static final double StartLat = 44.9;
+    private static final double Lon = -93.2;
+    private static final double Speed = 25;     // m/s
+    private static final long FixInterval = 1000;
+    private static final double Accuracy = 8;   // m
+
+    private static void noisy(Random random, double lat, double lon, double[] out) {
+        GeoMath.Destination(lat, lon, 0, random.nextGaussian() * Accuracy, out);
+        GeoMath.Destination(out[0], out[1], 90, random.nextGaussian() * Accuracy, out);
+    }
+
+    /**
+     * Drives due north at Speed with noisy fixes and returns the RMS position error of the
+     * filtered fixes over that of the raw ones, once the filter has settled.
+     */
+    private static double drive(FixFilter filter, boolean withVelocity) {
+        Random random = new Random(3);
+        double[] truth = new double[2];
+        double[] fix = new double[2];
+        double raw = 0;
+        double filtered = 0;
+
+        for(int i = 0; i < 300; i++) {
+            GeoMath.Destination(StartLat, Lon, 0, i * Speed * FixInterval / 1000.0, truth);
+            noisy(random, truth[0], truth[1], fix);
+            double speed = Speed + random.nextGaussian() * 0.5;
+            double bearing = random.nextGaussian() * 2;
+            filter.Update(fix[0], fix[1], Accuracy, bearing, withVelocity, speed, withVelocity, i * FixInterval);
+
+            if(i >= 20) {
+                double rawError = GeoMath.PlanarDistance(truth[0], truth[1], fix[0], fix[1]);
+                double error = GeoMath.PlanarDistance(truth[0], truth[1], filter.GetLatitude(), filter.GetLongitude());
+                raw += rawError * rawError;
+                filtered += error * error;
+            }
+        }
+
+        return Math.sqrt(filtered / raw);
+    }
+
+    @Test
+    public void filter_reducesJitterAndEstimatesVelocity() {
+        // 7.5 km, past the re-anchoring distance, so the frame moves along the way.
+        FixFilter filter = new FixFilter();
+        assertTrue(drive(filter, true) < 0.5);
+        assertEquals(Speed, filter.GetSpeed(), 1);
+        assertEquals(0, filter.GetBearing(), 3);
+        assertTrue(filter.GetPositionError() < Accuracy);
+
+        // Without speed and bearing, velocity comes from positions alone.
+        filter = new FixFilter();
+        assertTrue(drive(filter, false) < 0.75);
+        assertEquals(Speed, filter.GetSpeed(), 5);
+        assertEquals(0, filter.GetBearing(), 10);
+    }
+
+    @Test
+    public void filter_followsJumpsAndGaps() {
+        FixFilter filter = new FixFilter();
+        double[] out = new double[2];
+        assertFalse(filter.IsStarted());
+
+        for(int i = 0; i < 10; i++) {
+            GeoMath.Destination(StartLat, Lon, 0, i * Speed, out);
+            filter.Update(out[0], out[1], Accuracy, 0, true, Speed, true, i * 1000);
+        }
+        assertTrue(filter.IsStarted());
+
+        // A kilometer away is far outside the gate: taken as is.
+        GeoMath.Destination(StartLat, Lon, 90, 1000, out);
+        filter.Update(out[0], out[1], Accuracy, 0, false, 0, false, 10000);
+        assertEquals(out[0], filter.GetLatitude(), 1e-9);
+        assertEquals(out[1], filter.GetLongitude(), 1e-9);
+
+        // So is anything after a long gap.
+        filter.Update(StartLat, Lon, Accuracy, 0, false, 0, false, 10000 + FixFilter.MaxGap + 1);
+        assertEquals(StartLat, filter.GetLatitude(), 1e-9);
+        assertEquals(Lon, filter.GetLongitude(), 1e-9);
+
+        filter.Reset();
+        assertFalse(filter.IsStarted());
+    }
+}
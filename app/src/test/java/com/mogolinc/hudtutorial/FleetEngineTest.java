@@ -0,0 +1,109 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.mogolinc.hudtutorial.NorthboundWindows.*;
+import static org.junit.Assert.*;
+
+/**
+ * Concurrent evaluation of many vehicles along a shared corridor.
+ */
+public class FleetEngineTest {
+    private static final int Vehicles = 200;
+    private static final int FixesPerVehicle = 50;
+
+    private static RouteState corridor(double start, double[] hazards) {
+        return RouteState.FromResponse(Window(start, 2000, hazards));
+    }
+
+    // Vehicle v starts v meters in and moves 20 m per fix; every tenth vehicle is 100 m off the road.
+    private static List<FleetEngine.Fix> interleavedFixes() {
+        List<FleetEngine.Fix> fixes = new ArrayList<>();
+        double[] out = new double[2];
+        for(int k = 0; k < FixesPerVehicle; k++) {
+            for(int v = 0; v < Vehicles; v++) {
+                double lat = North(v + k * 20);
+                GeoMath.Destination(lat, Lon, 90, (v % 10 == 0 ? 100 : 0), out);
+                fixes.add(new FleetEngine.Fix(v, lat, out[1], 0, true, k * 1000));
+            }
+        }
+        return fixes;
+    }
+
+    @Test
+    public void fleet_parallelMatchesSequential() throws Exception {
+        RouteState route = corridor(0, new double[] { North(1500) });
+        List<FleetEngine.Fix> fixes = interleavedFixes();
+
+        FleetEngine sequential = new FleetEngine(route);
+        int expected = sequential.Evaluate(fixes);
+        assertEquals(Vehicles / 10 * 9 * FixesPerVehicle, expected);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            FleetEngine parallel = new FleetEngine(route);
+            assertEquals(expected, parallel.Evaluate(fixes, executor, 4));
+            assertEquals(Vehicles, parallel.GetVehicleCount());
+
+            for(int v = 0; v < Vehicles; v++) {
+                FleetEngine.Vehicle a = sequential.GetVehicle(v);
+                FleetEngine.Vehicle b = parallel.GetVehicle(v);
+                assertEquals(FixesPerVehicle, b.GetFixCount());
+                assertEquals((FixesPerVehicle - 1) * 1000, b.GetTime()); // Last fix evaluated last
+                assertEquals(a.IsOnRoute(), b.IsOnRoute());
+                assertEquals(a.GetOffset(), b.GetOffset(), 0);
+                assertEquals(a.GetDistanceToMessage(), b.GetDistanceToMessage(), 0);
+            }
+
+            // Last fix at v + 980 m: the hazard at 1.5 km is ahead of vehicle 1, and off-road
+            // vehicles have nothing to show.
+            assertEquals(1500 - 981, parallel.GetVehicle(1).GetDistanceToMessage(), 0.5);
+            assertNotNull(parallel.GetVehicle(1).GetNextMessage());
+            assertNull(parallel.GetVehicle(10).GetNextMessage());
+            assertEquals(-1, parallel.GetVehicle(10).GetOffset(), 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void fleet_rematchesOnNewRoute() throws Exception {
+        FleetEngine engine = new FleetEngine(null);
+        assertFalse(engine.Evaluate(7, North(100), Lon, 0, true, 0));
+
+        engine.SetRoute(corridor(0, new double[0]));
+        assertTrue(engine.Evaluate(7, North(1200), Lon, 0, true, 1000));
+        assertEquals(1200, engine.GetVehicle(7).GetOffset(), 0.5);
+
+        // The next window starts at 1 km, so offsets restart from there.
+        engine.SetRoute(corridor(1000, new double[] { North(1500) }));
+        assertTrue(engine.Evaluate(7, North(1250), Lon, 0, true, 2000));
+        assertEquals(250, engine.GetVehicle(7).GetOffset(), 0.5);
+        assertEquals(250, engine.GetVehicle(7).GetDistanceToMessage(), 0.5);
+
+        engine.Remove(7);
+        assertNull(engine.GetVehicle(7));
+        assertEquals(0, engine.GetVehicleCount());
+    }
+
+    @Test
+    public void fleet_advancesEachVehicleThroughPackedWindow() throws Exception {
+        RouteState route = RouteState.FromResponse(Window(0, 60000, 10, new double[0]));
+        assertNotNull(route.GetPacked());
+
+        // Two vehicles 20 km apart, 50 m per fix
+        FleetEngine fleet = new FleetEngine(route);
+        for(int k = 0; k < 800; k++) {
+            for(int v = 0; v < 2; v++)
+                assertTrue(fleet.Evaluate(v, North(1 + v * 20000 + k * 50), Lon, 0, true, k * 1000));
+        }
+
+        assertEquals(1 + 39950, fleet.GetVehicle(0).GetOffset(), 0.5);
+        assertEquals(1 + 59950, fleet.GetVehicle(1).GetOffset(), 0.5);
+    }
+}
@@ -0,0 +1,78 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.nio.DoubleBuffer;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * GeoFenceBatch must agree with PreparedGeoFence.Contains point for point.
+ */
+public class GeoFenceBatchTest {
+    // Concave "U" with horizontal and vertical edges
+    private final PreparedGeoFence fence = new PreparedGeoFence(
+            new double[] { 0, 0, 3, 3, 1, 1, 3, 3, 0 },
+            new double[] { 0, 3, 3, 2, 2, 1, 1, 0, 0 });
+
+    private double[][] points(int count) {
+        Random random = new Random(7);
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        for(int i = 0; i < count; i++) {
+            // Half on the grid of vertex coordinates, to exercise the boundary rules
+            lats[i] = (i % 2 == 0 ? random.nextInt(9) * 0.5 - 0.5 : random.nextDouble() * 4 - 0.5);
+            lons[i] = (i % 4 == 0 ? random.nextInt(9) * 0.5 - 0.5 : random.nextDouble() * 4 - 0.5);
+        }
+        return new double[][] { lats, lons };
+    }
+
+    private BitSet expected(double[] lats, double[] lons) {
+        BitSet bits = new BitSet(lats.length);
+        for(int i = 0; i < lats.length; i++)
+            if(fence.Contains(lats[i], lons[i]))
+                bits.set(i);
+        return bits;
+    }
+
+    @Test
+    public void contains_matchesPerPointContains() {
+        double[][] p = points(5000);
+        BitSet expected = expected(p[0], p[1]);
+
+        assertTrue(expected.cardinality() > 0);
+        assertEquals(expected, new GeoFenceBatch(fence).Contains(p[0], p[1]));
+    }
+
+    @Test
+    public void contains_parallelMatchesSequential() {
+        double[][] p = points(100003);
+        GeoFenceBatch batch = new GeoFenceBatch(fence, GeoFenceBatch.BlockSize);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BitSet sequential = batch.Contains(p[0], p[1]);
+            assertEquals(expected(p[0], p[1]), sequential);
+            assertEquals(sequential, batch.Contains(p[0], p[1], pool));
+            assertEquals(sequential, batch.Contains(DoubleBuffer.wrap(p[0]), DoubleBuffer.wrap(p[1]), pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void contains_readsBuffersFromTheirPosition() {
+        double[][] p = points(3000);
+        DoubleBuffer lats = DoubleBuffer.wrap(p[0]);
+        DoubleBuffer lons = DoubleBuffer.wrap(p[1]);
+        lats.position(100);
+        lons.position(100);
+
+        BitSet bits = new GeoFenceBatch(fence).Contains(lats, lons);
+
+        assertEquals(100, lats.position());
+        assertEquals(expected(p[0], p[1]).get(100, 3000), bits);
+    }
+}
@@ -0,0 +1,146 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Edge-indexed PreparedGeoFences and entry offsets of HazardGeometries.
+ */
+public class HazardGeometryTest {
+    private static final double StartLat = 44.9;
+    private static final double Lon = -93.2;
+
+    // Due north from StartLat for 10 km, one vertex per km
+    private static CompiledRoute northbound() {
+        double[] lats = new double[11];
+        double[] lons = new double[11];
+        double[] out = new double[2];
+        for(int i = 0; i < lats.length; i++) {
+            GeoMath.Destination(StartLat, Lon, 0, i * 1000, out);
+            lats[i] = out[0];
+            lons[i] = out[1];
+        }
+        return new CompiledRoute(lats, lons, 30);
+    }
+
+    /**
+     * Axis-aligned square ring around the point "north" meters north and "east" meters east of
+     * the route start, with the first vertex repeated at the end as in GeoJSON.
+     */
+    private static void square(double north, double east, double half, double[] lats, double[] lons, int offset) {
+        double[] corner = new double[2];
+        double[][] steps = { { -half, -half }, { -half, half }, { half, half }, { half, -half }, { -half, -half } };
+        for(int k = 0; k < steps.length; k++) {
+            GeoMath.Destination(StartLat, Lon, 0, north + steps[k][0], corner);
+            double lat = corner[0];
+            GeoMath.Destination(lat, Lon, 90, east + steps[k][1], corner);
+            lats[offset + k] = lat;
+            lons[offset + k] = corner[1];
+        }
+    }
+
+    @Test
+    public void indexedFence_agreesWithLinearTest() {
+        // Star with 200 vertices, alternating between two radii
+        int n = 200;
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for(int i = 0; i < n; i++) {
+            double angle = 2 * Math.PI * i / n;
+            double radius = (i % 2 == 0 ? 1.0 : 0.6);
+            lats[i] = Math.round(radius * Math.sin(angle) * 1000) / 1000.0;
+            lons[i] = Math.round(radius * Math.cos(angle) * 1000) / 1000.0;
+        }
+        PreparedGeoFence fence = new PreparedGeoFence(lats, lons);
+        assertTrue(fence.IsIndexed());
+
+        Random random = new Random(11);
+        for(int k = 0; k < 20000; k++) {
+            // Every other point on a vertex latitude, to exercise the boundary rules
+            double lat = (k % 2 == 0 ? lats[random.nextInt(n)] : random.nextDouble() * 2.2 - 1.1);
+            double lon = random.nextDouble() * 2.2 - 1.1;
+            assertEquals(PreparedGeoFence.Contains(lats, lons, 0, n, lat, lon), fence.Contains(lat, lon));
+
+            double lat1 = random.nextDouble() * 2.2 - 1.1;
+            double lon1 = random.nextDouble() * 2.2 - 1.1;
+            double expected = -1;
+            for(int i = 0; i < n; i++) {
+                int i1 = (i + 1) % n;
+                double t = PreparedGeoFence.SegmentCrossing(lat, lon, lat1, lon1, lats[i], lons[i], lats[i1], lons[i1]);
+                if(t >= 0 && (expected < 0 || t < expected))
+                    expected = t;
+            }
+            assertEquals(expected, fence.FirstCrossing(lat, lon, lat1, lon1), 0);
+        }
+    }
+
+    @Test
+    public void entryOffset_locatesEveryKindOnTheRoute() {
+        CompiledRoute route = northbound();
+        double[] out = new double[2];
+
+        // MultiPoint: one point 1 km off the road, one on it at 2.5 km
+        double[] pointLats = new double[2];
+        double[] pointLons = new double[2];
+        GeoMath.Destination(StartLat, Lon, 45, 1000, out);
+        pointLats[0] = out[0];
+        pointLons[0] = out[1];
+        GeoMath.Destination(StartLat, Lon, 0, 2500, out);
+        pointLats[1] = out[0];
+        pointLons[1] = out[1];
+        HazardGeometry points = new HazardGeometry(HazardGeometry.Kind.POINTS, pointLats, pointLons, new int[] { 2 }, null);
+        assertEquals(2500, points.EntryOffset(route), 1);
+
+        // MultiLineString: a far away line, and a cross street at 4.2 km whose ends are outside the corridor
+        double[] lineLats = new double[4];
+        double[] lineLons = new double[4];
+        GeoMath.Destination(StartLat, Lon, 90, 5000, out);
+        lineLats[0] = lineLats[1] = out[0];
+        lineLons[0] = out[1];
+        lineLons[1] = out[1] + 0.01;
+        GeoMath.Destination(StartLat, Lon, 0, 4200, out);
+        lineLats[2] = lineLats[3] = out[0];
+        lineLons[2] = Lon - 0.005;
+        lineLons[3] = Lon + 0.005;
+        HazardGeometry lines = new HazardGeometry(HazardGeometry.Kind.LINES, lineLats, lineLons, new int[] { 2, 4 }, null);
+        assertEquals(4200, lines.EntryOffset(route), 1);
+
+        // MultiPolygon: a square 2 km east of the road, and a 400 m square centered on it at
+        // 6 km with a 100 m hole around its center
+        double[] areaLats = new double[15];
+        double[] areaLons = new double[15];
+        square(3000, 2000, 200, areaLats, areaLons, 0);
+        square(6000, 0, 200, areaLats, areaLons, 5);
+        square(6000, 0, 50, areaLats, areaLons, 10);
+        HazardGeometry areas = new HazardGeometry(HazardGeometry.Kind.AREAS, areaLats, areaLons, new int[] { 5, 10, 15 }, new int[] { 1, 3 });
+        assertEquals(3, areas.GetNumParts());
+        assertEquals(4, areas.GetRing(1).GetNumVertices());
+        assertEquals(5800, areas.EntryOffset(route), 1);
+
+        GeoMath.Destination(StartLat, Lon, 0, 5900, out);
+        assertTrue(areas.Contains(out[0], out[1]));
+        GeoMath.Destination(StartLat, Lon, 0, 6000, out);
+        assertFalse(areas.Contains(out[0], out[1]));
+
+        // An area around the start of the route is entered right away.
+        double[] startLats = new double[5];
+        double[] startLons = new double[5];
+        square(0, 0, 100, startLats, startLons, 0);
+        assertEquals(0, new HazardGeometry(HazardGeometry.Kind.AREAS, startLats, startLons, new int[] { 5 }, null).EntryOffset(route), 0);
+
+        // An area beside the road within the corridor, which the center line never crosses
+        double[] besideLats = new double[5];
+        double[] besideLons = new double[5];
+        square(7500, 60, 35, besideLats, besideLons, 0);
+        assertEquals(7465, new HazardGeometry(HazardGeometry.Kind.AREAS, besideLats, besideLons, new int[] { 5 }, null).EntryOffset(route), 1);
+
+        // An area off the road
+        double[] offLats = new double[5];
+        double[] offLons = new double[5];
+        square(5000, 500, 100, offLats, offLons, 0);
+        assertEquals(-1, new HazardGeometry(HazardGeometry.Kind.AREAS, offLats, offLons, new int[] { 5 }, null).EntryOffset(route), 0);
+    }
+}
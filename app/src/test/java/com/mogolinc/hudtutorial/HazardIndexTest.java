@@ -0,0 +1,241 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.mogolinc.hudtutorial.NorthboundWindows.*;
+import static org.junit.Assert.*;
+
+/**
+ * Cell-bucketed hazard index: queries, writes and snapshot isolation.
+ */
+public class HazardIndexTest {
+    private static HazardIndex.Entry point(String id, double lat, double lon, long expiresAt) {
+        return new HazardIndex.Entry(id, new RouteMessage("incident", id, "point", lat, lon), expiresAt);
+    }
+
+    private static HazardIndex.Entry line(String id, double lat0, double lon0, double lat1, double lon1) {
+        HazardGeometry geometry = new HazardGeometry(HazardGeometry.Kind.LINES, new double[] { lat0, lat1 },
+                new double[] { lon0, lon1 }, new int[] { 2 }, null);
+        return new HazardIndex.Entry(id, new RouteMessage("construction", id, "linestring", lat0, lon0, geometry), Long.MAX_VALUE);
+    }
+
+    private static Set<String> ids(List<HazardIndex.Entry> entries) {
+        Set<String> ids = new HashSet<>();
+        for(HazardIndex.Entry entry : entries)
+            assertTrue("reported twice: " + entry.GetId(), ids.add(entry.GetId()));
+        return ids;
+    }
+
+    private static CompiledRoute corridor() {
+        return Window(0, 10000, new double[0]).GetRoute();
+    }
+
+    @Test
+    public void index_queriesReplacesAndExpires() {
+        HazardIndex index = new HazardIndex();
+        index.Upsert(point("a", 44.905, -93.205, 1000));
+        index.Upsert(point("b", 45.5, -93.205, 2000));
+        // Spans about 5 x 3 cells
+        index.Upsert(line("c", 44.88, -93.22, 44.93, -93.19));
+
+        HazardIndex.Snapshot before = index.GetSnapshot();
+        assertEquals(3, before.GetCount());
+        assertEquals(3, before.GetVersion());
+
+        List<HazardIndex.Entry> found = new ArrayList<>();
+        before.Query(new LocationBounds(44.89, -93.21, 44.91, -93.20), found);
+        assertEquals(new HashSet<>(Arrays.asList("a", "c")), ids(found));
+
+        // Moving "a" away, in one write with a new hazard
+        index.UpsertAll(Arrays.asList(point("a", 45.5, -93.0, 1000), point("d", 44.9, -93.2, 3000)));
+        found.clear();
+        index.GetSnapshot().Query(new LocationBounds(44.89, -93.21, 44.91, -93.20), found);
+        assertEquals(new HashSet<>(Arrays.asList("c", "d")), ids(found));
+        assertEquals(4, index.GetSnapshot().GetCount());
+
+        // The old snapshot is unchanged.
+        found.clear();
+        before.Query(new LocationBounds(44.89, -93.21, 44.91, -93.20), found);
+        assertEquals(new HashSet<>(Arrays.asList("a", "c")), ids(found));
+        assertEquals(44.905, before.Get("a").GetMessage().GetStartLatitude(), 0);
+
+        assertTrue(index.Remove("c"));
+        assertFalse(index.Remove("c"));
+        assertEquals(2, index.ExpireBefore(2000));
+        assertNull(index.GetSnapshot().Get("a"));
+        assertNull(index.GetSnapshot().Get("b"));
+        assertNotNull(index.GetSnapshot().Get("d"));
+        assertEquals(1, index.GetSnapshot().GetCount());
+        assertEquals(0, index.ExpireBefore(2000));
+    }
+
+    @Test
+    public void index_keepsOversizeHazards() {
+        HazardIndex index = new HazardIndex();
+        index.Upsert(line("statewide", 43.5, -97.0, 49.0, -89.5));
+        index.Upsert(point("p", 44.9, -93.2, Long.MAX_VALUE));
+
+        List<HazardIndex.Entry> found = new ArrayList<>();
+        index.GetSnapshot().Query(new LocationBounds(44.89, -93.21, 44.91, -93.19), found);
+        assertEquals(new HashSet<>(Arrays.asList("statewide", "p")), ids(found));
+
+        assertTrue(index.Remove("statewide"));
+        found.clear();
+        index.GetSnapshot().Query(new LocationBounds(44.89, -93.21, 44.91, -93.19), found);
+        assertEquals(1, found.size());
+    }
+
+    @Test
+    public void index_placesCorridorHazardsOnTheRoute() throws Exception {
+        CompiledRoute route = corridor();
+        HazardIndex index = new HazardIndex();
+        double[] out = new double[2];
+        List<RouteMessage> all = new ArrayList<>();
+
+        // Hazards every 250 m, alternating on the road and 200 m east of it
+        for(int i = 0; i < 40; i++) {
+            double lat = North(i * 250 + 10);
+            GeoMath.Destination(lat, Lon, 90, (i % 2 == 0 ? 0 : 200), out);
+            HazardIndex.Entry entry = point("h" + i, lat, out[1], Long.MAX_VALUE);
+            index.Upsert(entry);
+            all.add(entry.GetMessage());
+        }
+        index.Upsert(line("cross", North(5000), Lon - 0.01, North(5000), Lon + 0.01));
+
+        MessageTimeline timeline = index.GetSnapshot().Timeline(route);
+        MessageTimeline expected = new MessageTimeline(route, all);
+        assertEquals(expected.GetNumMessages() + 1, timeline.GetNumMessages());
+        assertEquals(20, expected.GetNumMessages());
+        for(int i = 0, j = 0; i < timeline.GetNumMessages(); i++) {
+            if(timeline.GetMessage(i).GetCondition().equals("construction")) {
+                assertEquals(5000, timeline.GetOffset(i), 1);
+                continue;
+            }
+            assertEquals(expected.GetMessage(j), timeline.GetMessage(i));
+            assertEquals(expected.GetOffset(j), timeline.GetOffset(i), 0);
+            j++;
+        }
+    }
+
+    @Test
+    public void index_corridorQueryMatchesBruteForce() throws Exception {
+        CompiledRoute route = corridor();
+        HazardIndex index = new HazardIndex();
+        Random random = new Random(17);
+        List<HazardIndex.Entry> entries = new ArrayList<>();
+
+        // 200,000 points over about 2 x 1.4 degrees around the route
+        for(int i = 0; i < 200000; i++)
+            entries.add(point("p" + i, StartLat - 1 + random.nextDouble() * 2, Lon - 1 + random.nextDouble() * 2, Long.MAX_VALUE));
+        index.UpsertAll(entries);
+        assertEquals(200000, index.GetSnapshot().GetCount());
+
+        Set<String> expected = new HashSet<>();
+        for(HazardIndex.Entry entry : entries) {
+            for(int s = 0; s < route.GetNumSegments(); s++) {
+                if(route.GetSegmentBounds(s).Intersects(entry.GetBounds())) {
+                    expected.add(entry.GetId());
+                    break;
+                }
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, ids(index.GetSnapshot().QueryCorridor(route)));
+    }
+
+    @Test
+    public void index_trimsBucketsGrownInOneWrite() {
+        HazardIndex index = new HazardIndex();
+        index.Upsert(point("x", StartLat, Lon, 0));
+
+        // 300 hazards in one cell, some of them filed twice in the same write
+        List<HazardIndex.Entry> entries = new ArrayList<>();
+        for(int i = 0; i < 300; i++)
+            entries.add(point("p" + i, StartLat + i * 1e-6, Lon, i));
+        for(int i = 0; i < 300; i += 3)
+            entries.add(point("p" + i, StartLat + i * 1e-6, Lon, i));
+        index.UpsertAll(entries);
+        assertEquals(301, index.GetSnapshot().GetCount());
+        assertEquals(0, index.ExpireBefore(-1));
+        assertEquals(151, index.ExpireBefore(149));
+
+        HazardIndex.Snapshot snapshot = index.GetSnapshot();
+        int filed = 0;
+        int filedIds = 0;
+        for(int b = 0; b < snapshot.Cells.length; b++) {
+            assertEquals(snapshot.Cells[b].length, snapshot.Filed[b].length);
+            for(HazardIndex.Entry entry : snapshot.Filed[b])
+                assertNotNull(entry);
+            for(HazardIndex.Entry entry : snapshot.Ids[b])
+                assertNotNull(entry);
+            filed += snapshot.Filed[b].length;
+            filedIds += snapshot.Ids[b].length;
+        }
+        assertEquals(150, filed);
+        assertEquals(150, filedIds);
+
+        List<HazardIndex.Entry> found = new ArrayList<>();
+        snapshot.Query(new LocationBounds(StartLat - 0.001, Lon - 0.001, StartLat + 0.001, Lon + 0.001), found);
+        assertEquals(150, ids(found).size());
+        assertNull(snapshot.Get("p149"));
+        assertEquals(150, snapshot.Get("p150").GetExpiresAt());
+    }
+
+    @Test
+    public void index_readersSeeWholeWrites() throws Exception {
+        final HazardIndex index = new HazardIndex();
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final LocationBounds area = new LocationBounds(StartLat - 0.05, Lon - 0.05, StartLat + 0.05, Lon + 0.05);
+
+        // Writes add and remove hazards in pairs at the same place; readers must never see half a pair.
+        Thread[] readers = new Thread[4];
+        for(int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    List<HazardIndex.Entry> found = new ArrayList<>();
+                    while(!done.get() && failure.get() == null) {
+                        HazardIndex.Snapshot snapshot = index.GetSnapshot();
+                        found.clear();
+                        snapshot.Query(area, found);
+                        if(found.size() != snapshot.GetCount() || found.size() % 2 != 0)
+                            failure.set("torn snapshot " + snapshot.GetVersion() + ": " + found.size() + " of " + snapshot.GetCount());
+                        for(HazardIndex.Entry entry : found) {
+                            String id = entry.GetId();
+                            String other = (id.endsWith("a") ? id.substring(0, id.length() - 1) + "b" : id.substring(0, id.length() - 1) + "a");
+                            if(snapshot.Get(other) == null)
+                                failure.set("half a pair: " + id);
+                        }
+                    }
+                }
+            });
+            readers[r].start();
+        }
+
+        Random random = new Random(23);
+        for(int k = 0; k < 3000; k++) {
+            double lat = StartLat - 0.04 + random.nextDouble() * 0.08;
+            double lon = Lon - 0.04 + random.nextDouble() * 0.08;
+            index.UpsertAll(Arrays.asList(point(k + "a", lat, lon, k + 100), point(k + "b", lat, lon, k + 100)));
+            if(k % 10 == 0)
+                index.ExpireBefore(k);
+        }
+        done.set(true);
+        for(Thread reader : readers)
+            reader.join();
+
+        assertNull(failure.get());
+        index.ExpireBefore(2999);
+        assertEquals(200, index.GetSnapshot().GetCount());
+    }
+}
@@ -0,0 +1,168 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * MessageFormatter texts, and change-detected rendering in HudController.
+ */
+public class MessageFormatterTest {
+    @Test
+    public void format_matchesCreateMessageAndReusesTexts() {
+        MessageFormatter formatter = new MessageFormatter();
+        String[] conditions = { "incident", "pavement", "closed", "construction", "information", "flooding" };
+
+        for(String condition : conditions) {
+            for(double distance = 0; distance < 150000; distance += (distance < 3000 ? 7.3 : 997)) {
+                String text = formatter.Format(condition, "Detour ahead", distance);
+                assertEquals(HudController.CreateMessage(condition, "Detour ahead", distance), text);
+                if(distance < MessageFormatter.MaxCachedKilometers * 1000)
+                    assertSame(text, formatter.Format(condition, "Detour ahead", distance));
+            }
+        }
+
+        assertEquals(0, MessageFormatter.Bucket(99.9));
+        assertEquals(9, MessageFormatter.Bucket(999.9));
+        assertEquals(10, MessageFormatter.Bucket(1000));
+        assertEquals(11, MessageFormatter.Bucket(2500));
+    }
+
+    @Test
+    public void format_toleratesNullStrings() {
+        MessageFormatter formatter = new MessageFormatter();
+
+        assertNull(formatter.Format(null, "Detour ahead", 500));
+        assertNull(formatter.Format("information", null, 500));
+        assertEquals("flooding", formatter.Format("flooding", null, 500));
+    }
+
+    @Test
+    public void prepare_buildsTextsOfLoadedMessages() {
+        double[] latitudes = { 44.9, StandInConditionsServer.NorthboundCorridor.NorthOf(44.9, 2000) };
+        double[] longitudes = { -93.2, -93.2 };
+        double hazard = StandInConditionsServer.NorthboundCorridor.NorthOf(44.9, 500);
+        MessageTimeline messages = new MessageTimeline(new CompiledRoute(latitudes, longitudes, 30), Arrays.asList(
+                new RouteMessage("incident", "Crash", "point", hazard, -93.2),
+                new RouteMessage("information", "Detour ahead", "point", hazard, -93.2)));
+
+        MessageFormatter formatter = new MessageFormatter();
+        formatter.Prepare(messages);
+
+        String[] texts = formatter.Texts.get("incident");
+        for(int bucket = 0; bucket < texts.length; bucket++)
+            assertNotNull(texts[bucket]);
+        assertNull(formatter.Texts.get("pavement")[0]);
+
+        assertSame(texts[3], formatter.Format("incident", "Crash", 350));
+        assertSame(texts[MessageFormatter.MeterBuckets + 1], formatter.Format("incident", "Crash", 2500));
+        assertEquals(HudController.CreateMessage("incident", "Crash", 2500), texts[MessageFormatter.MeterBuckets + 1]);
+    }
+
+    @Test
+    public void controller_showsEmptyTextForMessageWithoutText() throws Exception {
+        double[] latitudes = { 44.9, StandInConditionsServer.NorthboundCorridor.NorthOf(44.9, 2000) };
+        double[] longitudes = { -93.2, -93.2 };
+        double hazard = StandInConditionsServer.NorthboundCorridor.NorthOf(44.9, 500);
+        RouteState state = RouteState.FromResponse(new RouteResponse(new CompiledRoute(latitudes, longitudes, 30),
+                Arrays.asList(new RouteMessage("information", null, "point", hazard, -93.2))));
+
+        final List<String> shown = new ArrayList<>();
+        HudController controller = new HudController(new RouteTracker(1000, new PrefetchScheduler()),
+                new RouteFetcher("http://127.0.0.1:1/conditions/route", "test", 2000, 30), new HudController.Host() {
+            @Override
+            public void Show(String message) {
+                shown.add(message);
+            }
+
+            @Override
+            public void Log(String message) {
+            }
+
+            @Override
+            public void SetUpdateInterval(long minTime, float minDistance) {
+            }
+
+            @Override
+            public void Post(Runnable task) {
+            }
+        });
+
+        try {
+            controller.OnFix(44.9, -93.2, 0, true, 10, true, 0);
+            controller.GetTracker().OnFetchCompleted(state, 100);
+            controller.OnFix(StandInConditionsServer.NorthboundCorridor.NorthOf(44.9, 2), -93.2, 0, true, 10, true, 200);
+
+            assertEquals(0, controller.GetTracker().GetNextMessage());
+            assertFalse(shown.contains(null));
+            assertEquals("", shown.get(shown.size() - 1));
+        } finally {
+            controller.Shutdown();
+        }
+    }
+
+    @Test
+    public void controller_showsOnlyChangedTexts() throws Exception {
+        RouteState state;
+        InputStream in = getClass().getClassLoader().getResourceAsStream("route_response.json");
+        try {
+            state = RouteState.FromResponse(new RouteResponseDecoder(30).Decode(in));
+        } finally {
+            in.close();
+        }
+
+        final List<String> shown = new ArrayList<>();
+        // Nothing listens on port 1; fetches fail and their results are dropped.
+        HudController controller = new HudController(new RouteTracker(1000, new PrefetchScheduler()),
+                new RouteFetcher("http://127.0.0.1:1/conditions/route", "test", 2000, 30), new HudController.Host() {
+            @Override
+            public void Show(String message) {
+                shown.add(message);
+            }
+
+            @Override
+            public void Log(String message) {
+            }
+
+            @Override
+            public void SetUpdateInterval(long minTime, float minDistance) {
+            }
+
+            @Override
+            public void Post(Runnable task) {
+            }
+        });
+
+        try {
+            // Northbound along the first route segment, 2 m per fix
+            double[] out = new double[2];
+            CompiledRoute route = state.GetRoute();
+            controller.OnFix(route.GetLatitude(0), route.GetLongitude(0), 0, true, 10, true, 0);
+            controller.GetTracker().OnFetchCompleted(state, 100);
+
+            List<String> expected = new ArrayList<>();
+            int fixes = (int) (route.GetSegmentLength(0) / 2);
+            for(int i = 0; i < fixes; i++) {
+                GeoMath.Destination(route.GetLatitude(0), route.GetLongitude(0), route.GetSegmentBearing(0), i * 2, out);
+                controller.OnFix(out[0], out[1], route.GetSegmentBearing(0), true, 10, true, i * 200);
+
+                RouteTracker tracker = controller.GetTracker();
+                int next = tracker.GetNextMessage();
+                RouteMessage message = tracker.GetFront().GetMessages().GetMessage(next);
+                String text = HudController.CreateMessage(message.GetCondition(), message.GetSubcondition(), tracker.GetDistanceToMessage(next));
+                if(expected.isEmpty() || !expected.get(expected.size() - 1).equals(text))
+                    expected.add(text);
+            }
+
+            assertTrue(expected.size() > 1);
+            assertEquals(expected, shown);
+        } finally {
+            controller.Shutdown();
+        }
+    }
+}
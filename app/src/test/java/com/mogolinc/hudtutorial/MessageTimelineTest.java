@@ -0,0 +1,90 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Projection of RouteMessages onto a straight route, and lookups of the next message ahead.
+ */
+public class MessageTimelineTest {
+    private static final double StartLat = 45;
+    private static final double StartLon = -93;
+
+    private static double[] north(double meters) {
+        double[] out = new double[2];
+        GeoMath.Destination(StartLat, StartLon, 0, meters, out);
+        return out;
+    }
+
+    /**
+     * A route heading north for one kilometer, in 50 meter segments.
+     */
+    private static CompiledRoute route() {
+        double[] latitudes = new double[21];
+        double[] longitudes = new double[21];
+        for(int i = 0; i < latitudes.length; i++) {
+            double[] p = north(i * 50);
+            latitudes[i] = p[0];
+            longitudes[i] = p[1];
+        }
+        return new CompiledRoute(latitudes, longitudes, 30);
+    }
+
+    private static RouteMessage message(String subcondition, double meters) {
+        double[] p = north(meters);
+        return new RouteMessage("wind", subcondition, "point", p[0], p[1]);
+    }
+
+    @Test
+    public void timeline_sortsMessagesByOffset() {
+        double[] east = new double[2];
+        GeoMath.Destination(StartLat, StartLon, 90, 500, east);
+
+        List<RouteMessage> messages = Arrays.asList(
+                message("c", 720),
+                message("a", 130),
+                new RouteMessage("wind", "off route", "point", east[0], east[1]),
+                new RouteMessage("wind", "no start", "polygon", Double.NaN, Double.NaN),
+                message("b", 410),
+                message("d", 990));
+        MessageTimeline timeline = new MessageTimeline(route(), messages);
+
+        assertEquals(4, timeline.GetNumMessages());
+        String[] expected = { "a", "b", "c", "d" };
+        double[] offsets = { 130, 410, 720, 990 };
+        for(int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], timeline.GetMessage(i).GetSubcondition());
+            assertEquals(offsets[i], timeline.GetOffset(i), 1e-6);
+        }
+    }
+
+    @Test
+    public void timeline_findsNextMessageAhead() {
+        List<RouteMessage> messages = Arrays.asList(message("a", 130), message("b", 410), message("c", 410), message("d", 720));
+        MessageTimeline timeline = new MessageTimeline(route(), messages);
+
+        assertEquals(0, timeline.NextAhead(-1));
+        assertEquals(0, timeline.NextAhead(0));
+        assertEquals(1, timeline.NextAhead(200));
+        assertEquals(3, timeline.NextAhead(500));
+        assertEquals(-1, timeline.NextAhead(800));
+
+        // Strictly ahead: a message at the vehicle's offset has been passed, along with any other
+        // message at the same offset
+        assertEquals(1, timeline.NextAhead(timeline.GetOffset(0)));
+        assertEquals(3, timeline.NextAhead(timeline.GetOffset(1)));
+        assertEquals(-1, timeline.NextAhead(timeline.GetOffset(3)));
+    }
+
+    @Test
+    public void timeline_handlesNoMessages() {
+        MessageTimeline timeline = new MessageTimeline(route(), new ArrayList<RouteMessage>());
+        assertEquals(0, timeline.GetNumMessages());
+        assertEquals(-1, timeline.NextAhead(0));
+    }
+}
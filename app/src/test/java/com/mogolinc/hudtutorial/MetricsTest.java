@@ -0,0 +1,90 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Histogram bucketing and percentiles, and the Metrics snapshot format.
+ */
+public class MetricsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void histogram_bucketsBoundValuesWithinOneEighth() {
+        for(long value = 0; value < 1 << 20; value += 1 + value / 64) {
+            int bucket = Histogram.BucketOf(value);
+            long upper = Histogram.BucketUpperBound(bucket);
+
+            assertTrue(value <= upper);
+            assertTrue(bucket == 0 || Histogram.BucketUpperBound(bucket - 1) < value);
+            assertTrue(upper - value <= value / Histogram.SubBuckets);
+        }
+        assertEquals(Histogram.NumBuckets - 1, Histogram.BucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void histogram_reportsPercentilesAndMax() {
+        Histogram histogram = new Histogram("latency_ms");
+        for(long value = 1; value <= 1000; value++)
+            histogram.Record(value);
+
+        assertEquals(1000, histogram.GetCount());
+        assertEquals(500.5, histogram.GetMean(), 1e-9);
+        assertEquals(1000, histogram.GetMax());
+        assertEquals(500, histogram.GetValueAtPercentile(50), 500 / Histogram.SubBuckets);
+        assertEquals(990, histogram.GetValueAtPercentile(99), 990 / Histogram.SubBuckets);
+        assertEquals(1000, histogram.GetValueAtPercentile(100));
+
+        histogram.Reset();
+        assertEquals(0, histogram.GetCount());
+        assertEquals(0, histogram.GetValueAtPercentile(50));
+    }
+
+    @Test
+    public void metrics_dumpsSnapshotToFile() throws Exception {
+        Metrics metrics = new Metrics();
+        AtomicLong hits = metrics.NewCounter("cache_hits");
+        Histogram bytes = metrics.NewHistogram("fetch_bytes");
+        hits.addAndGet(3);
+        bytes.Record(5);
+        bytes.Record(5);
+        bytes.Record(100);
+
+        File file = new File(folder.getRoot(), "metrics.tsv");
+        metrics.Dump(file, "1.0 test");
+
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            for(String line = reader.readLine(); line != null; line = reader.readLine())
+                lines.add(line);
+        } finally {
+            reader.close();
+        }
+
+        assertEquals(5, lines.size());
+        assertEquals("build\t1.0 test", lines.get(0));
+        assertTrue(lines.get(1).startsWith("time\t"));
+        assertEquals("counter\tcache_hits\t3", lines.get(2));
+        assertEquals("histogram\tfetch_bytes\t3\t36.7\t5\t100\t100\t100", lines.get(3));
+        assertEquals(String.format("buckets\tfetch_bytes\t5:2\t%d:1", Histogram.BucketOf(100)), lines.get(4));
+        assertFalse(new File(folder.getRoot(), "metrics.tsv.tmp").exists());
+
+        metrics.Reset();
+        StringWriter writer = new StringWriter();
+        metrics.WriteTo(writer, "1.0 test");
+        assertTrue(writer.toString().contains("counter\tcache_hits\t0\n"));
+    }
+}
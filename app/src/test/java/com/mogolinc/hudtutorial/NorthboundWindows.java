@@ -0,0 +1,72 @@
+package com.mogolinc.hudtutorial;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Route windows along a straight northbound road, built directly from arrays.
+ * <br /><br />
+ * Windows have the geometry StandInConditionsServer.NorthboundCorridor serves, without the JSON
+ * round trip: a vertex every 100 m (or as given) from the requested position, and an "incident"
+ * point message at every hazard latitude inside the window. Vertices keep the 7 decimals of the
+ * JSON responses, the precision PackedRoute stores.
+ */
+public class NorthboundWindows {
+    public static final double StartLat = 44.9;
+    public static final double Lon = -93.2;
+    public static final double VertexSpacing = 100;
+    public static final double Padding = 30;
+
+    /**
+     * Returns the latitude "meters" north of StartLat, on the road.
+     */
+    public static double North(double meters) {
+        return StandInConditionsServer.NorthboundCorridor.NorthOf(StartLat, meters);
+    }
+
+    /**
+     * Returns the window requested "start" meters north of StartLat.
+     *
+     * @param start offset of the requested position from StartLat, in meters
+     * @param length window length in meters
+     * @param hazards latitudes of point hazards on the road
+     * @return response with the window's route and messages
+     */
+    public static RouteResponse Window(double start, double length, double[] hazards) {
+        return Window(start, length, VertexSpacing, hazards);
+    }
+
+    /**
+     * Returns the window requested "start" meters north of StartLat, with a vertex every
+     * "spacing" meters.
+     *
+     * @param start offset of the requested position from StartLat, in meters
+     * @param length window length in meters
+     * @param spacing distance between vertices in meters
+     * @param hazards latitudes of point hazards on the road
+     * @return response with the window's route and messages
+     */
+    public static RouteResponse Window(double start, double length, double spacing, double[] hazards) {
+        double lat = North(start);
+        double endLat = North(start + length);
+
+        int vertices = (int) Math.ceil(length / spacing) + 1;
+        double[] latitudes = new double[vertices];
+        double[] longitudes = new double[vertices];
+        for(int i = 0; i < vertices; i++) {
+            latitudes[i] = Math.round(North(start + Math.min(length, i * spacing)) * 1e7) / 1e7;
+            longitudes[i] = Lon;
+        }
+
+        List<RouteMessage> messages = new ArrayList<>();
+        for(double hazard : hazards) {
+            if(hazard < lat || hazard > endLat)
+                continue;
+            HazardGeometry geometry = new HazardGeometry(HazardGeometry.Kind.POINTS, new double[] { hazard },
+                    new double[] { Lon }, new int[] { 1 }, null);
+            messages.add(new RouteMessage("incident", "", "point", hazard, Lon, geometry));
+        }
+
+        return new RouteResponse(latitudes, longitudes, Padding, DistanceMode.PLANAR, messages);
+    }
+}
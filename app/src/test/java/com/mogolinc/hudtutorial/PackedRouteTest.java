@@ -0,0 +1,131 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks PackedRoute against a CompiledRoute of the same fixed-point vertices.
+ */
+public class PackedRouteTest {
+    private static final double Padding = 30;
+
+    /**
+     * Returns a wandering route of "vertices" vertices "spacing" meters apart, as
+     * {latitudes, longitudes} rounded to 1e-7 degrees.
+     */
+    private static double[][] road(int vertices, double spacing, double lat, double lon, long seed) {
+        Random random = new Random(seed);
+        double[] latitudes = new double[vertices];
+        double[] longitudes = new double[vertices];
+        double[] out = new double[2];
+        double heading = random.nextDouble() * 360;
+        for(int i = 0; i < vertices; i++) {
+            latitudes[i] = Math.round(lat * 1e7) / 1e7;
+            longitudes[i] = Math.round(lon * 1e7) / 1e7;
+            heading += random.nextGaussian() * 10;
+            GeoMath.Destination(lat, lon, heading, spacing, out);
+            lat = out[0];
+            lon = out[1];
+            if(lon > 180)
+                lon -= 360;
+        }
+        return new double[][] { latitudes, longitudes };
+    }
+
+    @Test
+    public void packed_matchesCompiledRoute() {
+        double[][] road = road(1500, 50, 44.9778, -93.2650, 7);
+        CompiledRoute compiled = new CompiledRoute(road[0], road[1], Padding);
+        PackedRoute packed = new PackedRoute(road[0], road[1], Padding);
+
+        assertEquals(compiled.GetNumSegments(), packed.GetNumSegments());
+        assertEquals(compiled.GetLength(), packed.GetLength(), 1e-6);
+        for(int i = 0; i < compiled.GetNumVertices(); i++) {
+            assertEquals(compiled.GetLatitude(i), packed.GetLatitude(i), 0);
+            assertEquals(compiled.GetLongitude(i), packed.GetLongitude(i), 0);
+            assertEquals(compiled.GetCumulativeDistance(i), packed.GetCumulativeDistance(i), 1e-6);
+        }
+
+        // Points around every segment, on and off the corridor
+        Random random = new Random(11);
+        double[] out = new double[2];
+        int onRoute = 0;
+        for(int k = 0; k < 20000; k++) {
+            int i = random.nextInt(compiled.GetNumSegments());
+            GeoMath.Destination(compiled.GetLatitude(i), compiled.GetLongitude(i), random.nextDouble() * 360, random.nextDouble() * 80, out);
+
+            int segment = compiled.FindSegment(out[0], out[1], 0);
+            assertEquals(segment, packed.FindSegment(out[0], out[1], 0));
+            assertEquals(compiled.OffsetOf(out[0], out[1]), packed.OffsetOf(out[0], out[1]), 1e-6);
+            if(segment >= 0) {
+                onRoute++;
+                int from = Math.max(0, segment - random.nextInt(3) + 1);
+                assertEquals(compiled.FindSegment(out[0], out[1], from), packed.FindSegment(out[0], out[1], from));
+            }
+        }
+        assertTrue(onRoute > 5000 && onRoute < 19000);
+    }
+
+    @Test
+    public void packed_takesUnderTenBytesPerVertex() {
+        for(double spacing : new double[] { 5, 50, 500 }) {
+            double[][] road = road(10000, spacing, 44.9778, -93.2650, 3);
+            PackedRoute packed = new PackedRoute(road[0], road[1], Padding);
+            double perVertex = packed.GetByteSize() / 10000.0;
+            assertTrue(String.format("%.1f bytes per vertex at %.0f m", perVertex, spacing), perVertex < 10);
+        }
+    }
+
+    @Test
+    public void compile_expandsStretchWithRouteOffsets() {
+        double[][] road = road(1000, 50, -33.86, 151.2, 5);
+        PackedRoute packed = new PackedRoute(road[0], road[1], Padding);
+        CompiledRoute stretch = packed.Compile(100, 300);
+
+        assertEquals(201, stretch.GetNumVertices());
+        for(int i = 0; i < stretch.GetNumVertices(); i++) {
+            assertEquals(packed.GetLatitude(100 + i), stretch.GetLatitude(i), 0);
+            assertEquals(packed.GetCumulativeDistance(100 + i), stretch.GetCumulativeDistance(i), 1e-6);
+        }
+
+        double lat = (packed.GetLatitude(200) + packed.GetLatitude(201)) / 2;
+        double lon = (packed.GetLongitude(200) + packed.GetLongitude(201)) / 2;
+        assertEquals(packed.OffsetOf(lat, lon), stretch.OffsetOf(lat, lon), 1e-6);
+    }
+
+    @Test
+    public void packed_crossesAntimeridian() {
+        double[] latitudes = { -16.5, -16.5, -16.5, -16.5 };
+        double[] longitudes = { 179.9990, 179.9995, -179.9995, -179.9990 };
+        PackedRoute packed = new PackedRoute(latitudes, longitudes, Padding);
+
+        for(int i = 0; i < latitudes.length; i++)
+            assertEquals(longitudes[i], packed.GetLongitude(i), 0);
+        assertTrue(packed.IsOnRoute(-16.5, 179.9993));
+    }
+
+    @Test
+    public void packed_handlesDegenerateRoutes() {
+        PackedRoute empty = new PackedRoute(new double[0], new double[0], Padding);
+        assertEquals(0, empty.GetNumSegments());
+        assertFalse(empty.IsOnRoute(0, 0));
+        assertEquals(0, empty.GetLength(), 0);
+
+        PackedRoute single = new PackedRoute(new double[] { 45 }, new double[] { -93 }, Padding);
+        assertEquals(0, single.GetNumSegments());
+        assertEquals(-1, single.OffsetOf(45, -93), 0);
+
+        // Exactly one block of segments plus the next block's first vertex
+        double[][] road = road(PackedRoute.BlockSize + 1, 50, 45, -93, 1);
+        PackedRoute block = new PackedRoute(road[0], road[1], Padding);
+        CompiledRoute compiled = new CompiledRoute(road[0], road[1], Padding);
+        int last = PackedRoute.BlockSize - 1;
+        double lat = (road[0][last] + road[0][last + 1]) / 2;
+        double lon = (road[1][last] + road[1][last + 1]) / 2;
+        assertEquals(compiled.FindSegment(lat, lon, 0), block.FindSegment(lat, lon, 0));
+        assertEquals(compiled.GetLength(), block.GetCumulativeDistance(PackedRoute.BlockSize), 1e-6);
+    }
+}
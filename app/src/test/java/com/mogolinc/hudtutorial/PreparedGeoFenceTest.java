@@ -0,0 +1,198 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks PreparedGeoFence against the crossing test GeoFence ran over its Location vertices.
+ */
+public class PreparedGeoFenceTest {
+    /**
+     * Shifts a point off the level of a vertex, to where PreparedGeoFence places points on it.
+     */
+    private static final double Above = 1e-9;
+
+    /**
+     * The old GeoFence.Intersect, with its boxed coordinates. "==" on two Doubles compares
+     * references, so its vertex-level nudge never applied.
+     */
+    @SuppressWarnings("NumberEquality")
+    private static boolean intersect(double lat, double lon, double lat0, double lon0, double lat1, double lon1) {
+        Double eps = 1e-7;
+
+        Double l0y = lat0;
+        Double l1y = lat1;
+        Double py = lat;
+
+        Double l0x = lon0;
+        Double l1x = lon1;
+        Double px = lon;
+
+        if(l0y > l1y) {
+            l0y = lat1;
+            l0x = lon1;
+            l1y = lat0;
+            l1x = lon0;
+        }
+
+        if(l0y == py && l1y == py)
+            py += eps;
+
+        if(py > l1y || py < l0y || px > Math.max(l0x, l1x))
+            return false;
+
+        if(px < Math.min(l0x, l1x))
+            return true;
+
+        double m0;
+        double m1;
+        if(l0x == l1x)
+            m0 = Double.MAX_VALUE;
+        else
+            m0 = (l1y - l0y) / (l1x - l0x);
+
+        if(px == l0x)
+            m1 = Double.MAX_VALUE;
+        else
+            m1 = (py - l0y) / (px - l0x);
+
+        return m1 >= m0;
+    }
+
+    /**
+     * The old GeoFence.Contains loop.
+     */
+    private static boolean contains(double[] lats, double[] lons, double lat, double lon) {
+        int count = 0;
+        for(int i = 0; i < lats.length; i++) {
+            int i1 = ((i+1) >= lats.length ? 0 : (i+1));
+            if(intersect(lat, lon, lats[i], lons[i], lats[i1], lons[i1]))
+                count++;
+        }
+        return (count & 1) == 1;
+    }
+
+    /**
+     * A star-shaped, generally non-convex polygon around 45, -93.
+     */
+    private static double[][] star(Random random, int vertices) {
+        double[][] polygon = new double[2][vertices];
+        for(int i = 0; i < vertices; i++) {
+            double angle = 2 * Math.PI * (i + random.nextDouble() * 0.8) / vertices;
+            double radius = 0.001 + random.nextDouble() * 0.004;
+            polygon[0][i] = 45 + radius * Math.sin(angle);
+            polygon[1][i] = -93 + radius * Math.cos(angle);
+        }
+        return polygon;
+    }
+
+    /**
+     * A staircase of unit steps, 0.001 degrees wide, whose edges are all horizontal or vertical.
+     */
+    private static double[][] staircase() {
+        double[] x = { 0, 3, 3, 2, 2, 1, 1, 0 };
+        double[] y = { 0, 0, 1, 1, 2, 2, 3, 3 };
+        double[][] polygon = new double[2][x.length];
+        for(int i = 0; i < x.length; i++) {
+            polygon[0][i] = level(y[i]);
+            polygon[1][i] = -93 + x[i] * 0.001;
+        }
+        return polygon;
+    }
+
+    private static double level(double y) {
+        return 45 + y * 0.001;
+    }
+
+    @Test
+    public void prepared_matchesOldLoopOnRandomPolygons() {
+        Random random = new Random(11);
+        for(int p = 0; p < 50; p++) {
+            double[][] polygon = star(random, 3 + random.nextInt(12));
+            PreparedGeoFence fence = new PreparedGeoFence(polygon[0], polygon[1]);
+
+            for(int k = 0; k < 500; k++) {
+                double lat = 44.994 + random.nextDouble() * 0.012;
+                double lon = -93.006 + random.nextDouble() * 0.012;
+                assertEquals(contains(polygon[0], polygon[1], lat, lon), fence.Contains(lat, lon));
+            }
+
+            // On the level of every vertex, where the ray passes through a vertex shared by two
+            // edges. The old loop counted both edges there.
+            for(int i = 0; i < polygon[0].length; i++) {
+                for(int k = 0; k < 20; k++) {
+                    double lon = -93.006 + random.nextDouble() * 0.012;
+                    assertEquals(contains(polygon[0], polygon[1], polygon[0][i] + Above, lon), fence.Contains(polygon[0][i], lon));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void prepared_matchesOldLoopAwayFromHorizontalEdges() {
+        double[][] polygon = staircase();
+        PreparedGeoFence fence = new PreparedGeoFence(polygon[0], polygon[1]);
+
+        Random random = new Random(4);
+        for(int k = 0; k < 5000; k++) {
+            double lat = level(-0.5 + random.nextDouble() * 4);
+            double lon = -93 + (-0.5 + random.nextDouble() * 4) * 0.001;
+            assertEquals(contains(polygon[0], polygon[1], lat, lon), fence.Contains(lat, lon));
+        }
+
+        assertTrue(fence.Contains(level(0.5), -93 + 2.5 * 0.001));
+        assertTrue(fence.Contains(level(2.5), -93 + 0.5 * 0.001));
+        assertFalse(fence.Contains(level(2.5), -93 + 1.5 * 0.001));
+    }
+
+    @Test
+    public void prepared_countsHorizontalEdgeLevelsOnce() {
+        double[][] polygon = staircase();
+        PreparedGeoFence fence = new PreparedGeoFence(polygon[0], polygon[1]);
+
+        // Left of the polygon on the level of its bottom edge. The old loop counted the horizontal
+        // edge and both vertical edges meeting it, and reported the point inside.
+        double left = -93 - 0.0005;
+        assertTrue(contains(polygon[0], polygon[1], level(0), left));
+        assertFalse(fence.Contains(level(0), left));
+
+        // Inside the polygon on the level of an inner step, and outside on the level of the top
+        assertTrue(fence.Contains(level(1), -93 + 0.0005));
+        assertTrue(fence.Contains(level(2), -93 + 0.0005));
+        assertFalse(fence.Contains(level(3), left));
+        assertFalse(fence.Contains(level(1), -93 + 3.5 * 0.001));
+
+        Random random = new Random(6);
+        for(int y = 0; y <= 3; y++) {
+            for(int k = 0; k < 500; k++) {
+                double lon = -93 + (-0.5 + random.nextDouble() * 4) * 0.001;
+                assertEquals(contains(polygon[0], polygon[1], level(y) + Above, lon), fence.Contains(level(y), lon));
+            }
+        }
+    }
+
+    @Test
+    public void prepared_containsPolygonsInSharedArrays() {
+        Random random = new Random(8);
+        double[][] a = star(random, 7);
+        double[][] b = staircase();
+        double[] lats = new double[a[0].length + b[0].length];
+        double[] lons = new double[lats.length];
+        System.arraycopy(a[0], 0, lats, 0, a[0].length);
+        System.arraycopy(a[1], 0, lons, 0, a[1].length);
+        System.arraycopy(b[0], 0, lats, a[0].length, b[0].length);
+        System.arraycopy(b[1], 0, lons, a[1].length, b[1].length);
+
+        PreparedGeoFence fa = new PreparedGeoFence(a[0], a[1]);
+        PreparedGeoFence fb = new PreparedGeoFence(b[0], b[1]);
+        for(int k = 0; k < 2000; k++) {
+            double lat = 44.994 + random.nextDouble() * 0.012;
+            double lon = -93.006 + random.nextDouble() * 0.012;
+            assertEquals(fa.Contains(lat, lon), PreparedGeoFence.Contains(lats, lons, 0, a[0].length, lat, lon));
+            assertEquals(fb.Contains(lat, lon), PreparedGeoFence.Contains(lats, lons, a[0].length, b[0].length, lat, lon));
+        }
+    }
+}
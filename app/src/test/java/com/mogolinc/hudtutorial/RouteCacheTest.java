@@ -0,0 +1,81 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Keying, staleness and LRU eviction of RouteCache.
+ */
+public class RouteCacheTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("routecache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if(files != null)
+            for(File file : files)
+                file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void geohash_matchesReferenceValue() {
+        assertEquals("ezs42", Geohash.Encode(42.605, -5.603, 5));
+    }
+
+    @Test
+    public void key_bucketsPositionAndBearing() {
+        RouteCache cache = new RouteCache(directory, 1024, 60000);
+
+        // ~10 m apart, similar bearings: same bucket
+        assertEquals(cache.Key(44.90001, -93.20001, 2), cache.Key(44.90010, -93.20005, 358));
+        // Opposite direction: different bucket
+        assertNotEquals(cache.Key(44.90001, -93.20001, 0), cache.Key(44.90001, -93.20001, 180));
+        // ~1 km away: different bucket
+        assertNotEquals(cache.Key(44.90001, -93.20001, 0), cache.Key(44.91, -93.20001, 0));
+    }
+
+    @Test
+    public void get_servesPersistedEntryAndMarksStale() throws IOException {
+        new RouteCache(directory, 1024, 60000).Put(44.9, -93.2, 0, new byte[] { 1, 2, 3 });
+
+        RouteCache.Entry fresh = new RouteCache(directory, 1024, 60000).Get(44.9, -93.2, 0);
+        assertNotNull(fresh);
+        assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), fresh.GetPayload());
+        assertFalse(fresh.IsStale());
+
+        assertTrue(new RouteCache(directory, 1024, -1).Get(44.9, -93.2, 0).IsStale());
+        assertNull(new RouteCache(directory, 1024, -1, -1, RouteCache.DefaultPrecision).Get(44.9, -93.2, 0));
+        assertEquals(0, new RouteCache(directory, 1024, 60000).GetNumEntries());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() throws IOException {
+        // Room for two 100 byte payloads plus headers
+        RouteCache cache = new RouteCache(directory, 220, 60000);
+        cache.Put(44.90, -93.2, 0, new byte[100]);
+        cache.Put(44.91, -93.2, 0, new byte[100]);
+        assertNotNull(cache.Get(44.90, -93.2, 0));
+
+        cache.Put(44.92, -93.2, 0, new byte[100]);
+
+        assertEquals(2, cache.GetNumEntries());
+        assertTrue(cache.GetTotalBytes() <= 220);
+        assertNotNull(cache.Get(44.90, -93.2, 0));
+        assertNull(cache.Get(44.91, -93.2, 0));
+        assertNotNull(cache.Get(44.92, -93.2, 0));
+    }
+}
@@ -0,0 +1,142 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Map matching with RouteCursor on straight and out-and-back routes.
+ */
+public class RouteCursorTest {
+    private static final double StartLat = 45;
+    private static final double StartLon = -93;
+    private static final double Spacing = 50;
+
+    /**
+     * Returns {lat, lon} "meters" north of the start.
+     */
+    private static double[] north(double meters) {
+        double[] out = new double[2];
+        GeoMath.Destination(StartLat, StartLon, 0, meters, out);
+        return out;
+    }
+
+    /**
+     * A route heading north for "legs" segments, which then turns back the same way to the start
+     * if "back" is set. North segment k and return segment (2 * legs - 1 - k) share a corridor.
+     */
+    private static CompiledRoute route(int legs, boolean back) {
+        int vertices = (back ? 2 * legs + 1 : legs + 1);
+        double[] latitudes = new double[vertices];
+        double[] longitudes = new double[vertices];
+        for(int i = 0; i < vertices; i++) {
+            double[] p = north(Spacing * (i <= legs ? i : 2 * legs - i));
+            latitudes[i] = p[0];
+            longitudes[i] = p[1];
+        }
+        return new CompiledRoute(latitudes, longitudes, 30);
+    }
+
+    private static boolean update(RouteCursor cursor, double meters, double bearing, boolean hasBearing) {
+        double[] p = north(meters);
+        return cursor.Update(p[0], p[1], bearing, hasBearing);
+    }
+
+    @Test
+    public void cursor_followsTheRoute() {
+        CompiledRoute route = route(100, false);
+        RouteCursor cursor = new RouteCursor(route);
+        assertFalse(cursor.IsMatched());
+
+        for(int s = 0; s < 100; s++) {
+            double meters = s * Spacing + 10 + (s % 3) * 12;
+            assertTrue(update(cursor, meters, 0, true));
+            assertEquals(s, cursor.GetSegment());
+            double[] p = north(meters);
+            assertEquals(route.OffsetOf(p[0], p[1]), cursor.GetOffset(), 1e-6);
+        }
+
+        // Off the route
+        double[] p = new double[2];
+        GeoMath.Destination(StartLat, StartLon, 90, 100, p);
+        assertFalse(cursor.Update(p[0], p[1], 0, false));
+        assertFalse(cursor.IsMatched());
+        assertEquals(-1, cursor.GetOffset(), 0);
+    }
+
+    @Test
+    public void cursor_fallsBackToGlobalSearchAfterJump() {
+        CompiledRoute route = route(100, false);
+        RouteCursor cursor = new RouteCursor(route);
+
+        assertTrue(update(cursor, 60, 0, true));
+        assertEquals(1, cursor.GetSegment());
+
+        // Far past the forward window, e.g. after a tunnel
+        assertTrue(update(cursor, 50 * Spacing + 20, 0, true));
+        assertEquals(50, cursor.GetSegment());
+
+        // And back behind the window
+        assertTrue(update(cursor, 10 * Spacing + 20, 0, true));
+        assertEquals(10, cursor.GetSegment());
+
+        cursor.Reset();
+        assertFalse(cursor.IsMatched());
+        assertTrue(update(cursor, 30 * Spacing + 20, 0, false));
+        assertEquals(30, cursor.GetSegment());
+    }
+
+    @Test
+    public void cursor_usesBearingOnOverlappingSegments() {
+        CompiledRoute route = route(10, true);
+        assertEquals(20, route.GetNumSegments());
+
+        // North segment 2 and return segment 17 share the corridor around 125 m
+        RouteCursor cursor = new RouteCursor(route);
+        assertTrue(update(cursor, 125, 0, true));
+        assertEquals(2, cursor.GetSegment());
+
+        cursor.Reset();
+        assertTrue(update(cursor, 125, 180, true));
+        assertEquals(17, cursor.GetSegment());
+        assertEquals(route.GetCumulativeDistance(17) + 25, cursor.GetOffset(), 1e-6);
+
+        // Without a bearing, a global search keeps the earliest segment
+        cursor.Reset();
+        assertTrue(update(cursor, 125, 0, false));
+        assertEquals(2, cursor.GetSegment());
+
+        // Near bearings are folded across north
+        cursor.Reset();
+        assertTrue(update(cursor, 125, 355, true));
+        assertEquals(2, cursor.GetSegment());
+    }
+
+    @Test
+    public void cursor_staysOnItsLegAtTheTurnaround() {
+        CompiledRoute route = route(10, true);
+        RouteCursor cursor = new RouteCursor(route);
+
+        // Heading north up to the turnaround, then back south
+        assertTrue(update(cursor, 8 * Spacing + 25, 0, true));
+        assertEquals(8, cursor.GetSegment());
+        assertTrue(update(cursor, 9 * Spacing + 25, 0, true));
+        assertEquals(9, cursor.GetSegment());
+        assertTrue(update(cursor, 9 * Spacing + 10, 180, true));
+        assertEquals(10, cursor.GetSegment());
+
+        // Back on the return leg, the window search keeps to it even without a bearing, where a
+        // global search would have matched the north leg
+        assertTrue(update(cursor, 7 * Spacing + 25, 180, true));
+        assertEquals(12, cursor.GetSegment());
+        assertTrue(update(cursor, 6 * Spacing + 25, 0, false));
+        assertEquals(13, cursor.GetSegment());
+        assertEquals(route.GetCumulativeDistance(13) + 25, cursor.GetOffset(), 1e-6);
+
+        // Without a bearing, the latter of two overlapping segments in the window wins
+        cursor.Reset();
+        assertTrue(update(cursor, 8 * Spacing + 25, 0, true));
+        assertTrue(update(cursor, 9 * Spacing + 25, 0, false));
+        assertEquals(10, cursor.GetSegment());
+    }
+}
@@ -0,0 +1,98 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Candidate segments returned by RouteIndex.
+ */
+public class RouteIndexTest {
+    private static List<Integer> candidates(RouteIndex index, double lat, double lon) {
+        List<Integer> segments = new ArrayList<>();
+        int cell = index.FindCell(lat, lon);
+        if(cell >= 0) {
+            for(int pos = index.GetCellStart(cell); pos < index.GetCellEnd(cell); pos++)
+                segments.add(index.GetCandidate(pos));
+        }
+        return segments;
+    }
+
+    /**
+     * Asserts that the candidates of a point are ascending, unique, and include every segment
+     * whose bounds contain it.
+     */
+    private static void assertCovers(RouteIndex index, LocationBounds[] bounds, double lat, double lon) {
+        List<Integer> segments = candidates(index, lat, lon);
+        for(int i = 1; i < segments.size(); i++)
+            assertTrue(segments.get(i - 1) < segments.get(i));
+        for(int s = 0; s < bounds.length; s++) {
+            if(bounds[s].Contains(lat, lon))
+                assertTrue(String.format("segment %d at %f, %f", s, lat, lon), segments.contains(s));
+        }
+    }
+
+    @Test
+    public void index_coversRandomSegments() {
+        Random random = new Random(9);
+        LocationBounds[] bounds = new LocationBounds[300];
+        for(int s = 0; s < bounds.length; s++) {
+            double lat = 45 + random.nextDouble() * 0.1;
+            double lon = -93 + random.nextDouble() * 0.1;
+            bounds[s] = new LocationBounds(lat, lon, lat + random.nextDouble() * 0.005, lon + random.nextDouble() * 0.005);
+        }
+        RouteIndex index = new RouteIndex(bounds);
+
+        for(int k = 0; k < 5000; k++)
+            assertCovers(index, bounds, 45 + random.nextDouble() * 0.105, -93 + random.nextDouble() * 0.105);
+
+        // Corners of every segment, which lie on cell boundaries of the outermost cells
+        for(LocationBounds b : bounds) {
+            assertCovers(index, bounds, b.getLowLatitude(), b.getLowLongitude());
+            assertCovers(index, bounds, b.getHighLatitude(), b.getHighLongitude());
+        }
+    }
+
+    @Test
+    public void index_rejectsPointsOutsideItsArea() {
+        LocationBounds[] bounds = { new LocationBounds(45, -93, 45.01, -92.99), new LocationBounds(45.01, -92.99, 45.02, -92.98) };
+        RouteIndex index = new RouteIndex(bounds);
+
+        assertEquals(-1, index.FindCell(44.999, -92.99));
+        assertEquals(-1, index.FindCell(45.01, -93.001));
+        assertEquals(-1, index.FindCell(45.05, -92.98)); // The last row and column may extend a cell past the bounds
+        assertTrue(candidates(index, 45.02, -92.98).contains(1));
+        assertTrue(candidates(index, 45, -93).contains(0));
+    }
+
+    @Test
+    public void index_handlesDegenerateSegments() {
+        // No segments
+        RouteIndex empty = new RouteIndex(new LocationBounds[0]);
+        assertEquals(-1, empty.FindCell(45, -93));
+
+        // A zero-length segment, and segments of zero height or width
+        LocationBounds[] bounds = {
+                new LocationBounds(45, -93, 45, -93),
+                new LocationBounds(45, -93, 45, -92.9),
+                new LocationBounds(45, -92.9, 45.1, -92.9),
+        };
+        RouteIndex index = new RouteIndex(bounds);
+        assertCovers(index, bounds, 45, -93);
+        assertCovers(index, bounds, 45, -92.95);
+        assertCovers(index, bounds, 45, -92.9);
+        assertCovers(index, bounds, 45.05, -92.9);
+        assertCovers(index, bounds, 45.1, -92.9);
+
+        // Every segment on one parallel
+        LocationBounds[] flat = { new LocationBounds(45, -93, 45, -92.99), new LocationBounds(45, -92.99, 45, -92.98) };
+        RouteIndex line = new RouteIndex(flat);
+        assertEquals(2, candidates(line, 45, -92.99).size());
+        assertCovers(line, flat, 45, -92.985);
+        assertEquals(-1, line.FindCell(45.001, -92.985));
+    }
+}
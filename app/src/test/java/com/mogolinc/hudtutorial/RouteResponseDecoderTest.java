@@ -0,0 +1,137 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decodes canned conditions/route responses offline.
+ */
+public class RouteResponseDecoderTest {
+    private RouteResponse decodeFixture() throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("route_response.json");
+        try {
+            return new RouteResponseDecoder(30).Decode(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void decode_compilesRoute() throws Exception {
+        CompiledRoute route = decodeFixture().GetRoute();
+
+        assertNotNull(route);
+        assertEquals(5, route.GetNumVertices());
+        assertEquals(44.9778, route.GetLatitude(0), 1e-9);
+        assertEquals(-93.2650, route.GetLongitude(0), 1e-9);
+        assertEquals(-93.2590, route.GetLongitude(4), 1e-9);
+        assertTrue(route.GetLength() > 0);
+    }
+
+    @Test
+    public void decode_readsMessagesInOrder() throws Exception {
+        RouteResponse response = decodeFixture();
+
+        assertEquals(3, response.GetMessages().size());
+
+        RouteMessage incident = response.GetMessages().get(0);
+        assertEquals("incident", incident.GetCondition());
+        assertEquals("crash", incident.GetSubcondition());
+        assertEquals("point", incident.GetGeometryType());
+        assertEquals(44.9790, incident.GetStartLatitude(), 1e-9);
+        assertEquals(-93.2640, incident.GetStartLongitude(), 1e-9);
+
+        RouteMessage construction = response.GetMessages().get(1);
+        assertEquals("linestring", construction.GetGeometryType());
+        assertEquals(44.9810, construction.GetStartLatitude(), 1e-9);
+
+        RouteMessage closed = response.GetMessages().get(2);
+        assertEquals("polygon", closed.GetGeometryType());
+        assertEquals("", closed.GetSubcondition());
+        assertFalse(closed.HasStart());
+        assertEquals(HazardGeometry.Kind.AREAS, closed.GetGeometry().GetKind());
+        assertEquals(4, closed.GetGeometry().GetRing(0).GetNumVertices());
+    }
+
+    @Test
+    public void decode_locatesAllGeometryTypes() throws Exception {
+        RouteResponse response = decodeFixture();
+        CompiledRoute route = response.GetRoute();
+        MessageTimeline timeline = new MessageTimeline(route, response.GetMessages());
+
+        // The incident is off the corridor. The closed area is entered where the last segment
+        // crosses its west edge, at -93.2600.
+        assertEquals(2, timeline.GetNumMessages());
+        assertEquals("closed", timeline.GetMessage(1).GetCondition());
+        assertEquals(route.GetCumulativeDistance(3) + route.GetSegmentLength(3) * 2 / 3, timeline.GetOffset(1), 0.5);
+
+        String json = "{\"type\":\"FeatureCollection\",\"features\":["
+                + "{\"type\":\"Feature\",\"properties\":{\"condition\":\"incident\"},"
+                + "\"geometry\":{\"type\":\"MultiPoint\",\"coordinates\":[[-93.2, 45.0],[-93.265, 44.979]]}},"
+                + "{\"type\":\"Feature\",\"properties\":{\"condition\":\"construction\"},"
+                + "\"geometry\":{\"type\":\"MultiLineString\",\"coordinates\":[[[-93.2, 45.0],[-93.2, 45.1]],[[-93.266, 44.981],[-93.264, 44.981]]]}},"
+                + "{\"type\":\"Feature\",\"properties\":{\"condition\":\"flooding\"},"
+                + "\"geometry\":{\"type\":\"MultiPolygon\",\"coordinates\":["
+                + "[[[-93.0, 45.0],[-92.9, 45.0],[-92.9, 45.1],[-93.0, 45.0]]],"
+                + "[[[-93.264, 44.9795],[-93.260, 44.9795],[-93.260, 44.9805],[-93.264, 44.9805],[-93.264, 44.9795]],"
+                + "[[-93.263, 44.9798],[-93.261, 44.9798],[-93.261, 44.9802],[-93.263, 44.9798]]]]}},"
+                + "{\"type\":\"Feature\",\"properties\":{\"condition\":\"information\"},"
+                + "\"geometry\":{\"type\":\"GeometryCollection\",\"geometries\":[]}}]}";
+        response = new RouteResponseDecoder(30).Decode(new StringReader(json));
+
+        RouteMessage points = response.GetMessages().get(0);
+        assertEquals(HazardGeometry.Kind.POINTS, points.GetGeometry().GetKind());
+        assertEquals(1, points.GetGeometry().GetNumParts());
+        assertEquals(45.0, points.GetStartLatitude(), 1e-9);
+        assertEquals(route.OffsetOf(44.979, -93.265), points.GetGeometry().EntryOffset(route), 1e-9);
+
+        RouteMessage lines = response.GetMessages().get(1);
+        assertEquals(2, lines.GetGeometry().GetNumParts());
+        assertEquals(route.OffsetOf(44.981, -93.265), lines.GetGeometry().EntryOffset(route), 0.5);
+
+        RouteMessage areas = response.GetMessages().get(2);
+        assertEquals(3, areas.GetGeometry().GetNumParts());
+        assertFalse(areas.HasStart());
+        assertTrue(areas.GetGeometry().Contains(44.98, -93.2635));
+        assertFalse(areas.GetGeometry().Contains(44.98, -93.262));
+        assertEquals(route.OffsetOf(44.98, -93.264), areas.GetGeometry().EntryOffset(route), 0.5);
+
+        RouteMessage collection = response.GetMessages().get(3);
+        assertNull(collection.GetGeometry());
+        assertFalse(collection.HasStart());
+    }
+
+    @Test
+    public void decode_withoutRoute() throws Exception {
+        RouteResponse response = new RouteResponseDecoder(30).Decode(new StringReader("{\"type\":\"FeatureCollection\",\"features\":[]}"));
+
+        assertNull(response.GetRoute());
+        assertEquals(0, response.GetMessages().size());
+    }
+
+    @Test
+    public void decode_skipsFeaturesWithoutCondition() throws Exception {
+        RouteResponse response = new RouteResponseDecoder(30).Decode(new StringReader("{\"type\":\"FeatureCollection\",\"features\":["
+                + "{\"type\":\"Feature\",\"properties\":{},\"geometry\":{\"type\":\"Point\",\"coordinates\":[-93.2,44.9]}},"
+                + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[-93.2,44.9]}},"
+                + "{\"type\":\"Feature\",\"properties\":{\"condition\":null,\"subcondition\":\"ice\"}},"
+                + "{\"type\":\"Feature\",\"properties\":{\"condition\":\"information\"},\"geometry\":{\"type\":\"Point\",\"coordinates\":[-93.2,44.9]}},"
+                + "{\"type\":\"Feature\",\"properties\":{\"condition\":\"incident\",\"subcondition\":null}}]}"));
+
+        assertEquals(2, response.GetMessages().size());
+        assertEquals("information", response.GetMessages().get(0).GetCondition());
+        assertEquals("", response.GetMessages().get(0).GetSubcondition());
+        assertEquals("incident", response.GetMessages().get(1).GetCondition());
+        assertEquals("", response.GetMessages().get(1).GetSubcondition());
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_malformed() throws Exception {
+        new RouteResponseDecoder(30).Decode(new StringReader("{\"features\":[{\"geometry\":{\"coordinates\":[\"a\"]}}]}"));
+    }
+}
@@ -0,0 +1,173 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips of RouteResponseFormat, and format negotiation against a local stand-in server.
+ */
+public class RouteResponseFormatTest {
+    private StandInConditionsServer server;
+    private RouteFetcher fetcher;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StandInConditionsServer(new StandInConditionsServer.NorthboundCorridor(new double[] { 44.905, 44.91 }, 5));
+        fetcher = new RouteFetcher(server.GetBaseUrl(), "test", 2000, 30);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private RouteResponse decodeFixture() throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("route_response.json");
+        try {
+            return new RouteResponseDecoder(30).Decode(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static RouteResponse decode(byte[] encoded) throws IOException {
+        return RouteResponseFormat.Decode(new ByteArrayInputStream(encoded), 30, DistanceMode.PLANAR);
+    }
+
+    private static void assertSameResponse(RouteResponse expected, RouteResponse actual) {
+        assertEquals(expected.HasRoute(), actual.HasRoute());
+        if(expected.HasRoute()) {
+            assertArrayEquals(expected.GetRouteLatitudes(), actual.GetRouteLatitudes(), 0);
+            assertArrayEquals(expected.GetRouteLongitudes(), actual.GetRouteLongitudes(), 0);
+        }
+        assertEquals(expected.GetMessages(), actual.GetMessages());
+    }
+
+    @Test
+    public void encode_roundTripsFixture() throws Exception {
+        RouteResponse expected = decodeFixture();
+        RouteResponse actual = decode(RouteResponseFormat.Encode(expected));
+
+        assertTrue(expected.GetMessages().size() > 0);
+        assertSameResponse(expected, actual);
+        assertEquals(expected.GetRoute().GetLength(), actual.GetRoute().GetLength(), 0);
+    }
+
+    @Test
+    public void encode_roundTripsNullsAndMissingRoute() throws Exception {
+        HazardGeometry lines = new HazardGeometry(HazardGeometry.Kind.LINES,
+                new double[] { 44.9, 44.91, -1.5, -1.4999999 }, new double[] { -93.2, -93.21, 179.9999999, -180 },
+                new int[] { 2, 4 }, null);
+        RouteMessage ice = new RouteMessage("ice", "black ice ❄", "multilinestring", 44.9, -93.2, lines);
+        RouteResponse encoded = new RouteResponse(null, null, 30, DistanceMode.PLANAR, Arrays.asList(
+                new RouteMessage(null, "", "geometrycollection", Double.NaN, Double.NaN, null),
+                new RouteMessage("information", null, null, Double.NaN, Double.NaN, null),
+                ice));
+
+        // Messages without a condition are skipped and missing subconditions read as "", as in JSON
+        RouteResponse expected = new RouteResponse(null, null, 30, DistanceMode.PLANAR, Arrays.asList(
+                new RouteMessage("information", "", null, Double.NaN, Double.NaN, null),
+                ice));
+        assertSameResponse(expected, decode(RouteResponseFormat.Encode(encoded)));
+    }
+
+    @Test
+    public void encode_isSeveralTimesSmallerThanJson() throws Exception {
+        String json = new StandInConditionsServer.NorthboundCorridor(new double[0], 5).Respond(44.9, -93.2, 0, 2000);
+        RouteResponse response = new RouteResponseDecoder(30).Decode(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        byte[] compact = RouteResponseFormat.Encode(response);
+
+        assertTrue(compact.length * 4 < json.length());
+    }
+
+    @Test
+    public void decode_skipsUnknownFeatures() throws Exception {
+        RouteResponse expected = decodeFixture();
+        byte[] encoded = RouteResponseFormat.Encode(expected);
+
+        // Insert a feature with tag 9 and 3 bytes of payload after the header.
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(encoded, 0, 5);
+        out.write(new byte[] { 4, 9, 1, 2, 3 });
+        out.write(encoded, 5, encoded.length - 5);
+
+        assertSameResponse(expected, decode(out.toByteArray()));
+    }
+
+    @Test
+    public void decode_rejectsTruncatedAndForeignInput() throws Exception {
+        byte[] encoded = RouteResponseFormat.Encode(decodeFixture());
+        for(int length : new int[] { 0, 3, 5, 6, encoded.length / 2, encoded.length - 1 }) {
+            try {
+                decode(Arrays.copyOf(encoded, length));
+                fail("Decoded " + length + " bytes");
+            } catch (IOException expected) {
+                // Expected
+            }
+        }
+
+        try {
+            decode("{\"type\":\"FeatureCollection\"}".getBytes("UTF-8"));
+            fail("Decoded JSON");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void fetch_negotiatesCompactResponse() throws Exception {
+        RouteFetcher json = new RouteFetcher(server.GetBaseUrl(), "test", 2000, 30);
+        json.SetCompact(false);
+        FetchCall jsonCall = new FetchCall(44.9, -93.2, 0);
+        RouteResponse expected = json.Fetch(jsonCall);
+
+        server.SetCompact(true);
+        FetchCall compactCall = new FetchCall(44.9, -93.2, 0);
+        RouteResponse actual = fetcher.Fetch(compactCall);
+
+        assertTrue(compactCall.IsCompact());
+        assertFalse(jsonCall.IsCompact());
+        assertEquals(2, actual.GetMessages().size());
+        assertSameResponse(expected, actual);
+        assertTrue(compactCall.GetBytes() * 4 < jsonCall.GetBytes());
+    }
+
+    @Test
+    public void fetch_fallsBackToJson() throws Exception {
+        // Server without compact support
+        FetchCall call = new FetchCall(44.9, -93.2, 0);
+        RouteResponse response = fetcher.Fetch(call);
+        assertFalse(call.IsCompact());
+        assertTrue(response.HasRoute());
+        assertEquals(2, response.GetMessages().size());
+
+        // Client not asking for it
+        server.SetCompact(true);
+        fetcher.SetCompact(false);
+        call = new FetchCall(44.9, -93.2, 0);
+        response = fetcher.Fetch(call);
+        assertFalse(call.IsCompact());
+        assertTrue(response.HasRoute());
+    }
+
+    @Test
+    public void fetch_compactWithGzip() throws Exception {
+        server.SetCompact(true);
+        server.SetGzip(true);
+        FetchCall call = new FetchCall(44.9, -93.2, 0);
+        RouteResponse response = fetcher.Fetch(call);
+
+        assertTrue(call.IsCompact());
+        assertEquals(401, response.GetRouteLatitudes().length);
+        assertTrue(call.GetBytes() < server.GetLastUncompressedLength());
+    }
+}
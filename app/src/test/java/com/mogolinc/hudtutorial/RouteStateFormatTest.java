@@ -0,0 +1,129 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips of RouteStateFormat.
+ */
+public class RouteStateFormatTest {
+    private byte[] encodeFixture() throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("route_response.json");
+        try {
+            return RouteStateFormat.FromGeoJson(in, 30);
+        } finally {
+            in.close();
+        }
+    }
+
+    private RouteState decodeFixture() throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("route_response.json");
+        try {
+            return RouteState.FromResponse(new RouteResponseDecoder(30).Decode(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void assertSameWindow(RouteState expected, RouteState actual) {
+        CompiledRoute a = expected.GetRoute();
+        CompiledRoute b = actual.GetRoute();
+        assertEquals(a.GetNumVertices(), b.GetNumVertices());
+        assertEquals(a.GetPadding(), b.GetPadding(), 0);
+        for(int i = 0; i < a.GetNumVertices(); i++) {
+            assertEquals(a.GetLatitude(i), b.GetLatitude(i), 1e-7);
+            assertEquals(a.GetLongitude(i), b.GetLongitude(i), 1e-7);
+            assertEquals(a.GetCumulativeDistance(i), b.GetCumulativeDistance(i), 0);
+        }
+
+        MessageTimeline m = expected.GetMessages();
+        MessageTimeline n = actual.GetMessages();
+        assertEquals(m.GetNumMessages(), n.GetNumMessages());
+        for(int i = 0; i < m.GetNumMessages(); i++) {
+            assertEquals(m.GetOffset(i), n.GetOffset(i), 0);
+            assertEquals(m.GetMessage(i).GetCondition(), n.GetMessage(i).GetCondition());
+            assertEquals(m.GetMessage(i).GetSubcondition(), n.GetMessage(i).GetSubcondition());
+            assertEquals(m.GetMessage(i).GetGeometryType(), n.GetMessage(i).GetGeometryType());
+            assertEquals(m.GetMessage(i).HasStart(), n.GetMessage(i).HasStart());
+            if(m.GetMessage(i).HasStart())
+                assertEquals(m.GetMessage(i).GetStartLatitude(), n.GetMessage(i).GetStartLatitude(), 1e-7);
+        }
+    }
+
+    @Test
+    public void fromGeoJson_roundTripsFixture() throws Exception {
+        RouteState expected = decodeFixture();
+        RouteState actual = RouteStateFormat.Decode(ByteBuffer.wrap(encodeFixture()));
+
+        assertTrue(actual.GetMessages().GetNumMessages() > 0);
+        assertSameWindow(expected, actual);
+
+        // Fixed-point rounding must not change matching
+        CompiledRoute route = expected.GetRoute();
+        for(int i = 0; i < route.GetNumSegments(); i++) {
+            double lat = (route.GetLatitude(i) + route.GetLatitude(i + 1)) / 2;
+            double lon = (route.GetLongitude(i) + route.GetLongitude(i + 1)) / 2;
+            assertEquals(route.OffsetOf(lat, lon), actual.GetRoute().OffsetOf(lat, lon), 0.01);
+        }
+    }
+
+    @Test
+    public void encode_roundTripsNullsAndMissingStarts() throws Exception {
+        CompiledRoute route = decodeFixture().GetRoute();
+        RouteMessage[] messages = {
+                new RouteMessage("closed", null, "polygon", Double.NaN, Double.NaN),
+                new RouteMessage("information", "Détour", "point", 44.98, -93.26)
+        };
+        RouteState expected = new RouteState(route, new MessageTimeline(messages, new double[] { 10, 20 }));
+
+        assertSameWindow(expected, RouteStateFormat.Decode(ByteBuffer.wrap(RouteStateFormat.Encode(expected))));
+    }
+
+    @Test
+    public void encode_roundTripsPackedWindow() throws Exception {
+        RouteState expected = RouteState.FromResponse(NorthboundWindows.Window(0, 60000, 10, new double[] { 44.95 }));
+        RouteState actual = RouteStateFormat.Decode(ByteBuffer.wrap(RouteStateFormat.Encode(expected)));
+
+        PackedRoute a = expected.GetPacked();
+        PackedRoute b = actual.GetPacked();
+        assertNotNull(b);
+        assertEquals(a.GetNumVertices(), b.GetNumVertices());
+        for(int i = 0; i < a.GetNumVertices(); i += 7) {
+            assertEquals(a.GetLatitude(i), b.GetLatitude(i), 0);
+            assertEquals(a.GetCumulativeDistance(i), b.GetCumulativeDistance(i), 0);
+        }
+        assertSameWindow(expected, actual);
+    }
+
+    @Test
+    public void load_readsMappedFile() throws Exception {
+        File file = File.createTempFile("route", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(encodeFixture());
+            out.close();
+
+            assertSameWindow(decodeFixture(), RouteStateFormat.Load(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_rejectsTruncatedInput() throws Exception {
+        byte[] encoded = encodeFixture();
+        RouteStateFormat.Decode(ByteBuffer.wrap(encoded, 0, encoded.length - 5));
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_rejectsJson() throws Exception {
+        RouteStateFormat.Decode(ByteBuffer.wrap("{\"features\":[]}".getBytes("UTF-8")));
+    }
+}
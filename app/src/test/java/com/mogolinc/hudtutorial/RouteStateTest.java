@@ -0,0 +1,149 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static com.mogolinc.hudtutorial.NorthboundWindows.*;
+import static org.junit.Assert.*;
+
+/**
+ * Packing long route windows, and merging overlapping ones.
+ */
+public class RouteStateTest {
+    /**
+     * A 60 km window with a vertex every 10 m, long enough to be packed.
+     */
+    private static RouteResponse longWindow(double[] hazards) {
+        return Window(0, 60000, 10, hazards);
+    }
+
+    @Test
+    public void fromResponse_packsLongWindows() throws Exception {
+        RouteResponse response = longWindow(new double[] { North(500), North(25000), North(59000) });
+        RouteState state = RouteState.FromResponse(response);
+        CompiledRoute compiled = response.GetRoute();
+
+        assertNotNull(state.GetPacked());
+        assertEquals(RouteState.StretchSegments, state.GetRoute().GetNumSegments());
+        assertEquals(compiled.GetLength(), state.GetLength(), 1e-6);
+
+        // Projected stretch by stretch, at the same offsets as on the whole compiled route
+        MessageTimeline expected = new MessageTimeline(compiled, response.GetMessages());
+        MessageTimeline messages = state.GetMessages();
+        assertEquals(3, messages.GetNumMessages());
+        for(int i = 0; i < 3; i++)
+            assertEquals(expected.GetOffset(i), messages.GetOffset(i), 1e-6);
+
+        // Short windows, and merges of long ones, stay compiled
+        assertNull(RouteState.FromResponse(Window(0, 2000, new double[0])).GetPacked());
+        assertNotNull(RouteState.Merge(state, 10, longWindow(new double[0])).GetPacked());
+    }
+
+    @Test
+    public void tracker_advancesThroughPackedWindow() throws Exception {
+        RouteResponse response = longWindow(new double[] { North(25000) });
+        CompiledRoute compiled = response.GetRoute();
+        RouteState state = RouteState.FromResponse(response);
+        RouteTracker tracker = new RouteTracker(60000, new PrefetchScheduler());
+        tracker.Update(North(1), Lon, 0, true, 30);
+        tracker.OnFetchCompleted(state, 100);
+
+        int advances = 0;
+        CompiledRoute stretch = state.GetRoute();
+        for(double d = 1; d < 59990; d += 25) {
+            assertTrue(tracker.Update(North(d), Lon, 0, true, 30));
+            assertEquals(compiled.OffsetOf(North(d), Lon), tracker.GetOffset(), 1e-6);
+            assertTrue(tracker.GetFront().GetRoute().GetNumSegments() <= RouteState.StretchSegments);
+            if(tracker.GetFront().GetRoute() != stretch) {
+                stretch = tracker.GetFront().GetRoute();
+                advances++;
+            }
+            if(d < 25000)
+                assertEquals(25000 - d, tracker.GetDistanceToMessage(tracker.GetNextMessage()), 0.5);
+            else
+                assertEquals(-1, tracker.GetNextMessage());
+        }
+
+        assertTrue(advances >= 60000 / 10 / RouteState.StretchSegments);
+        assertEquals(state.GetPacked(), tracker.GetFront().GetPacked());
+    }
+
+    @Test
+    public void merge_reusesSegmentsAndMessagesAhead() throws Exception {
+        double[] hazards = { North(500), North(1500), North(2500) };
+        RouteState previous = RouteState.FromResponse(Window(0, 2000, hazards));
+        assertEquals(2, previous.GetMessages().GetNumMessages());
+
+        // Next window requested 950 m in, with the hazard at 500 m behind and one at 2.5 km new
+        int keepFrom = 9;
+        RouteResponse response = Window(950, 2000, hazards);
+        RouteState merged = RouteState.Merge(previous, keepFrom, response);
+        CompiledRoute route = merged.GetRoute();
+        CompiledRoute fresh = response.GetRoute();
+
+        assertEquals(20 - keepFrom, route.GetReusedSegments());
+        assertEquals(previous.GetRoute().GetLatitude(keepFrom), route.GetLatitude(0), 0);
+        assertEquals(fresh.GetLatitude(fresh.GetNumVertices() - 1), route.GetLatitude(route.GetNumVertices() - 1), 0);
+        assertEquals(fresh.GetLength() + 50, route.GetLength(), 0.01);
+
+        // Same matching and offsets as the fresh window, 50 m further along
+        for(double d = 960; d < 2950; d += 37) {
+            assertTrue(route.IsOnRoute(North(d), Lon));
+            assertEquals(fresh.OffsetOf(North(d), Lon) + 50, route.OffsetOf(North(d), Lon), 0.01);
+        }
+        assertFalse(route.IsOnRoute(North(800), Lon));
+
+        // The hazard at 1.5 km is the same message, at the same place; the one at 2.5 km is new.
+        MessageTimeline messages = merged.GetMessages();
+        assertEquals(2, messages.GetNumMessages());
+        assertEquals(1, messages.GetReusedCount());
+        assertSame(previous.GetMessages().GetMessage(1), messages.GetMessage(0));
+        assertEquals(previous.GetMessages().GetOffset(1) - previous.GetRoute().GetCumulativeDistance(keepFrom), messages.GetOffset(0), 1e-9);
+        assertEquals(600, messages.GetOffset(0), 0.01);
+        assertEquals(1600, messages.GetOffset(1), 0.01);
+    }
+
+    @Test
+    public void merge_dropsClearedHazards() throws Exception {
+        RouteState previous = RouteState.FromResponse(Window(0, 2000, new double[] { North(1500) }));
+        RouteState merged = RouteState.Merge(previous, 9, Window(950, 2000, new double[0]));
+
+        assertTrue(merged.GetRoute().GetReusedSegments() > 0);
+        assertEquals(0, merged.GetMessages().GetNumMessages());
+    }
+
+    @Test
+    public void merge_fallsBackWhenWindowsDoNotOverlap() throws Exception {
+        RouteState previous = RouteState.FromResponse(Window(0, 2000, new double[0]));
+
+        // Starts past the end of the previous route
+        RouteResponse ahead = Window(2500, 2000, new double[0]);
+        RouteState merged = RouteState.Merge(previous, 9, ahead);
+        assertEquals(0, merged.GetRoute().GetReusedSegments());
+        assertSame(ahead.GetRoute(), merged.GetRoute());
+
+        // Starts behind the segment to keep
+        assertEquals(0, RouteState.Merge(previous, 15, Window(950, 2000, new double[0])).GetRoute().GetReusedSegments());
+
+        // Branches off before the end of the previous route
+        RouteResponse detour = new RouteResponse(new double[] { North(950), North(1500), North(1500) },
+                new double[] { Lon, Lon, Lon + 0.02 }, Padding, DistanceMode.PLANAR, new ArrayList<RouteMessage>());
+        assertEquals(0, RouteState.Merge(previous, 9, detour).GetRoute().GetReusedSegments());
+
+        assertNull(RouteState.Merge(previous, 9, new RouteResponseDecoder(30).Decode(new StringReader("{\"features\":[]}"))));
+    }
+
+    @Test
+    public void messages_equalAcrossResponses() throws Exception {
+        RouteMessage a = Window(0, 2000, new double[] { North(1500) }).GetMessages().get(0);
+        RouteMessage b = Window(950, 2000, new double[] { North(1500) }).GetMessages().get(0);
+        RouteMessage c = Window(950, 2000, new double[] { North(1501) }).GetMessages().get(0);
+
+        assertNotSame(a, b);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, c);
+    }
+}
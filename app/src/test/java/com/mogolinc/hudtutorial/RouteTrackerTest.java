@@ -0,0 +1,173 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives a RouteTracker along a straight corridor served by a local stand-in server with
+ * injected latency.
+ */
+public class RouteTrackerTest {
+    private static final double StartLatitude = 44.9;
+    private static final double Longitude = -93.2;
+    private static final double Speed = 30;            // m/s
+    private static final long FixInterval = 250;       // ms of simulated time between fixes
+    private static final int RefreshDistance = 1000;
+
+    @Test
+    public void scheduler_prefetchesEarlierWithHigherLatency() {
+        PrefetchScheduler fast = new PrefetchScheduler();
+        PrefetchScheduler slow = new PrefetchScheduler();
+        for(int i = 0; i < 10; i++) {
+            fast.RecordLatency(100);
+            slow.RecordLatency(5000);
+        }
+
+        // 300 m at 30 m/s is 10 s to the boundary.
+        assertFalse(fast.ShouldPrefetch(300, Speed));
+        assertTrue(slow.ShouldPrefetch(300, Speed));
+        assertTrue(fast.ShouldPrefetch(0, 0));
+        assertFalse(fast.ShouldPrefetch(10, 0));
+    }
+
+    private static double east(double lat, double meters) {
+        double[] out = new double[2];
+        GeoMath.Destination(lat, Longitude, 90, meters, out);
+        return out[1];
+    }
+
+    // Tracker on a 2 km window of the corridor, with a 30 m corridor, matched at 200 m
+    private static RouteTracker trackerOnCorridor() throws Exception {
+        String json = new StandInConditionsServer.NorthboundCorridor(new double[0], 100).Respond(StartLatitude, Longitude, 0, 2000);
+        RouteTracker tracker = new RouteTracker(RefreshDistance, new PrefetchScheduler());
+        tracker.OnFetchStarted(StartLatitude, Longitude);
+        tracker.OnFetchCompleted(RouteState.FromResponse(new RouteResponseDecoder(30).Decode(new StringReader(json))), 100);
+        assertTrue(tracker.Update(StandInConditionsServer.NorthboundCorridor.NorthOf(StartLatitude, 200), Longitude, 0, true, 0));
+        return tracker;
+    }
+
+    @Test
+    public void tracker_holdsJitterAtTheCorridorEdge() throws Exception {
+        RouteTracker tracker = trackerOnCorridor();
+
+        // Fixes alternate between just inside and just outside the corridor; speed 0 keeps the
+        // scheduler from prefetching, so any fetch would be an off-route one.
+        for(int fix = 0; fix < 40; fix++) {
+            double lat = StandInConditionsServer.NorthboundCorridor.NorthOf(StartLatitude, 200 + fix * 5);
+            double side = (fix % 2 == 0 ? 40 : 25);
+            assertTrue("off route at fix " + fix, tracker.Update(lat, east(lat, side), 0, true, 0));
+            assertEquals(fix % 2 == 0, tracker.IsHolding());
+            assertFalse(tracker.NeedsFetch());
+        }
+
+        // A held fix keeps the offset of the last matched one.
+        double offset = tracker.GetOffset();
+        double lat = StandInConditionsServer.NorthboundCorridor.NorthOf(StartLatitude, 398);
+        assertTrue(tracker.Update(lat, east(lat, 40), 0, true, 0));
+        assertEquals(offset, tracker.GetOffset(), 0);
+    }
+
+    @Test
+    public void tracker_leavesRouteAfterConsecutiveMisses() throws Exception {
+        RouteTracker tracker = trackerOnCorridor();
+        double lat = StandInConditionsServer.NorthboundCorridor.NorthOf(StartLatitude, 210);
+
+        for(int miss = 1; miss < RouteTracker.OffRouteMisses; miss++) {
+            assertTrue(tracker.Update(lat, east(lat, 45), 0, true, 0));
+            assertFalse(tracker.NeedsFetch());
+        }
+        assertFalse(tracker.Update(lat, east(lat, 45), 0, true, 0));
+        assertFalse(tracker.IsHolding());
+        assertTrue(tracker.NeedsFetch());
+
+        // Matching again restores the route.
+        assertTrue(tracker.Update(lat, Longitude, 0, true, 0));
+        assertFalse(tracker.NeedsFetch());
+    }
+
+    @Test
+    public void tracker_leavesRouteBeyondTheMarginAtOnce() throws Exception {
+        RouteTracker tracker = trackerOnCorridor();
+        double lat = StandInConditionsServer.NorthboundCorridor.NorthOf(StartLatitude, 210);
+
+        assertFalse(tracker.Update(lat, east(lat, 30 + RouteTracker.OffRouteMargin + 10), 0, true, 0));
+        assertTrue(tracker.NeedsFetch());
+    }
+
+    @Test
+    public void tracker_swapsPrefetchedWindowWithoutGaps() throws Exception {
+        double[] hazards = new double[12];
+        for(int i = 0; i < hazards.length; i++)
+            hazards[i] = StandInConditionsServer.NorthboundCorridor.NorthOf(StartLatitude, 350 + i * 700);
+
+        StandInConditionsServer server = new StandInConditionsServer(new StandInConditionsServer.NorthboundCorridor(hazards, 100));
+        server.SetLatency(600);
+        final RouteFetcher fetcher = new RouteFetcher(server.GetBaseUrl(), "test", 2000, 30);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            RouteTracker tracker = new RouteTracker(RefreshDistance, new PrefetchScheduler());
+            Future<RouteState> inFlight = null;
+            long fetchStart = 0;
+            int fixesUntilArrival = 0;
+            int prefetches = 0;
+            boolean warm = false;
+
+            for(int fix = 0; fix < 800; fix++) {
+                double lat = StandInConditionsServer.NorthboundCorridor.NorthOf(StartLatitude, fix * Speed * FixInterval / 1000.0);
+
+                // Deliver the in-flight response once its latency has elapsed in simulated time.
+                if(inFlight != null && --fixesUntilArrival <= 0) {
+                    RouteState state = inFlight.get();
+                    tracker.OnFetchCompleted(state, System.currentTimeMillis() - fetchStart);
+                    inFlight = null;
+                }
+
+                boolean onRoute = tracker.Update(lat, Longitude, 0, true, Speed);
+                warm |= onRoute;
+
+                if(warm) {
+                    assertTrue("display gap at fix " + fix, onRoute);
+                    assertTrue("no hazard ahead at fix " + fix, tracker.GetNextMessage() >= 0);
+                }
+
+                if(tracker.NeedsFetch()) {
+                    if(warm) {
+                        // Prefetch must be issued before the vehicle reaches the refresh boundary.
+                        assertTrue(tracker.GetOffset() < RefreshDistance);
+                        prefetches++;
+                    }
+
+                    final double queryLat = lat;
+                    tracker.OnFetchStarted(lat, Longitude);
+                    fetchStart = System.currentTimeMillis();
+                    inFlight = executor.submit(new Callable<RouteState>() {
+                        @Override
+                        public RouteState call() throws Exception {
+                            return RouteState.FromResponse(fetcher.Fetch(queryLat, Longitude, 0));
+                        }
+                    });
+                    // Wait for the real round trip to find out how many fixes it spans.
+                    inFlight.get();
+                    fixesUntilArrival = (int) Math.ceil((System.currentTimeMillis() - fetchStart) / (double) FixInterval);
+                }
+            }
+
+            // 800 fixes * 7.5 m = 6 km, so about one prefetch per kilometer after the first window.
+            assertTrue(warm);
+            assertTrue(prefetches >= 5 && prefetches <= 7);
+            assertEquals(prefetches + 1, server.GetRequestCount());
+            assertTrue(tracker.GetScheduler().GetLatency() >= 600);
+        } finally {
+            executor.shutdownNow();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.mogolinc.hudtutorial;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for the conditions/route endpoint.
+ * <br /><br />
+ * Serves responses produced by a Responder on 127.0.0.1, with configurable injected latency,
+ * status code and gzip compression. Records the client ports it has seen, so that connection
+ * reuse can be checked. With compact responses enabled, requests accepting the
+ * RouteResponseFormat are answered in it, re-encoded from the Responder's JSON.
+ */
+public class StandInConditionsServer implements Closeable {
+    public interface Responder {
+        /**
+         * Returns the response body for a request.
+         *
+         * @param lat requested latitude
+         * @param lon requested longitude
+         * @param bearing requested bearing
+         * @param distance requested window length, in meters
+         * @return response body
+         */
+        String Respond(double lat, double lon, double bearing, int distance);
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Responder responder;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile long latencyMillis = 0;
+    private volatile int status = 200;
+    private volatile boolean gzip = false;
+    private volatile boolean compact = false;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    private volatile int lastUncompressedLength = 0;
+
+    public StandInConditionsServer(Responder responder) throws IOException {
+        this.responder = responder;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/conditions/route", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                Serve(exchange);
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String GetBaseUrl() {
+        return String.format(Locale.US, "http://127.0.0.1:%d/conditions/route", server.getAddress().getPort());
+    }
+
+    public void SetLatency(long millis) {
+        latencyMillis = millis;
+    }
+
+    public void SetStatus(int code) {
+        status = code;
+    }
+
+    public void SetGzip(boolean enabled) {
+        gzip = enabled;
+    }
+
+    public void SetCompact(boolean enabled) {
+        compact = enabled;
+    }
+
+    public int GetRequestCount() {
+        return requestCount.get();
+    }
+
+    public int GetConnectionCount() {
+        return clientPorts.size();
+    }
+
+    public int GetLastUncompressedLength() {
+        return lastUncompressedLength;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void Serve(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        try {
+            if(latencyMillis > 0)
+                Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Map<String, String> query = new HashMap<>();
+        for(String pair : exchange.getRequestURI().getRawQuery().split("&")) {
+            int eq = pair.indexOf('=');
+            query.put(pair.substring(0, eq), pair.substring(eq + 1));
+        }
+        String[] location = query.get("location").split(",");
+
+        int code = status;
+        byte[] body = (code == 200
+                ? responder.Respond(Double.parseDouble(location[0]), Double.parseDouble(location[1]),
+                        Double.parseDouble(query.get("bearing")), Integer.parseInt(query.get("distance")))
+                : "{\"message\":\"stand-in failure\"}").getBytes("UTF-8");
+
+        String contentType = "application/json";
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        if(code == 200 && compact && accept != null && accept.contains(RouteResponseFormat.ContentType)) {
+            RouteResponse response = new RouteResponseDecoder(0).Decode(new ByteArrayInputStream(body));
+            body = RouteResponseFormat.Encode(response);
+            contentType = RouteResponseFormat.ContentType;
+        }
+
+        lastUncompressedLength = body.length;
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if(gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream out = new GZIPOutputStream(compressed);
+            out.write(body);
+            out.close();
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+
+    /**
+     * Responder serving the same canned GeoJSON body for every request.
+     */
+    public static class Canned implements Responder {
+        private final String body;
+
+        public Canned(String body) {
+            this.body = body;
+        }
+
+        @Override
+        public String Respond(double lat, double lon, double bearing, int distance) {
+            return body;
+        }
+
+        public static Canned FromStream(InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for(int n = in.read(buffer); n >= 0; n = in.read(buffer))
+                out.write(buffer, 0, n);
+            return new Canned(out.toString("UTF-8"));
+        }
+    }
+
+
+    /**
+     * Responder serving a straight northbound route from the requested position, with point
+     * hazards at fixed absolute latitudes along the same meridian.
+     */
+    public static class NorthboundCorridor implements Responder {
+        private final double[] hazardLatitudes;
+        private final double vertexSpacing;
+
+        public NorthboundCorridor(double[] hazardLatitudes, double vertexSpacing) {
+            this.hazardLatitudes = hazardLatitudes;
+            this.vertexSpacing = vertexSpacing;
+        }
+
+        @Override
+        public String Respond(double lat, double lon, double bearing, int distance) {
+            double endLat = NorthOf(lat, distance);
+            StringBuilder sb = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+            sb.append("{\"type\":\"route\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+            int vertices = (int) Math.ceil(distance / vertexSpacing) + 1;
+            for(int i = 0; i < vertices; i++) {
+                if(i > 0)
+                    sb.append(',');
+                sb.append(String.format(Locale.US, "[%.7f,%.7f]", lon, NorthOf(lat, Math.min(distance, i * vertexSpacing))));
+            }
+            sb.append("]}}");
+
+            for(double hazard : hazardLatitudes) {
+                if(hazard < lat || hazard > endLat)
+                    continue;
+                sb.append(String.format(Locale.US,
+                        ",{\"type\":\"Feature\",\"properties\":{\"condition\":\"incident\",\"subcondition\":\"\"},\"geometry\":{\"type\":\"Point\",\"coordinates\":[%.7f,%.7f]}}",
+                        lon, hazard));
+            }
+
+            return sb.append("]}").toString();
+        }
+
+        public static double NorthOf(double lat, double meters) {
+            return lat + GeoMath.ToDegree(meters / GeoMath.EarthRadius);
+        }
+    }
+}
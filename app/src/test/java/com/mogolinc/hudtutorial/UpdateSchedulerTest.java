@@ -0,0 +1,54 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * UpdateScheduler steps and hysteresis.
+ */
+public class UpdateSchedulerTest {
+    @Test
+    public void scheduler_relaxesStepwiseAndTightensAtOnce() {
+        UpdateScheduler scheduler = new UpdateScheduler();
+        assertEquals(1000, scheduler.GetMinTime());
+
+        // 10 m/s, nothing within 1.5 km: 15 s desired, relaxed one step per hold time
+        int changes = 0;
+        long time = 0;
+        for(; time <= 60000; time += 1000)
+            if(scheduler.Update(time, 10, true, -1, 1500))
+                changes++;
+        assertEquals(3, changes);
+        assertEquals(8000, scheduler.GetMinTime());
+        assertEquals(40, scheduler.GetMinDistance(), 0);
+
+        // Hazard 150 m ahead: 1.5 s desired
+        assertTrue(scheduler.Update(time, 10, true, 150, 1000));
+        assertEquals(1000, scheduler.GetMinTime());
+
+        // Off route
+        assertEquals(0, scheduler.DesiredInterval(10, false, -1, 1000), 0);
+        // Stopped
+        assertEquals(Double.MAX_VALUE, scheduler.DesiredInterval(0.1, true, 150, 1000), 0);
+        // Past the refresh boundary with no window waiting
+        assertEquals(0, scheduler.DesiredInterval(10, true, -1, -5), 0);
+    }
+
+    @Test
+    public void scheduler_doesNotThrashAroundAStep() {
+        UpdateScheduler scheduler = new UpdateScheduler();
+
+        // Desired interval alternating between 2.9 s and 3.1 s never stays past the margin
+        for(long time = 0; time < 120000; time += 1000)
+            assertFalse(scheduler.Update(time, 10, true, -1, time % 2000 == 0 ? 290 : 310));
+        assertEquals(0, scheduler.GetStep());
+
+        // Once relaxed, small dips below the step only tighten when they cross it
+        for(long time = 120000; time < 140000; time += 1000)
+            scheduler.Update(time, 10, true, -1, 400);
+        assertEquals(1, scheduler.GetStep());
+        for(long time = 140000; time < 200000; time += 1000)
+            assertFalse(scheduler.Update(time, 10, true, -1, time % 2000 == 0 ? 210 : 290));
+    }
+}
@@ -0,0 +1,100 @@
+package android.location;
+
+import com.mogolinc.hudtutorial.GeoMath;
+
+/**
+ * Plain JVM stand-in for android.location.Location, so the app's geometry code can be
+ * benchmarked off-device.
+ * <br /><br />
+ * Covers only the members the geometry code uses. bearingTo and distanceTo are spherical
+ * (GeoMath) rather than Android's ellipsoidal computation; results differ by well under a
+ * percent, which does not matter for timing.
+ */
+
+public class Location {
+    private final String provider;
+    private double latitude;
+    private double longitude;
+    private float bearing;
+    private boolean hasBearing;
+    private float speed;
+    private boolean hasSpeed;
+    private long time;
+
+    public Location(String provider) {
+        this.provider = provider;
+    }
+
+    public Location(Location l) {
+        provider = l.provider;
+        latitude = l.latitude;
+        longitude = l.longitude;
+        bearing = l.bearing;
+        hasBearing = l.hasBearing;
+        speed = l.speed;
+        hasSpeed = l.hasSpeed;
+        time = l.time;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    public float getBearing() {
+        return bearing;
+    }
+
+    public void setBearing(float bearing) {
+        this.bearing = bearing;
+        hasBearing = true;
+    }
+
+    public boolean hasBearing() {
+        return hasBearing;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(float speed) {
+        this.speed = speed;
+        hasSpeed = true;
+    }
+
+    public boolean hasSpeed() {
+        return hasSpeed;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public float bearingTo(Location dest) {
+        return (float) GeoMath.Bearing(latitude, longitude, dest.latitude, dest.longitude);
+    }
+
+    public float distanceTo(Location dest) {
+        return (float) GeoMath.Distance(latitude, longitude, dest.latitude, dest.longitude);
+    }
+}
@@ -0,0 +1,102 @@
+package com.mogolinc.hudtutorial;
+
+import android.location.Location;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to test a recorded trace of one million points against a fence: one
+ * GeoFence.Contains(Location) per point, against GeoFenceBatch sequentially and across all cores.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchContainmentBenchmark {
+    private static final int Points = 1 << 20;
+    private static final double Radius = 1000; // meters
+
+    @Param({ "4", "100" })
+    public int vertices;
+
+    private GeoFence fence;
+    private GeoFenceBatch batch;
+    private Location[] locations;
+    private double[] latitudes;
+    private double[] longitudes;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        double[] out = new double[2];
+        List<Location> points = new ArrayList<>(vertices);
+        LocationBounds bounds = new LocationBounds();
+        for(int i = 0; i < vertices; i++) {
+            GeoMath.Destination(SyntheticRoute.StartLatitude, SyntheticRoute.StartLongitude, 360.0 * i / vertices,
+                    (i % 2 == 0 ? Radius : Radius * 0.8), out);
+            points.add(SyntheticRoute.ToLocation(out[0], out[1]));
+            bounds.AddLocation(out[0], out[1]);
+        }
+        fence = new GeoFence(points, bounds);
+        batch = new GeoFenceBatch(fence.GetPrepared());
+
+        Random random = new Random(42);
+        locations = new Location[Points];
+        latitudes = new double[Points];
+        longitudes = new double[Points];
+        for(int i = 0; i < Points; i++) {
+            GeoMath.Destination(SyntheticRoute.StartLatitude, SyntheticRoute.StartLongitude, random.nextDouble() * 360,
+                    random.nextDouble() * Radius * 2, out);
+            latitudes[i] = out[0];
+            longitudes[i] = out[1];
+            locations[i] = SyntheticRoute.ToLocation(out[0], out[1]);
+        }
+
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public BitSet perPointContains() {
+        BitSet bits = new BitSet(Points);
+        for(int i = 0; i < Points; i++)
+            if(fence.Contains(locations[i]))
+                bits.set(i);
+        return bits;
+    }
+
+    @Benchmark
+    public BitSet batchSequential() {
+        return batch.Contains(latitudes, longitudes);
+    }
+
+    @Benchmark
+    public BitSet batchParallel() {
+        return batch.Contains(latitudes, longitudes, pool);
+    }
+}
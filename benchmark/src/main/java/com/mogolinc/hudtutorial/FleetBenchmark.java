@@ -0,0 +1,79 @@
+package com.mogolinc.hudtutorial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fleet throughput, in fixes per second, against the number of evaluation threads.
+ * <br /><br />
+ * Each invocation evaluates a batch of Batch fixes from Vehicles vehicles driving along one
+ * shared 10,000 vertex route, interleaved as they would arrive from the field. Scaling is
+ * linear up to the number of physical cores of the machine; beyond it, 16 threads measure the
+ * partitioning overhead.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FleetBenchmark {
+    private static final int Vehicles = 4096;
+    private static final int Batch = 1 << 16;
+    private static final int Fixes = 4096;
+
+    @Param({ "1", "4", "16" })
+    public int threads;
+
+    private FleetEngine engine;
+    private List<FleetEngine.Fix> batch;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() {
+        SyntheticRoute synthetic = new SyntheticRoute(10000, Fixes, 0.1, 42);
+        CompiledRoute route = synthetic.Compile();
+        engine = new FleetEngine(new RouteState(route, new MessageTimeline(route, Collections.<RouteMessage>emptyList())));
+
+        // Vehicle v replays the synthetic fixes from its own starting point.
+        batch = new ArrayList<>(Batch);
+        for(int i = 0; i < Batch; i++) {
+            int vehicle = i % Vehicles;
+            int fix = (vehicle * 37 + i / Vehicles) % Fixes;
+            batch.add(new FleetEngine.Fix(vehicle, synthetic.GetFixLatitude(fix), synthetic.GetFixLongitude(fix),
+                    synthetic.GetFixBearing(fix), true, i / Vehicles * 1000L));
+        }
+
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Batch)
+    public int evaluate() throws InterruptedException {
+        return engine.Evaluate(batch, executor, threads);
+    }
+}
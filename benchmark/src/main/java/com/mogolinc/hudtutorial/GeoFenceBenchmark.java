@@ -0,0 +1,88 @@
+package com.mogolinc.hudtutorial;
+
+import android.location.Location;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point-in-polygon cost of GeoFence.Contains against the fence's vertex count. The fence is a
+ * ring around the synthetic start point; probe points fall inside, outside the ring and outside
+ * the bounds.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoFenceBenchmark {
+    private static final int Probes = 1024;
+    private static final double Radius = 1000; // meters
+
+    @Param({ "10", "100", "1000", "10000", "100000" })
+    public int vertices;
+
+    private GeoFence fence;
+    private PreparedGeoFence prepared;
+    private Location[] probes;
+    private double[] probeLatitudes;
+    private double[] probeLongitudes;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        double[] out = new double[2];
+        List<Location> points = new ArrayList<>(vertices);
+        LocationBounds bounds = new LocationBounds();
+        for(int i = 0; i < vertices; i++) {
+            // Alternate radius so the ring is not convex
+            GeoMath.Destination(SyntheticRoute.StartLatitude, SyntheticRoute.StartLongitude, 360.0 * i / vertices,
+                    (i % 2 == 0 ? Radius : Radius * 0.8), out);
+            points.add(SyntheticRoute.ToLocation(out[0], out[1]));
+            bounds.AddLocation(out[0], out[1]);
+        }
+        fence = new GeoFence(points, bounds);
+        prepared = fence.GetPrepared();
+
+        probes = new Location[Probes];
+        probeLatitudes = new double[Probes];
+        probeLongitudes = new double[Probes];
+        for(int i = 0; i < Probes; i++) {
+            GeoMath.Destination(SyntheticRoute.StartLatitude, SyntheticRoute.StartLongitude, i * 137.5, (i % 3) * Radius * 0.7, out);
+            probes[i] = SyntheticRoute.ToLocation(out[0], out[1]);
+            probeLatitudes[i] = out[0];
+            probeLongitudes[i] = out[1];
+        }
+    }
+
+    private int Next() {
+        next = (next + 1) & (Probes - 1);
+        return next;
+    }
+
+    @Benchmark
+    public boolean geoFenceContains() {
+        return fence.Contains(probes[Next()]);
+    }
+
+    @Benchmark
+    public boolean preparedContains() {
+        int i = Next();
+        return prepared.Contains(probeLatitudes[i], probeLongitudes[i]);
+    }
+}
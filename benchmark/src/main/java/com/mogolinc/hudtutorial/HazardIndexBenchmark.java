@@ -0,0 +1,81 @@
+package com.mogolinc.hudtutorial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Corridor queries and single upserts against the number of hazards in a HazardIndex.
+ * <br /><br />
+ * Point hazards are spread uniformly over 2 x 2 degrees around a 10 km synthetic route, so the
+ * number of hazards in the corridor grows with the total, as it would in a denser feed.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HazardIndexBenchmark {
+    @Param({ "1000", "100000", "500000" })
+    public int hazards;
+
+    private CompiledRoute route;
+    private HazardIndex index;
+    private HazardIndex.Entry[] updates;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        route = new SyntheticRoute(200, 1, 0, 42).Compile();
+
+        Random random = new Random(7);
+        List<HazardIndex.Entry> entries = new ArrayList<>(hazards);
+        for(int i = 0; i < hazards; i++)
+            entries.add(Point(random, "h" + i));
+        index = new HazardIndex();
+        index.UpsertAll(entries);
+
+        // Moves existing hazards, so the count stays the same.
+        updates = new HazardIndex.Entry[1024];
+        for(int i = 0; i < updates.length; i++)
+            updates[i] = Point(random, "h" + random.nextInt(hazards));
+    }
+
+    private static HazardIndex.Entry Point(Random random, String id) {
+        double lat = SyntheticRoute.StartLatitude - 1 + random.nextDouble() * 2;
+        double lon = SyntheticRoute.StartLongitude - 1 + random.nextDouble() * 2;
+        return new HazardIndex.Entry(id, new RouteMessage("incident", null, "point", lat, lon), Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<HazardIndex.Entry> queryCorridor() {
+        return index.GetSnapshot().QueryCorridor(route);
+    }
+
+    @Benchmark
+    public MessageTimeline timeline() {
+        return index.GetSnapshot().Timeline(route);
+    }
+
+    @Benchmark
+    public HazardIndex.Snapshot upsert() {
+        next = (next + 1) & (updates.length - 1);
+        index.Upsert(updates[next]);
+        return index.GetSnapshot();
+    }
+}
@@ -0,0 +1,83 @@
+package com.mogolinc.hudtutorial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-route and distance queries against a PackedRoute and a CompiledRoute of the same vertices.
+ * <br /><br />
+ * Uses the fixes of RouteBenchmark, 10% of them off route. The random access benchmarks read
+ * the vertex and cumulative distance of random segments, the worst case for block decoding.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackedRouteBenchmark {
+    private static final int Fixes = 4096;
+
+    @Param({ "1000", "10000", "100000" })
+    public int vertices;
+
+    private SyntheticRoute synthetic;
+    private CompiledRoute compiled;
+    private PackedRoute packed;
+    private int[] segments;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        synthetic = new SyntheticRoute(vertices, Fixes, 0.1, 42);
+        packed = new PackedRoute(synthetic.Latitudes, synthetic.Longitudes, SyntheticRoute.Padding);
+        compiled = packed.Compile(0, vertices - 1);
+
+        Random random = new Random(42);
+        segments = new int[Fixes];
+        for(int i = 0; i < Fixes; i++)
+            segments[i] = random.nextInt(vertices - 1);
+    }
+
+    private int Next() {
+        next = (next + 1) & (Fixes - 1);
+        return next;
+    }
+
+    @Benchmark
+    public double offsetCompiled() {
+        int i = Next();
+        return compiled.OffsetOf(synthetic.FixLatitudes[i], synthetic.FixLongitudes[i]);
+    }
+
+    @Benchmark
+    public double offsetPacked() {
+        int i = Next();
+        return packed.OffsetOf(synthetic.FixLatitudes[i], synthetic.FixLongitudes[i]);
+    }
+
+    @Benchmark
+    public double segmentCompiled() {
+        int s = segments[Next()];
+        return compiled.GetLatitude(s) + compiled.GetCumulativeDistance(s);
+    }
+
+    @Benchmark
+    public double segmentPacked() {
+        int s = segments[Next()];
+        return packed.GetLatitude(s) + packed.GetCumulativeDistance(s);
+    }
+}
@@ -0,0 +1,108 @@
+package com.mogolinc.hudtutorial;
+
+import android.location.Location;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of the geometry primitives: fence construction, great circle destination,
+ * bounds accumulation and bounds tests.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitiveBenchmark {
+    private static final int Fixes = 1024;
+
+    private SyntheticRoute route;
+    private Location[] vertices;
+    private Location[] fixes;
+    private LocationBounds bounds;
+    private double[] out = new double[2];
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        route = new SyntheticRoute(Fixes + 1, Fixes, 0.1, 42);
+        vertices = route.GetVertexLocations().toArray(new Location[0]);
+        fixes = route.GetFixLocations();
+        bounds = new LocationBounds(route.Compile().GetSegmentBounds(0));
+    }
+
+    private int Next() {
+        next = (next + 1) & (Fixes - 1);
+        return next;
+    }
+
+    @Benchmark
+    public GeoFence createFenceAroundEdge() {
+        int i = Next();
+        return GeoFence.CreateFenceAroundEdge(vertices[i], vertices[i + 1], SyntheticRoute.Padding);
+    }
+
+    @Benchmark
+    public double[] edgeCorners() {
+        int i = Next();
+        double[] lats = new double[4];
+        double[] lons = new double[4];
+        PreparedGeoFence.EdgeCorners(route.Latitudes[i], route.Longitudes[i], route.Latitudes[i + 1], route.Longitudes[i + 1],
+                SyntheticRoute.Padding, lats, lons, 0);
+        return lats;
+    }
+
+    @Benchmark
+    public Location calculateDestinationFromLocation() {
+        return GeoFence.CalculateDestinationFromLocation(vertices[Next()], 45, SyntheticRoute.Padding);
+    }
+
+    @Benchmark
+    public double[] geoMathDestination() {
+        int i = Next();
+        GeoMath.Destination(route.Latitudes[i], route.Longitudes[i], 45, SyntheticRoute.Padding, out);
+        return out;
+    }
+
+    @Benchmark
+    public LocationBounds locationBoundsAddLocation() {
+        LocationBounds accumulated = new LocationBounds();
+        int i = Next();
+        accumulated.AddLocation(vertices[i]);
+        accumulated.AddLocation(vertices[i + 1]);
+        return accumulated;
+    }
+
+    @Benchmark
+    public LocationBounds locationBoundsAddCoordinates() {
+        LocationBounds accumulated = new LocationBounds();
+        int i = Next();
+        accumulated.AddLocation(route.Latitudes[i], route.Longitudes[i]);
+        accumulated.AddLocation(route.Latitudes[i + 1], route.Longitudes[i + 1]);
+        return accumulated;
+    }
+
+    @Benchmark
+    public boolean locationBoundsContains() {
+        return bounds.Contains(fixes[Next()]);
+    }
+
+    @Benchmark
+    public boolean locationBoundsContainsCoordinates() {
+        int i = Next();
+        return bounds.Contains(route.FixLatitudes[i], route.FixLongitudes[i]);
+    }
+}
@@ -0,0 +1,73 @@
+package com.mogolinc.hudtutorial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a conditions/route response body as JSON and in the compact RouteResponseFormat,
+ * against route size.
+ * <br /><br />
+ * The response is a synthetic route with 7 decimal coordinates, as the server sends them, and a
+ * point hazard every 20 vertices. Only decoding is measured; the route is compiled lazily.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseDecodeBenchmark {
+    @Param({ "100", "1000", "10000" })
+    public int vertices;
+
+    private RouteResponseDecoder decoder;
+    private byte[] json;
+    private byte[] compact;
+
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticRoute synthetic = new SyntheticRoute(vertices, 1, 0, 42);
+        StringBuilder sb = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        sb.append("{\"type\":\"route\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+        for(int i = 0; i < vertices; i++) {
+            if(i > 0)
+                sb.append(',');
+            sb.append(String.format(Locale.US, "[%.7f,%.7f]", synthetic.Longitudes[i], synthetic.Latitudes[i]));
+        }
+        sb.append("]}}");
+        for(int i = 0; i < vertices; i += 20) {
+            sb.append(String.format(Locale.US,
+                    ",{\"type\":\"Feature\",\"properties\":{\"condition\":\"incident\",\"subcondition\":\"\"},\"geometry\":{\"type\":\"Point\",\"coordinates\":[%.7f,%.7f]}}",
+                    synthetic.Longitudes[i], synthetic.Latitudes[i]));
+        }
+        json = sb.append("]}").toString().getBytes("UTF-8");
+
+        decoder = new RouteResponseDecoder(SyntheticRoute.Padding);
+        compact = RouteResponseFormat.Encode(decoder.Decode(new ByteArrayInputStream(json)));
+    }
+
+    @Benchmark
+    public RouteResponse decodeJson() throws IOException {
+        return decoder.Decode(new ByteArrayInputStream(json));
+    }
+
+    @Benchmark
+    public RouteResponse decodeCompact() throws IOException {
+        return decoder.DecodeCompact(new ByteArrayInputStream(compact));
+    }
+}
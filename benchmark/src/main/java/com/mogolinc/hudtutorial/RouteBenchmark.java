@@ -0,0 +1,126 @@
+package com.mogolinc.hudtutorial;
+
+import android.location.Location;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-fix route matching against route size.
+ * <br /><br />
+ * The "legacy" benchmarks reproduce the original HudActivity isOnRoute/distanceAlongRoute
+ * loops (a fence built per segment per fix, without the JSON access) as the baseline; the
+ * others run the compiled route, its index and the incremental cursor on the same fixes, in
+ * both distance modes.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteBenchmark {
+    private static final int Fixes = 4096;
+
+    @Param({ "10", "100", "1000", "10000", "100000" })
+    public int vertices;
+
+    @Param({ "PLANAR", "GREAT_CIRCLE" })
+    public DistanceMode mode;
+
+    private SyntheticRoute synthetic;
+    private List<Location> vertexLocations;
+    private Location[] fixes;
+    private CompiledRoute route;
+    private RouteCursor cursor;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        synthetic = new SyntheticRoute(vertices, Fixes, 0.1, 42);
+        vertexLocations = synthetic.GetVertexLocations();
+        fixes = synthetic.GetFixLocations();
+        route = synthetic.Compile(mode);
+        cursor = new RouteCursor(route);
+    }
+
+    private int Next() {
+        next = (next + 1) & (Fixes - 1);
+        if(next == 0)
+            cursor.Reset();
+        return next;
+    }
+
+    @Benchmark
+    public CompiledRoute compile() {
+        return synthetic.Compile(mode);
+    }
+
+    @Benchmark
+    public boolean legacyIsOnRoute() {
+        Location location = fixes[Next()];
+        for(int i = 1; i < vertexLocations.size(); i++) {
+            GeoFence fence = GeoFence.CreateFenceAroundEdge(vertexLocations.get(i-1), vertexLocations.get(i), SyntheticRoute.Padding);
+            if(fence.Contains(location))
+                return true;
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean compiledIsOnRoute() {
+        int i = Next();
+        return route.IsOnRoute(synthetic.GetFixLatitude(i), synthetic.GetFixLongitude(i));
+    }
+
+    @Benchmark
+    public boolean cursorUpdate() {
+        int i = Next();
+        return cursor.Update(synthetic.GetFixLatitude(i), synthetic.GetFixLongitude(i), synthetic.GetFixBearing(i), true);
+    }
+
+    @Benchmark
+    public double legacyDistanceAlongRoute() {
+        Location start = vertexLocations.get(0);
+        Location end = fixes[Next()];
+        double distance = 0;
+
+        for(int i = 1; i < vertexLocations.size(); i++) {
+            Location l0 = vertexLocations.get(i-1);
+            Location l1 = vertexLocations.get(i);
+            GeoFence fence = GeoFence.CreateFenceAroundEdge(l0, l1, SyntheticRoute.Padding);
+
+            if(fence.Contains(start)) {
+                distance = start.distanceTo(l1);
+            } else if(fence.Contains(end)) {
+                distance += l0.distanceTo(end);
+                break;
+            } else if(i == vertexLocations.size() - 1) {
+                distance = -1;
+            } else if(distance > 0) {
+                distance += l0.distanceTo(l1);
+            }
+        }
+
+        return distance;
+    }
+
+    @Benchmark
+    public double compiledDistanceAlongRoute() {
+        int i = Next();
+        return route.DistanceAlongRoute(route.GetLatitude(0), route.GetLongitude(0), synthetic.GetFixLatitude(i), synthetic.GetFixLongitude(i));
+    }
+}
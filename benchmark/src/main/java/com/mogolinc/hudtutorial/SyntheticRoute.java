@@ -0,0 +1,140 @@
+package com.mogolinc.hudtutorial;
+
+import android.location.Location;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic route geometry and fixes for benchmarks.
+ * <br /><br />
+ * The route is a polyline with a fixed vertex spacing whose heading wanders slowly, like a
+ * road. Fixes are sampled along the route with lateral noise inside the corridor, plus a share
+ * of off-route fixes well outside it.
+ */
+
+public class SyntheticRoute {
+    public static final double StartLatitude = 44.9778;
+    public static final double StartLongitude = -93.2650;
+    public static final double VertexSpacing = 50; // meters
+    public static final double Padding = 30; // meters
+
+    protected final double[] Latitudes;
+    protected final double[] Longitudes;
+    protected final double[] FixLatitudes;
+    protected final double[] FixLongitudes;
+    protected final double[] FixBearings;
+
+
+    /**
+     * Generates a route and fixes along it.
+     *
+     * @param vertices number of route vertices
+     * @param fixes number of fixes
+     * @param offRouteShare share of fixes placed off the route, 0 to 1
+     * @param seed random seed
+     */
+    public SyntheticRoute(int vertices, int fixes, double offRouteShare, long seed) {
+        Random random = new Random(seed);
+        double[] out = new double[2];
+
+        Latitudes = new double[vertices];
+        Longitudes = new double[vertices];
+        Latitudes[0] = StartLatitude;
+        Longitudes[0] = StartLongitude;
+        double heading = 0;
+        for(int i = 1; i < vertices; i++) {
+            heading += random.nextGaussian() * 10;
+            GeoMath.Destination(Latitudes[i-1], Longitudes[i-1], heading, VertexSpacing, out);
+            Latitudes[i] = out[0];
+            Longitudes[i] = out[1];
+        }
+
+        // Fixes in driving order: monotonically increasing segment, lateral noise within the corridor.
+        FixLatitudes = new double[fixes];
+        FixLongitudes = new double[fixes];
+        FixBearings = new double[fixes];
+        int segments = Math.max(1, vertices - 1);
+        for(int i = 0; i < fixes; i++) {
+            int seg = (int) ((long) i * segments / fixes);
+            int next = Math.min(seg + 1, vertices - 1);
+            double bearing = GeoMath.Bearing(Latitudes[seg], Longitudes[seg], Latitudes[next], Longitudes[next]);
+            GeoMath.Destination(Latitudes[seg], Longitudes[seg], bearing, random.nextDouble() * VertexSpacing, out);
+
+            double lateral = random.nextDouble() < offRouteShare ? 200 + random.nextDouble() * 500 : random.nextGaussian() * 5;
+            GeoMath.Destination(out[0], out[1], bearing + 90, lateral, out);
+            FixLatitudes[i] = out[0];
+            FixLongitudes[i] = out[1];
+            FixBearings[i] = bearing + random.nextGaussian() * 5;
+        }
+    }
+
+
+    public int GetNumVertices() {
+        return Latitudes.length;
+    }
+
+    public int GetNumFixes() {
+        return FixLatitudes.length;
+    }
+
+    public double[] GetLatitudes() {
+        return Latitudes;
+    }
+
+    public double[] GetLongitudes() {
+        return Longitudes;
+    }
+
+    public double GetFixLatitude(int idx) {
+        return FixLatitudes[idx];
+    }
+
+    public double GetFixLongitude(int idx) {
+        return FixLongitudes[idx];
+    }
+
+    public double GetFixBearing(int idx) {
+        return FixBearings[idx];
+    }
+
+    public CompiledRoute Compile() {
+        return Compile(DistanceMode.PLANAR);
+    }
+
+    public CompiledRoute Compile(DistanceMode mode) {
+        return new CompiledRoute(Latitudes, Longitudes, null, Padding, mode);
+    }
+
+    /**
+     * Returns the route vertices as Locations, the shape the original HudActivity code iterated.
+     *
+     * @return vertex locations
+     */
+    public List<Location> GetVertexLocations() {
+        List<Location> locations = new ArrayList<>(Latitudes.length);
+        for(int i = 0; i < Latitudes.length; i++)
+            locations.add(ToLocation(Latitudes[i], Longitudes[i]));
+        return locations;
+    }
+
+    /**
+     * Returns the fixes as Locations.
+     *
+     * @return fix locations
+     */
+    public Location[] GetFixLocations() {
+        Location[] locations = new Location[FixLatitudes.length];
+        for(int i = 0; i < FixLatitudes.length; i++)
+            locations[i] = ToLocation(FixLatitudes[i], FixLongitudes[i]);
+        return locations;
+    }
+
+    public static Location ToLocation(double lat, double lon) {
+        Location location = new Location("benchmark");
+        location.setLatitude(lat);
+        location.setLongitude(lon);
+        return location;
+    }
+}
@@ -0,0 +1,257 @@
+package com.mogolinc.hudtutorial;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a recorded trace through a HudController, without an Activity, at accelerated speed.
+ * <br /><br />
+ * The calling thread is the controller's owner thread: fixes are delivered at their recorded
+ * times divided by the speedup, and fetch results are run between fixes. The controller works
+ * in trace time: fixes keep their recorded times and speeds, and measured fetch latencies are
+ * multiplied by the speedup, so the stand-in server's latency should be divided by it (see
+ * main). Reported times are in trace time. A speedup of 0 replays as fast as possible; fetch
+ * timing is then not representative.
+ * <br /><br />
+ * Like the LocationManager, the harness only delivers fixes that are at least the requested
+ * minimum time and distance after the last delivered one (see UpdateScheduler).
+ * <br /><br />
+ * Usage, from the replay module:
+ * <pre>
+ *   ./gradlew :replay:run -Pargs="--trace drive.gpx --response window.json --latency 800 --speedup 20"
+ * </pre>
+ */
+public class ReplayHarness {
+    public static class Event {
+        public final long Time;         // trace milliseconds since the first fix
+        public final String Message;
+
+        public Event(long time, String message) {
+            Time = time;
+            Message = message;
+        }
+    }
+
+    public static class Report {
+        public int TraceFixes;
+        public int Fixes;                       // delivered to the controller
+        public long WallMillis;
+        public long Fetches;
+        public long TimeToFirstMessage = -1;    // trace milliseconds, -1 if no message was shown
+        public double ProcessingFixesPerSecond; // fixes per second of controller time
+        public List<Event> Timeline;
+        public Metrics Recorded;
+
+        /**
+         * Returns fixes delivered per second of wall time.
+         */
+        public double GetFixesPerSecond() {
+            return WallMillis == 0 ? 0 : Fixes * 1000.0 / WallMillis;
+        }
+
+        public void Print(PrintStream out) throws IOException {
+            out.printf(Locale.US, "trace_fixes\t%d\n", TraceFixes);
+            out.printf(Locale.US, "fixes\t%d\n", Fixes);
+            out.printf(Locale.US, "wall_ms\t%d\n", WallMillis);
+            out.printf(Locale.US, "fixes_per_second\t%.1f\n", GetFixesPerSecond());
+            out.printf(Locale.US, "processing_fixes_per_second\t%.0f\n", ProcessingFixesPerSecond);
+            out.printf(Locale.US, "fetches\t%d\n", Fetches);
+            out.printf(Locale.US, "time_to_first_message_ms\t%d\n", TimeToFirstMessage);
+            for(Event event : Timeline)
+                out.printf(Locale.US, "message\t%d\t%s\n", event.Time, event.Message);
+
+            OutputStreamWriter writer = new OutputStreamWriter(out, "UTF-8");
+            Recorded.WriteTo(writer, "replay");
+            writer.flush();
+        }
+    }
+
+    /**
+     * Time allowed for fetches still in flight after the last fix, in wall milliseconds.
+     */
+    public static final long DrainTimeout = 5000;
+
+    private final RouteFetcher fetcher;
+    private final double refreshDistance;
+    private final double speedup;
+
+
+    /**
+     * Constructs a new ReplayHarness.
+     *
+     * @param fetcher client for the (stand-in) conditions server
+     * @param refreshDistance route tracker refresh distance, in meters
+     * @param speedup replay speed as a multiple of real time, 0 for as fast as possible
+     */
+    public ReplayHarness(RouteFetcher fetcher, double refreshDistance, double speedup) {
+        this.fetcher = fetcher;
+        this.refreshDistance = refreshDistance;
+        this.speedup = speedup;
+    }
+
+
+    /**
+     * Replays a trace on the calling thread.
+     *
+     * @param trace fixes in time order
+     * @return replay report
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public Report Run(List<TraceReader.Fix> trace) throws InterruptedException {
+        final BlockingQueue<Runnable> posted = new LinkedBlockingQueue<>();
+        final List<Event> timeline = new ArrayList<>();
+        final long start = System.nanoTime();
+        final long traceStart = trace.isEmpty() ? 0 : trace.get(0).Time;
+        final long[] now = new long[1]; // trace time of the last fix, in fast mode
+        final long[] minTime = { UpdateScheduler.Intervals[0] };
+        final float[] minDistance = { UpdateScheduler.Distances[0] };
+
+        HudController controller = new HudController(new RouteTracker(refreshDistance, new PrefetchScheduler()), fetcher, new HudController.Host() {
+            @Override
+            public void Show(String message) {
+                if(!timeline.isEmpty() && timeline.get(timeline.size() - 1).Message.equals(message))
+                    return;
+                if(timeline.isEmpty() && message.isEmpty())
+                    return;
+                timeline.add(new Event(TraceNow(start, now[0]), message));
+            }
+
+            @Override
+            public void Log(String message) {
+            }
+
+            @Override
+            public void SetUpdateInterval(long time, float distance) {
+                minTime[0] = time;
+                minDistance[0] = distance;
+            }
+
+            @Override
+            public void Post(Runnable task) {
+                posted.add(task);
+            }
+        });
+        if(speedup > 0)
+            controller.SetLatencyScale(speedup);
+
+        int delivered = 0;
+        TraceReader.Fix last = null;
+
+        try {
+            for(TraceReader.Fix fix : trace) {
+                if(last != null && (fix.Time - last.Time < minTime[0]
+                        || GeoMath.Distance(last.Latitude, last.Longitude, fix.Latitude, fix.Longitude) < minDistance[0]))
+                    continue;
+
+                long traceTime = fix.Time - traceStart;
+                if(speedup > 0) {
+                    long due = start + (long) (traceTime / speedup * 1e6);
+                    for(long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                        Runnable task = posted.poll(wait, TimeUnit.NANOSECONDS);
+                        if(task != null)
+                            task.run();
+                    }
+                }
+                RunPosted(posted);
+
+                now[0] = traceTime;
+                last = fix;
+                delivered++;
+                controller.OnFix(fix.Latitude, fix.Longitude, fix.Bearing, fix.HasBearing, fix.Speed, fix.HasSpeed, traceTime);
+            }
+
+            long deadline = System.nanoTime() + DrainTimeout * 1000000;
+            while(controller.GetFetchEngine().IsBusy() && System.nanoTime() < deadline) {
+                Runnable task = posted.poll(10, TimeUnit.MILLISECONDS);
+                if(task != null)
+                    task.run();
+            }
+            RunPosted(posted);
+        } finally {
+            controller.Shutdown();
+        }
+
+        Report report = new Report();
+        report.TraceFixes = trace.size();
+        report.Fixes = delivered;
+        report.WallMillis = (System.nanoTime() - start) / 1000000;
+        report.Fetches = controller.GetFetchEngine().GetRequestCount();
+        report.Timeline = Collections.unmodifiableList(timeline);
+        report.Recorded = controller.GetMetrics();
+        report.ProcessingFixesPerSecond = (controller.FixNanos.GetMean() == 0 ? 0 : 1e9 / controller.FixNanos.GetMean());
+        for(Event event : timeline) {
+            if(!event.Message.isEmpty()) {
+                report.TimeToFirstMessage = event.Time;
+                break;
+            }
+        }
+
+        return report;
+    }
+
+    private long TraceNow(long start, long lastFix) {
+        if(speedup <= 0)
+            return lastFix;
+
+        return Math.max(lastFix, (long) ((System.nanoTime() - start) / 1e6 * speedup));
+    }
+
+    private static void RunPosted(BlockingQueue<Runnable> posted) {
+        for(Runnable task = posted.poll(); task != null; task = posted.poll())
+            task.run();
+    }
+
+    public static void main(String[] args) throws Exception {
+        File trace = null;
+        File response = null;
+        long latency = 0;
+        double speedup = 10;
+        int lookahead = 2000;
+        double padding = 30;
+
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            switch(args[i]) {
+                case "--trace": trace = new File(args[i + 1]); break;
+                case "--response": response = new File(args[i + 1]); break;
+                case "--latency": latency = Long.parseLong(args[i + 1]); break;
+                case "--speedup": speedup = Double.parseDouble(args[i + 1]); break;
+                case "--lookahead": lookahead = Integer.parseInt(args[i + 1]); break;
+                case "--padding": padding = Double.parseDouble(args[i + 1]); break;
+                default: throw new IllegalArgumentException(String.format("Unknown option %s", args[i]));
+            }
+        }
+        if(trace == null || response == null) {
+            System.err.println("Usage: ReplayHarness --trace <gpx|nmea|csv> --response <geojson> [--latency ms] [--speedup x] [--lookahead m] [--padding m]");
+            System.exit(2);
+        }
+
+        StandInConditionsServer.Canned canned;
+        InputStream in = new FileInputStream(response);
+        try {
+            canned = StandInConditionsServer.Canned.FromStream(in);
+        } finally {
+            in.close();
+        }
+
+        StandInConditionsServer server = new StandInConditionsServer(canned);
+        try {
+            // Latency is given in trace time; the replay runs "speedup" times faster.
+            server.SetLatency(speedup > 0 ? (long) (latency / speedup) : latency);
+            ReplayHarness harness = new ReplayHarness(new RouteFetcher(server.GetBaseUrl(), "replay", lookahead, padding), lookahead / 2, speedup);
+            harness.Run(TraceReader.Read(trace)).Print(System.out);
+        } finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.mogolinc.hudtutorial;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Reads recorded GPS traces for the replay harness.
+ * <br /><br />
+ * Supported formats:
+ * <ul>
+ *     <li>GPX: trkpt (or rtept/wpt) elements with a time child. Optional speed (m/s) and course
+ *     children, including those nested in extensions, are used when present.</li>
+ *     <li>NMEA 0183: RMC sentences from any talker ($GPRMC, $GNRMC, ...). Sentences with a bad
+ *     checksum or a void status are skipped.</li>
+ *     <li>CSV: time, lat, lon and optional bearing and speed (m/s) columns, with an optional
+ *     header naming them in any order. Time is epoch milliseconds or ISO 8601; empty fields
+ *     are missing values.</li>
+ * </ul>
+ */
+public class TraceReader {
+    public static class Fix {
+        public final long Time;         // epoch milliseconds
+        public final double Latitude;
+        public final double Longitude;
+        public final double Bearing;    // degrees
+        public final boolean HasBearing;
+        public final double Speed;      // m/s
+        public final boolean HasSpeed;
+
+        public Fix(long time, double lat, double lon, double bearing, boolean hasBearing, double speed, boolean hasSpeed) {
+            Time = time;
+            Latitude = lat;
+            Longitude = lon;
+            Bearing = bearing;
+            HasBearing = hasBearing;
+            Speed = speed;
+            HasSpeed = hasSpeed;
+        }
+    }
+
+    private static final double KnotsToMetersPerSecond = 1852.0 / 3600.0;
+    private static final Pattern Iso8601 = Pattern.compile(
+            "(\\d{4})-(\\d{2})-(\\d{2})[T ](\\d{2}):(\\d{2}):(\\d{2})(?:\\.(\\d+))?(Z|[+-]\\d{2}:?\\d{2})?");
+
+    private TraceReader() {
+    }
+
+
+    /**
+     * Reads a trace, choosing the format from the file extension: .gpx, .csv, or anything else
+     * for NMEA.
+     *
+     * @param file trace file
+     * @return fixes in file order
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public static List<Fix> Read(File file) throws IOException {
+        String name = file.getName().toLowerCase(Locale.US);
+        InputStream in = new FileInputStream(file);
+        try {
+            if(name.endsWith(".gpx"))
+                return ReadGpx(in);
+
+            Reader reader = new InputStreamReader(in, "UTF-8");
+            return name.endsWith(".csv") ? ReadCsv(reader) : ReadNmea(reader);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static List<Fix> ReadGpx(InputStream in) throws IOException {
+        final List<Fix> fixes = new ArrayList<>();
+
+        DefaultHandler handler = new DefaultHandler() {
+            private final StringBuilder text = new StringBuilder();
+            private boolean inPoint = false;
+            private double lat, lon, bearing, speed;
+            private boolean hasBearing, hasSpeed;
+            private long time;
+
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                String name = LocalName(qName);
+                text.setLength(0);
+                if(name.equals("trkpt") || name.equals("rtept") || name.equals("wpt")) {
+                    inPoint = true;
+                    lat = Double.parseDouble(attributes.getValue("lat"));
+                    lon = Double.parseDouble(attributes.getValue("lon"));
+                    hasBearing = hasSpeed = false;
+                    time = -1;
+                }
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                text.append(ch, start, length);
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) throws SAXException {
+                if(!inPoint)
+                    return;
+
+                String name = LocalName(qName);
+                String value = text.toString().trim();
+                switch(name) {
+                    case "time":
+                        try {
+                            time = ParseIso8601(value);
+                        } catch (IOException e) {
+                            throw new SAXException(e.getMessage());
+                        }
+                        break;
+                    case "speed": speed = Double.parseDouble(value); hasSpeed = true; break;
+                    case "course": bearing = Double.parseDouble(value); hasBearing = true; break;
+                    case "trkpt":
+                    case "rtept":
+                    case "wpt":
+                        inPoint = false;
+                        if(time >= 0)
+                            fixes.add(new Fix(time, lat, lon, bearing, hasBearing, speed, hasSpeed));
+                        break;
+                }
+            }
+        };
+
+        try {
+            SAXParserFactory.newInstance().newSAXParser().parse(new InputSource(in), handler);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(String.format("Invalid GPX trace: %s", e.getMessage()), e);
+        }
+
+        return fixes;
+    }
+
+    public static List<Fix> ReadNmea(Reader in) throws IOException {
+        List<Fix> fixes = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(in);
+
+        for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+            line = line.trim();
+            int star = line.indexOf('*');
+            if(!line.startsWith("$") || line.length() < 7 || !line.startsWith("RMC,", 3))
+                continue;
+            if(star >= 0 && !ChecksumMatches(line, star))
+                continue;
+
+            String[] f = line.substring(1, star >= 0 ? star : line.length()).split(",", -1);
+            // RMC,time,status,lat,N/S,lon,E/W,speed knots,course,date,...
+            if(f.length < 10 || !f[2].equals("A") || f[1].length() < 6 || f[9].length() != 6)
+                continue;
+
+            Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US);
+            calendar.clear();
+            calendar.set(2000 + Integer.parseInt(f[9].substring(4, 6)), Integer.parseInt(f[9].substring(2, 4)) - 1,
+                    Integer.parseInt(f[9].substring(0, 2)), Integer.parseInt(f[1].substring(0, 2)),
+                    Integer.parseInt(f[1].substring(2, 4)), Integer.parseInt(f[1].substring(4, 6)));
+            long time = calendar.getTimeInMillis();
+            if(f[1].length() > 7)
+                time += Math.round(Double.parseDouble("0" + f[1].substring(6)) * 1000);
+
+            double lat = ParseNmeaAngle(f[3], 2) * (f[4].equals("S") ? -1 : 1);
+            double lon = ParseNmeaAngle(f[5], 3) * (f[6].equals("W") ? -1 : 1);
+            boolean hasSpeed = !f[7].isEmpty();
+            boolean hasBearing = !f[8].isEmpty();
+
+            fixes.add(new Fix(time, lat, lon, hasBearing ? Double.parseDouble(f[8]) : 0, hasBearing,
+                    hasSpeed ? Double.parseDouble(f[7]) * KnotsToMetersPerSecond : 0, hasSpeed));
+        }
+
+        return fixes;
+    }
+
+    public static List<Fix> ReadCsv(Reader in) throws IOException {
+        List<Fix> fixes = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(in);
+        Map<String, Integer> columns = new HashMap<>();
+        String[] defaults = { "time", "lat", "lon", "bearing", "speed" };
+        for(int i = 0; i < defaults.length; i++)
+            columns.put(defaults[i], i);
+
+        boolean first = true;
+        for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if(line.trim().isEmpty() || line.startsWith("#"))
+                continue;
+
+            String[] f = line.split(",", -1);
+            if(first) {
+                first = false;
+                if(!f[0].trim().matches("[-+0-9.].*")) {
+                    columns.clear();
+                    for(int i = 0; i < f.length; i++)
+                        columns.put(f[i].trim().toLowerCase(Locale.US), i);
+                    continue;
+                }
+            }
+
+            String time = Field(f, columns, "time");
+            String bearing = Field(f, columns, "bearing");
+            String speed = Field(f, columns, "speed");
+            try {
+                fixes.add(new Fix(time.matches("\\d+") ? Long.parseLong(time) : ParseIso8601(time),
+                        Double.parseDouble(Field(f, columns, "lat")), Double.parseDouble(Field(f, columns, "lon")),
+                        bearing.isEmpty() ? 0 : Double.parseDouble(bearing), !bearing.isEmpty(),
+                        speed.isEmpty() ? 0 : Double.parseDouble(speed), !speed.isEmpty()));
+            } catch (NumberFormatException e) {
+                throw new IOException(String.format("Invalid CSV trace line: %s", line), e);
+            }
+        }
+
+        return fixes;
+    }
+
+    /**
+     * Parses an ISO 8601 date and time, e.g. 2017-06-01T12:00:00.5Z. Times without an offset
+     * are taken as UTC.
+     *
+     * @param value date and time
+     * @return epoch milliseconds
+     * @throws IOException if the value is not an ISO 8601 date and time
+     */
+    public static long ParseIso8601(String value) throws IOException {
+        Matcher m = Iso8601.matcher(value.trim());
+        if(!m.matches())
+            throw new IOException(String.format("Invalid time: %s", value));
+
+        String zone = (m.group(8) == null || m.group(8).equals("Z") ? "UTC" : "GMT" + m.group(8));
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(zone), Locale.US);
+        calendar.clear();
+        calendar.set(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)) - 1, Integer.parseInt(m.group(3)),
+                Integer.parseInt(m.group(4)), Integer.parseInt(m.group(5)), Integer.parseInt(m.group(6)));
+
+        long millis = 0;
+        if(m.group(7) != null)
+            millis = Math.round(Double.parseDouble("0." + m.group(7)) * 1000);
+        return calendar.getTimeInMillis() + millis;
+    }
+
+    private static String LocalName(String qName) {
+        int colon = qName.indexOf(':');
+        return colon < 0 ? qName : qName.substring(colon + 1);
+    }
+
+    private static String Field(String[] fields, Map<String, Integer> columns, String name) {
+        Integer idx = columns.get(name);
+        return (idx == null || idx >= fields.length ? "" : fields[idx].trim());
+    }
+
+    private static boolean ChecksumMatches(String line, int star) {
+        int sum = 0;
+        for(int i = 1; i < star; i++)
+            sum ^= line.charAt(i);
+
+        try {
+            return Integer.parseInt(line.substring(star + 1, Math.min(line.length(), star + 3)), 16) == sum;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static double ParseNmeaAngle(String value, int degreeDigits) {
+        return Integer.parseInt(value.substring(0, degreeDigits)) + Double.parseDouble(value.substring(degreeDigits)) / 60.0;
+    }
+}
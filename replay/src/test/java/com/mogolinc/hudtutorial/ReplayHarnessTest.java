@@ -0,0 +1,193 @@
+package com.mogolinc.hudtutorial;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Trace parsing, and replays through HudController against the stand-in server.
+ */
+public class ReplayHarnessTest {
+    private static final long StartTime = 1496318400000L; // 2017-06-01T12:00:00Z
+
+    // Route of route_response.json
+    private static final double[] RouteLatitudes = { 44.9778, 44.98, 44.98, 44.983, 44.983 };
+    private static final double[] RouteLongitudes = { -93.265, -93.265, -93.262, -93.262, -93.259 };
+
+    private static String Nmea(String body) {
+        int sum = 0;
+        for(int i = 0; i < body.length(); i++)
+            sum ^= body.charAt(i);
+        return String.format(Locale.US, "$%s*%02X\n", body, sum);
+    }
+
+    /**
+     * Fixes along the fixture route every second at "speed" m/s, without bearing or speed.
+     */
+    private static List<TraceReader.Fix> AlongFixtureRoute(double speed) {
+        List<TraceReader.Fix> fixes = new ArrayList<>();
+        double[] out = new double[2];
+        long time = StartTime;
+        double carry = 0;
+        for(int i = 1; i < RouteLatitudes.length; i++) {
+            double length = GeoMath.Distance(RouteLatitudes[i - 1], RouteLongitudes[i - 1], RouteLatitudes[i], RouteLongitudes[i]);
+            double bearing = GeoMath.Bearing(RouteLatitudes[i - 1], RouteLongitudes[i - 1], RouteLatitudes[i], RouteLongitudes[i]);
+            double along = carry;
+            for(; along < length; along += speed) {
+                GeoMath.Destination(RouteLatitudes[i - 1], RouteLongitudes[i - 1], bearing, along, out);
+                fixes.add(new TraceReader.Fix(time, out[0], out[1], 0, false, 0, false));
+                time += 1000;
+            }
+            carry = along - length;
+        }
+        return fixes;
+    }
+
+    private static long Counter(Metrics metrics, String name) throws Exception {
+        StringWriter out = new StringWriter();
+        metrics.WriteTo(out, "test");
+        for(String line : out.toString().split("\n")) {
+            String[] fields = line.split("\t");
+            if(fields[0].equals("counter") && fields[1].equals(name))
+                return Long.parseLong(fields[2]);
+        }
+        throw new AssertionError("no counter " + name);
+    }
+
+    @Test
+    public void traceReader_readsGpxNmeaAndCsv() throws Exception {
+        String csv = "time,lat,lon,speed,bearing\n"
+                + "1496318400000,44.9778,-93.265,15.0,0.5\n"
+                + "2017-06-01T12:00:01.500Z,44.97793,-93.265,,\n";
+        String nmea = Nmea("GPGGA,120000.00,4458.668,N,09315.900,W,1,08,0.9,250.0,M,,M,,")
+                + Nmea("GPRMC,120000.00,A,4458.668,N,09315.900,W,29.158,0.5,010617,,,A")
+                + Nmea("GNRMC,120001.50,A,4458.6758,N,09315.900,W,,,010617,,,A")
+                + Nmea("GPRMC,120002.00,V,,,,,,,010617,,,N")
+                + "$GPRMC,120003.00,A,4458.700,N,09315.900,W,,,010617,,,A*00\n";
+        String gpx = "<?xml version=\"1.0\"?><gpx version=\"1.1\" xmlns:gpxtpx=\"http://www.garmin.com/xmlschemas/TrackPointExtension/v2\">"
+                + "<metadata><time>2017-01-01T00:00:00Z</time></metadata><trk><trkseg>"
+                + "<trkpt lat=\"44.9778\" lon=\"-93.265\"><time>2017-06-01T12:00:00Z</time>"
+                + "<extensions><gpxtpx:TrackPointExtension><gpxtpx:speed>15.0</gpxtpx:speed><gpxtpx:course>0.5</gpxtpx:course></gpxtpx:TrackPointExtension></extensions></trkpt>"
+                + "<trkpt lat=\"44.97793\" lon=\"-93.265\"><time>2017-06-01T13:00:01.5+01:00</time></trkpt>"
+                + "</trkseg></trk></gpx>";
+
+        List<List<TraceReader.Fix>> traces = new ArrayList<>();
+        traces.add(TraceReader.ReadCsv(new StringReader(csv)));
+        traces.add(TraceReader.ReadNmea(new StringReader(nmea)));
+        traces.add(TraceReader.ReadGpx(new ByteArrayInputStream(gpx.getBytes("UTF-8"))));
+
+        for(List<TraceReader.Fix> trace : traces) {
+            assertEquals(2, trace.size());
+            TraceReader.Fix first = trace.get(0);
+            TraceReader.Fix second = trace.get(1);
+
+            assertEquals(StartTime, first.Time);
+            assertEquals(44.9778, first.Latitude, 1e-6);
+            assertEquals(-93.265, first.Longitude, 1e-6);
+            assertTrue(first.HasSpeed && first.HasBearing);
+            assertEquals(15.0, first.Speed, 0.01);
+            assertEquals(0.5, first.Bearing, 1e-9);
+
+            assertEquals(StartTime + 1500, second.Time);
+            assertEquals(44.97793, second.Latitude, 1e-6);
+            assertFalse(second.HasSpeed || second.HasBearing);
+        }
+    }
+
+    @Test
+    public void replay_showsCannedMessagesAfterFirstFetch() throws Exception {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("route_response.json");
+        StandInConditionsServer server = new StandInConditionsServer(StandInConditionsServer.Canned.FromStream(in));
+        in.close();
+
+        double speedup = 20;
+        long latency = 2000; // trace milliseconds
+        server.SetLatency((long) (latency / speedup));
+        try {
+            List<TraceReader.Fix> trace = AlongFixtureRoute(15);
+            ReplayHarness harness = new ReplayHarness(new RouteFetcher(server.GetBaseUrl(), "test", 2000, 30), 1000, speedup);
+            ReplayHarness.Report report = harness.Run(trace);
+
+            assertEquals(trace.size(), report.TraceFixes);
+            assertTrue(report.Fixes > 0 && report.Fixes <= trace.size());
+            assertTrue(report.Fetches >= 1);
+            assertEquals(report.Fetches, server.GetRequestCount());
+
+            // Nothing can be shown before the first window arrives.
+            assertTrue(report.TimeToFirstMessage >= latency);
+            assertTrue(report.TimeToFirstMessage < latency + 3000);
+            assertFalse(report.Timeline.isEmpty());
+            for(int i = 1; i < report.Timeline.size(); i++)
+                assertTrue(report.Timeline.get(i).Time >= report.Timeline.get(i - 1).Time);
+
+            // Trace time passes "speedup" times faster than wall time.
+            long traceMillis = trace.get(trace.size() - 1).Time - StartTime;
+            assertTrue(report.WallMillis < traceMillis / speedup + 2000);
+            assertTrue(report.GetFixesPerSecond() > 0);
+            assertTrue(report.ProcessingFixesPerSecond > report.GetFixesPerSecond());
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void replay_fastModeReplaysCorridorDrive() throws Exception {
+        double startLat = 44.9;
+        double[] hazards = { StandInConditionsServer.NorthboundCorridor.NorthOf(startLat, 1500) };
+        StandInConditionsServer server = new StandInConditionsServer(new StandInConditionsServer.NorthboundCorridor(hazards, 100));
+        try {
+            List<TraceReader.Fix> trace = new ArrayList<>();
+            for(int i = 0; i < 2000; i++)
+                trace.add(new TraceReader.Fix(StartTime + i * 1000, StandInConditionsServer.NorthboundCorridor.NorthOf(startLat, i * 25.0),
+                        -93.2, 0, true, 25, true));
+
+            ReplayHarness harness = new ReplayHarness(new RouteFetcher(server.GetBaseUrl(), "test", 2000, 30), 1000, 0);
+            ReplayHarness.Report report = harness.Run(trace);
+
+            assertEquals(2000, report.TraceFixes);
+            assertTrue(report.Fixes > 0 && report.Fixes <= 2000);
+            assertTrue(report.Fetches >= 1);
+            assertTrue(report.ProcessingFixesPerSecond > 0);
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void replay_backsOffFromFailingServer() throws Exception {
+        double startLat = 44.9;
+        StandInConditionsServer server = new StandInConditionsServer(new StandInConditionsServer.NorthboundCorridor(new double[0], 100));
+        server.SetStatus(503);
+        try {
+            // Ten minutes without a route, one fix per second
+            List<TraceReader.Fix> trace = new ArrayList<>();
+            for(int i = 0; i < 600; i++)
+                trace.add(new TraceReader.Fix(StartTime + i * 1000, StandInConditionsServer.NorthboundCorridor.NorthOf(startLat, i * 15.0),
+                        -93.2, 0, true, 15, true));
+
+            // Real time pacing, so that failures arrive before the next fixes
+            ReplayHarness harness = new ReplayHarness(new RouteFetcher(server.GetBaseUrl(), "test", 2000, 30), 1000, 100);
+            ReplayHarness.Report report = harness.Run(trace);
+
+            // Five failures back off over about half a minute, then the circuit opens and lets
+            // one trial through every two minutes.
+            assertEquals(600, report.Fixes);
+            assertEquals(report.Fetches, server.GetRequestCount());
+            assertTrue(report.Fetches >= 6 && report.Fetches <= 12);
+            assertTrue(Counter(report.Recorded, "circuit_opens") >= 2);
+            assertTrue(Counter(report.Recorded, "fetches_circuit_open") > 400);
+            assertEquals(report.Fetches, Counter(report.Recorded, "fetch_failures"));
+            assertTrue(report.Timeline.isEmpty());
+        } finally {
+            server.close();
+        }
+    }
+}